@@ -118,6 +118,7 @@ def tests_generate_code(): # Ideally here we'd just generate once, not nLangs ti
     for lang in ["java", "cpp", "javascript"]:
         for model in ["project.xml", "transient_testmodel/project.xml", "defaultvalues_testmodel/project.xml", "defaultvaluesreq_testmodel/project.xml"]:
             compile4("mgen-" + lang + "lib", "../mgen-compiler/src/test/resources/" + model, ".", "../mgen-" + lang + "generator/target")          
+    compile4("mgen-javalib", "../mgen-compiler/src/test/resources/features_testmodel/project.xml", ".", "../mgen-javagenerator/target")
     for name in ["depends", "write", "read"]:
         compile3("mgen-integrationtests", 'models/'+name+'/project.xml', "generated/"+name)
 
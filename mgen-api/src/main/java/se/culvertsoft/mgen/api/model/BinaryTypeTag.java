@@ -63,4 +63,11 @@ public interface BinaryTypeTag {
 	 */
 	public static final byte TAG_CLASS = (byte) 10;
 
+	/**
+	 * Binary type tag used for enums written by their integer value (as a
+	 * zig-zag varint) in the mgen binary wire format. Only written when
+	 * explicitly enabled - by default enums are written as TAG_STRING.
+	 */
+	public static final byte TAG_ENUM = (byte) 11;
+
 }
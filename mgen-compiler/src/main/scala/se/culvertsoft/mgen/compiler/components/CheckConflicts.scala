@@ -23,7 +23,7 @@ object CheckConflicts {
     }
   }
 
-  def apply(project: Project) {
+  def apply(project: Project, leafTypeIds: Boolean = false) {
 
     val allModules = project.allModulesRecursively
     val allTypes = allModules.flatMap(_.classes)
@@ -45,6 +45,13 @@ object CheckConflicts {
       throw new TypeConflictException(s"Conflicting 16 bit type IDs with same super type. Types: ${t1.fullName} and ${t2.fullName()}, with super type ${t1.superType()}.")
     }
 
+    // Leaf type ids identify classes by their own 16 bit type id alone
+    if (leafTypeIds) {
+      assertNoDuplicates(allTypes, (t: ClassType) => t.typeId16Bit) { (t1, t2) =>
+        throw new TypeConflictException(s"Conflicting 16 bit type IDs (leaf_type_ids requires them to be unique in the project). Types: ${t1.fullName} and ${t2.fullName()}. Change one of their names or ids.")
+      }
+    }
+
     for (t <- allTypes) {
       val fields = t.fields()
       assertNoDuplicates(fields, (f: Field) => f.name) { (f1, f2) =>
@@ -7,6 +7,7 @@ object CreateProject {
   def apply(settings: Map[String, String], pluginFinder: PluginLoader): Project = {
 
     val checkForConflicts = settings.get("check_conflicts").map(_.toBoolean).getOrElse(true)
+    val leafTypeIds = settings.get("leaf_type_ids").map(_.toBoolean).getOrElse(false)
 
     // Parse the project shallow
     println("Parsing project...")
@@ -21,7 +22,7 @@ object CreateProject {
     // Check for type conflicts (ids, names, hashes etc)
     if (checkForConflicts) {
       print("Checking for type conflicts...")
-      CheckConflicts(project)
+      CheckConflicts(project, leafTypeIds)
       println("ok\n")
     }
 
@@ -10,6 +10,7 @@ object PrintHelp {
     println("  -output_path=\"specify output path (Optional) ")
     println("  -fail_on_missing_generator=true/false: Default false (Optional)")
     println("  -check_conflicts=\"true/false\" (default=true): If false: the compiler will ignore any type name/id/hash conflicts (Optional). Useful for IDL<->IDL translation")
+    println("  -leaf_type_ids=\"true/false\" (default=false): If true: 16 bit type ids must be unique across the whole project, so that objects can be identified by their leaf type id alone (Optional)")
     println("  -include_paths=\"/home/me,/home/you\": The paths to search for project files")
     println("  -use_env_vars=\"true/false\" (default=true): If to search environmental variable paths")
     println()
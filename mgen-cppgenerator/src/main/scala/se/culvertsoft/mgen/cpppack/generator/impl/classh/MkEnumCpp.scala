@@ -87,6 +87,17 @@ object MkEnumCpp {
     ln(1, s"return it != lkup.end() ? it->second : $ns::${name}_UNKNOWN;")
     ln(s"}")
     ln()
+    ln(s"$fullname get_enum_value(const $fullname /* type_evidence */, const int enumValue) {")
+    ln(1, s"switch (enumValue) {")
+    for ((e, v) <- entries.zip(values).groupBy(_._2).values.map(_.head).toSeq.sortBy(_._2)) {
+      ln(2, s"case $v:")
+      ln(3, s"return $ns::${name}_${e.name};")
+    }
+    ln(2, s"default:")
+    ln(3, s"return $ns::${name}_UNKNOWN;")
+    ln(1, "}")
+    ln(s"}")
+    ln()
 
     ln(s"const std::vector<std::string>& get_enum_names(const $fullname /* type_evidence */) {")
     ln(1, s"static const std::vector<std::string> out = ${ns}::_mk_${name}_enum_names();")
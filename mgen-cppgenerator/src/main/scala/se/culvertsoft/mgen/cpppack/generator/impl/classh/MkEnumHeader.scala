@@ -60,6 +60,7 @@ object MkEnumHeader {
 
     ln(s"const std::vector<$fullname>& get_enum_values(const $fullname /* type_evidence */);")
     ln(s"$fullname get_enum_value(const $fullname /* type_evidence */, const std::string& enumName);")
+    ln(s"$fullname get_enum_value(const $fullname /* type_evidence */, const int enumValue);")
     ln()
 
     ln(s"const std::vector<std::string>& get_enum_names(const $fullname /* type_evidence */);")
@@ -19,14 +19,19 @@
   * at the end of this header, as it is only intended to be used internally.
   */
 #define READ_MGEN_OBJ_HEADER(retCall) \
-    const int nIdsOrFields = readSize(); \
-    if (nIdsOrFields == 0) retCall; \
+    const int headerOrFrame = readSize(); \
+    if (headerOrFrame == 0) retCall; \
+    const bool framed = isFrameHeader(headerOrFrame); \
+    const int headerOrMarker = framed ? readSize() : headerOrFrame; \
+    const bool compactFields = headerOrMarker == BINARY_COMPACT_FIELDS_HEADER; \
+    const int nIdsOrFields = compactFields ? readSize() : headerOrMarker; \
     const bool hasIds = (nIdsOrFields & 0x01) != 0; \
     const int nIds = hasIds ? (nIdsOrFields >> 2) : 0; \
     std::vector<short> ids(nIds); \
     for (int i = 0; i < nIds; i++) \
         read(ids[i], false); \
-    const int nFields = hasIds ? readSize() : (nIdsOrFields >> 2);
+    const int nFields = hasIds ? readSize() : (nIdsOrFields >> 2); \
+    m_compactFields = compactFields;
 
 namespace mgen {
 
@@ -54,7 +59,10 @@ public:
             const bool extraTypeChecking = false) :
                 m_inputStream(inputStream),
                 m_classRegistry(classRegistry),
-                m_extraTypeChecking(extraTypeChecking) {
+                m_extraTypeChecking(extraTypeChecking),
+                m_compactFields(false),
+                m_fieldTag(-1),
+                m_elementTag(BINARY_TAG_STRING) {
     }
 
     /**
@@ -120,9 +128,23 @@ public:
      */
     template<typename ClassType>
     void readFields(ClassType& object, const int nFields) {
-        for (int i = 0; i < nFields; i++) {
-            const short fieldId = readFieldId();
-            object._readField(fieldId, fieldId, *this);
+        if (m_compactFields) {
+            const std::vector<Field>& fields = ClassType::_field_metadatas();
+            int ordinal = -1;
+            for (int i = 0; i < nFields; i++) {
+                ordinal = readCompactFieldHeader(ordinal);
+                if (ordinal < int(fields.size())) {
+                    const short fieldId = fields[ordinal].id();
+                    object._readField(fieldId, fieldId, *this);
+                } else {
+                    skip(readTag());
+                }
+            }
+        } else {
+            for (int i = 0; i < nFields; i++) {
+                const short fieldId = readFieldId();
+                object._readField(fieldId, fieldId, *this);
+            }
         }
         mgen::missingfields::ensureNoMissingFields(object);
     }
@@ -146,8 +168,16 @@ private:
 
         if (entry) {
             return serialutil::readObjInternal(*this, m_classRegistry, nFields, 0, *entry);
+        } else if (framed) {
+            int nHeaderBytes = varint::sizeOfUnsigned32(nIdsOrFields);
+            if (compactFields)
+                nHeaderBytes += varint::sizeOfUnsigned32(BINARY_COMPACT_FIELDS_HEADER);
+            if (hasIds)
+                nHeaderBytes += nIds * 2 + varint::sizeOfUnsigned32(nFields);
+            skipBytes((headerOrFrame >> 2) - nHeaderBytes);
+            return 0;
         } else {
-            skipFields(nFields);
+            skipFields(nFields, compactFields);
             return 0;
         }
 
@@ -190,9 +220,12 @@ private:
     /**
      * Internal method for skipping a number of fields in a data stream.
      */
-    void skipFields(const int nFields) {
+    void skipFields(const int nFields, const bool compactFields) {
         for (int i = 0; i < nFields; i++) {
-            readFieldId();
+            if (compactFields)
+                readCompactFieldHeader(-1);
+            else
+                readFieldId();
             skip(readTag());
         }
     }
@@ -201,8 +234,46 @@ private:
      * Internal method for skipping an MGen object in a data stream.
      */
     void skipCustom() {
-        READ_MGEN_OBJ_HEADER(return);
-        skipFields(nFields);
+        const int header = readSize();
+        if (isFrameHeader(header)) {
+            skipBytes(header >> 2);
+        } else if (header != 0) {
+            const bool compactFields = header == BINARY_COMPACT_FIELDS_HEADER;
+            const int nIdsOrFields = compactFields ? readSize() : header;
+            const bool hasIds = (nIdsOrFields & 0x01) != 0;
+            if (hasIds)
+                skipBytes((nIdsOrFields >> 2) * 2);
+            skipFields(hasIds ? readSize() : (nIdsOrFields >> 2), compactFields);
+        }
+    }
+
+    /**
+     * Internal method for skipping a string in a data stream.
+     */
+    void skipString() {
+        skipBytes(readSize());
+    }
+
+    /**
+     * Internal method for skipping a number of raw bytes in a data stream.
+     */
+    void skipBytes(int n) {
+        char buf[256];
+        while (n > 0) {
+            const int chunk = n < int(sizeof(buf)) ? n : int(sizeof(buf));
+            m_inputStream.read(buf, chunk);
+            n -= chunk;
+        }
+    }
+
+    /**
+     * Internal method for checking if an MGen object header is a frame header,
+     * i.e. if the object is prefixed by its length in bytes. Frame headers
+     * have both of the two lowest bits set, which never happens for regular
+     * object headers.
+     */
+    static bool isFrameHeader(const int header) {
+        return (header & 0x03) == 0x03;
     }
 
     /**
@@ -227,10 +298,11 @@ private:
         SKIP_CASE_READ(BINARY_TAG_INT64, skip<long long>(false))
         SKIP_CASE_READ(BINARY_TAG_FLOAT32, skip<float>(false))
         SKIP_CASE_READ(BINARY_TAG_FLOAT64, skip<double>(false))
-        SKIP_CASE_READ(BINARY_TAG_STRING, skip<std::string>(false))
+        SKIP_CASE_READ(BINARY_TAG_STRING, skipString())
         SKIP_CASE_READ(BINARY_TAG_LIST, skipList(false))
         SKIP_CASE_READ(BINARY_TAG_MAP, skipMap(false))
         SKIP_CASE_READ(BINARY_TAG_CUSTOM, skipCustom())
+        SKIP_CASE_READ(BINARY_TAG_ENUM, skip<int>(false))
         default:
             throw UnexpectedTypeException("BinaryReader::skipField(..): Unexpected tag");
         }
@@ -245,10 +317,12 @@ private:
         verifyReadTagIf(BINARY_TAG_LIST, verifyTag);
         const int sz = readSize();
         if (sz > 0) {
-            verifyReadTagIf(BINARY_TAG_OF((T*) 0), true);
+            const BINARY_TAG tag = readElementTag((T*) 0);
             v.resize(sz);
-            for (int i = 0; i < sz; i++)
+            for (int i = 0; i < sz; i++) {
+                m_elementTag = tag;
                 read(v[i], false);
+            }
         }
     }
 
@@ -262,12 +336,14 @@ private:
         const int sz = readSize();
 		v.clear();
         if (sz > 0) {
-            verifyReadTagIf(BINARY_TAG_OF((K*) 0), true);
-            verifyReadTagIf(BINARY_TAG_OF((V*) 0), true);
+            const BINARY_TAG keyTag = readElementTag((K*) 0);
+            const BINARY_TAG valueTag = readElementTag((V*) 0);
 
             for (int i = 0; i < sz; i++) {
                 K key;
+                m_elementTag = keyTag;
                 read(key, false);
+                m_elementTag = valueTag;
                 read(v[key], false);
             }
 
@@ -284,13 +360,25 @@ private:
     }
 
     /**
-     * Internal method for reading an enum in a data stream.
+     * Internal method for reading an enum in a data stream. Enums are written
+     * either by their names (BINARY_TAG_STRING) or by their integer values
+     * (BINARY_TAG_ENUM, see the Java BinaryWriter.setWriteEnumsAsInts(..)).
+     * Unknown names and values are read as the UNKNOWN entry of the enum.
      */
     template<typename EnumType>
     void read(EnumType& e, const int /* type_evidence */, const bool verifyTag) {
-        std::string str;
-        read(str, verifyTag);
-        e = get_enum_value(e, str);
+        const BINARY_TAG tag = verifyTag ? readTag() : m_elementTag;
+        if (tag == BINARY_TAG_ENUM) {
+            e = get_enum_value(e, readSignedVarInt32());
+        } else {
+            if (tag != BINARY_TAG_STRING) {
+                throw UnexpectedTypeException(
+                        toString("BinaryReader::read(enum): Unexpected tag ").append(toString(tag)));
+            }
+            std::string str;
+            read(str, false);
+            e = get_enum_value(e, str);
+        }
     }
 
     /**
@@ -448,10 +536,33 @@ private:
     }
 
     /**
-     * Internal method for reading a type tag in a data stream.
+     * Internal method for reading and verifying the type tag of the elements of
+     * a list or map in a data stream. Enum elements may be tagged either as
+     * strings or as enums.
+     */
+    template<typename T>
+    BINARY_TAG readElementTag(const T * evidence) {
+        const BINARY_TAG expTag = BINARY_TAG_OF(evidence);
+        const BINARY_TAG tag = readTag();
+        if (tag != expTag && !(tag == BINARY_TAG_ENUM && expTag == BINARY_TAG_STRING && __is_enum(T))) {
+            throw UnexpectedTypeException(
+                    toString("BinaryReader::readElementTag: Unexpected tag ").append(toString(expTag)).append(
+                            " but got ").append(toString(tag)));
+        }
+        return tag;
+    }
+
+    /**
+     * Internal method for reading a type tag in a data stream. The type tag of
+     * a field with a compact field header is read together with the header,
+     * and returned here.
      */
     BINARY_TAG readTag() {
-        return (BINARY_TAG) readByte();
+        if (m_fieldTag < 0)
+            return (BINARY_TAG) readByte();
+        const BINARY_TAG tag = (BINARY_TAG) m_fieldTag;
+        m_fieldTag = -1;
+        return tag;
     }
 
     /**
@@ -461,6 +572,18 @@ private:
         return read16();
     }
 
+    /**
+     * Internal method for reading a compact field header in a data stream (see
+     * BinaryWriter::setCompactFieldHeaders(..)). Returns the ordinal of the field,
+     * given the ordinal of the previous field of the same object (or -1). The
+     * type tag of the field is returned by the next call to readTag().
+     */
+    int readCompactFieldHeader(const int prevOrdinal) {
+        const int header = readSize();
+        m_fieldTag = header & 0x0F;
+        return prevOrdinal + (header >> 4) + 1;
+    }
+
     /**
      * Internal method for reading a signed 32 bit varint in a data stream.
      */
@@ -497,6 +620,9 @@ private:
     MGenStreamType& m_inputStream;
     const ClassRegistryType& m_classRegistry;
     const bool m_extraTypeChecking;
+    bool m_compactFields;
+    int m_fieldTag;
+    BINARY_TAG m_elementTag;
 
 };
 
@@ -24,9 +24,17 @@ enum BINARY_TAG {
     BINARY_TAG_ARRAY = 8,
     BINARY_TAG_LIST = 8,
     BINARY_TAG_MAP = 9,
-    BINARY_TAG_CUSTOM = 10
+    BINARY_TAG_CUSTOM = 10,
+    BINARY_TAG_ENUM = 11
 };
 
+/**
+ * The header written ahead of the regular header of MGen objects written
+ * with compact field headers (see BinaryWriter::setCompactFieldHeaders(..)).
+ * It reads as a header with zero type ids, which is never written otherwise.
+ */
+const int BINARY_COMPACT_FIELDS_HEADER = 0x01;
+
 /**
  * A 'BINARY_TAG_OF(..)' function exists in the mgen namespace for
  * each supported data type, for the binary writers and readers to use.  
@@ -156,6 +164,7 @@ inline std::string get_enum_name(const BINARY_TAG e) {
     MGEN_CASE_ENUM_STR(BINARY_TAG_LIST)
     MGEN_CASE_ENUM_STR(BINARY_TAG_MAP)
     MGEN_CASE_ENUM_STR(BINARY_TAG_CUSTOM)
+    MGEN_CASE_ENUM_STR(BINARY_TAG_ENUM)
     default:
         return std::string("BINARY_TAG_UNKNOWN: ").append(toString(int(e)));
     }
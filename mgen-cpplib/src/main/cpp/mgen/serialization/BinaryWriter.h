@@ -34,6 +34,12 @@ public:
      */
     static const bool default_compact = false;
 
+    /**
+     * By default, fields are written with 16 bit field ids. See
+     * 'setCompactFieldHeaders(..)'.
+     */
+    static const bool default_compact_field_headers = false;
+
     /**
      * Constructs a BinaryWriter around a provided data output stream and class registry.
      * A third optional parameter can be used to specify whether this writer should use 
@@ -44,6 +50,9 @@ public:
             const ClassRegistryType& classRegistry, 
             const bool compact = default_compact) :
                     m_compact(compact),
+                    m_compactFieldHeaders(default_compact_field_headers),
+                    m_fields(0),
+                    m_fieldOrdinal(-1),
                     m_expectType(-1),
                     m_outputStream(outputStream),
                     m_classRegistry(classRegistry) {
@@ -59,6 +68,32 @@ public:
         writePoly(object, true);
     }
 
+    /**
+     * Configures whether this writer should write compact field headers. Instead
+     * of a 16 bit field id followed by a type tag, each field header is then a
+     * single varint: ((delta - 1) << 4) | tag, where delta is the distance between
+     * the ordinal (the index in _field_metadatas()) of the field and that of the
+     * previous field written for the same object. Headers of consecutive fields
+     * thus take a single byte. Objects with compact field headers are flagged in
+     * their object header, so streams can mix both kinds of objects.
+     *
+     * Unlike field ids, field ordinals change when fields are added to or removed
+     * from a class (or its super classes), so writers and readers must share the
+     * same field definitions. The default setting is false.
+     */
+    BinaryWriter& setCompactFieldHeaders(const bool compactFieldHeaders) {
+        m_compactFieldHeaders = compactFieldHeaders;
+        return *this;
+    }
+
+    /**
+     * Checks if this writer writes compact field headers. See
+     * 'setCompactFieldHeaders(..)'.
+     */
+    bool compactFieldHeaders() const {
+        return m_compactFieldHeaders;
+    }
+
     /**
      * When this writer is visiting an object it should write, this method will be called
      * before starting to visit any fields. The purpose is mainly to let this writer know
@@ -69,6 +104,12 @@ public:
 
         missingfields::ensureNoMissingFields(object);
 
+        if (m_compactFieldHeaders) {
+            writeSize(BINARY_COMPACT_FIELDS_HEADER);
+            m_fields = &MGenType::_field_metadatas();
+            m_fieldOrdinal = -1;
+        }
+
         if (shouldOmitIds(MGenType::_type_id)) {
             writeSize((nFieldsToVisit << 2) | 0x02);
         } else {
@@ -87,8 +128,17 @@ public:
      */
     template<typename T>
     void visit(const T& v, const Field& field) {
-        writeFieldStart(field.id(), BINARY_TAG_OF(&v));
-        write(v, false);
+        if (m_compactFieldHeaders) {
+            writeCompactFieldHeader(field.id(), BINARY_TAG_OF(&v));
+            const std::vector<Field> * fields = m_fields;
+            const int ordinal = m_fieldOrdinal;
+            write(v, false);
+            m_fields = fields;
+            m_fieldOrdinal = ordinal;
+        } else {
+            writeFieldStart(field.id(), BINARY_TAG_OF(&v));
+            write(v, false);
+        }
     }
     
     /**
@@ -256,6 +306,24 @@ private:
         writeTypeTag(tag);
     }
 
+    /**
+     * Internal method for writing a compact field header. Fields are written in
+     * ordinal order, so the field is searched for after the previous field written.
+     */
+    void writeCompactFieldHeader(const short fieldId, const char tag) {
+        const std::vector<Field>& fields = *m_fields;
+        for (int i = m_fieldOrdinal + 1; i < int(fields.size()); i++) {
+            if (fields[i].id() == fieldId) {
+                writeSize(((i - m_fieldOrdinal - 1) << 4) | tag);
+                m_fieldOrdinal = i;
+                return;
+            }
+        }
+        throw SerializationException(
+                toString("BinaryWriter::writeCompactFieldHeader(..): Field ").append(toString(fieldId)).append(
+                        " not found after field ordinal ").append(toString(m_fieldOrdinal)));
+    }
+
     /**
      * Internal method for writing type tag if a given condition is true.
      */
@@ -353,6 +421,9 @@ private:
     }
 
     const bool m_compact;
+    bool m_compactFieldHeaders;
+    const std::vector<Field> * m_fields;
+    int m_fieldOrdinal;
     long long m_expectType;
     MGenStreamType& m_outputStream;
     const ClassRegistryType& m_classRegistry;
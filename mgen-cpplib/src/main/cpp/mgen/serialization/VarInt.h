@@ -75,6 +75,11 @@ inline int readSigned32(Stream& in);
 template<typename Stream>
 inline unsigned int readUnsigned32(Stream& in);
 
+/**
+ * Calculates the number of bytes of an unsigned 32 bit varint.
+ */
+inline int sizeOfUnsigned32(const unsigned int value);
+
 
 //////////////////////////////////////////////////////////////////////
 //////////////////////////////////////////////////////////////////////
@@ -163,6 +168,18 @@ inline unsigned int readUnsigned32(Stream& in) {
     return value | (b << i);
 }
 
+inline int sizeOfUnsigned32(const unsigned int value) {
+    if ((value & 0xFFFFFF80) == 0)
+        return 1;
+    if ((value & 0xFFFFC000) == 0)
+        return 2;
+    if ((value & 0xFFE00000) == 0)
+        return 3;
+    if ((value & 0xF0000000) == 0)
+        return 4;
+    return 5;
+}
+
 }
 } /* namespace mgen */
 
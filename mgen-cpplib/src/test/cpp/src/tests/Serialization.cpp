@@ -8,6 +8,7 @@
 #include "TestBase.h"
 
 #include "gameworld/types/ClassRegistry.h"
+#include "trans/testmodel/ClassRegistry.h"
 #include "mgen/serialization/BinaryWriter.h"
 #include "mgen/serialization/BinaryReader.h"
 #include "mgen/serialization/VectorInputStream.h"
@@ -215,5 +216,135 @@ END_TEST
 
 /////////////////////////////////////////////////////////////////////
 
+BEGIN_TEST("Compact field headers")
+
+    SerializationTestData testData;
+    ClassRegistry& registry = testData.registry;
+    const ClassRegistry::EntryMap& entries = registry.entries();
+
+    testData.binaryWriter.setCompactFieldHeaders(true);
+    testData.binaryWriterCompact.setCompactFieldHeaders(true);
+
+    FOREACH_SERIALIZER(canWriteRead);
+
+    for (ClassRegistry::EntryMap::const_iterator it = entries.begin(); it != entries.end(); it++) {
+        mgen::MGenBase * object = it->second.newInstance();
+        object->_setAllFieldsSet(true, mgen::DEEP);
+
+        testData.binaryWriter.setCompactFieldHeaders(false);
+        testData.binaryWriter.writeObject(*object);
+        const std::size_t regularSize = testData.buffer.size();
+        testData.reset();
+
+        testData.binaryWriter.setCompactFieldHeaders(true);
+        testData.binaryWriter.writeObject(*object);
+        const std::size_t compactSize = testData.buffer.size();
+
+        mgen::MGenBase * objectBack = testData.binaryReader.readObject();
+        ASSERT(objectBack != 0);
+        ASSERT(object->_equals(*objectBack));
+        ASSERT(compactSize <= regularSize);
+
+        delete objectBack;
+        delete object;
+        testData.reset();
+    }
+
+END_TEST
+
+/////////////////////////////////////////////////////////////////////
+
+/**
+ * Writes an object the way the Java BinaryWriter does with
+ * setFrameObjects(true): prefixed by a frame header holding its length.
+ */
+static void writeFramed(
+        SerializationTestData& testData,
+        const mgen::MGenBase& object,
+        const bool compactFieldHeaders) {
+    std::vector<char> objectBuffer;
+    SerializationTestData::OS objectOut(objectBuffer);
+    mgen::BinaryWriter<SerializationTestData::OS, ClassRegistry> writer(objectOut, testData.registry);
+    writer.setCompactFieldHeaders(compactFieldHeaders);
+    writer.writeObject(object);
+    // The type tag (first byte) goes ahead of the frame header
+    const int objectSize = int(objectBuffer.size()) - 1;
+    testData.out.write(&objectBuffer[0], 1);
+    mgen::varint::writeUnsigned32((unsigned int) (objectSize << 2) | 0x03, testData.out);
+    testData.out.write(&objectBuffer[1], objectSize);
+}
+
+BEGIN_TEST("Frames")
+
+    SerializationTestData testData;
+    ClassRegistry& registry = testData.registry;
+    const ClassRegistry::EntryMap& entries = registry.entries();
+
+    trans::testmodel::ClassRegistry otherRegistry;
+    mgen::BinaryReader<SerializationTestData::IS, trans::testmodel::ClassRegistry> otherReader(
+            testData.in,
+            otherRegistry);
+
+    for (int compactFieldHeaders = 0; compactFieldHeaders < 2; compactFieldHeaders++) {
+        for (ClassRegistry::EntryMap::const_iterator it = entries.begin(); it != entries.end(); it++) {
+            mgen::MGenBase * object = it->second.newInstance();
+            object->_setAllFieldsSet(true, mgen::DEEP);
+
+            // Read back
+            writeFramed(testData, *object, compactFieldHeaders != 0);
+            mgen::MGenBase * objectBack = testData.binaryReader.readObject();
+            ASSERT(objectBack != 0);
+            ASSERT(object->_equals(*objectBack));
+            delete objectBack;
+
+            // Skipped past as an unknown type
+            writeFramed(testData, *object, compactFieldHeaders != 0);
+            testData.binaryWriter.writeObject(*object);
+            ASSERT(otherReader.readObject() == 0);
+            objectBack = testData.binaryReader.readObject();
+            ASSERT(objectBack != 0);
+            ASSERT(object->_equals(*objectBack));
+            delete objectBack;
+
+            delete object;
+            testData.reset();
+        }
+    }
+
+END_TEST
+
+/////////////////////////////////////////////////////////////////////
+
+BEGIN_TEST("Enums as ints")
+
+    SerializationTestData testData;
+
+    // Java writers may write enums by their integer values
+    // (BINARY_TAG_ENUM). Patch a written enum name to look like that.
+    const std::string name("pretty");
+    const int values[] = { kind_ugly, kind_pretty, 99 };
+    const kind expected[] = { kind_ugly, kind_pretty, kind_UNKNOWN };
+
+    for (int i = 0; i < 3; i++) {
+
+        VectorR3 v;
+        v.setKind(kind_pretty);
+        testData.binaryWriter.writeObject(v);
+
+        testData.buffer.resize(testData.buffer.size() - name.size() - 2);
+        testData.buffer.push_back(mgen::BINARY_TAG_ENUM);
+        mgen::varint::writeSigned32(values[i], testData.out);
+
+        VectorR3 vBack = testData.binaryReader.readStatic<VectorR3>();
+        ASSERT(vBack.hasKind());
+        ASSERT(vBack.getKind() == expected[i]);
+
+        testData.reset();
+    }
+
+END_TEST
+
+/////////////////////////////////////////////////////////////////////
+
 END_TEST_GROUP
 
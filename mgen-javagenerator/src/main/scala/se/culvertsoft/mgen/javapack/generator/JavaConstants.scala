@@ -27,6 +27,13 @@ object JavaConstants {
   val mapMakerClsString = s"MapMaker"
 
   val listMakerClsStringQ = s"${utilPkg}.${listMakerClsString}"
+  val intListClsStringQ = s"${utilPkg}.IntList"
+  val longListClsStringQ = s"${utilPkg}.LongList"
+  val doubleListClsStringQ = s"${utilPkg}.DoubleList"
+  val intObjMapClsStringQ = s"${utilPkg}.IntObjMap"
+  val longObjMapClsStringQ = s"${utilPkg}.LongObjMap"
+  val primitiveListTypeClsStringQ = s"${metadataPkg}.PrimitiveListType"
+  val primitiveMapTypeClsStringQ = s"${metadataPkg}.PrimitiveMapType"
   val mapMakerClsStringQ = s"${utilPkg}.${mapMakerClsString}"
   val validatorClsStringQ = s"${utilPkg}.${validatorClsString}"
   val setFieldSetClsStringQ = s"${utilPkg}.${setFieldSetClsString}"
@@ -37,6 +44,7 @@ object JavaConstants {
   val stringifyerClsQ = s"${utilPkg}.${stringifyerCls}"
 
   val mgenBaseClsString = s"${javapackPkg}.classes.MGenBase"
+  val parallelDispatcherClsString = s"${javapackPkg}.classes.ParallelDispatcher"
   val mgenEnumClsString = s"${javapackPkg}.classes.MGenEnum"
   val clsRegistryClsString = s"${javapackPkg}.classes.ClassRegistryBase"
   val clsRegistryEntryClsString = s"ClassRegistryEntry"
@@ -56,6 +64,10 @@ object JavaConstants {
   val fieldIfcClsStringQ = s"${modelPkg}.${fieldIfcClsString}"
   val readerClsStringQ = s"${javapackPkg}.serialization.${readerClsString}"
   val fieldVisitorClsStringQ = s"${javapackPkg}.serialization.${fieldVisitorClsString}"
+  val binaryWriterClsStringQ = s"${javapackPkg}.serialization.BinaryWriter"
+  val binaryReaderClsStringQ = s"${javapackPkg}.serialization.BinaryReader"
+  val builtInReaderClsStringQ = s"${javapackPkg}.serialization.BuiltInReader"
+  val binaryViewClsStringQ = s"${javapackPkg}.serialization.BinaryView"
 
   val fieldSetDepthClsString = s"FieldSetDepth"
   val fieldVisitSelectionClsString = s"FieldVisitSelection"
@@ -12,7 +12,8 @@ object JavaConstruction {
 
   def defaultConstruct(
     typ: Type,
-    isGenericArg: Boolean = false)(implicit currentModule: Module): String = {
+    isGenericArg: Boolean = false,
+    primitiveCollections: Boolean = false)(implicit currentModule: Module): String = {
 
     typ.typeEnum() match {
       case TypeEnum.BOOL => "false"
@@ -23,11 +24,11 @@ object JavaConstruction {
       case TypeEnum.FLOAT32 => "0.0f"
       case TypeEnum.FLOAT64 => "0.0"
       case TypeEnum.STRING => "\"\""
-      case TypeEnum.MAP => s"new ${getTypeName(typ, isGenericArg)}()"
-      case TypeEnum.LIST => s"new ${getTypeName(typ, isGenericArg)}()"
+      case TypeEnum.MAP => s"new ${getTypeName(typ, isGenericArg, false, primitiveCollections)}()"
+      case TypeEnum.LIST => s"new ${getTypeName(typ, isGenericArg, false, primitiveCollections)}()"
       case TypeEnum.ARRAY =>
         val t = typ.asInstanceOf[ArrayType]
-        s"new ${getTypeName(t.elementType(), false, true)}[0]"
+        s"new ${getTypeName(t.elementType(), false, true, primitiveCollections)}[0]"
       case TypeEnum.ENUM => s"${getTypeName(typ)}.UNKNOWN"
       case TypeEnum.CLASS => s"new ${getTypeName(typ, isGenericArg)}()"
       case x => throw new GenerationException(s"Don't know how to handle type $x")
@@ -36,8 +37,9 @@ object JavaConstruction {
   }
 
   def defaultConstruct(
-    field: Field)(implicit currentModule: Module): String = {
-    defaultConstruct(field.typ())
+    field: Field,
+    primitiveCollections: Boolean)(implicit currentModule: Module): String = {
+    defaultConstruct(field.typ(), false, primitiveCollections)
   }
 
   def defaultConstructNull(
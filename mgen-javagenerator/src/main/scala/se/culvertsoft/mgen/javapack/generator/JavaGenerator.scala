@@ -1,6 +1,7 @@
 package se.culvertsoft.mgen.javapack.generator
 
 import java.io.File
+import scala.collection.JavaConversions.asScalaBuffer
 import scala.collection.JavaConversions.seqAsJavaList
 import se.culvertsoft.mgen.api.model.ClassType
 import se.culvertsoft.mgen.api.model.CustomCodeSection
@@ -18,11 +19,13 @@ import se.culvertsoft.mgen.compiler.util.SettingsUtils.RichSettings
 import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
 import se.culvertsoft.mgen.javapack.generator.impl.MkAcceptVisitor
 import se.culvertsoft.mgen.javapack.generator.impl.MkAllMembersCtor
+import se.culvertsoft.mgen.javapack.generator.impl.MkBinaryCodec
 import se.culvertsoft.mgen.javapack.generator.impl.MkClassEnd
 import se.culvertsoft.mgen.javapack.generator.impl.MkClassRegistry
 import se.culvertsoft.mgen.javapack.generator.impl.MkClassStart
 import se.culvertsoft.mgen.javapack.generator.impl.MkDeepCopy
 import se.culvertsoft.mgen.javapack.generator.impl.MkDefaultCtor
+import se.culvertsoft.mgen.javapack.generator.impl.MkDirtyTracking
 import se.culvertsoft.mgen.javapack.generator.impl.MkDispatcher
 import se.culvertsoft.mgen.javapack.generator.impl.MkEnum
 import se.culvertsoft.mgen.javapack.generator.impl.MkEquals
@@ -43,11 +46,13 @@ import se.culvertsoft.mgen.javapack.generator.impl.MkNFieldsSet
 import se.culvertsoft.mgen.javapack.generator.impl.MkPackage
 import se.culvertsoft.mgen.javapack.generator.impl.MkReadField
 import se.culvertsoft.mgen.javapack.generator.impl.MkRequiredMembersCtor
+import se.culvertsoft.mgen.javapack.generator.impl.MkReset
 import se.culvertsoft.mgen.javapack.generator.impl.MkSetters
 import se.culvertsoft.mgen.javapack.generator.impl.MkToString
 import se.culvertsoft.mgen.javapack.generator.impl.MkTypeIdFields
 import se.culvertsoft.mgen.javapack.generator.impl.MkTypeIdMethods
 import se.culvertsoft.mgen.javapack.generator.impl.MkValidate
+import se.culvertsoft.mgen.javapack.generator.impl.MkView
 import se.culvertsoft.mgen.api.model.StringType
 
 object JavaGenerator {
@@ -88,6 +93,15 @@ object JavaGenerator {
     }
   }
 
+  // The index of each class among all classes of the root project and its
+  // dependencies - the same order that MkClassRegistry lists classes in
+  def typeOrdinals(t: ClassType): Map[ClassType, Int] = {
+    var project = t.module.parent
+    while (!project.isRoot)
+      project = project.parent
+    project.allModulesRecursively().flatMap(_.classes).zipWithIndex.toMap
+  }
+
   def mkCustomCodeSection(name: String): CustomCodeSection = {
     def mkKey(ending: String) = s"/* ${name}_${ending} */"
     new CustomCodeSection(mkKey("begin"), mkKey("end"))
@@ -114,6 +128,15 @@ object JavaGenerator {
 class JavaGenerator extends BuiltInStaticLangGenerator {
   import JavaGenerator.getCustomCodeSections
 
+  // Built once per root project, as classes are generated in parallel
+  private var typeOrdinals = Map.empty[ClassType, Int]
+
+  private def typeOrdinal(t: ClassType): Int = synchronized {
+    if (!typeOrdinals.contains(t))
+      typeOrdinals = JavaGenerator.typeOrdinals(t)
+    typeOrdinals(t)
+  }
+
   override def generateMetaSources(
     folder: String,
     packagePath: String,
@@ -152,11 +175,21 @@ class JavaGenerator extends BuiltInStaticLangGenerator {
     val folder = getModuleFolderPath(module, settings)
     val fileName = t.shortName + ".java"
     val generateCustomCodeSections = settings.getBool("generate_custom_code_sections").getOrElse(true)
-    val sourceCode = generateClassSourceCode(t, generateCustomCodeSections)
-    List(new GeneratedSourceFile(
+    val generateBinaryCodecs = settings.getBool("generate_binary_codecs").getOrElse(false)
+    val generatePrimitiveCollections = settings.getBool("primitive_collections").getOrElse(false)
+    val generateBinaryViews = settings.getBool("generate_binary_views").getOrElse(false)
+    val generateDirtyTracking = settings.getBool("generate_dirty_tracking").getOrElse(false)
+    val sourceCode = generateClassSourceCode(t, typeOrdinal(t), generateCustomCodeSections, generateBinaryCodecs, generatePrimitiveCollections, generateDirtyTracking)
+    val classSource = new GeneratedSourceFile(
       folder + File.separator + fileName,
       sourceCode,
-      getCustomCodeSections(generateCustomCodeSections)))
+      getCustomCodeSections(generateCustomCodeSections))
+    if (generateBinaryViews) {
+      val viewSourceCode = generateViewSourceCode(t, generatePrimitiveCollections)
+      List(classSource, new GeneratedSourceFile(folder + File.separator + t.shortName + "View.java", viewSourceCode))
+    } else {
+      List(classSource)
+    }
   }
 
   override def generateEnumSources(module: Module, t: EnumType, settings: java.util.Map[String, String]): java.util.Collection[GeneratedSourceFile] = {
@@ -166,32 +199,43 @@ class JavaGenerator extends BuiltInStaticLangGenerator {
     List(new GeneratedSourceFile(folder + File.separator + fileName, sourceCode))
   }
 
-  def generateClassSourceCode(t: ClassType, genCustomCodeSections: Boolean): String = {
+  def generateClassSourceCode(
+    t: ClassType,
+    typeOrdinal: Int,
+    genCustomCodeSections: Boolean,
+    genBinaryCodecs: Boolean = false,
+    genPrimitiveCollections: Boolean = false,
+    genDirtyTracking: Boolean = false): String = {
     implicit val txtBuffer = SourceCodeBuffer.getThreadLocal()
     txtBuffer.clear()
-    mkPublicSection(t, genCustomCodeSections)
-    mkMetadataMethodsSection(t)
-    mkMetadataFieldsSection(t)
+    mkPublicSection(t, genCustomCodeSections, genPrimitiveCollections, genDirtyTracking)
+    mkMetadataMethodsSection(t, genBinaryCodecs, genPrimitiveCollections, genDirtyTracking)
+    mkMetadataFieldsSection(t, typeOrdinal, genPrimitiveCollections)
     txtBuffer.toString()
   }
 
+  def generateViewSourceCode(t: ClassType, genPrimitiveCollections: Boolean = false): String = {
+    implicit val txtBuffer = SourceCodeBuffer.getThreadLocal()
+    MkView(t, genPrimitiveCollections)
+  }
+
   def generateEnumSourceCode(t: EnumType): String = {   
   implicit val txtBuffer = SourceCodeBuffer.getThreadLocal()
     MkEnum(t, t.module.path)
   }
 
-  def mkPublicSection(t: ClassType, genCustomCodeSections: Boolean)(implicit txtBuf: SourceCodeBuffer) {
+  def mkPublicSection(t: ClassType, genCustomCodeSections: Boolean, genPrimitiveCollections: Boolean, genDirtyTracking: Boolean)(implicit txtBuf: SourceCodeBuffer) {
     val currentModule = t.module()
     MkFancyHeader(t)
     MkPackage(currentModule)
     MkImports(t, currentModule, genCustomCodeSections)
     MkClassStart(t, currentModule, genCustomCodeSections)
-    MkMembers(t, currentModule)
-    MkDefaultCtor(t, currentModule)
-    MkRequiredMembersCtor(t, currentModule)
-    MkAllMembersCtor(t, currentModule)
-    MkGetters(t, currentModule)
-    MkSetters(t, currentModule)
+    MkMembers(t, currentModule, genPrimitiveCollections, genDirtyTracking)
+    MkDefaultCtor(t, currentModule, genPrimitiveCollections)
+    MkRequiredMembersCtor(t, currentModule, genPrimitiveCollections)
+    MkAllMembersCtor(t, currentModule, genPrimitiveCollections)
+    MkGetters(t, currentModule, genPrimitiveCollections)
+    MkSetters(t, currentModule, genPrimitiveCollections, genDirtyTracking)
 
     if (genCustomCodeSections) {
       ln(1, JavaGenerator.custom_methods_section.toString)
@@ -204,25 +248,30 @@ class JavaGenerator extends BuiltInStaticLangGenerator {
     MkDeepCopy(t, currentModule)
   }
 
-  def mkMetadataMethodsSection(t: ClassType)(implicit txtBuf: SourceCodeBuffer) {
+  def mkMetadataMethodsSection(t: ClassType, genBinaryCodecs: Boolean, genPrimitiveCollections: Boolean, genDirtyTracking: Boolean)(implicit txtBuf: SourceCodeBuffer) {
     val currentModule = t.module()
     MkMetadataMethodsComment(t)
     MkTypeIdMethods(t, currentModule)
-    MkAcceptVisitor(t, currentModule)
-    MkReadField(t, currentModule)
+    MkAcceptVisitor(t, currentModule, genDirtyTracking)
+    MkReadField(t, currentModule, genPrimitiveCollections)
+    if (genBinaryCodecs)
+      MkBinaryCodec(t, currentModule, genPrimitiveCollections)
     MkGetFields(t, currentModule)
     MkIsFieldSet(t, currentModule)
-    MkMarkFieldsSet(t, currentModule)
+    if (genDirtyTracking)
+      MkDirtyTracking(t, currentModule, genPrimitiveCollections)
+    MkMarkFieldsSet(t, currentModule, genPrimitiveCollections, genDirtyTracking)
+    MkReset(t, currentModule, genPrimitiveCollections, genDirtyTracking)
     MkValidate(t, currentModule)
     MkNFieldsSet(t, currentModule)
     MkFieldById(t, currentModule)
   }
 
-  def mkMetadataFieldsSection(t: ClassType)(implicit txtBuf: SourceCodeBuffer) {
+  def mkMetadataFieldsSection(t: ClassType, typeOrdinal: Int, genPrimitiveCollections: Boolean)(implicit txtBuf: SourceCodeBuffer) {
     val currentModule = t.module()
     MkMetadataComment(t)
-    MkTypeIdFields(t, currentModule)
-    MkFieldMetaData(t, currentModule)
+    MkTypeIdFields(t, currentModule, typeOrdinal)
+    MkFieldMetaData(t, currentModule, genPrimitiveCollections)
     MkClassEnd()
   }
 
@@ -13,10 +13,42 @@ import se.culvertsoft.mgen.api.model.TypeEnum
 
 object JavaTypeNames {
 
+  /**
+   * If list[int32], list[int64], list[float64], map[int32, X] and
+   * map[int64, X] are represented by the primitive-backed collections of the
+   * java runtime library. The primitiveCollections arguments below are the
+   * primitive_collections generator setting.
+   */
+  def isPrimitiveList(t: ListType, primitiveCollections: Boolean): Boolean = {
+    primitiveCollections && primitiveListClsName(t).nonEmpty
+  }
+
+  def isPrimitiveMap(t: MapType, primitiveCollections: Boolean): Boolean = {
+    primitiveCollections && primitiveMapClsName(t).nonEmpty
+  }
+
+  private def primitiveListClsName(t: ListType): Option[String] = {
+    t.elementType().typeEnum() match {
+      case TypeEnum.INT32 => Some(JavaConstants.intListClsStringQ)
+      case TypeEnum.INT64 => Some(JavaConstants.longListClsStringQ)
+      case TypeEnum.FLOAT64 => Some(JavaConstants.doubleListClsStringQ)
+      case _ => None
+    }
+  }
+
+  private def primitiveMapClsName(t: MapType): Option[String] = {
+    t.keyType().typeEnum() match {
+      case TypeEnum.INT32 => Some(JavaConstants.intObjMapClsStringQ)
+      case TypeEnum.INT64 => Some(JavaConstants.longObjMapClsStringQ)
+      case _ => None
+    }
+  }
+
   def getTypeName(
     typ: Type,
     isGenericArg: Boolean = false,
-    isArrayCtor: Boolean = false)(implicit currentModule: Module): String = {
+    isArrayCtor: Boolean = false,
+    primitiveCollections: Boolean = false)(implicit currentModule: Module): String = {
 
     if (typ == null)
       return JavaConstants.mgenBaseClsString
@@ -39,16 +71,22 @@ object JavaTypeNames {
       case TypeEnum.STRING => "String"
       case TypeEnum.MAP =>
         val t = typ.asInstanceOf[MapType]
-        s"java.util.HashMap<${getTypeName(t.keyType(), true)}, ${getTypeName(t.valueType(), true)}>"
+        if (isPrimitiveMap(t, primitiveCollections))
+          s"${primitiveMapClsName(t).get}<${getTypeName(t.valueType(), true, false, primitiveCollections)}>"
+        else
+          s"java.util.HashMap<${getTypeName(t.keyType(), true)}, ${getTypeName(t.valueType(), true, false, primitiveCollections)}>"
       case TypeEnum.LIST =>
         val t = typ.asInstanceOf[ListType]
-        s"java.util.ArrayList<${getTypeName(t.elementType(), true)}>"
+        if (isPrimitiveList(t, primitiveCollections))
+          primitiveListClsName(t).get
+        else
+          s"java.util.ArrayList<${getTypeName(t.elementType(), true, false, primitiveCollections)}>"
       case TypeEnum.ARRAY =>
         val t = typ.asInstanceOf[ArrayType]
         if (isArrayCtor)
-          s"${getTypeName(t.elementType(), false)}[0]"
+          s"${getTypeName(t.elementType(), false, false, primitiveCollections)}[0]"
         else
-          s"${getTypeName(t.elementType(), false)}[]"
+          s"${getTypeName(t.elementType(), false, false, primitiveCollections)}[]"
       case TypeEnum.CLASS =>
         val t = typ.asInstanceOf[ClassType]
         if (t.module() == currentModule) {
@@ -62,8 +100,8 @@ object JavaTypeNames {
 
   }
 
-  def fieldTypeName(field: Field)(implicit currentModule: Module): String = {
-    getTypeName(field.typ())
+  def fieldTypeName(field: Field, primitiveCollections: Boolean)(implicit currentModule: Module): String = {
+    getTypeName(field.typ(), false, false, primitiveCollections)
   }
 
 }
\ No newline at end of file
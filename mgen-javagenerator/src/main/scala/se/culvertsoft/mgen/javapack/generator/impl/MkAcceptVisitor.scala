@@ -13,7 +13,7 @@ import se.culvertsoft.mgen.javapack.generator.JavaConstants.fieldVisitorClsStrin
 
 object MkAcceptVisitor {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, dirtyTracking: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -43,6 +43,17 @@ object MkAcceptVisitor {
       ln(4, s"break;")
       ln(3, s"}")
     }
+    if (dirtyTracking) {
+      ln(3, s"case DIRTY: {")
+      ln(4, s"visitor.beginVisit(this, _nFieldsDirty());")
+      for (field <- nonTransientFields) {
+        ln(4, s"if (_isFieldDirty(${fieldMetadata(field)}, FieldSetDepth.DEEP))")
+        ln(5, s"visitor.visit(${get(field)}, ${fieldMetadata(field)});")
+      }
+      ln(4, s"visitor.endVisit();")
+      ln(4, s"break;")
+      ln(3, s"}")
+    }
     ln(3, s"default /* case ALL_SET_NONTRANSIENT */ : {")
     ln(4, s"visitor.beginVisit(this, _nFieldsSet(FieldSetDepth.SHALLOW, false));")
     for (field <- nonTransientFields) {
@@ -12,7 +12,7 @@ import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.fieldTypeName
 
 object MkAllMembersCtor {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -22,7 +22,7 @@ object MkAllMembersCtor {
       for (i <- 0 until allFields.size()) {
         val field = allFields.get(i)
         val isLastField = i + 1 == allFields.size()
-        txtBuffer.tabs(if (i > 0) 4 else 0).text(s"final ${fieldTypeName(field)} ${field.name()}")
+        txtBuffer.tabs(if (i > 0) 4 else 0).text(s"final ${fieldTypeName(field, primitiveCollections)} ${field.name()}")
         if (!isLastField) {
           txtBuffer.comma().endl()
         }
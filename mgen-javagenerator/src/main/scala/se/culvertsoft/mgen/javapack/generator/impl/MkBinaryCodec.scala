@@ -0,0 +1,163 @@
+package se.culvertsoft.mgen.javapack.generator.impl
+
+import scala.collection.JavaConversions.asScalaBuffer
+
+import Alias.fieldMetadata
+import Alias.get
+import Alias.isFieldSet
+import Alias.set
+import se.culvertsoft.mgen.api.exceptions.GenerationException
+import se.culvertsoft.mgen.api.model.BinaryTypeTag
+import se.culvertsoft.mgen.api.model.ClassType
+import se.culvertsoft.mgen.api.model.Field
+import se.culvertsoft.mgen.api.model.ListType
+import se.culvertsoft.mgen.api.model.MapType
+import se.culvertsoft.mgen.api.model.Module
+import se.culvertsoft.mgen.api.model.TypeEnum
+import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.ln
+import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.binaryReaderClsStringQ
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.binaryWriterClsStringQ
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.isPrimitiveList
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.isPrimitiveMap
+
+/**
+ * Generates the specialized _writeBinary/_readBinary methods of a class (see
+ * the generate_binary_codecs generator setting). Field headers (16 bit field
+ * id + binary type tag) are computed here, so the generated code writes and
+ * matches them as int constants.
+ */
+object MkBinaryCodec {
+
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
+
+    implicit val m = module
+
+    val allFields = t.fieldsInclSuper()
+    val nonTransientFields = allFields.filterNot(_.isTransient)
+    val needsSupress = allFields.map(_.typ().typeEnum()).exists(e => e == TypeEnum.LIST || e == TypeEnum.MAP)
+
+    if (needsSupress)
+      ln(1, "@SuppressWarnings({ \"unchecked\", \"rawtypes\" })")
+    ln(1, "@Override")
+    ln(1, s"public boolean _writeBinary(final ${binaryWriterClsStringQ} writer) throws java.io.IOException {")
+    mkSubclassGuard(t)
+    ln(2, s"writer.beginVisit(this, _nFieldsSet(FieldSetDepth.SHALLOW, false));")
+    for (field <- nonTransientFields) {
+      ln(2, s"if (${isFieldSet(field, "FieldSetDepth.SHALLOW")}) {")
+      mkWriteField(field, primitiveCollections)
+      ln(2, s"}")
+    }
+    ln(2, s"writer.endVisit();")
+    ln(2, s"return true;")
+    ln(1, "}").endl()
+
+    if (needsSupress)
+      ln(1, "@SuppressWarnings(\"unchecked\")")
+    ln(1, "@Override")
+    ln(1, s"public boolean _readBinary(final ${binaryReaderClsStringQ} reader, final int nFields) throws java.io.IOException {")
+    mkSubclassGuard(t)
+    ln(2, s"for (int i = 0; i < nFields; i++) {")
+    ln(3, s"final int fieldHeader = reader.readFieldHeader();")
+    ln(3, s"switch(fieldHeader) {")
+    for (field <- allFields) {
+      for (tag <- readTags(field))
+        ln(4, s"case (${header(field, tag)}): // ${field.name}")
+      ln(5, set(field, s"(${getTypeName(field.typ(), false, false, primitiveCollections)})reader.${mkReadValueCall(field)}") + ";")
+      ln(5, "break;")
+    }
+    ln(4, s"default:")
+    ln(5, s"reader.readUnmatchedField(this, fieldHeader);")
+    ln(5, s"break;")
+    ln(3, s"}")
+    ln(2, s"}")
+    ln(2, s"return true;")
+    ln(1, "}").endl()
+
+  }
+
+  /**
+   * Subclasses generated without binary codecs inherit these methods, so
+   * they must fall back to the generic (visitor based) code path.
+   */
+  def mkSubclassGuard(t: ClassType)(implicit txtBuffer: SourceCodeBuffer) {
+    ln(2, s"if (getClass() != ${t.shortName}.class)")
+    ln(3, s"return false;")
+  }
+
+  def mkWriteField(field: Field, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
+    val value = get(field)
+    val meta = fieldMetadata(field)
+    field.typ().typeEnum() match {
+      case TypeEnum.BOOL => mkWritePrimitive(field, "writeBooleanValue")
+      case TypeEnum.INT8 => mkWritePrimitive(field, "writeInt8Value")
+      case TypeEnum.INT16 => mkWritePrimitive(field, "writeInt16Value")
+      case TypeEnum.INT32 => mkWritePrimitive(field, "writeInt32Value")
+      case TypeEnum.INT64 => mkWritePrimitive(field, "writeInt64Value")
+      case TypeEnum.FLOAT32 => mkWritePrimitive(field, "writeFloat32Value")
+      case TypeEnum.FLOAT64 => mkWritePrimitive(field, "writeFloat64Value")
+      case TypeEnum.STRING => mkWritePrimitive(field, "writeStringValue")
+      case TypeEnum.ENUM => ln(3, s"writer.writeEnumField($value, $meta);") // tag depends on writer settings
+      case TypeEnum.LIST =>
+        if (isPrimitiveList(field.typ().asInstanceOf[ListType], primitiveCollections))
+          ln(3, s"writer.writePrimitiveListField($value, $meta);")
+        else
+          ln(3, s"writer.writeListField((java.util.ArrayList) $value, $meta);")
+      case TypeEnum.MAP =>
+        if (isPrimitiveMap(field.typ().asInstanceOf[MapType], primitiveCollections))
+          ln(3, s"writer.writePrimitiveMapField($value, $meta);")
+        else
+          ln(3, s"writer.writeMapField((java.util.HashMap) $value, $meta);")
+      case TypeEnum.ARRAY => ln(3, s"writer.writeArrayField($value, $meta);")
+      case TypeEnum.CLASS => ln(3, s"writer.writeMGenObjectField($value, $meta);")
+      case x => throw new GenerationException(s"Don't know how to handle type $x")
+    }
+  }
+
+  def mkWritePrimitive(field: Field, call: String)(implicit txtBuffer: SourceCodeBuffer) {
+    ln(3, s"writer.writeFieldHeader(${header(field, field.typ().typeTag())});")
+    ln(3, s"writer.$call(${get(field)});")
+  }
+
+  def mkReadValueCall(field: Field): String = {
+    val meta = fieldMetadata(field)
+    field.typ().typeEnum() match {
+      case TypeEnum.BOOL => "readBooleanValue()"
+      case TypeEnum.INT8 => "readInt8Value()"
+      case TypeEnum.INT16 => "readInt16Value()"
+      case TypeEnum.INT32 => "readInt32Value()"
+      case TypeEnum.INT64 => "readInt64Value()"
+      case TypeEnum.FLOAT32 => "readFloat32Value()"
+      case TypeEnum.FLOAT64 => "readFloat64Value()"
+      case TypeEnum.STRING => "readStringValue()"
+      case TypeEnum.ENUM => s"readEnumValue(fieldHeader, $meta)"
+      case TypeEnum.LIST => s"readListValue($meta)"
+      case TypeEnum.MAP => s"readMapValue($meta)"
+      case TypeEnum.ARRAY => s"readArrayValue($meta)"
+      case TypeEnum.CLASS => s"readMGenObjectValue($meta)"
+      case x => throw new GenerationException(s"Don't know how to handle type $x")
+    }
+  }
+
+  /**
+   * The binary type tags a field may be read with. Enums may be written
+   * either as strings or by their integer values.
+   */
+  def readTags(field: Field): Seq[Byte] = {
+    if (field.typ().typeEnum() == TypeEnum.ENUM)
+      Seq(BinaryTypeTag.TAG_STRING, BinaryTypeTag.TAG_ENUM)
+    else
+      Seq(field.typ().typeTag())
+  }
+
+  /**
+   * Packs a field id and binary type tag as (id << 8) | tag, the way
+   * BinaryWriter.writeFieldHeader and BinaryReader.readFieldHeader do.
+   */
+  def header(field: Field, tag: Byte): String = {
+    val id = field.id() & 0xFFFF
+    "0x%06X".format((id << 8) | (tag & 0xFF))
+  }
+
+}
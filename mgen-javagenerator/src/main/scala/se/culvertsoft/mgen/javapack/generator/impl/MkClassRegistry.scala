@@ -47,11 +47,12 @@ object MkClassRegistry {
 
     MkClassStart("ClassRegistry", clsRegistryClsString)
     for (t <- allClasses) {
+      val ordinal = s"${t.fullName()}._TYPE_ORDINAL"
       val id = getId(t)
       val ids = s"${t.fullName()}._TYPE_IDS"
       val name = s"${quote(t.fullName())}"
       val ctor = s"new Ctor() { public MGenBase create() { return new ${t.fullName()}(); } }"
-      ln(1, s"public static $clsRegistryEntryClsString ${getEntryName(t)} = new $clsRegistryEntryClsString($id, $ids, $name, $ctor);")
+      ln(1, s"public static $clsRegistryEntryClsString ${getEntryName(t)} = new $clsRegistryEntryClsString($ordinal, $id, $ids, $name, $ctor);")
     }
     endl()
 
@@ -12,14 +12,14 @@ import se.culvertsoft.mgen.javapack.generator.JavaGenerator
 
 object MkDefaultCtor {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
     ln(1, s"public ${t.shortName}() {")
     ln(2, s"super();");
     for (field <- t.fields()) {
-      ln(2, s"m_${field.name()} = ${MkDefaultValue(field, false)};")
+      ln(2, s"m_${field.name()} = ${MkDefaultValue(field, false, primitiveCollections)};")
     }
     for (field <- t.fields()) {
       if (!JavaGenerator.canBeNull(field))
@@ -28,24 +28,26 @@ object MkDefaultValue {
 
   def apply(
     f: Field,
-    nonNull: Boolean)(implicit currentModule: Module): String = {
+    nonNull: Boolean,
+    primitiveCollections: Boolean)(implicit currentModule: Module): String = {
 
     if (!f.hasDefaultValue) {
       if (nonNull)
-        return JavaConstruction.defaultConstruct(f.typ, false)
+        return JavaConstruction.defaultConstruct(f.typ, false, primitiveCollections)
       else
         return JavaConstruction.defaultConstructNull(f.typ, false)
     }
 
     val d = f.defaultValue()
 
-    apply(d, nonNull, false, true)
+    apply(d, nonNull, primitiveCollections, false, true)
 
   }
 
   def apply(
     d: DefaultValue,
     nonNull: Boolean,
+    primitiveCollections: Boolean,
     isGenericArg: Boolean = false,
     isFirstCall: Boolean = true,
     lastIsArray: Boolean = false)(implicit currentModule: Module): String = {
@@ -74,27 +76,40 @@ object MkDefaultValue {
         val values = v.values
         v.expectedType() match {
           case t: ArrayType =>
-            val entries = values.map(v => apply(v, true, isGenericArg, false, true)).mkString(", ")
+            val entries = values.map(v => apply(v, true, primitiveCollections, isGenericArg, false, true)).mkString(", ")
             val prepend =
               if (!lastIsArray)
-                s"new ${JavaTypeNames.getTypeName(d.expectedType, isGenericArg, false)}"
+                s"new ${JavaTypeNames.getTypeName(d.expectedType, isGenericArg, false, primitiveCollections)}"
               else
                 ""
             s"${prepend}{$entries}"
+          case t: ListType if JavaTypeNames.isPrimitiveList(t, primitiveCollections) =>
+            val entries = values.map(v => apply(v, true, primitiveCollections, false, false)).mkString(", ")
+            if (values.nonEmpty)
+              s"${JavaTypeNames.getTypeName(t, false, false, primitiveCollections)}.of(${entries})"
+            else
+              s"new ${JavaTypeNames.getTypeName(t, false, false, primitiveCollections)}()"
           case t: ListType =>
-            val typeArg = s"${JavaTypeNames.getTypeName(t.elementType(), true, false)}"
+            val typeArg = s"${JavaTypeNames.getTypeName(t.elementType(), true, false, primitiveCollections)}"
             if (values.nonEmpty) {
-              val entries = values.map(v => apply(v, true, false, false)).mkString("add(", ").add(", ").make()")
+              val entries = values.map(v => apply(v, true, primitiveCollections, false, false)).mkString("add(", ").add(", ").make()")
               s"new ${JavaConstants.listMakerClsStringQ}<$typeArg>(${values.size}).${entries}"
             } else {
               s"new java.util.ArrayList<$typeArg>()"
             }
         }
       case v: MapDefaultValue =>
-        val values = v.values.map(e => s"${apply(e._1, true, isGenericArg, false)}, ${apply(e._2, true, isGenericArg, false)}")
+        val values = v.values.map(e => s"${apply(e._1, true, primitiveCollections, isGenericArg, false)}, ${apply(e._2, true, primitiveCollections, isGenericArg, false)}")
         val t = v.expectedType
-        val typeArg = s"${JavaTypeNames.getTypeName(t.keyType, true, false)}, ${JavaTypeNames.getTypeName(t.valueType, true, false)}"
-        if (values.nonEmpty) {
+        val typeArg = s"${JavaTypeNames.getTypeName(t.keyType, true, false)}, ${JavaTypeNames.getTypeName(t.valueType, true, false, primitiveCollections)}"
+        if (JavaTypeNames.isPrimitiveMap(t, primitiveCollections)) {
+          if (values.nonEmpty) {
+            val entries = values.mkString("put(", ").put(", ").make()")
+            s"new ${JavaTypeNames.getTypeName(t, false, false, primitiveCollections)}(new ${JavaConstants.mapMakerClsStringQ}<$typeArg>(${values.size}).${entries})"
+          } else {
+            s"new ${JavaTypeNames.getTypeName(t, false, false, primitiveCollections)}()"
+          }
+        } else if (values.nonEmpty) {
           val entries = values.mkString("put(", ").put(", ").make()")
           s"new ${JavaConstants.mapMakerClsStringQ}<$typeArg>(${values.size}).${entries}"
         } else {
@@ -102,7 +117,7 @@ object MkDefaultValue {
         }
       case v: ObjectDefaultValue =>
         val values = v.overriddenDefaultValues
-        val setCalls = values.map(e => s".${Alias.set(e._1, apply(e._2, true, isGenericArg, false))}").mkString("")
+        val setCalls = values.map(e => s".${Alias.set(e._1, apply(e._2, true, primitiveCollections, isGenericArg, false))}").mkString("")
         JavaConstruction.defaultConstruct(v.actualType, false) + setCalls
       case _ =>
         throw new GenerationException(s"Don't know how to generate default value code for $d")
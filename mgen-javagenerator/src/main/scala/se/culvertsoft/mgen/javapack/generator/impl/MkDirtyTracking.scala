@@ -0,0 +1,140 @@
+package se.culvertsoft.mgen.javapack.generator.impl
+
+import scala.collection.JavaConversions.asScalaBuffer
+
+import Alias.fieldId
+import Alias.fieldMetadata
+import Alias.get
+import Alias.isFieldSet
+import Alias.set
+import Alias.setFieldSet
+import se.culvertsoft.mgen.api.model.ClassType
+import se.culvertsoft.mgen.api.model.Field
+import se.culvertsoft.mgen.api.model.Module
+import se.culvertsoft.mgen.api.model.TypeEnum
+import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.ln
+import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.binaryReaderClsStringQ
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.fieldIfcClsString
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.fieldSetDepthClsString
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
+
+/**
+ * Generates dirty field tracking (see the generate_dirty_tracking generator
+ * setting). Each class keeps one dirty bit per own field, packed into longs.
+ * Setters, including unsetting fields, mark fields dirty, and _clearDirty()
+ * clears the bits. New objects start with all bits set, so that everything
+ * they hold is dirty.
+ */
+object MkDirtyTracking {
+
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
+
+    implicit val m = module
+
+    val fields = t.fields()
+    val allFields = t.fieldsInclSuper()
+    val objectFields = allFields.filter(_.typ().typeEnum() == TypeEnum.CLASS)
+
+    ln(1, "@Override")
+    ln(1, s"public boolean _isFieldDirty(final $fieldIfcClsString field, final ${fieldSetDepthClsString} depth) {")
+    ln(2, s"switch(field.id()) {")
+    for (field <- fields) {
+      ln(3, s"case (${fieldId(field)}):")
+      val dirty = s"(${word(t, field)} & ${mask(t, field)}) != 0"
+      if (field.typ().typeEnum() == TypeEnum.CLASS)
+        ln(4, s"return ${isFieldSet(field, s"${fieldSetDepthClsString}.SHALLOW")} && ($dirty || depth == ${fieldSetDepthClsString}.DEEP && m_${field.name()}._isDirty());")
+      else
+        ln(4, s"return ${isFieldSet(field, s"${fieldSetDepthClsString}.SHALLOW")} && $dirty;")
+    }
+    ln(3, s"default:")
+    ln(4, if (t.hasSuperType()) "return super._isFieldDirty(field, depth);" else "return false;")
+    ln(2, s"}")
+    ln(1, "}").endl()
+
+    ln(1, "@Override")
+    ln(1, s"public boolean _wasFieldUnset(final $fieldIfcClsString field) {")
+    ln(2, s"switch(field.id()) {")
+    for (field <- fields) {
+      ln(3, s"case (${fieldId(field)}):")
+      ln(4, s"return !${isFieldSet(field, s"${fieldSetDepthClsString}.SHALLOW")} && (${word(t, field)} & ${mask(t, field)}) != 0;")
+    }
+    ln(3, s"default:")
+    ln(4, if (t.hasSuperType()) "return super._wasFieldUnset(field);" else "return false;")
+    ln(2, s"}")
+    ln(1, "}").endl()
+
+    ln(1, "@Override")
+    ln(1, s"public ${t.shortName()} _clearDirty() {")
+    if (t.hasSuperType())
+      ln(2, "super._clearDirty();")
+    for (i <- 0 until nWords(t))
+      ln(2, s"${word(i)} = 0L;")
+    for (field <- fields.filter(_.typ().typeEnum() == TypeEnum.CLASS)) {
+      ln(2, s"if (m_${field.name()} != null)")
+      ln(3, s"m_${field.name()}._clearDirty();")
+    }
+    ln(2, "return this;")
+    ln(1, "}").endl()
+
+    if (objectFields.nonEmpty) {
+      ln(1, "@Override")
+      ln(1, s"public boolean _readPatchField(final short fieldId, final ${binaryReaderClsStringQ} reader) throws java.io.IOException {")
+      ln(2, s"switch(fieldId) {")
+      for (field <- objectFields) {
+        ln(3, s"case (${fieldId(field)}):")
+        ln(4, s"${set(field, s"(${getTypeName(field.typ(), false, false, primitiveCollections)})reader.readPatchField(${fieldMetadata(field)}, ${get(field)})")};")
+        ln(4, "return true;")
+      }
+      ln(3, s"default:")
+      ln(4, s"return _readField(fieldId, null, reader);")
+      ln(2, s"}")
+      ln(1, "}").endl()
+    }
+
+    ln(1, "@Override")
+    ln(1, s"public boolean _unsetPatchField(final short fieldId) {")
+    ln(2, s"switch(fieldId) {")
+    for (field <- allFields) {
+      ln(3, s"case (${fieldId(field)}):")
+      ln(4, s"${setFieldSet(field, s"false, ${fieldSetDepthClsString}.SHALLOW")};")
+      ln(4, "return true;")
+    }
+    ln(3, s"default:")
+    ln(4, "return false;")
+    ln(2, s"}")
+    ln(1, "}").endl()
+
+  }
+
+  def mkMembers(t: ClassType)(implicit txtBuffer: SourceCodeBuffer) {
+    for (i <- 0 until nWords(t))
+      ln(1, s"private long ${word(i)} = ~0L;")
+  }
+
+  def mkMarkDirty(t: ClassType, field: Field): String = {
+    s"${word(t, field)} |= ${mask(t, field)};"
+  }
+
+  def mkMarkAllDirty(t: ClassType)(implicit txtBuffer: SourceCodeBuffer) {
+    for (i <- 0 until nWords(t))
+      ln(2, s"${word(i)} = ~0L;")
+  }
+
+  private def nWords(t: ClassType): Int = {
+    (t.fields().size + 63) / 64
+  }
+
+  private def word(i: Int): String = {
+    s"_m_dirty$i"
+  }
+
+  private def word(t: ClassType, field: Field): String = {
+    word(t.fields().indexOf(field) / 64)
+  }
+
+  private def mask(t: ClassType, field: Field): String = {
+    s"0x${java.lang.Long.toHexString(1L << (t.fields().indexOf(field) % 64))}L"
+  }
+
+}
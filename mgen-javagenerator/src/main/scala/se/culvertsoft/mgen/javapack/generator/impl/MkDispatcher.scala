@@ -34,6 +34,20 @@ object MkDispatcher {
       ln(3, "return;")
       ln(2, "}").endl()
 
+      // Ordinals are dense, so this compiles to a single tableswitch. They
+      // are only unique within a project, so the type id is checked as well.
+      ln(2, "switch (o._typeOrdinal()) {")
+      for (t <- allClasses) {
+        ln(3, s"case ${t.fullName()}._TYPE_ORDINAL:")
+        ln(4, s"if (o._typeId() == ${t.fullName()}._TYPE_ID) {")
+        ln(5, s"handler.handle((${t.fullName()})o);")
+        ln(5, "return;")
+        ln(4, "}")
+        ln(4, "break;")
+      }
+      ln(2, "}").endl()
+
+      // Types from other projects are dispatched to their closest known base type
       ln(2, "final short[] ids = o._typeIds16Bit();")
       ln(2, "int i = 0;")
 
@@ -43,7 +57,21 @@ object MkDispatcher {
 
     }
 
+    def mkTarget() {
+
+      ln(1, s"public static ${JavaConstants.parallelDispatcherClsString}.Target target(final Handler handler) {")
+      ln(2, s"return new ${JavaConstants.parallelDispatcherClsString}.Target() {")
+      ln(3, "@Override")
+      ln(3, "public void dispatch(MGenBase o) {")
+      ln(4, "Dispatcher.dispatch(o, handler);")
+      ln(3, "}")
+      ln(2, "};")
+      ln(1, "}").endl()
+
+    }
+
     mkDispatch()
+    mkTarget()
 
     MkClassEnd()
 
@@ -51,4 +79,4 @@ object MkDispatcher {
 
   }
 
-}
\ No newline at end of file
+}
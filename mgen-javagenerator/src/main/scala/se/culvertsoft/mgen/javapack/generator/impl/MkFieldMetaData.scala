@@ -16,10 +16,12 @@ import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.ln
 import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.quote
 import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
 import se.culvertsoft.mgen.javapack.generator.JavaConstants._
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.isPrimitiveList
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.isPrimitiveMap
 
 object MkFieldMetaData {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -38,7 +40,7 @@ object MkFieldMetaData {
           .text(s"${fieldMetadata(field)} = new ${fieldIfcClsString}(")
           .text(quote(t.fullName())).commaSpace()
           .text(quote(field.name())).commaSpace()
-          .text(mkMetaData(field.typ())).commaSpace()
+          .text(mkMetaData(field.typ(), primitiveCollections)).commaSpace()
           .text(s"$flagsString").commaSpace()
           .text(s"(short)${field.id()});")
           .endl()
@@ -59,7 +61,7 @@ object MkFieldMetaData {
 
   }
 
-  private def mkMetaData(t: Type): String = {
+  private def mkMetaData(t: Type, primitiveCollections: Boolean): String = {
     t.typeEnum() match {
       case TypeEnum.BOOL => s"${modelPkg}.BoolType.INSTANCE"
       case TypeEnum.INT8 => s"${modelPkg}.Int8Type.INSTANCE"
@@ -71,13 +73,15 @@ object MkFieldMetaData {
       case TypeEnum.STRING => s"${modelPkg}.StringType.INSTANCE"
       case TypeEnum.MAP =>
         val tm = t.asInstanceOf[MapType]
-        s"new ${modelPkg}.MapType(${mkMetaData(tm.keyType())}, ${mkMetaData(tm.valueType())})"
+        val cls = if (isPrimitiveMap(tm, primitiveCollections)) primitiveMapTypeClsStringQ else s"${modelPkg}.MapType"
+        s"new ${cls}(${mkMetaData(tm.keyType(), primitiveCollections)}, ${mkMetaData(tm.valueType(), primitiveCollections)})"
       case TypeEnum.LIST =>
         val tl = t.asInstanceOf[ListType]
-        s"new ${modelPkg}.ListType(${mkMetaData(tl.elementType())})"
+        val cls = if (isPrimitiveList(tl, primitiveCollections)) primitiveListTypeClsStringQ else s"${modelPkg}.ListType"
+        s"new ${cls}(${mkMetaData(tl.elementType(), primitiveCollections)})"
       case TypeEnum.ARRAY =>
         val ta = t.asInstanceOf[ArrayType]
-        s"new ${modelPkg}.ArrayType(${mkMetaData(ta.elementType())})"
+        s"new ${modelPkg}.ArrayType(${mkMetaData(ta.elementType(), primitiveCollections)})"
       case TypeEnum.CLASS =>
         val tc = t.asInstanceOf[ClassType]
         s"new ${runtimeClassClsStringQ}(${quote(tc.fullName())}, ${tc.typeId()}L)"
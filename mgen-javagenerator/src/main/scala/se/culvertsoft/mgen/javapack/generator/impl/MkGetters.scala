@@ -13,12 +13,12 @@ import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
 
 object MkGetters {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
     for (field <- t.fields()) {
-      txtBuffer.tabs(1).textln(s"public ${getTypeName(field.typ())} ${get(field)} {")
+      txtBuffer.tabs(1).textln(s"public ${getTypeName(field.typ(), false, false, primitiveCollections)} ${get(field)} {")
       txtBuffer.tabs(2).textln(s"return m_${field.name()};")
       txtBuffer.tabs(1).textln(s"}").endl()
     }
@@ -17,7 +17,7 @@ import se.culvertsoft.mgen.javapack.generator.JavaGenerator
 
 object MkMarkFieldsSet {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean, dirtyTracking: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -29,15 +29,18 @@ object MkMarkFieldsSet {
 
       if (JavaGenerator.canBeNull(field)) {
         ln(2, "if (state)")
-        ln(3, s"m_${field.name} = m_${field.name} != null ? m_${field.name} : ${MkDefaultValue(field, true)};")
+        ln(3, s"m_${field.name} = m_${field.name} != null ? m_${field.name} : ${MkDefaultValue(field, true, primitiveCollections)};")
         ln(2, "else")
         ln(3, s"m_${field.name} = null;")
       } else {
         ln(2, "if (!state)")
-        ln(3, s"m_${field.name} = ${MkDefaultValue(field, false)};")
+        ln(3, s"m_${field.name} = ${MkDefaultValue(field, false, primitiveCollections)};")
         ln(2, s"${isSetName(field)} = state;")
       }
 
+      if (dirtyTracking)
+        ln(2, MkDirtyTracking.mkMarkDirty(t, field))
+
       if (field.typ.containsUserDefinedType) {
         ln(2, s"if (depth == ${fieldSetDepthClsString}.DEEP)")
         ln(3, s"${setFieldSetClsString}.setFieldSetDeep(${get(field)}, ${fieldMetadata(field)}.typ());")
@@ -13,18 +13,18 @@ import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
 
 object MkMembers {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean, dirtyTracking: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
     for (c <- t.constants)
-      ln(1, s"public static final ${getTypeName(c.typ)} ${c.shortName} = ${MkDefaultValue(c.value, true)};")
+      ln(1, s"public static final ${getTypeName(c.typ, false, false, primitiveCollections)} ${c.shortName} = ${MkDefaultValue(c.value, true, primitiveCollections)};")
     if (t.constants.nonEmpty)
       ln()
 
     val fields = t.fields()
     for (field <- fields) {
-      ln(1, s"private ${getTypeName(field.typ())} m_${field.name()};")
+      ln(1, s"private ${getTypeName(field.typ(), false, false, primitiveCollections)} m_${field.name()};")
     }
 
     for (field <- fields) {
@@ -32,6 +32,9 @@ object MkMembers {
         ln(1, s"private boolean ${isSetName(field)};")
     }
 
+    if (dirtyTracking)
+      MkDirtyTracking.mkMembers(t)
+
     if (fields.nonEmpty)
       endl()
 
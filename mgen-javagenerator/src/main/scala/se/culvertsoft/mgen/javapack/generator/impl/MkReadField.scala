@@ -4,24 +4,37 @@ import scala.collection.JavaConversions.asScalaBuffer
 
 import Alias.fieldId
 import se.culvertsoft.mgen.api.model.ClassType
+import se.culvertsoft.mgen.api.model.Field
+import se.culvertsoft.mgen.api.model.ListType
+import se.culvertsoft.mgen.api.model.MapType
 import se.culvertsoft.mgen.api.model.Module
 import se.culvertsoft.mgen.api.model.TypeEnum
 import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.upFirst
 import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.builtInReaderClsStringQ
 import se.culvertsoft.mgen.javapack.generator.JavaConstants.readerClsString
 import se.culvertsoft.mgen.javapack.generator.JavaReadCalls.mkReadCall
 import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.isPrimitiveList
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.isPrimitiveMap
 
 object MkReadField {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
     val allFields = t.fieldsInclSuper()
     val needsSupress = allFields.map(_.typ().typeEnum()).find(e => e == TypeEnum.LIST || e == TypeEnum.MAP).isDefined
+    val needsRawSupress = allFields.map(_.typ()).exists {
+      case t: ListType => isPrimitiveList(t, primitiveCollections)
+      case t: MapType => isPrimitiveMap(t, primitiveCollections)
+      case _ => false
+    }
 
-    if (needsSupress)
+    if (needsRawSupress)
+      txtBuffer.tabs(1).textln("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })")
+    else if (needsSupress)
       txtBuffer.tabs(1).textln("@SuppressWarnings(\"unchecked\")")
     txtBuffer.tabs(1).textln("@Override")
     txtBuffer.tabs(1).textln(s"public boolean _readField(final short fieldId,")
@@ -30,7 +43,7 @@ object MkReadField {
     txtBuffer.tabs(2).textln(s"switch(fieldId) {")
     for (field <- allFields) {
       txtBuffer.tabs(3).textln(s"case (${fieldId(field)}):")
-      txtBuffer.tabs(4).textln(s"set${upFirst(field.name())}((${getTypeName(field.typ())})reader.${mkReadCall(field)}(_${field.name}_METADATA, context));")
+      txtBuffer.tabs(4).textln(s"set${upFirst(field.name())}((${getTypeName(field.typ(), false, false, primitiveCollections)})${mkReadValue(field, primitiveCollections)});")
       txtBuffer.tabs(4).textln("return true;")
     }
     txtBuffer.tabs(3).textln(s"default:")
@@ -40,4 +53,22 @@ object MkReadField {
     txtBuffer.tabs(1).textln("}").endl()
 
   }
+
+  /**
+   * Primitive-backed lists and maps are not ArrayLists/HashMaps, so they are
+   * read through the BuiltInReader methods that may return them. Other
+   * readers return ArrayLists/HashMaps, which are copied.
+   */
+  private def mkReadValue(field: Field, primitiveCollections: Boolean)(implicit module: Module): String = {
+    val args = s"(_${field.name}_METADATA, context)"
+    val typeName = getTypeName(field.typ(), false, false, primitiveCollections)
+    field.typ() match {
+      case t: ListType if isPrimitiveList(t, primitiveCollections) =>
+        s"(reader instanceof ${builtInReaderClsStringQ} ? ((${builtInReaderClsStringQ})reader).readPrimitiveListField$args : new $typeName((java.util.Collection)reader.readListField$args))"
+      case t: MapType if isPrimitiveMap(t, primitiveCollections) =>
+        s"(reader instanceof ${builtInReaderClsStringQ} ? ((${builtInReaderClsStringQ})reader).readPrimitiveMapField$args : new $typeName((java.util.Map)reader.readMapField$args))"
+      case _ =>
+        s"reader.${mkReadCall(field)}$args"
+    }
+  }
 }
\ No newline at end of file
@@ -14,7 +14,7 @@ import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.fieldTypeName
 
 object MkRequiredMembersCtor {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -26,7 +26,7 @@ object MkRequiredMembersCtor {
       for (i <- 0 until reqFields.size()) {
         val field = reqFields.get(i)
         val isLastField = i + 1 == reqFields.size()
-        txt(if (i > 0) 4 else 0, s"final ${fieldTypeName(field)} ${field.name()}")
+        txt(if (i > 0) 4 else 0, s"final ${fieldTypeName(field, primitiveCollections)} ${field.name()}")
         if (!isLastField) {
           txtBuffer.comma().endl()
         }
@@ -51,7 +51,7 @@ object MkRequiredMembersCtor {
         if (field.isRequired)
           ln(2, s"m_${field.name()} = ${field.name()};")
         else
-          ln(2, s"m_${field.name()} = ${MkDefaultValue(field, false)};")
+          ln(2, s"m_${field.name()} = ${MkDefaultValue(field, false, primitiveCollections)};")
       }
 
       for (f <- t.fields) {
@@ -0,0 +1,38 @@
+package se.culvertsoft.mgen.javapack.generator.impl
+
+import scala.collection.JavaConversions.asScalaBuffer
+
+import Alias.isSetName
+import se.culvertsoft.mgen.api.model.ClassType
+import se.culvertsoft.mgen.api.model.Module
+import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.endl
+import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.ln
+import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
+import se.culvertsoft.mgen.javapack.generator.JavaGenerator
+
+object MkReset {
+
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean, dirtyTracking: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
+
+    implicit val m = module
+
+    ln(1, "@Override")
+    ln(1, s"public ${t.shortName()} _reset() {")
+    if (t.hasSuperType)
+      ln(2, "super._reset();")
+    for (field <- t.fields()) {
+      ln(2, s"m_${field.name()} = ${MkDefaultValue(field, false, primitiveCollections)};")
+    }
+    for (field <- t.fields()) {
+      if (!JavaGenerator.canBeNull(field))
+        ln(2, s"${isSetName(field)} = ${field.hasDefaultValue};")
+    }
+    if (dirtyTracking)
+      MkDirtyTracking.mkMarkAllDirty(t)
+    ln(2, "return this;")
+    ln(1, "}")
+    endl()
+
+  }
+
+}
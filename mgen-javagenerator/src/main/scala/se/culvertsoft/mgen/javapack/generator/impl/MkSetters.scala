@@ -12,7 +12,7 @@ import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
 
 object MkSetters {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, primitiveCollections: Boolean, dirtyTracking: Boolean)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -20,17 +20,19 @@ object MkSetters {
     val superFields = t.fieldsInclSuper() -- thisFields
 
     for (field <- superFields) {
-      txtBuffer.tabs(1).textln(s"public ${t.shortName} ${set(field, s"final ${getTypeName(field.typ())} ${field.name()}")} {")
+      txtBuffer.tabs(1).textln(s"public ${t.shortName} ${set(field, s"final ${getTypeName(field.typ(), false, false, primitiveCollections)} ${field.name()}")} {")
       txtBuffer.tabs(2).textln(s"super.${set(field, field.name())};")
       txtBuffer.tabs(2).textln(s"return this;")
       txtBuffer.tabs(1).textln(s"}").endl()
     }
 
     for (field <- thisFields) {
-      txtBuffer.tabs(1).textln(s"public ${t.shortName} ${set(field, s"final ${getTypeName(field.typ())} ${field.name()}")} {")
+      txtBuffer.tabs(1).textln(s"public ${t.shortName} ${set(field, s"final ${getTypeName(field.typ(), false, false, primitiveCollections)} ${field.name()}")} {")
       txtBuffer.tabs(2).textln(s"m_${field.name()} = ${field.name()};")
       if (!JavaGenerator.canBeNull(field))
         txtBuffer.tabs(2).textln(s"${isSetName(field)} = true;")
+      if (dirtyTracking)
+        txtBuffer.tabs(2).textln(MkDirtyTracking.mkMarkDirty(t, field))
       txtBuffer.tabs(2).textln(s"return this;")
       txtBuffer.tabs(1).textln(s"}").endl()
     }
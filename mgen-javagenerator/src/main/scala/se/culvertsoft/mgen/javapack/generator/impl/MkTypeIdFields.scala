@@ -14,7 +14,7 @@ import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
 
 object MkTypeIdFields {
 
-  def apply(t: ClassType, module: Module)(implicit txtBuffer: SourceCodeBuffer) {
+  def apply(t: ClassType, module: Module, typeOrdinal: Int)(implicit txtBuffer: SourceCodeBuffer) {
 
     implicit val m = module
 
@@ -39,5 +39,7 @@ object MkTypeIdFields {
     ln(1, s"public static final String _TYPE_NAME = ${quote(t.fullName())};").endl()
     ln(1, s"public static final String[] _TYPE_NAMES = { ${allNames.mkString(", ")} };").endl()
 
+    ln(1, s"public static final int _TYPE_ORDINAL = ${typeOrdinal};").endl()
+
   }
 }
\ No newline at end of file
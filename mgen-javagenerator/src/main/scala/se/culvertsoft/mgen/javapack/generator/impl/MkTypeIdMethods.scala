@@ -55,5 +55,10 @@ object MkTypeIdMethods {
     txtBuffer.tabs(2).textln(s"return _TYPE_NAMES;")
     txtBuffer.tabs(1).textln("}").endl()
 
+    txtBuffer.tabs(1).textln("@Override")
+    txtBuffer.tabs(1).textln("public int _typeOrdinal() {")
+    txtBuffer.tabs(2).textln(s"return _TYPE_ORDINAL;")
+    txtBuffer.tabs(1).textln("}").endl()
+
   }
 }
\ No newline at end of file
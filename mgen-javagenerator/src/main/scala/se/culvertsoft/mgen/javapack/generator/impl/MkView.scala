@@ -0,0 +1,128 @@
+package se.culvertsoft.mgen.javapack.generator.impl
+
+import scala.collection.JavaConversions.asScalaBuffer
+
+import Alias.fieldMetadata
+import Alias.get
+import se.culvertsoft.mgen.api.exceptions.GenerationException
+import se.culvertsoft.mgen.api.model.ClassType
+import se.culvertsoft.mgen.api.model.Field
+import se.culvertsoft.mgen.api.model.Module
+import se.culvertsoft.mgen.api.model.TypeEnum
+import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.ln
+import se.culvertsoft.mgen.compiler.internal.BuiltInGeneratorUtil.upFirst
+import se.culvertsoft.mgen.compiler.util.SourceCodeBuffer
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.binaryViewClsStringQ
+import se.culvertsoft.mgen.javapack.generator.JavaConstants.clsRegistryClsString
+import se.culvertsoft.mgen.javapack.generator.JavaTypeNames.getTypeName
+
+/**
+ * Generates the binary view class of a class (see the generate_binary_views
+ * generator setting). A view <Class>View extends the view of the super class,
+ * or BinaryView, and has getters for the class's own fields which decode
+ * values straight from the wrapped buffer. Fields holding MGen objects are
+ * returned as views.
+ */
+object MkView {
+
+  def viewName(t: ClassType)(implicit module: Module): String = {
+    getTypeName(t) + "View"
+  }
+
+  def apply(t: ClassType, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer): String = {
+
+    implicit val module = t.module()
+
+    val clsName = viewName(t)
+    val superName = if (t.hasSuperType()) viewName(t.superType().asInstanceOf[ClassType]) else binaryViewClsStringQ
+    val fields = t.fields().filterNot(_.isTransient)
+
+    txtBuffer.clear()
+
+    MkFancyHeader(t)
+    MkPackage(module)
+    MkClassStart(clsName, superName)
+
+    for (field <- fields.filter(_.typ().typeEnum() == TypeEnum.CLASS))
+      ln(1, s"private ${getTypeName(field.typ())}View m_${field.name()};")
+    if (fields.exists(_.typ().typeEnum() == TypeEnum.CLASS))
+      txtBuffer.endl()
+
+    ln(1, s"public $clsName(final java.nio.ByteBuffer buffer, final $clsRegistryClsString classRegistry) {")
+    ln(2, s"super(buffer, classRegistry);")
+    ln(1, "}").endl()
+
+    ln(1, s"public $clsName() {")
+    ln(2, s"super();")
+    ln(1, "}").endl()
+
+    for (field <- fields)
+      mkGetter(t, field, primitiveCollections)
+
+    for (field <- fields) {
+      ln(1, s"public boolean has${upFirst(field.name())}() {")
+      ln(2, s"return _has(${getTypeName(t)}.${fieldMetadata(field)});")
+      ln(1, "}").endl()
+    }
+
+    ln(1, "@Override")
+    ln(1, s"public $clsName wrap(final java.nio.ByteBuffer buffer, final $clsRegistryClsString classRegistry) {")
+    ln(2, s"super.wrap(buffer, classRegistry);")
+    ln(2, s"return this;")
+    ln(1, "}").endl()
+
+    ln(1, "@Override")
+    ln(1, s"public ${getTypeName(t)} materialize() {")
+    ln(2, s"return (${getTypeName(t)})super.materialize();")
+    ln(1, "}").endl()
+
+    MkClassEnd()
+
+    txtBuffer.toString()
+  }
+
+  def mkGetter(t: ClassType, field: Field, primitiveCollections: Boolean)(implicit txtBuffer: SourceCodeBuffer, module: Module) {
+
+    val meta = s"${getTypeName(t)}.${fieldMetadata(field)}"
+    val typeName = getTypeName(field.typ(), false, false, primitiveCollections)
+
+    field.typ().typeEnum() match {
+      case TypeEnum.CLASS =>
+        val cache = s"m_${field.name()}"
+        ln(1, s"public ${typeName}View ${get(field)} {")
+        ln(2, s"if ($cache == null)")
+        ln(3, s"$cache = new ${typeName}View();")
+        ln(2, s"return _readView($meta, $cache);")
+      case TypeEnum.LIST | TypeEnum.MAP =>
+        ln(1, "@SuppressWarnings(\"unchecked\")")
+        ln(1, s"public $typeName ${get(field)} {")
+        ln(2, s"return ($typeName)${readCall(field)}($meta);")
+      case TypeEnum.ARRAY | TypeEnum.ENUM =>
+        ln(1, s"public $typeName ${get(field)} {")
+        ln(2, s"return ($typeName)${readCall(field)}($meta);")
+      case _ =>
+        ln(1, s"public $typeName ${get(field)} {")
+        ln(2, s"return ${readCall(field)}($meta);")
+    }
+    ln(1, "}").endl()
+  }
+
+  def readCall(field: Field): String = {
+    field.typ().typeEnum() match {
+      case TypeEnum.BOOL => "_readBoolean"
+      case TypeEnum.INT8 => "_readInt8"
+      case TypeEnum.INT16 => "_readInt16"
+      case TypeEnum.INT32 => "_readInt32"
+      case TypeEnum.INT64 => "_readInt64"
+      case TypeEnum.FLOAT32 => "_readFloat32"
+      case TypeEnum.FLOAT64 => "_readFloat64"
+      case TypeEnum.STRING => "_readString"
+      case TypeEnum.MAP => "_readMap"
+      case TypeEnum.LIST => "_readList"
+      case TypeEnum.ARRAY => "_readArray"
+      case TypeEnum.ENUM => "_readEnum"
+      case x => throw new GenerationException(s"Don't know how to handle type $x")
+    }
+  }
+
+}
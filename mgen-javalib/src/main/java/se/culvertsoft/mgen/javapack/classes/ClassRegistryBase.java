@@ -1,7 +1,15 @@
 package se.culvertsoft.mgen.javapack.classes;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
 
 /**
  * Base class for all MGen class registries. When generating classes for an MGen
@@ -22,6 +30,32 @@ public abstract class ClassRegistryBase {
 		return m_typeId2Entry.get(typeId);
 	}
 
+	/**
+	 * Gets a class registry entry by its ordinal. Entries are assigned dense
+	 * ordinals 0..nEntries()-1 in the order they are added to the registry,
+	 * so that ordinals can be used to index arrays of per class data.
+	 * 
+	 * @param ordinal
+	 *            The ordinal of the class to find
+	 * 
+	 * @return The found entry, or null
+	 */
+	public ClassRegistryEntry getByOrdinal(final int ordinal) {
+		return ordinal >= 0 && ordinal < m_ordinal2Entry.length ? m_ordinal2Entry[ordinal]
+				: null;
+	}
+
+	/**
+	 * Gets the size of the ordinal range of this registry. Entry ordinals range
+	 * from 0 to nEntries()-1. For generated class registries this is the
+	 * number of classes in the registry.
+	 * 
+	 * @return The size of the ordinal range of this registry
+	 */
+	public int nEntries() {
+		return m_ordinal2Entry.length;
+	}
+
 	/**
 	 * Gets a class registry entry by qualified class name
 	 * (name.space.ClassName).
@@ -48,15 +82,44 @@ public abstract class ClassRegistryBase {
 	}
 
 	/**
-	 * Returns the internal lookup-table from 64 bit type ids to class registry
-	 * entries. This can be used to iterate over registered classes, especially
-	 * useful for testing.
+	 * Returns all class registry entries, in the order they were added. This
+	 * can be used to iterate over registered classes, especially useful for
+	 * testing.
 	 * 
-	 * @return The internal lookup-table from 64 bit type ids to class registry
-	 *         entries
+	 * @return All class registry entries
 	 */
 	public Collection<ClassRegistryEntry> entries() {
-		return m_name2Entry.values();
+		return m_entriesView;
+	}
+
+	/**
+	 * Enables or disables pooling of instances for all registered classes.
+	 * When enabled, readers instantiate objects from the pools, and objects
+	 * that are no longer needed can be handed back with release(..). See
+	 * ClassRegistryEntry.setPoolCapacity(..).
+	 * 
+	 * @param capacity
+	 *            The maximum number of instances to keep pooled per class, or
+	 *            0 to disable pooling
+	 */
+	public void setPoolCapacity(final int capacity) {
+		for (final ClassRegistryEntry entry : entries())
+			entry.setPoolCapacity(capacity);
+	}
+
+	/**
+	 * Resets an object and returns it to the pool of its class, if pooling is
+	 * enabled. The caller must not use the object after releasing it. See
+	 * ClassRegistryEntry.release(..).
+	 * 
+	 * @param object
+	 *            The object to release
+	 * 
+	 * @return True if the object was pooled
+	 */
+	public boolean release(final MGenBase object) {
+		final ClassRegistryEntry entry = getByClass(object.getClass());
+		return entry != null && entry.release(object);
 	}
 
 	/**
@@ -82,14 +145,105 @@ public abstract class ClassRegistryBase {
 	public abstract ClassRegistryEntry getByTypeIds16BitBase64(
 			final String[] ids);
 
+	/**
+	 * Gets a class registry entry by the 16 bit type id of the class itself
+	 * (its leaf type id), with a single lookup. Only meaningful if
+	 * hasUniqueTypeIds16Bit() returns true.
+	 * 
+	 * @param id
+	 *            The 16 bit type id of the requested type
+	 * 
+	 * @return The found entry, or null
+	 */
+	public ClassRegistryEntry getByTypeId16Bit(final short id) {
+		return m_typeId16Bit2Entry.get(id);
+	}
+
+	/**
+	 * Gets a class registry entry by the 16 bit type id of the class itself
+	 * (its leaf type id), in base 64 format. Only meaningful if
+	 * hasUniqueTypeIds16Bit() returns true.
+	 * 
+	 * @param id
+	 *            The 16 bit type id in base 64 format of the requested type
+	 * 
+	 * @return The found entry, or null
+	 */
+	public ClassRegistryEntry getByTypeId16BitBase64(final String id) {
+		return m_typeId16BitBase642Entry.get(id);
+	}
+
+	/**
+	 * Checks if the 16 bit type ids of the classes in this registry are
+	 * unique across the whole registry, and not only among classes with the
+	 * same super type. The MGen compiler guarantees this when run with
+	 * leaf_type_ids=true. Objects can then be identified by their leaf type
+	 * id alone (see BinaryWriter.setLeafTypeIds(..)).
+	 * 
+	 * @return If 16 bit type ids are unique in this registry
+	 */
+	public boolean hasUniqueTypeIds16Bit() {
+		return m_uniqueTypeIds16Bit;
+	}
+
+	/**
+	 * Resolves 16 bit type ids read from a data stream: either the full chain
+	 * of 16 bit type ids of a class, or - if the stream was written with leaf
+	 * type ids - a single leaf type id. Nothing on the wire tells the two
+	 * forms apart, so readers must be told which one to expect (see
+	 * BuiltInReader.setLeafTypeIds(boolean)). Chains of more than one id are
+	 * always resolved as full chains.
+	 * 
+	 * @param ids
+	 *            The 16 bit type ids read
+	 * 
+	 * @param leafTypeIds
+	 *            If a single id is a leaf type id
+	 * 
+	 * @return The found entry, or null
+	 */
+	public ClassRegistryEntry resolveTypeIds16Bit(
+			final short[] ids,
+			final boolean leafTypeIds) {
+		if (ids.length == 1 && leafTypeIds)
+			return getByTypeId16Bit(ids[0]);
+		return getByTypeIds16Bit(ids);
+	}
+
+	/**
+	 * Resolves 16 bit type ids in base 64 format read from a data stream. See
+	 * resolveTypeIds16Bit(..).
+	 * 
+	 * @param ids
+	 *            The 16 bit type ids in base 64 format read
+	 * 
+	 * @param leafTypeIds
+	 *            If a single id is a leaf type id
+	 * 
+	 * @return The found entry, or null
+	 */
+	public ClassRegistryEntry resolveTypeIds16BitBase64(
+			final String[] ids,
+			final boolean leafTypeIds) {
+		if (ids.length == 1 && leafTypeIds)
+			return getByTypeId16BitBase64(ids[0]);
+		return getByTypeIds16BitBase64(ids);
+	}
+
 	/**
 	 * Constructor to be used only by generated subclasses/generated
 	 * ClassRegistry classes.
 	 */
 	protected ClassRegistryBase() {
-		m_typeId2Entry = new HashMap<Long, ClassRegistryEntry>();
+		m_typeId2Entry = new LongObjMap<ClassRegistryEntry>();
 		m_name2Entry = new HashMap<String, ClassRegistryEntry>();
-		m_cls2Entry = new HashMap<Class<?>, ClassRegistryEntry>();
+		m_cls2Entry = new IdentityHashMap<Class<?>, ClassRegistryEntry>();
+		m_entries = new ArrayList<ClassRegistryEntry>();
+		m_entriesView = Collections.unmodifiableList(m_entries);
+		m_ordinal2Entry = new ClassRegistryEntry[0];
+		m_typeId16Bit2Entry = new IntObjMap<ClassRegistryEntry>();
+		m_typeId16BitBase642Entry = new HashMap<String, ClassRegistryEntry>();
+		m_uniqueTypeIds16Bit = true;
 	}
 
 	/**
@@ -100,13 +254,40 @@ public abstract class ClassRegistryBase {
 	 *            The ClassRegistryEntry to add
 	 */
 	protected void add(final ClassRegistryEntry entry) {
+
+		final int ordinal = entry.register(this, m_ordinal2Entry.length);
+		if (ordinal >= m_ordinal2Entry.length)
+			m_ordinal2Entry = Arrays.copyOf(m_ordinal2Entry, ordinal + 1);
+		m_ordinal2Entry[ordinal] = entry;
+
 		m_typeId2Entry.put(entry.typeId(), entry);
 		m_name2Entry.put(entry.clsName(), entry);
 		m_cls2Entry.put(entry.cls(), entry);
+		m_entries.add(entry);
+
+		final MGenBase prototype = entry.construct();
+		if (m_typeId16Bit2Entry.put(prototype._typeId16Bit(), entry) != null)
+			m_uniqueTypeIds16Bit = false;
+		m_typeId16BitBase642Entry.put(prototype._typeId16BitBase64(), entry);
+
+		// Super types and sub types may be added in any order
+		for (final ClassRegistryEntry other : m_entries) {
+			if (entry.hasTypeIdInHierarchy(other.typeId()))
+				entry.addSuperOrdinal(other.ordinal());
+			if (other != entry && other.hasTypeIdInHierarchy(entry.typeId()))
+				other.addSuperOrdinal(entry.ordinal());
+		}
+
 	}
 
-	private final HashMap<Long, ClassRegistryEntry> m_typeId2Entry;
+	private final LongObjMap<ClassRegistryEntry> m_typeId2Entry;
 	private final HashMap<String, ClassRegistryEntry> m_name2Entry;
-	private final HashMap<Class<?>, ClassRegistryEntry> m_cls2Entry;
+	private final IdentityHashMap<Class<?>, ClassRegistryEntry> m_cls2Entry;
+	private final ArrayList<ClassRegistryEntry> m_entries;
+	private final List<ClassRegistryEntry> m_entriesView;
+	private ClassRegistryEntry[] m_ordinal2Entry;
+	private final IntObjMap<ClassRegistryEntry> m_typeId16Bit2Entry;
+	private final HashMap<String, ClassRegistryEntry> m_typeId16BitBase642Entry;
+	private boolean m_uniqueTypeIds16Bit;
 
 }
@@ -1,5 +1,8 @@
 package se.culvertsoft.mgen.javapack.classes;
 
+import java.util.Arrays;
+
+import se.culvertsoft.mgen.api.model.Field;
 import se.culvertsoft.mgen.api.model.RuntimeClassType;
 
 /**
@@ -30,7 +33,35 @@ public class ClassRegistryEntry {
 			final long[] typeIds,
 			final String className,
 			final Ctor ctor) {
+		this(-1, typeId, typeIds, className, ctor);
+	}
+
+	/**
+	 * Creates a new ClassRegistryEntry for a generated class, with an ordinal
+	 * assigned by the generator.
+	 * 
+	 * @param ordinal
+	 *            The dense ordinal of the class in its generated class
+	 *            registry, or -1 to have it assigned when the entry is added
+	 *            to a class registry
+	 * @param typeId
+	 *            The 64 bit type id of the class
+	 * @param typeIds
+	 *            The 64 bit type ids of the class
+	 * @param className
+	 *            The fully qualified name of the class
+	 * @param ctor
+	 *            An interface for default constructing new instances of the
+	 *            class
+	 */
+	public ClassRegistryEntry(
+			final int ordinal,
+			final long typeId,
+			final long[] typeIds,
+			final String className,
+			final Ctor ctor) {
 		m_cls = lkupClass(className);
+		m_ordinal = ordinal;
 		m_typeId = typeId;
 		m_typeIds = typeIds;
 		m_clsName = className;
@@ -48,6 +79,86 @@ public class ClassRegistryEntry {
 		return m_ctor.create();
 	}
 
+	/**
+	 * Returns a pooled instance of the class that this entry represents, or a
+	 * new instance if the pool is empty or pooling is disabled (the default).
+	 * Pooled instances have been reset to their default constructed state by
+	 * release(..). Readers instantiate objects through this method.
+	 * 
+	 * @return A default constructed object instance of the class that this
+	 *         entry represents.
+	 */
+	public MGenBase acquire() {
+		if (m_pool != null) {
+			synchronized (this) {
+				final MGenBase[] pool = m_pool;
+				if (pool != null && m_nPooled > 0) {
+					final MGenBase out = pool[--m_nPooled];
+					pool[m_nPooled] = null;
+					return out;
+				}
+			}
+		}
+		return m_ctor.create();
+	}
+
+	/**
+	 * Resets an object and returns it to the pool of this entry, so that it
+	 * may be handed out again by acquire(). Only the object itself is pooled,
+	 * not the objects referenced by its fields. The caller must not use the
+	 * object after releasing it.
+	 * 
+	 * @param object
+	 *            The object to release. Must be an instance of exactly the
+	 *            class that this entry represents.
+	 * 
+	 * @return True if the object was pooled, false if the pool was full or
+	 *         pooling is disabled
+	 */
+	public boolean release(final MGenBase object) {
+		if (m_pool != null) {
+			if (object.getClass() != m_cls)
+				throw new IllegalArgumentException("Cannot release an object of "
+						+ object.getClass() + " to the pool of " + m_clsName);
+			object._reset();
+			synchronized (this) {
+				final MGenBase[] pool = m_pool;
+				if (pool != null && m_nPooled < pool.length) {
+					pool[m_nPooled++] = object;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Enables or disables pooling of instances of the class that this entry
+	 * represents. Pooling is disabled by default. Changing the capacity drops
+	 * all currently pooled instances.
+	 * 
+	 * @param capacity
+	 *            The maximum number of instances to keep pooled, or 0 to
+	 *            disable pooling
+	 */
+	public synchronized void setPoolCapacity(final int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Negative pool capacity: "
+					+ capacity);
+		m_pool = capacity > 0 ? new MGenBase[capacity] : null;
+		m_nPooled = 0;
+	}
+
+	/**
+	 * A method for getting the number of instances currently pooled by this
+	 * entry.
+	 * 
+	 * @return The number of instances currently pooled by this entry.
+	 */
+	public synchronized int nPooled() {
+		return m_nPooled;
+	}
+
 	/**
 	 * A method for getting the 64 bit type id of this entry.
 	 * 
@@ -104,6 +215,19 @@ public class ClassRegistryEntry {
 		return m_type;
 	}
 
+	/**
+	 * A method for getting the fields of the class of a ClassRegistryEntry,
+	 * as returned by MGenBase._fields(). The fields are looked up on first
+	 * call, by constructing an instance of the class.
+	 * 
+	 * @return The fields of the class, including those of its super classes
+	 */
+	public Field[] fields() {
+		if (m_fields == null)
+			m_fields = construct()._fields();
+		return m_fields;
+	}
+
 	/**
 	 * A way to determine if this ClassRegistryEntry represents a sub class of
 	 * the provided 64 bit type id. This is useful when reading objects from
@@ -117,6 +241,54 @@ public class ClassRegistryEntry {
 	 *         typeId.
 	 */
 	public boolean isInstanceOfTypeId(final long typeId) {
+		if (typeId == m_typeId)
+			return true;
+		if (m_registry == null)
+			return hasTypeIdInHierarchy(typeId);
+		final ClassRegistryEntry base = m_registry.getById(typeId);
+		return base != null && isSubTypeOf(base);
+	}
+
+	/**
+	 * A way to determine if this ClassRegistryEntry represents the same class
+	 * as, or a sub class of, another entry of the same class registry. This is
+	 * a single lookup in a precomputed bitset of super type ordinals.
+	 * 
+	 * @param base
+	 *            The entry of the potential base class
+	 * 
+	 * @return If this class is the same or a subclass as that represented by
+	 *         base.
+	 */
+	public boolean isSubTypeOf(final ClassRegistryEntry base) {
+		final int i = base.m_ordinal >>> 6;
+		return i < m_superOrdinals.length
+				&& (m_superOrdinals[i] & (1L << base.m_ordinal)) != 0;
+	}
+
+	/**
+	 * A method for getting the ordinal of this entry in its class registry.
+	 * Ordinals are dense, ranging from 0 to ClassRegistryBase.nEntries()-1, and
+	 * can be used to index arrays of per class data.
+	 * 
+	 * @return The ordinal of this entry, or -1 if it was created without one
+	 *         and has not yet been added to a class registry.
+	 */
+	public int ordinal() {
+		return m_ordinal;
+	}
+
+	/**
+	 * Internal method for checking if a type id is among the type ids of this
+	 * entry's class hierarchy.
+	 * 
+	 * @param typeId
+	 *            The 64 bit type id to look for
+	 * 
+	 * @return If the type id is among the type ids of this entry's class
+	 *         hierarchy.
+	 */
+	boolean hasTypeIdInHierarchy(final long typeId) {
 		for (int i = m_typeIds.length - 1; i >= 0; i--) {
 			if (m_typeIds[i] == typeId) {
 				return true;
@@ -125,6 +297,41 @@ public class ClassRegistryEntry {
 		return false;
 	}
 
+	/**
+	 * Internal method called by a class registry when this entry is added to
+	 * it. Generated class registries share their (static) entries between
+	 * instances, so the ordinal is only assigned the first time.
+	 * 
+	 * @param registry
+	 *            The class registry this entry is added to
+	 * 
+	 * @param ordinal
+	 *            The ordinal to assign, if this entry does not have one
+	 * 
+	 * @return The ordinal of this entry
+	 */
+	synchronized int register(final ClassRegistryBase registry, final int ordinal) {
+		if (m_registry == null)
+			m_registry = registry;
+		if (m_ordinal < 0)
+			m_ordinal = ordinal;
+		return m_ordinal;
+	}
+
+	/**
+	 * Internal method called by the class registry for marking an entry of
+	 * the registry as the same class as, or a super class of, this entry.
+	 * 
+	 * @param ordinal
+	 *            The ordinal of the super class entry
+	 */
+	synchronized void addSuperOrdinal(final int ordinal) {
+		final int i = ordinal >>> 6;
+		if (i >= m_superOrdinals.length)
+			m_superOrdinals = Arrays.copyOf(m_superOrdinals, i + 1);
+		m_superOrdinals[i] |= 1L << ordinal;
+	}
+
 	/**
 	 * Internal convenience method for finding a class by name without checked
 	 * exceptions.
@@ -148,5 +355,11 @@ public class ClassRegistryEntry {
 	private final String m_clsName;
 	private final Ctor m_ctor;
 	private final RuntimeClassType m_type;
+	private Field[] m_fields;
+	private volatile MGenBase[] m_pool;
+	private ClassRegistryBase m_registry;
+	private int m_ordinal;
+	private long[] m_superOrdinals = new long[0];
+	private int m_nPooled;
 
 }
\ No newline at end of file
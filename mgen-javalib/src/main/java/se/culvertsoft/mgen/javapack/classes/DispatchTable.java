@@ -0,0 +1,138 @@
+package se.culvertsoft.mgen.javapack.classes;
+
+import java.util.Arrays;
+
+/**
+ * An array-of-handlers alternative to generated Dispatchers. Handlers of any
+ * type are registered per MGen class, and looked up by the class registry
+ * ordinal of an object (see MGenBase._typeOrdinal()). Objects of classes
+ * without a registered handler fall back to the handler of their closest
+ * super class that has one, or to the default handler. The fallback chain is
+ * precomputed when handlers are registered, so lookups are a single array
+ * access. Ordinals are only unique within a class registry, so objects of
+ * classes from other registries are instead looked up by their type ids.
+ *
+ * DispatchTable objects are not thread safe while handlers are being
+ * registered, but lookups may be made concurrently once all handlers are
+ * registered.
+ *
+ * @param <H>
+ *            The type of handlers
+ */
+public class DispatchTable<H> {
+
+	/**
+	 * Creates a new DispatchTable with no handlers registered.
+	 *
+	 * @param classRegistry
+	 *            The class registry generated together with the classes to
+	 *            dispatch
+	 */
+	public DispatchTable(final ClassRegistryBase classRegistry) {
+		m_clsReg = classRegistry;
+		m_handlers = new Object[classRegistry.nEntries()];
+		m_resolved = new Object[classRegistry.nEntries()];
+		m_typeIds = new long[classRegistry.nEntries()];
+		for (int ordinal = 0; ordinal < m_typeIds.length; ordinal++) {
+			final ClassRegistryEntry entry = classRegistry.getByOrdinal(ordinal);
+			if (entry != null)
+				m_typeIds[ordinal] = entry.typeId();
+		}
+	}
+
+	/**
+	 * Registers a handler for a class and, unless they have handlers of their
+	 * own, its sub classes.
+	 *
+	 * @param cls
+	 *            The class to register the handler for
+	 *
+	 * @param handler
+	 *            The handler, or null to remove the handler of the class
+	 *
+	 * @return This DispatchTable
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the class is not in the class registry
+	 */
+	public DispatchTable<H> put(
+			final Class<? extends MGenBase> cls,
+			final H handler) {
+		final ClassRegistryEntry entry = m_clsReg.getByClass(cls);
+		if (entry == null)
+			throw new IllegalArgumentException(cls
+					+ " is not in the class registry");
+		m_handlers[entry.ordinal()] = handler;
+		resolve();
+		return this;
+	}
+
+	/**
+	 * Sets the handler to return for null objects, objects of unknown classes
+	 * and objects for which no handler of their class hierarchy is registered.
+	 *
+	 * @param handler
+	 *            The default handler
+	 *
+	 * @return This DispatchTable
+	 */
+	public DispatchTable<H> setDefault(final H handler) {
+		m_default = handler;
+		resolve();
+		return this;
+	}
+
+	/**
+	 * Gets the handler for an object.
+	 *
+	 * @param o
+	 *            The object to get the handler for
+	 *
+	 * @return The handler registered for the class of the object, or for its
+	 *         closest super class with a handler, or else the default handler
+	 */
+	@SuppressWarnings("unchecked")
+	public H get(final MGenBase o) {
+		if (o == null)
+			return m_default;
+		final int ordinal = o._typeOrdinal();
+		if (ordinal >= 0 && ordinal < m_resolved.length
+				&& m_typeIds[ordinal] == o._typeId())
+			return (H) m_resolved[ordinal];
+		final long[] typeIds = o._typeIds();
+		for (int i = typeIds.length - 1; i >= 0; i--) {
+			final ClassRegistryEntry base = m_clsReg.getById(typeIds[i]);
+			if (base != null)
+				return (H) m_resolved[base.ordinal()];
+		}
+		return m_default;
+	}
+
+	/**
+	 * Internal method for precomputing the handler of each class, walking up
+	 * the class hierarchy until a registered handler is found.
+	 */
+	private void resolve() {
+		Arrays.fill(m_resolved, m_default);
+		for (int ordinal = 0; ordinal < m_resolved.length; ordinal++) {
+			final ClassRegistryEntry entry = m_clsReg.getByOrdinal(ordinal);
+			if (entry == null)
+				continue;
+			final long[] typeIds = entry.typeIds();
+			for (int i = typeIds.length - 1; i >= 0; i--) {
+				final ClassRegistryEntry base = m_clsReg.getById(typeIds[i]);
+				if (base != null && m_handlers[base.ordinal()] != null) {
+					m_resolved[ordinal] = m_handlers[base.ordinal()];
+					break;
+				}
+			}
+		}
+	}
+
+	private final ClassRegistryBase m_clsReg;
+	private final Object[] m_handlers;
+	private final Object[] m_resolved;
+	private final long[] m_typeIds;
+	private H m_default;
+
+}
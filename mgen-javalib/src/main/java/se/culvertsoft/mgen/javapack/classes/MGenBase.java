@@ -5,6 +5,8 @@ import java.io.IOException;
 import se.culvertsoft.mgen.api.model.Field;
 import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth;
 import se.culvertsoft.mgen.javapack.metadata.FieldVisitSelection;
+import se.culvertsoft.mgen.javapack.serialization.BinaryReader;
+import se.culvertsoft.mgen.javapack.serialization.BinaryWriter;
 import se.culvertsoft.mgen.javapack.serialization.FieldVisitor;
 import se.culvertsoft.mgen.javapack.serialization.Reader;
 
@@ -118,6 +120,16 @@ public abstract class MGenBase {
 	 */
 	public abstract String[] _typeNames();
 
+	/**
+	 * Returns the ordinal of this object's class in the class registry
+	 * generated together with it. Ordinals are dense, ranging from 0 to the
+	 * number of classes in the class registry - 1, and are what generated
+	 * Dispatchers switch on.
+	 * 
+	 * @return The class registry ordinal of this object's class
+	 */
+	public abstract int _typeOrdinal();
+
 	/**
 	 * Gets Field metadata objects describing the fields of the class of this
 	 * object.
@@ -199,6 +211,17 @@ public abstract class MGenBase {
 	 */
 	public abstract MGenBase _setAllFieldsSet(final boolean state, final FieldSetDepth depth);
 
+	/**
+	 * Resets this object to its default constructed state: All fields are
+	 * assigned their default values and their is-set flags are restored, as if
+	 * the object had just been created with its default constructor. Used when
+	 * reusing objects for reading (see Reader.readObject(T reuse)) and when
+	 * pooling objects (see ClassRegistryEntry.release(..)).
+	 * 
+	 * @return this object.
+	 */
+	public abstract MGenBase _reset();
+
 	/**
 	 * Checks that all required fields on this object are set.
 	 * 
@@ -259,4 +282,173 @@ public abstract class MGenBase {
 			final Object context,
 			final Reader reader) throws IOException;
 
+	/**
+	 * Specialized method for writing this object in the MGen binary wire
+	 * format. Only implemented by classes generated with the
+	 * generate_binary_codecs generator setting. Such classes write their set
+	 * non-transient fields with precomputed field headers and direct calls to
+	 * the BinaryWriter, instead of through _accept(..) and the FieldVisitor
+	 * interface. The written data is identical to that of _accept(..).
+	 * 
+	 * @param writer
+	 *            The BinaryWriter to write this object to
+	 * 
+	 * @return True if this object was written, false if this class has no
+	 *         generated binary codec (the default)
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public boolean _writeBinary(final BinaryWriter writer) throws IOException {
+		return false;
+	}
+
+	/**
+	 * Specialized method for reading the fields of this object from the MGen
+	 * binary wire format. Only implemented by classes generated with the
+	 * generate_binary_codecs generator setting. Such classes match field ids
+	 * and binary type tags in a single switch and read values with direct
+	 * calls to the BinaryReader, instead of through _readField(..) and the
+	 * Reader interface.
+	 * 
+	 * @param reader
+	 *            The BinaryReader to read fields from
+	 * 
+	 * @param nFields
+	 *            The number of fields to read
+	 * 
+	 * @return True if the fields were read, false if this class has no
+	 *         generated binary codec (the default), in which case nothing has
+	 *         been read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public boolean _readBinary(final BinaryReader reader, final int nFields)
+			throws IOException {
+		return false;
+	}
+
+	/**
+	 * Checks if a field has changed since _clearDirty() was last called. New
+	 * objects have all their set fields dirty. Used for writing only what has
+	 * changed (see DeltaWriter). Only classes generated with the
+	 * generate_dirty_tracking generator setting track changes, by marking
+	 * fields dirty in their setters. Other classes consider all their set
+	 * fields dirty, so that deltas of them contain the full object.
+	 * 
+	 * Fields that are not set are never dirty - see _wasFieldUnset(..) for
+	 * fields that were unset. Changes made to collections in place are not
+	 * tracked - set the collection again to mark it dirty.
+	 * 
+	 * @param field
+	 *            The field to check
+	 * 
+	 * @param depth
+	 *            SHALLOW to only check if the field itself was set, or DEEP
+	 *            to also check for changes within the MGen object held by the
+	 *            field
+	 * 
+	 * @return If the field is dirty
+	 */
+	public boolean _isFieldDirty(final Field field, final FieldSetDepth depth) {
+		return _isFieldSet(field, FieldSetDepth.SHALLOW);
+	}
+
+	/**
+	 * Checks if a field was unset since _clearDirty() was last called, and is
+	 * still not set. Deltas list such fields, so that they are unset when the
+	 * delta is applied (see DeltaWriter). Only classes generated with the
+	 * generate_dirty_tracking generator setting track unset fields.
+	 * 
+	 * @param field
+	 *            The field to check
+	 * 
+	 * @return If the field was unset
+	 */
+	public boolean _wasFieldUnset(final Field field) {
+		return false;
+	}
+
+	/**
+	 * Checks if any non-transient field of this object, or of MGen objects
+	 * held by its fields, is dirty or was unset. See _isFieldDirty(..) and
+	 * _wasFieldUnset(..).
+	 * 
+	 * @return If this object has changed
+	 */
+	public boolean _isDirty() {
+		for (final Field field : _fields()) {
+			if (!field.isTransient()
+					&& (_isFieldDirty(field, FieldSetDepth.DEEP) || _wasFieldUnset(field)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the non-transient fields of this object that are dirty, checked
+	 * with FieldSetDepth.DEEP. See _isFieldDirty(..).
+	 * 
+	 * @return The number of dirty fields
+	 */
+	public int _nFieldsDirty() {
+		int out = 0;
+		for (final Field field : _fields()) {
+			if (!field.isTransient() && _isFieldDirty(field, FieldSetDepth.DEEP))
+				out++;
+		}
+		return out;
+	}
+
+	/**
+	 * Marks all fields of this object, and of MGen objects held by its
+	 * fields, as not dirty. Does nothing for classes generated without the
+	 * generate_dirty_tracking generator setting.
+	 * 
+	 * @return This object
+	 */
+	public MGenBase _clearDirty() {
+		return this;
+	}
+
+	/**
+	 * Method called while applying a delta to this object (see
+	 * BinaryReader.readPatch(..)). Classes generated with the
+	 * generate_dirty_tracking generator setting apply deltas of MGen object
+	 * fields to the objects already held by the fields. By default, fields
+	 * are read as with _readField(..), replacing any previous values.
+	 * 
+	 * @param fieldId
+	 *            The id of the field that is being read
+	 * 
+	 * @param reader
+	 *            The BinaryReader to read the field from
+	 * 
+	 * @return True if the field was found
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public boolean _readPatchField(final short fieldId, final BinaryReader reader)
+			throws IOException {
+		return _readField(fieldId, null, reader);
+	}
+
+	/**
+	 * Method called while applying a delta to this object (see
+	 * BinaryReader.readPatch(..)), for fields that were unset. Only classes
+	 * generated with the generate_dirty_tracking generator setting unset the
+	 * field - by default, this does nothing.
+	 * 
+	 * @param fieldId
+	 *            The id of the field to unset
+	 * 
+	 * @return True if the field was found and unset
+	 */
+	public boolean _unsetPatchField(final short fieldId) {
+		return false;
+	}
+
 }
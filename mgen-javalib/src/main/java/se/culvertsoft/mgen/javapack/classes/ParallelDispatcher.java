@@ -0,0 +1,682 @@
+package se.culvertsoft.mgen.javapack.classes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.javapack.metadata.FieldVisitSelection;
+import se.culvertsoft.mgen.javapack.serialization.FieldVisitor;
+
+/**
+ * A multi-threaded dispatcher. Objects are spread across a fixed number of
+ * worker threads by a key extracted from each object, and each worker
+ * dispatches its objects in the order they were submitted. Objects with the
+ * same key are therefore always handled by the same worker, in order.
+ *
+ * Each worker has a queue bounded by the number of queued objects. When a
+ * queue is full, dispatch(..) blocks until the worker has caught up, which
+ * applies backpressure to producers. dispatchAll(..) hands off a whole batch
+ * with a single queue operation per worker.
+ *
+ * Objects are handed to a Target, normally created from a generated Handler
+ * with the generated Dispatcher.target(handler). Every worker has its own
+ * Target, so handlers that are not thread safe can be used, by providing a
+ * TargetFactory that creates one handler per worker.
+ *
+ * Exceptions thrown by targets are passed to the uncaught exception handler
+ * of the worker thread, and the worker continues with the next object. If a
+ * worker thread dies (e.g. is interrupted), objects queued for it are lost,
+ * and dispatching to it throws an IllegalStateException, also to producers
+ * already waiting for queue space.
+ */
+public class ParallelDispatcher {
+
+	/**
+	 * The destination of the objects dispatched by a worker.
+	 */
+	public interface Target {
+		void dispatch(final MGenBase o);
+	}
+
+	/**
+	 * Creates one Target per worker.
+	 */
+	public interface TargetFactory {
+		Target create(final int worker);
+	}
+
+	/**
+	 * Extracts the key that decides which worker an object is dispatched to.
+	 */
+	public interface KeyExtractor {
+		long key(final MGenBase o);
+	}
+
+	/**
+	 * Creates a KeyExtractor reading the value of a field, by name. Objects
+	 * that do not have the field set, or do not have it at all, get the key 0.
+	 * This visits the fields of each object, so a hand-written KeyExtractor
+	 * calling the getter of the field directly is faster.
+	 *
+	 * @param fieldName
+	 *            The name of the field to use as key
+	 *
+	 * @return The new KeyExtractor
+	 */
+	public static KeyExtractor fieldKey(final String fieldName) {
+		return new FieldKeyExtractor(fieldName);
+	}
+
+	/**
+	 * Creates a new ParallelDispatcher with the same Target for all workers.
+	 * The Target must be thread safe.
+	 *
+	 * @param target
+	 *            The target of all workers
+	 *
+	 * @param nWorkers
+	 *            The number of worker threads
+	 *
+	 * @param queueCapacity
+	 *            The maximum number of queued objects per worker. Batches
+	 *            larger than this are queued when the queue is empty.
+	 *
+	 * @param keyExtractor
+	 *            The KeyExtractor deciding which worker handles an object
+	 */
+	public ParallelDispatcher(
+			final Target target,
+			final int nWorkers,
+			final int queueCapacity,
+			final KeyExtractor keyExtractor) {
+		this(
+				sharedTarget(target),
+				nWorkers,
+				queueCapacity,
+				keyExtractor,
+				Executors.defaultThreadFactory());
+	}
+
+	/**
+	 * Creates a new ParallelDispatcher and starts its worker threads.
+	 *
+	 * @param targetFactory
+	 *            Creates the target of each worker
+	 *
+	 * @param nWorkers
+	 *            The number of worker threads
+	 *
+	 * @param queueCapacity
+	 *            The maximum number of queued objects per worker. Batches
+	 *            larger than this are queued when the queue is empty.
+	 *
+	 * @param keyExtractor
+	 *            The KeyExtractor deciding which worker handles an object
+	 *
+	 * @param threadFactory
+	 *            Creates the worker threads. May for example create virtual
+	 *            threads, or daemon threads.
+	 */
+	public ParallelDispatcher(
+			final TargetFactory targetFactory,
+			final int nWorkers,
+			final int queueCapacity,
+			final KeyExtractor keyExtractor,
+			final ThreadFactory threadFactory) {
+
+		if (nWorkers <= 0)
+			throw new IllegalArgumentException("nWorkers must be > 0");
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("queueCapacity must be > 0");
+
+		m_keyExtractor = keyExtractor;
+		m_workers = new Worker[nWorkers];
+		for (int i = 0; i < nWorkers; i++)
+			m_workers[i] = new Worker(targetFactory.create(i), queueCapacity);
+		for (int i = 0; i < nWorkers; i++) {
+			m_workers[i].m_thread = threadFactory.newThread(m_workers[i]);
+			m_workers[i].m_thread.start();
+		}
+	}
+
+	/**
+	 * Queues an object for dispatch by the worker of its key. Blocks while the
+	 * queue of that worker is full.
+	 *
+	 * @param o
+	 *            The object to dispatch
+	 *
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for queue space
+	 *
+	 * @throws IllegalStateException
+	 *             If shut down, or if the worker thread died
+	 */
+	public void dispatch(final MGenBase o) throws InterruptedException {
+		workerOf(o).put(o);
+	}
+
+	/**
+	 * Queues an object for dispatch by the worker of its key, unless the queue
+	 * of that worker is full.
+	 *
+	 * @param o
+	 *            The object to dispatch
+	 *
+	 * @return False if the queue was full and the object was not queued
+	 *
+	 * @throws IllegalStateException
+	 *             If shut down, or if the worker thread died
+	 */
+	public boolean tryDispatch(final MGenBase o) {
+		return workerOf(o).offer(o);
+	}
+
+	/**
+	 * Queues a batch of objects. The batch is split per worker, keeping the
+	 * order of objects with the same key, and each part is handed to its
+	 * worker with a single queue operation. Blocks until there is queue space
+	 * for all parts, and only then queues them, so nothing is queued if
+	 * interrupted while waiting.
+	 *
+	 * @param objects
+	 *            The objects to dispatch
+	 *
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for queue space
+	 *
+	 * @throws IllegalStateException
+	 *             If shut down, or if a worker thread died
+	 */
+	public void dispatchAll(final List<? extends MGenBase> objects)
+			throws InterruptedException {
+
+		final int n = m_workers.length;
+		final int[] workerIndices = new int[objects.size()];
+		final int[] counts = new int[n];
+
+		for (int i = 0; i < workerIndices.length; i++) {
+			final int w = workerIndex(objects.get(i));
+			workerIndices[i] = w;
+			counts[w]++;
+		}
+
+		final MGenBase[][] batches = new MGenBase[n][];
+		for (int w = 0; w < n; w++) {
+			if (counts[w] > 0)
+				batches[w] = new MGenBase[counts[w]];
+			counts[w] = 0;
+		}
+
+		for (int i = 0; i < workerIndices.length; i++) {
+			final int w = workerIndices[i];
+			batches[w][counts[w]++] = objects.get(i);
+		}
+
+		// Reserve space on all workers before queueing anything. Reserving is
+		// serialized, so two batches never wait for space held by each other.
+		final int[] permits = new int[n];
+		synchronized (m_reserveLock) {
+			int w = 0;
+			try {
+				for (; w < n; w++) {
+					if (batches[w] != null) {
+						permits[w] = m_workers[w].permitsOf(batches[w]);
+						m_workers[w].acquire(permits[w]);
+					}
+				}
+			} finally {
+				if (w < n)
+					release(permits, 0, w);
+			}
+		}
+
+		for (int w = 0; w < n; w++) {
+			if (batches[w] != null) {
+				try {
+					m_workers[w].enqueue(batches[w], permits[w]);
+				} catch (final IllegalStateException e) {
+					release(permits, w + 1, n);
+					throw e;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Stops accepting new objects and lets the workers finish all queued
+	 * objects before they stop. Dispatching objects after this call throws an
+	 * IllegalStateException. Does not wait for the workers to stop, and never
+	 * blocks.
+	 */
+	public synchronized void shutdown() {
+		for (final Worker w : m_workers)
+			w.stop();
+	}
+
+	/**
+	 * Waits for the workers to stop after shutdown().
+	 *
+	 * @param timeout
+	 *            The maximum time to wait
+	 *
+	 * @param unit
+	 *            The unit of the timeout
+	 *
+	 * @return True if all workers stopped, false if the timeout elapsed
+	 *
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	public boolean awaitTermination(final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (final Worker w : m_workers) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 && w.m_thread.isAlive())
+				return false;
+			TimeUnit.NANOSECONDS.timedJoin(w.m_thread, Math.max(remaining, 1));
+			if (w.m_thread.isAlive())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of worker threads.
+	 *
+	 * @return The number of worker threads
+	 */
+	public int nWorkers() {
+		return m_workers.length;
+	}
+
+	/**
+	 * Metrics: Gets the number of objects queued for a worker, including the
+	 * one it is dispatching.
+	 *
+	 * @param worker
+	 *            The index of the worker
+	 *
+	 * @return The number of objects queued for the worker
+	 */
+	public int queueSize(final int worker) {
+		final Worker w = m_workers[worker];
+		return (int) (w.m_nSubmitted.get() - w.m_nDispatched.get());
+	}
+
+	/**
+	 * Metrics: Gets the number of objects submitted to this dispatcher.
+	 *
+	 * @return The number of objects submitted
+	 */
+	public long nSubmitted() {
+		long out = 0;
+		for (final Worker w : m_workers)
+			out += w.m_nSubmitted.get();
+		return out;
+	}
+
+	/**
+	 * Metrics: Gets the number of objects dispatched by a worker.
+	 *
+	 * @param worker
+	 *            The index of the worker
+	 *
+	 * @return The number of objects dispatched by the worker
+	 */
+	public long nDispatched(final int worker) {
+		return m_workers[worker].m_nDispatched.get();
+	}
+
+	/**
+	 * Metrics: Gets the number of objects dispatched by all workers.
+	 *
+	 * @return The number of objects dispatched
+	 */
+	public long nDispatched() {
+		long out = 0;
+		for (final Worker w : m_workers)
+			out += w.m_nDispatched.get();
+		return out;
+	}
+
+	/**
+	 * Metrics: Gets the number of objects for which the target threw an
+	 * exception. These are included in nDispatched().
+	 *
+	 * @return The number of failed objects
+	 */
+	public long nFailed() {
+		long out = 0;
+		for (final Worker w : m_workers)
+			out += w.m_nFailed.get();
+		return out;
+	}
+
+	/**
+	 * Metrics: Gets the number of times a producer found a worker queue full,
+	 * and had to wait (dispatch/dispatchAll) or was rejected (tryDispatch).
+	 *
+	 * @return The number of times a worker queue was full
+	 */
+	public long nQueueFull() {
+		long out = 0;
+		for (final Worker w : m_workers)
+			out += w.m_nQueueFull.get();
+		return out;
+	}
+
+	private Worker workerOf(final MGenBase o) {
+		return m_workers[workerIndex(o)];
+	}
+
+	private int workerIndex(final MGenBase o) {
+		long h = m_keyExtractor.key(o) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) ((h & 0x7FFFFFFFL) % m_workers.length);
+	}
+
+	private void release(final int[] permits, final int from, final int to) {
+		for (int w = from; w < to; w++) {
+			if (permits[w] > 0)
+				m_workers[w].release(permits[w]);
+		}
+	}
+
+	private static TargetFactory sharedTarget(final Target target) {
+		return new TargetFactory() {
+			@Override
+			public Target create(final int worker) {
+				return target;
+			}
+		};
+	}
+
+	/**
+	 * A worker thread with its queue. Queue elements are single MGenBase
+	 * objects or MGenBase[] batches. The queue itself is unbounded: producers
+	 * first take permits from m_space, one per object, and the worker returns
+	 * them once the objects are dispatched. Waiting for permits is done
+	 * without holding the lock of the worker. Objects are queued and STOP is
+	 * queued under that lock, so nothing is queued after STOP.
+	 */
+	private static final class Worker implements Runnable {
+
+		private final Target m_target;
+		private final int m_capacity;
+		private final Semaphore m_space;
+		private final LinkedBlockingQueue<Object> m_queue = new LinkedBlockingQueue<Object>();
+		private final AtomicLong m_nSubmitted = new AtomicLong();
+		private final AtomicLong m_nDispatched = new AtomicLong();
+		private final AtomicLong m_nFailed = new AtomicLong();
+		private final AtomicLong m_nQueueFull = new AtomicLong();
+		private Thread m_thread;
+		private volatile boolean m_stopped;
+		private volatile boolean m_dead;
+
+		Worker(final Target target, final int queueCapacity) {
+			m_target = target;
+			m_capacity = queueCapacity;
+			m_space = new Semaphore(queueCapacity);
+		}
+
+		int permitsOf(final Object item) {
+			return item instanceof MGenBase[] ? Math.min(((MGenBase[]) item).length, m_capacity) : 1;
+		}
+
+		void put(final Object item) throws InterruptedException {
+			final int permits = permitsOf(item);
+			acquire(permits);
+			enqueue(item, permits);
+		}
+
+		boolean offer(final MGenBase o) {
+			ensureRunning();
+			if (m_space.tryAcquire()) {
+				enqueue(o, 1);
+				return true;
+			} else {
+				m_nQueueFull.incrementAndGet();
+				return false;
+			}
+		}
+
+		void acquire(final int permits) throws InterruptedException {
+			ensureRunning();
+			if (!m_space.tryAcquire(permits)) {
+				m_nQueueFull.incrementAndGet();
+				m_space.acquire(permits);
+			}
+		}
+
+		void release(final int permits) {
+			m_space.release(permits);
+		}
+
+		synchronized void enqueue(final Object item, final int permits) {
+			if (m_stopped || m_dead) {
+				m_space.release(permits);
+				ensureRunning();
+			}
+			m_queue.add(item);
+			m_nSubmitted.addAndGet(item instanceof MGenBase[] ? ((MGenBase[]) item).length : 1);
+		}
+
+		synchronized void stop() {
+			if (!m_stopped) {
+				m_queue.add(STOP);
+				m_stopped = true;
+			}
+		}
+
+		private synchronized void die() {
+			m_dead = true;
+			// Wakes producers waiting for space. Each of them returns its
+			// permits when failing to enqueue, which wakes the next one.
+			m_space.release(m_capacity);
+		}
+
+		private void ensureRunning() {
+			if (m_dead)
+				throw new IllegalStateException("ParallelDispatcher worker thread died");
+			if (m_stopped)
+				throw new IllegalStateException("ParallelDispatcher is shut down");
+		}
+
+		@Override
+		public void run() {
+			final ArrayList<Object> items = new ArrayList<Object>();
+			boolean stopped = false;
+			try {
+				while (!stopped) {
+					items.add(m_queue.take());
+					m_queue.drainTo(items);
+					for (final Object item : items) {
+						if (item == STOP) {
+							stopped = true;
+							break;
+						}
+						if (item instanceof MGenBase[]) {
+							for (final MGenBase o : (MGenBase[]) item)
+								dispatch(o);
+						} else {
+							dispatch((MGenBase) item);
+						}
+						m_space.release(permitsOf(item));
+					}
+					items.clear();
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (!stopped)
+					die();
+			}
+		}
+
+		private void dispatch(final MGenBase o) {
+			try {
+				m_target.dispatch(o);
+			} catch (final Throwable e) {
+				m_nFailed.incrementAndGet();
+				final Thread t = Thread.currentThread();
+				t.getUncaughtExceptionHandler().uncaughtException(t, e);
+			}
+			m_nDispatched.incrementAndGet();
+		}
+
+	}
+
+	/**
+	 * KeyExtractor visiting the fields of objects to find a field by name. The
+	 * field is looked up once per class, and then recognized by identity.
+	 */
+	private static final class FieldKeyExtractor implements KeyExtractor {
+
+		private final String m_fieldName;
+		private final ThreadLocal<KeyVisitor> m_visitors = new ThreadLocal<KeyVisitor>() {
+			@Override
+			protected KeyVisitor initialValue() {
+				return new KeyVisitor(m_fieldName);
+			}
+		};
+
+		FieldKeyExtractor(final String fieldName) {
+			m_fieldName = fieldName;
+		}
+
+		@Override
+		public long key(final MGenBase o) {
+			if (o == null)
+				return 0;
+			final KeyVisitor visitor = m_visitors.get();
+			if (!visitor.select(o))
+				return 0;
+			try {
+				o._accept(visitor, FieldVisitSelection.ALL_SET);
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+			return visitor.m_key;
+		}
+
+	}
+
+	private static final class KeyVisitor implements FieldVisitor {
+
+		private final String m_fieldName;
+		private final HashMap<Class<?>, Field> m_fields = new HashMap<Class<?>, Field>();
+		private Field m_field;
+		private long m_key;
+
+		KeyVisitor(final String fieldName) {
+			m_fieldName = fieldName;
+		}
+
+		/**
+		 * Prepares for visiting an object. Returns false if the object does
+		 * not have the key field.
+		 */
+		boolean select(final MGenBase o) {
+			final Class<?> cls = o.getClass();
+			Field field = m_fields.get(cls);
+			if (field == null && !m_fields.containsKey(cls)) {
+				field = o._fieldByName(m_fieldName);
+				m_fields.put(cls, field);
+			}
+			m_field = field;
+			m_key = 0;
+			return field != null;
+		}
+
+		private boolean isKey(final Field field) {
+			return field == m_field;
+		}
+
+		@Override
+		public void beginVisit(final MGenBase object, final int nFields) {
+		}
+
+		@Override
+		public void visit(final boolean b, final Field field) {
+			if (isKey(field))
+				m_key = b ? 1 : 0;
+		}
+
+		@Override
+		public void visit(final byte b, final Field field) {
+			if (isKey(field))
+				m_key = b;
+		}
+
+		@Override
+		public void visit(final short s, final Field field) {
+			if (isKey(field))
+				m_key = s;
+		}
+
+		@Override
+		public void visit(final int i, final Field field) {
+			if (isKey(field))
+				m_key = i;
+		}
+
+		@Override
+		public void visit(final long l, final Field field) {
+			if (isKey(field))
+				m_key = l;
+		}
+
+		@Override
+		public void visit(final float f, final Field field) {
+			if (isKey(field))
+				m_key = Float.floatToIntBits(f);
+		}
+
+		@Override
+		public void visit(final double d, final Field field) {
+			if (isKey(field))
+				m_key = Double.doubleToLongBits(d);
+		}
+
+		@Override
+		public void visit(final String s, final Field field) {
+			if (isKey(field) && s != null)
+				m_key = s.hashCode();
+		}
+
+		@Override
+		public void visit(final Enum<?> e, final Field field) {
+			if (isKey(field) && e != null)
+				m_key = e.ordinal();
+		}
+
+		@Override
+		public void visit(final Object o, final Field field) {
+			if (isKey(field) && o != null)
+				m_key = o.hashCode();
+		}
+
+		@Override
+		public void endVisit() {
+		}
+
+	}
+
+	private static final Object STOP = new Object();
+
+	private final KeyExtractor m_keyExtractor;
+	private final Worker[] m_workers;
+	private final Object m_reserveLock = new Object();
+
+}
@@ -8,5 +8,12 @@ package se.culvertsoft.mgen.javapack.metadata;
 public enum FieldVisitSelection {
 	ALL,
 	ALL_SET,
-	ALL_SET_NONTRANSIENT
+	ALL_SET_NONTRANSIENT,
+
+	/**
+	 * Only non-transient fields that are dirty, see MGenBase._isFieldDirty(..).
+	 * Classes generated without the generate_dirty_tracking setting visit
+	 * all set non-transient fields instead.
+	 */
+	DIRTY
 }
@@ -0,0 +1,75 @@
+package se.culvertsoft.mgen.javapack.metadata;
+
+import se.culvertsoft.mgen.api.model.ListType;
+import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.LongList;
+
+/**
+ * Metadata for list fields stored in primitive-backed lists (IntList,
+ * LongList or DoubleList) instead of ArrayLists. Emitted by the java
+ * generator for list[int32], list[int64] and list[float64] when the
+ * generator setting primitive_collections is enabled, and used by readers to
+ * decide which list class to instantiate.
+ */
+public class PrimitiveListType extends ListType {
+
+	/**
+	 * Creates a new PrimitiveListType
+	 * 
+	 * @param elementType
+	 *            The element type of the list. Must be int32, int64 or float64.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If there is no primitive list for the element type
+	 */
+	public PrimitiveListType(final Type elementType) {
+		super(elementType);
+		m_cls = listClassOf(elementType);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Class<?> classOf() {
+		return m_cls;
+	}
+
+	/**
+	 * Checks if there is a primitive-backed list class for an element type
+	 * 
+	 * @param elementType
+	 *            The element type to check
+	 * 
+	 * @return If there is a primitive-backed list class for the element type
+	 */
+	public static boolean isSupported(final Type elementType) {
+		switch (elementType.typeEnum()) {
+		case INT32:
+		case INT64:
+		case FLOAT64:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static Class<?> listClassOf(final Type elementType) {
+		switch (elementType.typeEnum()) {
+		case INT32:
+			return IntList.class;
+		case INT64:
+			return LongList.class;
+		case FLOAT64:
+			return DoubleList.class;
+		default:
+			throw new IllegalArgumentException("No primitive list for element type "
+					+ elementType.fullName());
+		}
+	}
+
+	private final Class<?> m_cls;
+
+}
@@ -0,0 +1,74 @@
+package se.culvertsoft.mgen.javapack.metadata;
+
+import se.culvertsoft.mgen.api.model.MapType;
+import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
+
+/**
+ * Metadata for map fields stored in open addressing maps with primitive keys
+ * (IntObjMap or LongObjMap) instead of HashMaps. Emitted by the java
+ * generator for map[int32, X] and map[int64, X] when the generator setting
+ * primitive_collections is enabled, and used by readers to decide which map
+ * class to instantiate.
+ */
+public class PrimitiveMapType extends MapType {
+
+	/**
+	 * Creates a new PrimitiveMapType
+	 * 
+	 * @param keyType
+	 *            The key type of the map. Must be int32 or int64.
+	 * 
+	 * @param valueType
+	 *            The value type of the map
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If there is no primitive map for the key type
+	 */
+	public PrimitiveMapType(final Type keyType, final Type valueType) {
+		super(keyType, valueType);
+		m_cls = mapClassOf(keyType);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Class<?> classOf() {
+		return m_cls;
+	}
+
+	/**
+	 * Checks if there is a primitive-keyed map class for a key type
+	 * 
+	 * @param keyType
+	 *            The key type to check
+	 * 
+	 * @return If there is a primitive-keyed map class for the key type
+	 */
+	public static boolean isSupported(final Type keyType) {
+		switch (keyType.typeEnum()) {
+		case INT32:
+		case INT64:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static Class<?> mapClassOf(final Type keyType) {
+		switch (keyType.typeEnum()) {
+		case INT32:
+			return IntObjMap.class;
+		case INT64:
+			return LongObjMap.class;
+		default:
+			throw new IllegalArgumentException("No primitive map for key type "
+					+ keyType.fullName());
+		}
+	}
+
+	private final Class<?> m_cls;
+
+}
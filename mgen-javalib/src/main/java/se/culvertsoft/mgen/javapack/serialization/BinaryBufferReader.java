@@ -0,0 +1,442 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.exceptions.StreamCorruptedException;
+
+/**
+ * A BinaryReader that reads the MGen binary wire format directly from a
+ * byte array or a ByteBuffer, instead of through an InputStream. Data is
+ * decoded with an index cursor, so each primitive costs a single bounds check
+ * instead of one virtual InputStream.read() call per byte.
+ *
+ * The wire format is identical to that read by BinaryReader. The ByteBuffer
+ * set as input is never modified - use position() to find out where the
+ * reader stopped. An InputStream can also be set as input, in which case the
+ * reader decodes it the same way as BinaryReader does.
+ */
+public class BinaryBufferReader extends BinaryReader {
+
+	private ByteBuffer m_buffer;
+	private byte[] m_array;
+	private int m_arrayOffset;
+	private int m_pos;
+	private int m_limit;
+	private boolean m_streamInput;
+	private byte[] m_scratch = new byte[STRING_DECODE_BUFFER_SIZE];
+
+	/**
+	 * Creates a new binary buffer reader, wrapping a ByteBuffer and a
+	 * ClassRegistry. Reading starts at the buffer's current position and ends
+	 * at its limit.
+	 *
+	 * @param buffer
+	 *            The data input source.
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 */
+	public BinaryBufferReader(
+			final ByteBuffer buffer,
+			final ClassRegistryBase classRegistry) {
+		super(classRegistry);
+		setInput(buffer);
+	}
+
+	/**
+	 * Creates a new binary buffer reader, wrapping a byte array and a
+	 * ClassRegistry.
+	 *
+	 * @param data
+	 *            The data input source.
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 */
+	public BinaryBufferReader(
+			final byte[] data,
+			final ClassRegistryBase classRegistry) {
+		this(ByteBuffer.wrap(data), classRegistry);
+	}
+
+	/**
+	 * Creates a new binary buffer reader without setting a data input source.
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects.
+	 */
+	public BinaryBufferReader(final ClassRegistryBase classRegistry) {
+		this(EMPTY_BUFFER, classRegistry);
+	}
+
+	/**
+	 * Sets the data input source for this reader. Reading starts at the
+	 * buffer's current position and ends at its limit. The buffer's position
+	 * is not modified by this reader.
+	 *
+	 * @param buffer
+	 *            The new data input source.
+	 *
+	 * @return This reader
+	 */
+	public BinaryBufferReader setInput(final ByteBuffer buffer) {
+		m_buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		m_array = buffer.hasArray() ? buffer.array() : null;
+		m_arrayOffset = buffer.hasArray() ? buffer.arrayOffset() : 0;
+		m_pos = buffer.position();
+		m_limit = buffer.limit();
+		m_streamInput = false;
+		return this;
+	}
+
+	/**
+	 * Sets the data input source for this reader.
+	 *
+	 * @param data
+	 *            The new data input source.
+	 *
+	 * @return This reader
+	 */
+	public BinaryBufferReader setInput(final byte[] data) {
+		return setInput(data, 0, data.length);
+	}
+
+	/**
+	 * Sets the data input source for this reader to a slice of a byte array.
+	 *
+	 * @param data
+	 *            The new data input source.
+	 *
+	 * @param offset
+	 *            The index of the first byte to read
+	 *
+	 * @param length
+	 *            The number of bytes available for reading
+	 *
+	 * @return This reader
+	 */
+	public BinaryBufferReader setInput(
+			final byte[] data,
+			final int offset,
+			final int length) {
+		return setInput(ByteBuffer.wrap(data, offset, length));
+	}
+
+	/**
+	 * Sets an InputStream as data input source for this reader. The stream is
+	 * read the same way as by BinaryReader, and position() and remaining()
+	 * return 0 until a buffer is set as input again.
+	 *
+	 * @param stream
+	 *            The new data input source.
+	 *
+	 * @return This reader
+	 */
+	@Override
+	public BinaryBufferReader setInput(final InputStream stream) {
+		super.setInput(stream);
+		setInput(EMPTY_BUFFER);
+		m_streamInput = true;
+		return this;
+	}
+
+	/**
+	 * Gets the current read position of this reader. The position is an index
+	 * into the ByteBuffer (or byte array) set as data input source.
+	 *
+	 * @return The current read position
+	 */
+	public int position() {
+		return m_pos;
+	}
+
+	/**
+	 * Gets the number of bytes left to read in the data input source.
+	 *
+	 * @return The number of bytes remaining
+	 */
+	public int remaining() {
+		return m_limit - m_pos;
+	}
+
+	/**
+	 * Moves the read position of this reader, e.g. to resume reading at a
+	 * previously recorded position().
+	 *
+	 * @param newPosition
+	 *            The new read position
+	 *
+	 * @return This reader
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the new position is negative or past the end of the data
+	 *             input source
+	 */
+	public BinaryBufferReader position(final int newPosition) {
+		if (newPosition < 0 || newPosition > m_limit)
+			throw new IllegalArgumentException("Position " + newPosition
+					+ " is outside of the input buffer (limit=" + m_limit + ")");
+		m_pos = newPosition;
+		return this;
+	}
+
+	/**
+	 * Resolves the type of the next MGen object from the type ids of its
+	 * header, without decoding the object or moving the read position. Use
+	 * skipObject() to also find the extent of the object.
+	 *
+	 * @return The class registry entry of the next object, or null if the
+	 *         object is null or of unknown type
+	 *
+	 * @throws IOException
+	 *             If the header is incomplete or corrupt
+	 *
+	 * @throws IllegalStateException
+	 *             If an InputStream is set as data input source
+	 */
+	public ClassRegistryEntry peekType() throws IOException {
+		if (m_streamInput)
+			throw new IllegalStateException(
+					"BinaryBufferReader: Cannot peek types in an InputStream");
+		final int start = m_pos;
+		final int typeDictionarySize = typeDictionarySize();
+		try {
+			return readTypeHeader();
+		} finally {
+			m_pos = start;
+			truncateTypeDictionary(typeDictionarySize);
+		}
+	}
+
+	/**
+	 * Reads a single MGen object from a byte array. As for BinaryReader, the
+	 * byte array replaces the data input source of this reader, but it is
+	 * read in place instead of through an InputStream.
+	 *
+	 * @param objData
+	 *            The bytes containing the MGen object.
+	 *
+	 * @return The read Mgen object, or null if it was of unknown type.
+	 *
+	 * @throws IOException
+	 *             If the data is incomplete or corrupt
+	 */
+	@Override
+	public MGenBase readObject(final byte[] objData) throws IOException {
+		return setInput(objData).readObject();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T extends MGenBase> T readObject(
+			final byte[] objData,
+			final Class<T> typ) throws IOException {
+		return setInput(objData).readObject(typ);
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - RAW DATA INPUT
+	 *
+	 ******************************************************************/
+
+	@Override
+	protected byte readRawByte() throws IOException {
+		if (m_streamInput)
+			return super.readRawByte();
+		require(1);
+		return getByte(m_pos++);
+	}
+
+	@Override
+	protected short readRawInt16() throws IOException {
+		if (m_streamInput)
+			return super.readRawInt16();
+		require(2);
+		final int p = m_pos;
+		m_pos += 2;
+		if (m_array != null) {
+			final byte[] a = m_array;
+			final int i = m_arrayOffset + p;
+			return (short) ((a[i] << 8) | (a[i + 1] & 0xFF));
+		} else {
+			return m_buffer.getShort(p);
+		}
+	}
+
+	@Override
+	protected int readRawInt32() throws IOException {
+		if (m_streamInput)
+			return super.readRawInt32();
+		require(4);
+		final int p = m_pos;
+		m_pos += 4;
+		if (m_array != null) {
+			final byte[] a = m_array;
+			final int i = m_arrayOffset + p;
+			return (a[i] << 24) | ((a[i + 1] & 0xFF) << 16)
+					| ((a[i + 2] & 0xFF) << 8) | (a[i + 3] & 0xFF);
+		} else {
+			return m_buffer.getInt(p);
+		}
+	}
+
+	@Override
+	protected long readRawInt64() throws IOException {
+		if (m_streamInput)
+			return super.readRawInt64();
+		require(8);
+		final int p = m_pos;
+		m_pos += 8;
+		if (m_array != null) {
+			final byte[] a = m_array;
+			final int i = m_arrayOffset + p;
+			return ((long) a[i] << 56) | ((long) (a[i + 1] & 0xFF) << 48)
+					| ((long) (a[i + 2] & 0xFF) << 40)
+					| ((long) (a[i + 3] & 0xFF) << 32)
+					| ((long) (a[i + 4] & 0xFF) << 24)
+					| ((a[i + 5] & 0xFF) << 16) | ((a[i + 6] & 0xFF) << 8)
+					| (a[i + 7] & 0xFF);
+		} else {
+			return m_buffer.getLong(p);
+		}
+	}
+
+	@Override
+	protected int readUnsignedVarint32() throws IOException {
+		if (m_streamInput)
+			return super.readUnsignedVarint32();
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift >= 35)
+				throw new StreamCorruptedException("Varint overflow");
+			require(1);
+			b = getByte(m_pos++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	@Override
+	protected int readSignedVarint32() throws IOException {
+		final int raw = readUnsignedVarint32();
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	@Override
+	protected long readSignedVarint64() throws IOException {
+		if (m_streamInput)
+			return super.readSignedVarint64();
+		long value = 0L;
+		int shift = 0;
+		long b;
+		do {
+			if (shift >= 64)
+				throw new StreamCorruptedException("Varlong overflow");
+			require(1);
+			b = getByte(m_pos++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	@Override
+	protected void readRawBytes(final byte[] out, final int n)
+			throws IOException {
+		if (m_streamInput) {
+			super.readRawBytes(out, n);
+			return;
+		}
+		require(n);
+		if (m_array != null) {
+			System.arraycopy(m_array, m_arrayOffset + m_pos, out, 0, n);
+		} else {
+			m_buffer.position(m_pos);
+			m_buffer.get(out, 0, n);
+		}
+		m_pos += n;
+	}
+
+	@Override
+	protected void skipRawBytes(final int n) throws IOException {
+		if (m_streamInput) {
+			super.skipRawBytes(n);
+			return;
+		}
+		require(n);
+		m_pos += n;
+	}
+
+	@Override
+	protected String readRawString(final int nBytes) throws IOException {
+		if (m_streamInput)
+			return super.readRawString(nBytes);
+		require(nBytes);
+		final String out;
+		if (m_array != null) {
+			out = m_stringDecoder.decode(m_array, m_arrayOffset + m_pos, nBytes);
+		} else {
+			if (m_scratch.length < nBytes)
+				m_scratch = new byte[Math.max(nBytes, m_scratch.length * 2)];
+			m_buffer.position(m_pos);
+			m_buffer.get(m_scratch, 0, nBytes);
+			out = m_stringDecoder.decode(m_scratch, 0, nBytes);
+		}
+		m_pos += nBytes;
+		return out;
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 ******************************************************************/
+
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+	/**
+	 * Internal method for verifying that at least n more bytes are available
+	 * in the data input source.
+	 *
+	 * @param n
+	 *            The number of bytes required
+	 *
+	 * @throws EOFException
+	 *             If fewer than n bytes remain
+	 */
+	private void require(final int n) throws EOFException {
+		if (n < 0 || m_limit - m_pos < n)
+			throw new EOFException("BinaryBufferReader: Tried to read " + n
+					+ " bytes, but only " + (m_limit - m_pos) + " remain");
+	}
+
+	/**
+	 * Internal method for fetching a single byte at an absolute position in
+	 * the data input source, without bounds checking.
+	 *
+	 * @param index
+	 *            The position of the byte to get
+	 *
+	 * @return The byte
+	 */
+	private byte getByte(final int index) {
+		return m_array != null ? m_array[m_arrayOffset + index] : m_buffer
+				.get(index);
+	}
+
+}
@@ -0,0 +1,399 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.util.Utf8;
+import se.culvertsoft.mgen.javapack.util.Varint;
+
+/**
+ * A BinaryWriter that encodes the MGen binary wire format directly into
+ * ByteBuffers instead of copying through an OutputStream. It can target
+ * either:
+ *
+ * - A caller supplied (heap or direct) ByteBuffer. Objects are encoded
+ * straight into the buffer, starting at its current position. If an object
+ * does not fit, the buffer's position is restored to where the object started
+ * and a BufferOverflowException is thrown, so that the caller can drain the
+ * buffer and retry.
+ *
+ * - A WritableByteChannel (or an OutputStream, which is wrapped in a
+ * channel). Objects are encoded into a chain of direct buffer segments owned
+ * by the writer. When a segment fills up, encoding continues in the next
+ * segment (no bytes are copied). Each finished object is then handed to the
+ * channel in a single (gathering, if the channel is a GatheringByteChannel)
+ * write. Segments are reused between objects.
+ *
+ * The wire format is identical to that written by BinaryWriter.
+ */
+public class BinaryBufferWriter extends BinaryWriter {
+
+	/**
+	 * The size of each buffer segment allocated by this writer when writing
+	 * to a WritableByteChannel.
+	 */
+	public static final int SEGMENT_SIZE = 8192;
+
+	private ByteBuffer m_out;
+	private WritableByteChannel m_channel;
+	private final ArrayList<ByteBuffer> m_segments;
+	private ByteBuffer[] m_gatherArray;
+	private final byte[] m_frameHeader = new byte[FRAME_HEADER_SIZE];
+	private int m_iSegment;
+	private int m_segmentBase;
+	private int m_objectStart;
+
+	/**
+	 * Creates a new binary buffer writer, writing into a caller supplied
+	 * ByteBuffer.
+	 *
+	 * @param buffer
+	 *            The buffer to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 *
+	 * @param compact
+	 *            If objects should be written in compact or standard mode. See
+	 *            DEFAULT_COMPACT.
+	 */
+	public BinaryBufferWriter(
+			final ByteBuffer buffer,
+			final ClassRegistryBase classRegistry,
+			final boolean compact) {
+		super(null, classRegistry, compact);
+		m_segments = new ArrayList<ByteBuffer>();
+		m_gatherArray = new ByteBuffer[0];
+		setOutput(buffer);
+	}
+
+	/**
+	 * Creates a new binary buffer writer, writing into a caller supplied
+	 * ByteBuffer.
+	 *
+	 * @param buffer
+	 *            The buffer to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 */
+	public BinaryBufferWriter(
+			final ByteBuffer buffer,
+			final ClassRegistryBase classRegistry) {
+		this(buffer, classRegistry, DEFAULT_COMPACT);
+	}
+
+	/**
+	 * Creates a new binary buffer writer, writing to a channel.
+	 *
+	 * @param channel
+	 *            The channel to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 *
+	 * @param compact
+	 *            If objects should be written in compact or standard mode. See
+	 *            DEFAULT_COMPACT.
+	 */
+	public BinaryBufferWriter(
+			final WritableByteChannel channel,
+			final ClassRegistryBase classRegistry,
+			final boolean compact) {
+		super(null, classRegistry, compact);
+		m_segments = new ArrayList<ByteBuffer>();
+		m_gatherArray = new ByteBuffer[0];
+		setOutput(channel);
+	}
+
+	/**
+	 * Creates a new binary buffer writer, writing to a channel.
+	 *
+	 * @param channel
+	 *            The channel to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 */
+	public BinaryBufferWriter(
+			final WritableByteChannel channel,
+			final ClassRegistryBase classRegistry) {
+		this(channel, classRegistry, DEFAULT_COMPACT);
+	}
+
+	/**
+	 * Replaces the output target of this writer with a caller supplied
+	 * ByteBuffer. Objects are written starting at the buffer's current
+	 * position, and the position is advanced past each written object. The
+	 * buffer's byte order is set to big-endian.
+	 *
+	 * @param buffer
+	 *            The new buffer to write to
+	 *
+	 * @return This writer
+	 */
+	public BinaryBufferWriter setOutput(final ByteBuffer buffer) {
+		m_channel = null;
+		m_out = buffer;
+		m_out.order(ByteOrder.BIG_ENDIAN);
+		return this;
+	}
+
+	/**
+	 * Replaces the output target of this writer with a channel.
+	 *
+	 * @param channel
+	 *            The new channel to write to
+	 *
+	 * @return This writer
+	 */
+	public BinaryBufferWriter setOutput(final WritableByteChannel channel) {
+		m_channel = channel;
+		m_out = segment(0);
+		return this;
+	}
+
+	/**
+	 * Replaces the output target of this writer with an OutputStream. The
+	 * stream is wrapped in a channel (see Channels.newChannel(OutputStream)),
+	 * and written to as by setOutput(WritableByteChannel).
+	 *
+	 * @param stream
+	 *            The new output stream to write to
+	 *
+	 * @return This writer
+	 */
+	@Override
+	public BinaryBufferWriter setOutput(final OutputStream stream) {
+		return setOutput(Channels.newChannel(stream));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws BufferOverflowException
+	 *             If writing to a caller supplied ByteBuffer which does not
+	 *             have room for the object. The buffer's position is then
+	 *             restored to where it was before this call.
+	 */
+	@Override
+	public void writeObject(final MGenBase o) throws IOException {
+		if (m_channel != null) {
+			m_iSegment = 0;
+			m_segmentBase = 0;
+			m_out = segment(0);
+			m_out.clear();
+			super.writeObject(o);
+		} else {
+			m_objectStart = m_out.position();
+			try {
+				super.writeObject(o);
+			} catch (final BufferOverflowException e) {
+				m_out.position(m_objectStart);
+				throw e;
+			}
+		}
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - RAW DATA OUTPUT
+	 *
+	 ******************************************************************/
+
+	@Override
+	protected void flush() throws IOException {
+		if (m_channel == null)
+			return;
+
+		final int n = m_iSegment + 1;
+		if (m_gatherArray.length < n)
+			m_gatherArray = new ByteBuffer[m_segments.size()];
+		for (int i = 0; i < n; i++) {
+			final ByteBuffer b = m_segments.get(i);
+			b.flip();
+			m_gatherArray[i] = b;
+		}
+
+		if (m_channel instanceof GatheringByteChannel) {
+			final GatheringByteChannel channel = (GatheringByteChannel) m_channel;
+			while (m_gatherArray[n - 1].hasRemaining())
+				channel.write(m_gatherArray, 0, n);
+		} else {
+			for (int i = 0; i < n; i++) {
+				while (m_gatherArray[i].hasRemaining())
+					m_channel.write(m_gatherArray[i]);
+			}
+		}
+
+		m_iSegment = 0;
+		m_segmentBase = 0;
+		m_out = segment(0);
+		m_out.clear();
+	}
+
+	@Override
+	protected int beginFrame() throws IOException {
+		ensure(FRAME_HEADER_SIZE);
+		final int frame = m_segmentBase + m_out.position();
+		m_out.position(m_out.position() + FRAME_HEADER_SIZE);
+		return frame;
+	}
+
+	@Override
+	protected void endFrame(final int frame) throws IOException {
+		final int end = m_segmentBase + m_out.position();
+		writeFrameHeader(end - frame - FRAME_HEADER_SIZE, m_frameHeader, 0);
+
+		// Find the buffer where the frame header was reserved
+		ByteBuffer target = m_out;
+		int offset = frame;
+		if (m_channel != null) {
+			for (int i = 0; i <= m_iSegment; i++) {
+				target = m_segments.get(i);
+				if (offset < target.position())
+					break;
+				offset -= target.position();
+			}
+		}
+
+		for (int i = 0; i < FRAME_HEADER_SIZE; i++)
+			target.put(offset + i, m_frameHeader[i]);
+	}
+
+	@Override
+	protected void writeByte(final int b) throws IOException {
+		ensure(1);
+		m_out.put((byte) b);
+	}
+
+	@Override
+	protected void writeBytes(final byte[] data, int offset, int sz)
+			throws IOException {
+		if (m_channel == null) {
+			m_out.put(data, offset, sz);
+		} else {
+			while (sz > 0) {
+				ensure(1);
+				final int n = Math.min(sz, m_out.remaining());
+				m_out.put(data, offset, n);
+				offset += n;
+				sz -= n;
+			}
+		}
+	}
+
+	@Override
+	protected void writeUtf8(final String s, final int nBytes)
+			throws IOException {
+		if (m_out.hasArray() && m_out.remaining() >= nBytes) {
+			final int start = m_out.arrayOffset() + m_out.position();
+			final int end = Utf8.encode(s, m_out.array(), start);
+			m_out.position(m_out.position() + (end - start));
+		} else {
+			m_stringEncoder.encode(s);
+			writeBytes(m_stringEncoder.data(), 0, m_stringEncoder.size());
+		}
+	}
+
+	@Override
+	protected void writeRawInt16(final short s) throws IOException {
+		ensure(2);
+		m_out.putShort(s);
+	}
+
+	@Override
+	protected void writeRawInt32(final int v) throws IOException {
+		ensure(4);
+		m_out.putInt(v);
+	}
+
+	@Override
+	protected void writeRawInt64(final long v) throws IOException {
+		ensure(8);
+		m_out.putLong(v);
+	}
+
+	@Override
+	protected void writeSignedVarint32(final int i) throws IOException {
+		writeUnsignedVarint32((i << 1) ^ (i >> 31));
+	}
+
+	@Override
+	protected void writeSignedVarint64(final long l) throws IOException {
+		long value = (l << 1) ^ (l >> 63);
+		ensure(Varint.sizeOfUnsignedVarLong(value));
+		while ((value & 0xFFFFFFFFFFFFFF80L) != 0L) {
+			m_out.put((byte) (((int) value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		m_out.put((byte) value);
+	}
+
+	@Override
+	protected void writeUnsignedVarint32(int i) throws IOException {
+		ensure(Varint.sizeOfUnsignedVarInt(i));
+		while ((i & 0xFFFFFF80) != 0) {
+			m_out.put((byte) ((i & 0x7F) | 0x80));
+			i >>>= 7;
+		}
+		m_out.put((byte) i);
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Internal method for making sure the current output buffer has room for
+	 * at least n more bytes. When writing to a channel, this moves on to the
+	 * next buffer segment if necessary.
+	 *
+	 * @param n
+	 *            The number of bytes required
+	 *
+	 * @throws BufferOverflowException
+	 *             If writing to a caller supplied ByteBuffer without room for
+	 *             n more bytes
+	 */
+	private void ensure(final int n) {
+		if (m_out.remaining() < n) {
+			if (m_channel == null)
+				throw new BufferOverflowException();
+			m_segmentBase += m_out.position();
+			m_iSegment++;
+			m_out = segment(m_iSegment);
+			m_out.clear();
+		}
+	}
+
+	/**
+	 * Internal method for getting (or allocating) a buffer segment used when
+	 * writing to a channel.
+	 *
+	 * @param i
+	 *            The index of the segment
+	 *
+	 * @return The segment
+	 */
+	private ByteBuffer segment(final int i) {
+		while (m_segments.size() <= i)
+			m_segments.add(ByteBuffer.allocateDirect(SEGMENT_SIZE).order(
+					ByteOrder.BIG_ENDIAN));
+		return m_segments.get(i);
+	}
+
+}
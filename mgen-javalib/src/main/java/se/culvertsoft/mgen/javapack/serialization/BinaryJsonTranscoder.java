@@ -0,0 +1,435 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_BOOL;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_CLASS;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_ENUM;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_FLOAT32;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_FLOAT64;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_INT16;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_INT32;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_INT64;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_INT8;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_LIST;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_MAP;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_STRING;
+import static se.culvertsoft.mgen.javapack.util.BuiltInSerializerUtils.throwUnexpectTag;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.api.model.ListOrArrayType;
+import se.culvertsoft.mgen.api.model.MapType;
+import se.culvertsoft.mgen.api.model.RuntimeClassType;
+import se.culvertsoft.mgen.api.model.RuntimeEnumType;
+import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.api.model.TypeEnum;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.exceptions.StreamCorruptedException;
+import se.culvertsoft.mgen.javapack.exceptions.UnexpectedTypeException;
+
+/**
+ * A class for converting MGen objects in the binary wire format into JSON,
+ * without reading them into MGen objects first. Values are written to a
+ * JsonWriter (or any of its subclasses) as they are read from a BinaryReader,
+ * guided by the field metadata of the classes in the class registry. Only
+ * strings are allocated along the way, so large lists and maps are converted
+ * in constant memory.
+ *
+ * The JSON written is identical to what the JsonWriter would write for the
+ * object read by the BinaryReader. Fields unknown to the class registry are
+ * skipped, as are objects of unknown types, which are written as null.
+ *
+ * BinaryJsonTranscoder objects are not thread safe.
+ */
+public class BinaryJsonTranscoder {
+
+	private final JsonWriter m_writer;
+	private final ClassRegistryBase m_classRegistry;
+	private final MGenBase[] m_prototypes;
+
+	/**
+	 * Creates a new BinaryJsonTranscoder, writing JSON with a JsonWriter. The
+	 * class registry of the writer is used to look up types read.
+	 *
+	 * @param writer
+	 *            The writer to write JSON with
+	 */
+	public BinaryJsonTranscoder(final JsonWriter writer) {
+		m_writer = writer;
+		m_classRegistry = writer.m_classRegistry;
+		m_prototypes = new MGenBase[m_classRegistry.nEntries()];
+	}
+
+	/**
+	 * Reads the next MGen object from a BinaryReader, and writes it as JSON.
+	 *
+	 * @param reader
+	 *            The reader to read the binary encoded object from
+	 *
+	 * @throws IOException
+	 *             If reading or writing throws an IOException
+	 */
+	public void transcode(final BinaryReader reader) throws IOException {
+		m_writer.m_depth = 0;
+		final byte tag = reader.readTypeTag();
+		if (tag != TAG_CLASS)
+			throwUnexpectTag("(for root object)", TAG_CLASS, tag);
+		transcodeObject(reader, null);
+		m_writer.flush();
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Internal method for transcoding an MGen object, following its binary
+	 * type tag.
+	 *
+	 * @param reader
+	 *            The reader to read from
+	 *
+	 * @param constraint
+	 *            The declared type of the object, or null for root objects
+	 *
+	 * @throws IOException
+	 *             If reading or writing throws an IOException
+	 */
+	private void transcodeObject(
+			final BinaryReader reader,
+			final RuntimeClassType constraint) throws IOException {
+
+		final JsonWriter w = m_writer;
+
+		final int headerOrFrame = reader.readSize();
+
+		if (headerOrFrame == 0) {
+			w.write("null");
+			return;
+		}
+
+		final int headerOrMarker = reader.readObjectHeader(headerOrFrame);
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? reader.readSize() : headerOrMarker;
+
+		final short[] ids;
+		final int nFields;
+
+		if (BinaryReader.hasTypeIds(nIdsOrFields)) {
+			ids = reader.readHeaderTypeIds(nIdsOrFields);
+			nFields = reader.readSize();
+		} else { // type ids omitted
+			ids = null;
+			nFields = nIdsOrFields >> 2;
+		}
+
+		final ClassRegistryEntry entry = entry(reader, ids, constraint);
+
+		if (entry == null) {
+			reader.skipFields(nFields, compactFields);
+			w.write("null");
+			return;
+		}
+
+		final MGenBase prototype = prototype(entry);
+
+		w.beginBlock("{");
+
+		if (constraint == null || !w.m_compact
+				|| entry.typeId() != constraint.typeId())
+			w.writeTypeIds(prototype);
+
+		final Field[] fields = prototype._fields();
+		int ordinal = -1;
+
+		for (int i = 0; i < nFields; i++) {
+			final Field field;
+			if (compactFields) {
+				ordinal = reader.readCompactFieldHeader(ordinal);
+				field = ordinal < fields.length ? fields[ordinal] : null;
+			} else {
+				field = prototype._fieldById(reader.readFieldId());
+			}
+			final byte tag = reader.readTypeTag();
+			if (field != null && !field.isTransient()) {
+				reader.ensureTypeTag(field, field.typ(), tag);
+				w.beginWritePair(field);
+				transcodeValue(reader, tag, field.typ());
+			} else {
+				reader.skip(tag);
+			}
+		}
+
+		w.endBlock("}", w.m_iEntry[w.m_depth] > 0);
+	}
+
+	/**
+	 * Internal method for transcoding a value
+	 *
+	 * @param reader
+	 *            The reader to read from
+	 *
+	 * @param tag
+	 *            The binary type tag of the value
+	 *
+	 * @param typ
+	 *            The declared type of the value
+	 *
+	 * @throws IOException
+	 *             If reading or writing throws an IOException
+	 */
+	private void transcodeValue(
+			final BinaryReader reader,
+			final byte tag,
+			final Type typ) throws IOException {
+
+		final JsonWriter w = m_writer;
+
+		switch (tag) {
+		case TAG_BOOL:
+			w.write(reader.readRawByte() != 0);
+			break;
+		case TAG_INT8:
+			w.write(reader.readRawByte());
+			break;
+		case TAG_INT16:
+			w.write(reader.readRawInt16());
+			break;
+		case TAG_INT32:
+			w.write(reader.readSignedVarint32());
+			break;
+		case TAG_INT64:
+			w.write(reader.readSignedVarint64());
+			break;
+		case TAG_FLOAT32:
+			w.write(Float.intBitsToFloat(reader.readRawInt32()));
+			break;
+		case TAG_FLOAT64:
+			w.write(Double.longBitsToDouble(reader.readRawInt64()));
+			break;
+		case TAG_STRING:
+		case TAG_ENUM:
+			w.writeQuoteEscaped(readString(reader, tag, typ));
+			break;
+		case TAG_LIST:
+			transcodeList(reader, ((ListOrArrayType) typ).elementType());
+			break;
+		case TAG_MAP:
+			transcodeMap(reader, (MapType) typ);
+			break;
+		case TAG_CLASS:
+			transcodeObject(reader, (RuntimeClassType) typ);
+			break;
+		default:
+			throw new StreamCorruptedException("Unknown type tag: " + tag);
+		}
+	}
+
+	/**
+	 * Internal method for transcoding a list or array
+	 *
+	 * @param reader
+	 *            The reader to read from
+	 *
+	 * @param elementType
+	 *            The declared element type
+	 *
+	 * @throws IOException
+	 *             If reading or writing throws an IOException
+	 */
+	private void transcodeList(
+			final BinaryReader reader,
+			final Type elementType) throws IOException {
+
+		final JsonWriter w = m_writer;
+		final int n = reader.readSize();
+
+		w.beginBlock("[");
+
+		if (n > 0) {
+			final byte tag = reader.readTypeTag();
+			reader.ensureTypeTag(null, elementType, tag);
+			for (int i = 0; i < n; i++) {
+				w.newEntry();
+				transcodeValue(reader, tag, elementType);
+			}
+		}
+
+		w.endBlock("]", n > 0);
+	}
+
+	/**
+	 * Internal method for transcoding a map
+	 *
+	 * @param reader
+	 *            The reader to read from
+	 *
+	 * @param typ
+	 *            The declared map type
+	 *
+	 * @throws IOException
+	 *             If reading or writing throws an IOException
+	 */
+	private void transcodeMap(
+			final BinaryReader reader,
+			final MapType typ) throws IOException {
+
+		final JsonWriter w = m_writer;
+		final int n = reader.readSize();
+
+		w.beginBlock("{");
+
+		if (n > 0) {
+			final byte keyTag = reader.readTypeTag();
+			final byte valueTag = reader.readTypeTag();
+			reader.ensureTypeTag(null, typ.keyType(), keyTag);
+			reader.ensureTypeTag(null, typ.valueType(), valueTag);
+			for (int i = 0; i < n; i++) {
+				w.beginWritePair(readKey(reader, keyTag, typ.keyType()));
+				transcodeValue(reader, valueTag, typ.valueType());
+			}
+		}
+
+		w.endBlock("}", n > 0);
+	}
+
+	/**
+	 * Internal method for reading a map key, formatted as the JsonWriter
+	 * formats keys.
+	 *
+	 * @param reader
+	 *            The reader to read from
+	 *
+	 * @param tag
+	 *            The binary type tag of the key
+	 *
+	 * @param typ
+	 *            The declared key type
+	 *
+	 * @return The key read, as a string
+	 *
+	 * @throws IOException
+	 *             If the reader throws an IOException
+	 */
+	private String readKey(
+			final BinaryReader reader,
+			final byte tag,
+			final Type typ) throws IOException {
+		switch (tag) {
+		case TAG_BOOL:
+			return String.valueOf(reader.readRawByte() != 0);
+		case TAG_INT8:
+			return String.valueOf(reader.readRawByte());
+		case TAG_INT16:
+			return String.valueOf(reader.readRawInt16());
+		case TAG_INT32:
+			return String.valueOf(reader.readSignedVarint32());
+		case TAG_INT64:
+			return String.valueOf(reader.readSignedVarint64());
+		case TAG_FLOAT32:
+			return String.valueOf(Float.intBitsToFloat(reader.readRawInt32()));
+		case TAG_FLOAT64:
+			return String.valueOf(Double.longBitsToDouble(reader.readRawInt64()));
+		case TAG_STRING:
+		case TAG_ENUM:
+			return readString(reader, tag, typ);
+		default:
+			throw new StreamCorruptedException("Unsupported map key type tag: "
+					+ tag);
+		}
+	}
+
+	/**
+	 * Internal method for reading a string or an enum value, which are both
+	 * written as strings in JSON.
+	 *
+	 * @param reader
+	 *            The reader to read from
+	 *
+	 * @param tag
+	 *            The binary type tag of the value
+	 *
+	 * @param typ
+	 *            The declared type of the value
+	 *
+	 * @return The string read, or the name of the enum value read
+	 *
+	 * @throws IOException
+	 *             If the reader throws an IOException
+	 */
+	private String readString(
+			final BinaryReader reader,
+			final byte tag,
+			final Type typ) throws IOException {
+		if (typ.typeEnum() != TypeEnum.ENUM)
+			return reader.readString(false);
+		final RuntimeEnumType enumType = (RuntimeEnumType) typ;
+		if (tag == TAG_ENUM)
+			return String.valueOf(enumType.get(reader.readSignedVarint32()));
+		else
+			return String.valueOf(enumType.get(reader.readString(false)));
+	}
+
+	/**
+	 * Internal method for looking up the class registry entry of an object
+	 * read, in the same way as the BinaryReader does.
+	 *
+	 * @param reader
+	 *            The reader the type ids were read from
+	 *
+	 * @param ids
+	 *            The type ids read, or null if omitted
+	 *
+	 * @param constraint
+	 *            The declared type of the object, or null
+	 *
+	 * @return The class registry entry, or null if the type is unknown
+	 */
+	private ClassRegistryEntry entry(
+			final BinaryReader reader,
+			final short[] ids,
+			final RuntimeClassType constraint) {
+
+		if (ids == null && constraint == null)
+			return null;
+
+		final ClassRegistryEntry entry = ids != null ? reader
+				.resolveTypeIds16Bit(ids) : m_classRegistry.getById(constraint
+				.typeId());
+
+		if (constraint != null) {
+			if (entry == null) {
+				throw new UnexpectedTypeException("Unknown type: "
+						+ Arrays.toString(ids));
+			} else if (!entry.isInstanceOfTypeId(constraint.typeId())) {
+				throw new UnexpectedTypeException("Unexpected type. Expected "
+						+ constraint.fullName() + " but got " + entry.clsName());
+			}
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Internal method for getting an instance of a class, for looking up
+	 * field metadata and type ids. One instance is created per class.
+	 *
+	 * @param entry
+	 *            The class registry entry of the class
+	 *
+	 * @return The instance
+	 */
+	private MGenBase prototype(final ClassRegistryEntry entry) {
+		final MGenBase prototype = m_prototypes[entry.ordinal()];
+		if (prototype != null)
+			return prototype;
+		return m_prototypes[entry.ordinal()] = entry.construct();
+	}
+
+}
@@ -0,0 +1,467 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+
+/**
+ * A BinaryReader for files of concatenated MGen binary objects, e.g. world
+ * snapshots. Instead of reading through a FileInputStream, the file is memory
+ * mapped and objects are decoded straight from the mapping (see
+ * BinaryBufferReader), avoiding read syscalls and copies.
+ *
+ * Since a single mapping is limited to 2 GB, the file is mapped as a sliding
+ * window of at most windowSize bytes. When an object extends past the end of
+ * the current window, the window is moved to start at that object and the
+ * object is read again. No object may thus be larger than the window size.
+ *
+ * The same applies to skipping objects, peeking at their types, applying
+ * deltas and pointing binary views at them (see readView(..)).
+ *
+ * The current file position can be retrieved with filePosition() and later
+ * restored with seek(long), allowing callers to resume reading.
+ */
+public class BinaryMappedFileReader extends BinaryBufferReader implements
+		Closeable {
+
+	/**
+	 * The default maximum size of each mapped window of the file.
+	 */
+	public static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+	private final FileChannel m_channel;
+	private final RandomAccessFile m_file;
+	private final long m_windowSize;
+	private final long m_fileSize;
+	private long m_windowStart;
+	private long m_windowEnd;
+	private MappedByteBuffer m_window;
+
+	/**
+	 * Creates a new memory mapped reader over a file channel. The channel is
+	 * not closed by this reader.
+	 *
+	 * @param channel
+	 *            The file channel to read from
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 *
+	 * @param windowSize
+	 *            The maximum number of bytes to map at a time. Must be at most
+	 *            Integer.MAX_VALUE.
+	 *
+	 * @throws IOException
+	 *             If the file could not be mapped
+	 */
+	public BinaryMappedFileReader(
+			final FileChannel channel,
+			final ClassRegistryBase classRegistry,
+			final long windowSize) throws IOException {
+		this(channel, null, classRegistry, windowSize);
+	}
+
+	/**
+	 * Creates a new memory mapped reader over a file channel. The channel is
+	 * not closed by this reader.
+	 *
+	 * @param channel
+	 *            The file channel to read from
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 *
+	 * @throws IOException
+	 *             If the file could not be mapped
+	 */
+	public BinaryMappedFileReader(
+			final FileChannel channel,
+			final ClassRegistryBase classRegistry) throws IOException {
+		this(channel, classRegistry, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Opens a file and creates a new memory mapped reader over it. The file
+	 * is closed when this reader is closed.
+	 *
+	 * @param file
+	 *            The file to read from
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 *
+	 * @param windowSize
+	 *            The maximum number of bytes to map at a time. Must be at most
+	 *            Integer.MAX_VALUE.
+	 *
+	 * @throws IOException
+	 *             If the file could not be opened or mapped
+	 */
+	public BinaryMappedFileReader(
+			final File file,
+			final ClassRegistryBase classRegistry,
+			final long windowSize) throws IOException {
+		this(new RandomAccessFile(file, "r"), classRegistry, windowSize);
+	}
+
+	/**
+	 * Opens a file and creates a new memory mapped reader over it. The file
+	 * is closed when this reader is closed.
+	 *
+	 * @param file
+	 *            The file to read from
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 *
+	 * @throws IOException
+	 *             If the file could not be opened or mapped
+	 */
+	public BinaryMappedFileReader(
+			final File file,
+			final ClassRegistryBase classRegistry) throws IOException {
+		this(file, classRegistry, DEFAULT_WINDOW_SIZE);
+	}
+
+	private BinaryMappedFileReader(
+			final RandomAccessFile file,
+			final ClassRegistryBase classRegistry,
+			final long windowSize) throws IOException {
+		this(file.getChannel(), file, classRegistry, windowSize);
+	}
+
+	private BinaryMappedFileReader(
+			final FileChannel channel,
+			final RandomAccessFile file,
+			final ClassRegistryBase classRegistry,
+			final long windowSize) throws IOException {
+		super(classRegistry);
+		if (windowSize <= 0 || windowSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Illegal window size: "
+					+ windowSize);
+		m_channel = channel;
+		m_file = file;
+		m_windowSize = windowSize;
+		m_fileSize = channel.size();
+		map(0);
+	}
+
+	/**
+	 * Gets the current read position of this reader, as an offset from the
+	 * start of the file.
+	 *
+	 * @return The current file position
+	 */
+	public long filePosition() {
+		return m_windowStart + position();
+	}
+
+	/**
+	 * Gets the size of the file being read.
+	 *
+	 * @return The size of the file
+	 */
+	public long fileSize() {
+		return m_fileSize;
+	}
+
+	/**
+	 * Checks if there is more data left to read in the file.
+	 *
+	 * @return If there is more data left to read
+	 */
+	public boolean hasRemaining() {
+		return filePosition() < m_fileSize;
+	}
+
+	/**
+	 * Moves the read position of this reader to an offset in the file, e.g.
+	 * to resume reading at a previously recorded filePosition().
+	 *
+	 * @param filePosition
+	 *            The new read position, as an offset from the start of the
+	 *            file
+	 *
+	 * @return This reader
+	 *
+	 * @throws IOException
+	 *             If the file could not be mapped at the new position
+	 */
+	public BinaryMappedFileReader seek(final long filePosition)
+			throws IOException {
+		if (filePosition < 0 || filePosition > m_fileSize)
+			throw new IllegalArgumentException("Position " + filePosition
+					+ " is outside of the file (size=" + m_fileSize + ")");
+		if (filePosition >= m_windowStart && filePosition <= m_windowEnd)
+			position((int) (filePosition - m_windowStart));
+		else
+			map(filePosition);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MGenBase readObject() throws IOException {
+		return remapping(new Read<MGenBase>() {
+			@Override
+			MGenBase read() throws IOException {
+				return BinaryMappedFileReader.super.readObject();
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T extends MGenBase> T readObject(final Class<T> typ)
+			throws IOException {
+		return remapping(new Read<T>() {
+			@Override
+			T read() throws IOException {
+				return BinaryMappedFileReader.super.readObject(typ);
+			}
+		});
+	}
+
+	/**
+	 * Reads a single MGen object from a byte array. Unlike for other
+	 * readers, the byte array does not replace the file as data input source:
+	 * reading continues in the file where it left off.
+	 *
+	 * @param objData
+	 *            The bytes containing the MGen object.
+	 *
+	 * @return The read Mgen object, or null if it was of unknown type.
+	 *
+	 * @throws IOException
+	 *             If the data is incomplete or corrupt
+	 */
+	@Override
+	public MGenBase readObject(final byte[] objData) throws IOException {
+		final int position = position();
+		setInput(objData);
+		try {
+			return super.readObject();
+		} finally {
+			setInput(m_window).position(position);
+		}
+	}
+
+	/**
+	 * Reads a single MGen object from a byte array, of the specified type or a
+	 * subtype of it. Unlike for other readers, the byte array does not replace
+	 * the file as data input source: reading continues in the file where it
+	 * left off.
+	 *
+	 * @param <T>
+	 *            The type of MGen object to read
+	 *
+	 * @param objData
+	 *            The bytes containing the object
+	 *
+	 * @param typ
+	 *            The type of the object to read
+	 *
+	 * @return The object read
+	 *
+	 * @throws IOException
+	 *             If the data is incomplete or corrupt
+	 */
+	@Override
+	public <T extends MGenBase> T readObject(
+			final byte[] objData,
+			final Class<T> typ) throws IOException {
+		final int position = position();
+		setInput(objData);
+		try {
+			return super.readObject(typ);
+		} finally {
+			setInput(m_window).position(position);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * If the delta extends past the end of the current window, it is applied
+	 * again after moving the window. Since a delta sets each of its fields,
+	 * applying it twice gives the same result.
+	 */
+	@Override
+	public <T extends MGenBase> T readPatch(final T target) throws IOException {
+		return remapping(new Read<T>() {
+			@Override
+			T read() throws IOException {
+				return BinaryMappedFileReader.super.readPatch(target);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ClassRegistryEntry skipObject() throws IOException {
+		return remapping(new Read<ClassRegistryEntry>() {
+			@Override
+			ClassRegistryEntry read() throws IOException {
+				return BinaryMappedFileReader.super.skipObject();
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ClassRegistryEntry peekType() throws IOException {
+		return remapping(new Read<ClassRegistryEntry>() {
+			@Override
+			ClassRegistryEntry read() throws IOException {
+				return BinaryMappedFileReader.super.peekType();
+			}
+		});
+	}
+
+	/**
+	 * Points a binary view at the next MGen object in the file, and moves the
+	 * read position past it. The view stays valid when the window is moved.
+	 *
+	 * @param <V>
+	 *            The type of view
+	 *
+	 * @param view
+	 *            The view to point at the object
+	 *
+	 * @return The view
+	 *
+	 * @throws IOException
+	 *             If the object is incomplete or corrupt
+	 */
+	public <V extends BinaryView> V readView(final V view) throws IOException {
+		final int start = remapping(new Read<Integer>() {
+			@Override
+			Integer read() throws IOException {
+				final int start = position();
+				BinaryMappedFileReader.super.skipObject();
+				return start;
+			}
+		});
+		final ByteBuffer buffer = m_window.duplicate();
+		buffer.position(start);
+		buffer.limit(position());
+		view.wrap(buffer, m_clsReg);
+		return view;
+	}
+
+	/**
+	 * Closes the underlying file, if it was opened by this reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (m_file != null)
+			m_file.close();
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Internal class for reads that remapping(..) can retry.
+	 */
+	private static abstract class Read<T> {
+		abstract T read() throws IOException;
+	}
+
+	/**
+	 * Internal method for reading from the current window. If the read
+	 * extends past the end of the window, the window is moved to start where
+	 * the read started, and the read is retried. Type dictionary entries
+	 * defined by the failed read are forgotten, since the retry defines them
+	 * again.
+	 *
+	 * @param read
+	 *            The read to perform
+	 *
+	 * @return The result of the read
+	 *
+	 * @throws IOException
+	 *             If the data ends prematurely or is corrupt, or if the file
+	 *             could not be mapped
+	 */
+	private <T> T remapping(final Read<T> read) throws IOException {
+		while (true) {
+			final long start = filePosition();
+			final int typeDictionarySize = typeDictionarySize();
+			try {
+				return read.read();
+			} catch (final EOFException e) {
+				truncateTypeDictionary(typeDictionarySize);
+				if (!remap(start))
+					throw e;
+			}
+		}
+	}
+
+	/**
+	 * Internal method for moving the mapped window to start at an object that
+	 * did not fit in the current window.
+	 *
+	 * @param objectStart
+	 *            The file position where the object starts
+	 *
+	 * @return If the window was moved. False if the window already starts at
+	 *         the object and cannot be made any larger, i.e. the data really
+	 *         ends prematurely or the object is larger than the window size.
+	 *
+	 * @throws IOException
+	 *             If the file could not be mapped
+	 */
+	private boolean remap(final long objectStart) throws IOException {
+		if (m_windowEnd >= m_fileSize || objectStart == m_windowStart) {
+			position((int) (objectStart - m_windowStart));
+			return false;
+		}
+		map(objectStart);
+		return true;
+	}
+
+	/**
+	 * Internal method for mapping a new window of the file.
+	 *
+	 * @param windowStart
+	 *            The file position where the window should start
+	 *
+	 * @throws IOException
+	 *             If the file could not be mapped
+	 */
+	private void map(final long windowStart) throws IOException {
+		final long size = Math.min(m_windowSize, m_fileSize - windowStart);
+		final MappedByteBuffer window = m_channel.map(
+				MapMode.READ_ONLY,
+				windowStart,
+				size);
+		m_windowStart = windowStart;
+		m_windowEnd = windowStart + size;
+		m_window = window;
+		setInput(window);
+	}
+
+}
@@ -2,6 +2,7 @@ package se.culvertsoft.mgen.javapack.serialization;
 
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_BOOL;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_CLASS;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_ENUM;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_FLOAT32;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_FLOAT64;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_INT16;
@@ -21,6 +22,8 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import se.culvertsoft.mgen.api.model.ArrayType;
 import se.culvertsoft.mgen.api.model.Field;
@@ -37,6 +40,13 @@ import se.culvertsoft.mgen.javapack.classes.MGenBase;
 import se.culvertsoft.mgen.javapack.exceptions.StreamCorruptedException;
 import se.culvertsoft.mgen.javapack.exceptions.UnexpectedTypeException;
 import se.culvertsoft.mgen.javapack.exceptions.UnknownTypeException;
+import se.culvertsoft.mgen.javapack.metadata.PrimitiveListType;
+import se.culvertsoft.mgen.javapack.metadata.PrimitiveMapType;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongList;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
 import se.culvertsoft.mgen.javapack.util.StreamUtil;
 import se.culvertsoft.mgen.javapack.util.Varint;
 
@@ -49,6 +59,20 @@ public class BinaryReader extends BuiltInReader {
 
 	private InputStream m_stream;
 	private final byte m_readBuffer64[] = new byte[8];
+	private ArrayList<short[]> m_typeDictionary;
+	private int m_fieldTag = -1;
+	private Field[] m_viewFields;
+	private int m_viewOrdinal;
+	private Field[] m_codecFields;
+	private int m_codecOrdinal;
+
+	/**
+	 * The field id returned by readViewFieldId() for compact field headers
+	 * of fields that are not known to the class viewed.
+	 */
+	static final int UNKNOWN_FIELD_ID = Integer.MIN_VALUE;
+
+	private static final Field[] NO_FIELDS = new Field[0];
 
 	/**
 	 * Creates a new binary reader, wrapping a data input source (InputStream)
@@ -90,16 +114,56 @@ public class BinaryReader extends BuiltInReader {
 		return this;
 	}
 
+	/**
+	 * Configures whether this reader should accept streams written with the
+	 * type dictionary enabled (see BinaryWriter.setTypeDictionary(boolean)).
+	 * Type dictionary streams are stateful, so they must be read from start
+	 * to end by this reader, and framed objects are never bulk skipped. The
+	 * default setting is false.
+	 * 
+	 * @param typeDictionary
+	 *            If the reader should accept type dictionary streams
+	 * 
+	 * @return This reader
+	 */
+	public BinaryReader setTypeDictionary(final boolean typeDictionary) {
+		m_typeDictionary = typeDictionary ? new ArrayList<short[]>() : null;
+		return this;
+	}
+
+	/**
+	 * Checks if this reader accepts type dictionary streams. See
+	 * setTypeDictionary(boolean).
+	 * 
+	 * @return If this reader accepts type dictionary streams
+	 */
+	public boolean typeDictionary() {
+		return m_typeDictionary != null;
+	}
+
+	/**
+	 * Starts a new type dictionary session, forgetting all dictionary entries
+	 * read so far. See setTypeDictionary(boolean).
+	 * 
+	 * @return This reader
+	 */
+	public BinaryReader clearTypeDictionary() {
+		if (m_typeDictionary != null)
+			m_typeDictionary.clear();
+		return this;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public final MGenBase readObject() throws IOException {
+	public MGenBase readObject() throws IOException {
 		return readMGenObject(true, null);
 	}
 
 	/**
 	 * Convenience method for reading a single MGen object from a byte array.
+	 * The byte array replaces the data input source of this reader.
 	 * 
 	 * @param objData
 	 *            The bytes containing the MGen object.
@@ -109,7 +173,7 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the data input source throws an IOException
 	 */
-	public final MGenBase readObject(final byte[] objData) throws IOException {
+	public MGenBase readObject(final byte[] objData) throws IOException {
 		return setInput(new ByteArrayInputStream(objData)).readMGenObject(
 				true,
 				null);
@@ -135,7 +199,7 @@ public class BinaryReader extends BuiltInReader {
 	/**
 	 * Convenience method for reading a single MGen object from a byte array.
 	 * Reads an object of the specified type, or a subtype of the specified
-	 * type.
+	 * type. The byte array replaces the data input source of this reader.
 	 * 
 	 * @param <T>
 	 *            The type of MGen object to read
@@ -157,6 +221,104 @@ public class BinaryReader extends BuiltInReader {
 		return setInput(new ByteArrayInputStream(objData)).readObject(typ);
 	}
 
+	/**
+	 * Reads a delta written by a DeltaWriter, and applies it to an existing
+	 * object. Fields in the delta replace those of the object, except for
+	 * fields holding MGen objects of classes generated with the
+	 * generate_dirty_tracking setting, onto which nested deltas are applied
+	 * in turn (see MGenBase._readPatchField(..)). MGen objects written in
+	 * full replace the objects held. Fields listed as unset in the delta are
+	 * unset (see MGenBase._unsetPatchField(..)). Other fields are left
+	 * untouched, and required fields are not checked.
+	 * 
+	 * @param <T>
+	 *            The type of the object to apply the delta to
+	 * 
+	 * @param target
+	 *            The object to apply the delta to
+	 * 
+	 * @return The target object
+	 * 
+	 * @throws IOException
+	 *             If the data input source throws an IOException
+	 * 
+	 * @throws UnexpectedTypeException
+	 *             If the delta read is not of the same class as the target
+	 *             object
+	 */
+	public <T extends MGenBase> T readPatch(final T target) throws IOException {
+
+		ensureTypeTag(null, TAG_CLASS, readTypeTag());
+
+		final MGenBase patched = readPatchObject(target, null, true);
+
+		if (patched != target)
+			throw new UnexpectedTypeException("Cannot apply delta of type "
+					+ (patched != null ? patched._typeName() : "null")
+					+ " to object of type " + target._typeName());
+
+		return target;
+	}
+
+	/**
+	 * Reads past the next MGen object without decoding it, only resolving its
+	 * type from the type ids of its header. Objects written with length
+	 * framing (see BinaryWriter.setFrameObjects) are skipped in one step,
+	 * other objects are skipped field by field.
+	 * 
+	 * This is useful for routing objects by type, without paying for
+	 * decoding and re-encoding them. With a BinaryBufferReader, position()
+	 * before and after this call delimits the encoded object, so it can be
+	 * forwarded or copied as a raw byte range.
+	 * 
+	 * @return The class registry entry of the object skipped, or null if the
+	 *         object was null or of unknown type
+	 * 
+	 * @throws IOException
+	 *             If the data input source throws an IOException
+	 */
+	public ClassRegistryEntry skipObject() throws IOException {
+
+		ensureTypeTag(null, TAG_CLASS, readTypeTag());
+
+		final int headerOrFrame = readSize();
+
+		if (headerOrFrame == 0)
+			return null;
+
+		final boolean framed = isFrameHeader(headerOrFrame);
+		final int headerOrDelta = framed ? readSize() : headerOrFrame;
+		final int deltaHeaderSize = headerOrDelta == BinaryWriter.DELTA_HEADER ? skipDeltaHeader()
+				: 0;
+		final int headerOrMarker = deltaHeaderSize > 0 ? readSize() : headerOrDelta;
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? readSize() : headerOrMarker;
+
+		final short[] ids;
+		final int nFields;
+
+		if (hasTypeIds(nIdsOrFields)) {
+			ids = readHeaderTypeIds(nIdsOrFields);
+			nFields = readSize();
+		} else { // type ids omitted
+			ids = null;
+			nFields = nIdsOrFields >> 2;
+		}
+
+		if (framed)
+			skipFrameRemainder(
+					headerOrFrame,
+					deltaHeaderSize,
+					compactFields,
+					nIdsOrFields,
+					ids,
+					nFields);
+		else
+			skipFields(nFields, compactFields);
+
+		return ids != null ? resolveTypeIds16Bit(ids) : null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -251,7 +413,27 @@ public class BinaryReader extends BuiltInReader {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public ArrayList<Object> readListField(
+	public ArrayList<?> readListField(
+			final Field field,
+			final Object context) throws IOException {
+		return (ArrayList<?>) readPrimitiveListField(field, context);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HashMap<?, ?> readMapField(
+			final Field field,
+			final Object context) throws IOException {
+		return (HashMap<?, ?>) readPrimitiveMapField(field, context);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<?> readPrimitiveListField(
 			final Field field,
 			final Object context) throws IOException {
 		ensureTypeTag(field, TAG_LIST, readTypeTag());
@@ -262,7 +444,7 @@ public class BinaryReader extends BuiltInReader {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public HashMap<Object, Object> readMapField(
+	public Map<?, ?> readPrimitiveMapField(
 			final Field field,
 			final Object context) throws IOException {
 		ensureTypeTag(field, TAG_MAP, readTypeTag());
@@ -286,8 +468,8 @@ public class BinaryReader extends BuiltInReader {
 	public Enum<?> readEnumField(final Field f, final Object context)
 			throws IOException {
 		final byte tag = readTypeTag();
-		ensureTypeTag(f, TAG_STRING, tag);
-		return readEnum(false, (RuntimeEnumType) f.typ());
+		ensureTypeTag(f, f.typ(), tag);
+		return readEnum(tag, (RuntimeEnumType) f.typ());
 	}
 
 	/**
@@ -302,6 +484,589 @@ public class BinaryReader extends BuiltInReader {
 	/*******************************************************************
 	 * 
 	 * 
+	 * - - - - - - - - - - GENERATED BINARY CODEC SUPPORT
+	 * 
+	 * The methods below are called from binary codecs generated with the
+	 * generate_binary_codecs setting (see MGenBase._readBinary(..)).
+	 * They are not intended to be called directly.
+	 * 
+	 ******************************************************************/
+
+	/**
+	 * Reads a field header: the 16 bit field id followed by the binary type
+	 * tag of the field, packed as (id &lt;&lt; 8) | tag. Compact field headers
+	 * are mapped to the id of the field at their ordinal. Compact field
+	 * headers of fields unknown to the class being read are returned as
+	 * negative values, which match no field.
+	 * 
+	 * @return The field header read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public int readFieldHeader() throws IOException {
+		if (m_codecFields != null) {
+			m_codecOrdinal = readCompactFieldHeader(m_codecOrdinal);
+			final int tag = readTypeTag() & 0xFF;
+			if (m_codecOrdinal >= m_codecFields.length)
+				return (-1 << 8) | tag;
+			return ((m_codecFields[m_codecOrdinal].id() & 0xFFFF) << 8) | tag;
+		}
+		final int id = readRawInt16() & 0xFFFF;
+		return (id << 8) | (readTypeTag() & 0xFF);
+	}
+
+	/**
+	 * Handles a field header which did not match any field header expected
+	 * by a generated binary codec. If the object has a field with the read
+	 * id, its type tag was unexpected and an UnexpectedTypeException is
+	 * thrown. Otherwise the field is unknown and is skipped.
+	 * 
+	 * @param object
+	 *            The object being read
+	 * 
+	 * @param fieldHeader
+	 *            The field header read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public void readUnmatchedField(final MGenBase object, final int fieldHeader)
+			throws IOException {
+		final Field field = fieldHeader >= 0 ? object._fieldById((short) (fieldHeader >>> 8))
+				: null;
+		final byte tag = (byte) fieldHeader;
+		if (field != null)
+			ensureTypeTag(field, field.typ(), tag);
+		skip(tag);
+	}
+
+	/**
+	 * Reads a boolean field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public boolean readBooleanValue() throws IOException {
+		return readBoolean(false);
+	}
+
+	/**
+	 * Reads an int8 field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public byte readInt8Value() throws IOException {
+		return readInt8(false);
+	}
+
+	/**
+	 * Reads an int16 field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public short readInt16Value() throws IOException {
+		return readInt16(false);
+	}
+
+	/**
+	 * Reads an int32 field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public int readInt32Value() throws IOException {
+		return readInt32(false);
+	}
+
+	/**
+	 * Reads an int64 field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public long readInt64Value() throws IOException {
+		return readInt64(false);
+	}
+
+	/**
+	 * Reads a float32 field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public float readFloat32Value() throws IOException {
+		return readFloat32(false);
+	}
+
+	/**
+	 * Reads a float64 field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public double readFloat64Value() throws IOException {
+		return readFloat64(false);
+	}
+
+	/**
+	 * Reads a string field value, following its field header.
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public String readStringValue() throws IOException {
+		return readString(false);
+	}
+
+	/**
+	 * Reads a list field value, following its field header.
+	 * 
+	 * @param field
+	 *            The field being read
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public List<?> readListValue(final Field field) throws IOException {
+		return readList(false, (ListType) field.typ());
+	}
+
+	/**
+	 * Reads a map field value, following its field header.
+	 * 
+	 * @param field
+	 *            The field being read
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public Map<?, ?> readMapValue(final Field field) throws IOException {
+		return readMap(false, (MapType) field.typ());
+	}
+
+	/**
+	 * Reads an array field value, following its field header.
+	 * 
+	 * @param field
+	 *            The field being read
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public Object readArrayValue(final Field field) throws IOException {
+		return readArray(false, (ArrayType) field.typ());
+	}
+
+	/**
+	 * Reads an MGen object field value, following its field header.
+	 * 
+	 * @param field
+	 *            The field being read
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public MGenBase readMGenObjectValue(final Field field) throws IOException {
+		return readMGenObject(false, (RuntimeClassType) field.typ());
+	}
+
+	/**
+	 * Reads a delta of an MGen object field, and applies it to the object
+	 * currently held by the field. Called from generated
+	 * MGenBase._readPatchField(..) methods.
+	 * 
+	 * @param field
+	 *            The field being read
+	 * 
+	 * @param existing
+	 *            The object currently held by the field, or null
+	 * 
+	 * @return The existing object if the delta is of the same class, or else
+	 *         a new object with the delta applied
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public MGenBase readPatchField(final Field field, final MGenBase existing)
+			throws IOException {
+		ensureTypeTag(field, TAG_CLASS, readTypeTag());
+		return readPatchObject(existing, (RuntimeClassType) field.typ(), false);
+	}
+
+	/**
+	 * Reads an enum field value, following its field header. Enums may be
+	 * written either as strings or by their integer values, as signaled by
+	 * the binary type tag of the field header.
+	 * 
+	 * @param fieldHeader
+	 *            The field header read
+	 * 
+	 * @param field
+	 *            The field being read
+	 * 
+	 * @return The value read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	public Enum<?> readEnumValue(final int fieldHeader, final Field field)
+			throws IOException {
+		return readEnum((byte) fieldHeader, (RuntimeEnumType) field.typ());
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - HEADER INSPECTION SUPPORT
+	 *
+	 * The methods below are called from BinaryView and
+	 * BinaryBufferReader.peekType(), to inspect encoded MGen objects
+	 * without decoding them.
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Reads the binary type tag and header of an MGen object, leaving this
+	 * reader at the first field of the object. Type ids are skipped.
+	 *
+	 * @param field
+	 *            The field holding the object, or null for root objects
+	 *
+	 * @return The number of fields of the object, or -1 if the object is null
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	int readViewHeader(final Field field) throws IOException {
+
+		ensureTypeTag(field, TAG_CLASS, readTypeTag());
+
+		final int headerOrFrame = readSize();
+
+		if (headerOrFrame == 0)
+			return -1;
+
+		final int headerOrMarker = readObjectHeader(headerOrFrame);
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? readSize() : headerOrMarker;
+
+		ClassRegistryEntry entry = null;
+		final int nFields;
+
+		if (hasTypeIds(nIdsOrFields)) {
+			if (compactFields)
+				entry = resolveTypeIds16Bit(readHeaderTypeIds(nIdsOrFields));
+			else
+				skipHeaderTypeIds(nIdsOrFields);
+			nFields = readSize();
+		} else { // type ids omitted
+			if (compactFields && field != null)
+				entry = m_clsReg.getById(((RuntimeClassType) field.typ()).typeId());
+			nFields = nIdsOrFields >> 2;
+		}
+
+		if (compactFields)
+			m_viewFields = entry != null ? entry.fields() : NO_FIELDS;
+		else
+			m_viewFields = null;
+		m_viewOrdinal = -1;
+
+		return nFields;
+	}
+
+	/**
+	 * Reads the binary type tag, header and type ids of an MGen object,
+	 * leaving this reader in the middle of the object.
+	 *
+	 * @return The class registry entry of the object, or null if the object
+	 *         is null or of unknown type
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	ClassRegistryEntry readTypeHeader() throws IOException {
+
+		ensureTypeTag(null, TAG_CLASS, readTypeTag());
+
+		final int headerOrFrame = readSize();
+
+		if (headerOrFrame == 0)
+			return null;
+
+		final int headerOrMarker = readObjectHeader(headerOrFrame);
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? readSize() : headerOrMarker;
+
+		if (hasTypeIds(nIdsOrFields))
+			return resolveTypeIds16Bit(readHeaderTypeIds(nIdsOrFields));
+		else // type ids omitted
+			return null;
+	}
+
+	/**
+	 * Gets the number of type dictionary entries read, so that entries read
+	 * while peeking can be forgotten with truncateTypeDictionary(int).
+	 *
+	 * @return The number of type dictionary entries, or 0 if the type
+	 *         dictionary is disabled
+	 */
+	int typeDictionarySize() {
+		return m_typeDictionary != null ? m_typeDictionary.size() : 0;
+	}
+
+	/**
+	 * Forgets type dictionary entries read after the type dictionary had the
+	 * given size. See typeDictionarySize().
+	 *
+	 * @param size
+	 *            The number of entries to keep
+	 */
+	void truncateTypeDictionary(final int size) {
+		if (m_typeDictionary != null)
+			m_typeDictionary.subList(size, m_typeDictionary.size()).clear();
+	}
+
+	/**
+	 * Reads the 16 bit id of the next field of an MGen object. For compact
+	 * field headers, the field ordinal read is mapped to a field id through
+	 * the class of the object, as resolved by readViewHeader(..).
+	 *
+	 * @return The field id read, or UNKNOWN_FIELD_ID for compact field
+	 *         headers of unknown fields
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	int readViewFieldId() throws IOException {
+		if (m_viewFields == null)
+			return readFieldId();
+		m_viewOrdinal = readCompactFieldHeader(m_viewOrdinal);
+		return m_viewOrdinal < m_viewFields.length ? m_viewFields[m_viewOrdinal].id()
+				: UNKNOWN_FIELD_ID;
+	}
+
+	/**
+	 * Gets the binary type tag of the last compact field header read, if it
+	 * has not yet been read by readTypeTag().
+	 *
+	 * @return The binary type tag, or -1 if there is none
+	 */
+	int fieldTag() {
+		return m_fieldTag;
+	}
+
+	/**
+	 * Sets the binary type tag to be returned by the next call to
+	 * readTypeTag(), for continuing to read a field with a compact field
+	 * header after repositioning this reader. See fieldTag().
+	 *
+	 * @param tag
+	 *            The binary type tag, or -1 to read it from the data
+	 */
+	void setFieldTag(final int tag) {
+		m_fieldTag = tag;
+	}
+
+	/**
+	 * Skips a field value, including its binary type tag.
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	void skipViewValue() throws IOException {
+		skip(readTypeTag());
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - RAW DATA INPUT
+	 *
+	 * All bytes read by this reader pass through the methods below.
+	 * Subclasses reading from other sources than an InputStream (see
+	 * BinaryBufferReader) override these.
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Reads a single raw byte from the data input source.
+	 *
+	 * @return The byte read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected byte readRawByte() throws IOException {
+		return (byte) m_stream.read();
+	}
+
+	/**
+	 * Reads a fixed size big-endian 16 bit integer from the data input source.
+	 *
+	 * @return The value read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected short readRawInt16() throws IOException {
+		int ch1 = m_stream.read();
+		int ch2 = m_stream.read();
+		if ((ch1 | ch2) < 0)
+			throw new EOFException();
+		return (short) ((ch1 << 8) + (ch2 << 0));
+	}
+
+	/**
+	 * Reads a fixed size big-endian 32 bit integer from the data input source.
+	 *
+	 * @return The value read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected int readRawInt32() throws IOException {
+		int ch1 = m_stream.read();
+		int ch2 = m_stream.read();
+		int ch3 = m_stream.read();
+		int ch4 = m_stream.read();
+		if ((ch1 | ch2 | ch3 | ch4) < 0)
+			throw new EOFException();
+		return ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
+	}
+
+	/**
+	 * Reads a fixed size big-endian 64 bit integer from the data input source.
+	 *
+	 * @return The value read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected long readRawInt64() throws IOException {
+		StreamUtil.readFully(m_stream, 8, m_readBuffer64);
+		return (((long) m_readBuffer64[0] << 56)
+				+ ((long) (m_readBuffer64[1] & 255) << 48)
+				+ ((long) (m_readBuffer64[2] & 255) << 40)
+				+ ((long) (m_readBuffer64[3] & 255) << 32)
+				+ ((long) (m_readBuffer64[4] & 255) << 24)
+				+ ((m_readBuffer64[5] & 255) << 16)
+				+ ((m_readBuffer64[6] & 255) << 8) + ((m_readBuffer64[7] & 255) << 0));
+	}
+
+	/**
+	 * Reads an unsigned 32 bit varint from the data input source.
+	 *
+	 * @return The value read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected int readUnsignedVarint32() throws IOException {
+		return Varint.readUnsignedVarInt(m_stream);
+	}
+
+	/**
+	 * Reads a signed (zig-zag encoded) 32 bit varint from the data input
+	 * source.
+	 *
+	 * @return The value read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected int readSignedVarint32() throws IOException {
+		return Varint.readSignedVarInt(m_stream);
+	}
+
+	/**
+	 * Reads a signed (zig-zag encoded) 64 bit varint from the data input
+	 * source.
+	 *
+	 * @return The value read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected long readSignedVarint64() throws IOException {
+		return Varint.readSignedVarLong(m_stream);
+	}
+
+	/**
+	 * Reads n raw bytes from the data input source.
+	 *
+	 * @param out
+	 *            The array to read the bytes into
+	 *
+	 * @param n
+	 *            The number of bytes to read
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected void readRawBytes(final byte[] out, final int n)
+			throws IOException {
+		StreamUtil.readFully(m_stream, n, out);
+	}
+
+	/**
+	 * Skips past n raw bytes in the data input source.
+	 *
+	 * @param n
+	 *            The number of bytes to skip
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected void skipRawBytes(final int n) throws IOException {
+		StreamUtil.skipFully(m_stream, n);
+	}
+
+	/**
+	 * Reads nBytes of UTF-8 encoded data from the data input source and
+	 * decodes it into a String.
+	 *
+	 * @param nBytes
+	 *            The number of encoded bytes to read
+	 *
+	 * @return The decoded String
+	 *
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	protected String readRawString(final int nBytes) throws IOException {
+		return m_stringDecoder.decode(m_stream, nBytes);
+	}
+
+	/*******************************************************************
+	 *
+	 *
 	 * - - - - - - - - - - INTERNAL METHODS
 	 * 
 	 ******************************************************************/
@@ -320,7 +1085,7 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private void skip(final byte typeTag) throws IOException {
+	void skip(final byte typeTag) throws IOException {
 		switch (typeTag) {
 		case TAG_BOOL:
 			readBoolean(false);
@@ -346,6 +1111,9 @@ public class BinaryReader extends BuiltInReader {
 		case TAG_STRING:
 			skipString(false);
 			break;
+		case TAG_ENUM:
+			readInt32(false);
+			break;
 		case TAG_LIST: // List and array have the same tags
 			skipList(false);
 			break;
@@ -410,43 +1178,168 @@ public class BinaryReader extends BuiltInReader {
 	/**
 	 * Internal method for skipping a string
 	 * 
-	 * @param doReadTag
-	 *            If we should start by reading the map's binary type tag
+	 * @param doReadTag
+	 *            If we should start by reading the map's binary type tag
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private void skipString(final boolean doReadTag) throws IOException {
+		if (doReadTag)
+			ensureTypeTag(null, TAG_STRING, readTypeTag());
+		skipRawBytes(readSize());
+	}
+
+	/**
+	 * Internal method for skipping an MGen object
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private void skipCustom() throws IOException {
+
+		final int headerOrFrame = readSize();
+
+		if (headerOrFrame == 0)
+			return;
+
+		if (isFrameHeader(headerOrFrame) && m_typeDictionary == null) {
+			skipRawBytes(headerOrFrame >>> 2);
+			return;
+		}
+
+		final int headerOrMarker = readObjectHeader(headerOrFrame);
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? readSize() : headerOrMarker;
+		final int nFields;
+
+		if (hasTypeIds(nIdsOrFields)) {
+			skipHeaderTypeIds(nIdsOrFields);
+			nFields = readSize();
+		} else { // type ids omitted
+			nFields = nIdsOrFields >> 2;
+		}
+
+		skipFields(nFields, compactFields);
+	}
+
+	/**
+	 * Internal method for checking if an MGen object header is a frame header,
+	 * i.e. if the object is prefixed by its length in bytes (see
+	 * BinaryWriter.setFrameObjects). Frame headers have both of the two
+	 * lowest bits set, which never happens for regular object headers.
+	 * 
+	 * @param header
+	 *            The object header read
+	 * 
+	 * @return If the header is a frame header
+	 */
+	static boolean isFrameHeader(final int header) {
+		return (header & 0x03) == 0x03;
+	}
+
+	/**
+	 * Internal method for checking if a (non-null, non-frame) MGen object
+	 * header is followed by type ids, written in full (lowest bits 01) or
+	 * through the type dictionary (lowest bits 00, see
+	 * setTypeDictionary(boolean)). Type ids are omitted for headers with
+	 * lowest bits 10.
+	 * 
+	 * @param header
+	 *            The object header read
+	 * 
+	 * @return If the header is followed by type ids
+	 */
+	static boolean hasTypeIds(final int header) {
+		return (header & 0x02) == 0;
+	}
+
+	/**
+	 * Internal method for reading the type ids following an MGen object
+	 * header, either in full or through the type dictionary.
+	 * 
+	 * @param header
+	 *            The object header read
+	 * 
+	 * @return The type ids read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	short[] readHeaderTypeIds(final int header) throws IOException {
+
+		if ((header & 0x01) != 0)
+			return readTypeIds(header >> 2);
+
+		if (m_typeDictionary == null)
+			throw new StreamCorruptedException(
+					"Type dictionary header read with the type dictionary disabled");
+
+		if ((header & 0x04) != 0) {
+			final short[] ids = readTypeIds(header >>> 3);
+			m_typeDictionary.add(ids);
+			return ids;
+		}
+
+		final int entry = (header >>> 3) - 1;
+		if (entry >= m_typeDictionary.size())
+			throw new StreamCorruptedException("Unknown type dictionary entry: "
+					+ entry);
+		return m_typeDictionary.get(entry);
+	}
+
+	/**
+	 * Internal method for reading the header of an MGen object following its
+	 * frame header, if any. Delta headers (see BinaryWriter.DELTA_HEADER) are
+	 * skipped, so deltas read as objects with only some fields set.
+	 * 
+	 * @param headerOrFrame
+	 *            The object header or frame header read
+	 * 
+	 * @return The object header, or the compact fields header
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	int readObjectHeader(final int headerOrFrame) throws IOException {
+		final int header = isFrameHeader(headerOrFrame) ? readSize() : headerOrFrame;
+		if (header != BinaryWriter.DELTA_HEADER)
+			return header;
+		skipDeltaHeader();
+		return readSize();
+	}
+
+	/**
+	 * Internal method for skipping the unset field ids of a delta header,
+	 * after BinaryWriter.DELTA_HEADER has been read.
+	 * 
+	 * @return The size in bytes of the delta header
 	 * 
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private void skipString(final boolean doReadTag) throws IOException {
-		if (doReadTag)
-			ensureTypeTag(null, TAG_STRING, readTypeTag());
-		final int nBytes = readSize();
-		for (int i = 0; i < nBytes; i++)
-			m_stream.read();
+	private int skipDeltaHeader() throws IOException {
+		final int nUnset = readSize();
+		skipRawBytes(nUnset * 2);
+		return Varint.sizeOfUnsignedVarInt(BinaryWriter.DELTA_HEADER)
+				+ Varint.sizeOfUnsignedVarInt(nUnset) + nUnset * 2;
 	}
 
 	/**
-	 * Internal method for skipping an MGen object
+	 * Internal method for skipping past the type ids following an MGen object
+	 * header. Type dictionary entry definitions are still read.
+	 * 
+	 * @param header
+	 *            The object header read
 	 * 
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private void skipCustom() throws IOException {
-
-		final int nIdsOrFields = readSize();
-
-		if (nIdsOrFields == 0)
-			return;
-
-		final int nFields;
-
-		if ((nIdsOrFields & 0x01) != 0) {
-			skipTypeIds(nIdsOrFields >> 2);
-			nFields = readSize();
-		} else { // type ids omitted
-			nFields = nIdsOrFields >> 2;
-		}
-
-		skipFields(nFields);
+	private void skipHeaderTypeIds(final int header) throws IOException {
+		if ((header & 0x01) != 0)
+			skipTypeIds(header >> 2);
+		else
+			readHeaderTypeIds(header);
 	}
 
 	/**
@@ -459,8 +1352,7 @@ public class BinaryReader extends BuiltInReader {
 	 *             If the underlying data input source throws an IOException
 	 */
 	private void skipTypeIds(int n) throws IOException {
-		for (int i = 0; i < n; i++)
-			readMgenTypeId();
+		skipRawBytes(n * 2);
 	}
 
 	/**
@@ -474,14 +1366,14 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private String readString(final boolean readTag) throws IOException {
+	String readString(final boolean readTag) throws IOException {
 
 		if (readTag)
 			ensureTypeTag(null, TAG_STRING, readTypeTag());
 
 		final int nBytes = readSize();
 		if (nBytes > 0) {
-			return m_stringDecoder.decode(m_stream, nBytes);
+			return readRawString(nBytes);
 		} else {
 			return "";
 		}
@@ -497,16 +1389,104 @@ public class BinaryReader extends BuiltInReader {
 	 * @param nFields
 	 *            The number of fields to read
 	 * 
+	 * @param compactFields
+	 *            If the fields were written with compact field headers
+	 * 
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private void readFields(final MGenBase object, final int nFields)
-			throws IOException {
+	private void readFields(
+			final MGenBase object,
+			final int nFields,
+			final boolean compactFields) throws IOException {
+
+		final Projection projection = m_projection;
+
+		if (projection == null && readBinary(object, nFields, compactFields)) {
+			ensureNoMissingReqFields(object, projection);
+			return;
+		}
+
+		if (compactFields) {
+			final Field[] fields = object._fields();
+			int ordinal = -1;
+			try {
+				for (int i = 0; i < nFields; i++) {
+					ordinal = readCompactFieldHeader(ordinal);
+					final Field field = ordinal < fields.length ? fields[ordinal]
+							: null;
+					if (field != null
+							&& (projection == null || projection.includes(field))) {
+						m_projection = projection != null ? projection.get(field)
+								: null;
+						object._readField(field.id(), null, this);
+						m_projection = projection;
+					} else {
+						skip(readTypeTag());
+					}
+				}
+			} finally {
+				m_projection = projection;
+			}
+		} else if (projection == null) {
+			for (int i = 0; i < nFields; i++)
+				object._readField(readFieldId(), null, this);
+		} else {
+			try {
+				for (int i = 0; i < nFields; i++) {
+					final short id = readFieldId();
+					final Field field = object._fieldById(id);
+					if (field != null && projection.includes(field)) {
+						m_projection = projection.get(field);
+						object._readField(id, null, this);
+						m_projection = projection;
+					} else {
+						skip(readTypeTag());
+					}
+				}
+			} finally {
+				m_projection = projection;
+			}
+		}
 
-		for (int i = 0; i < nFields; i++)
-			object._readField(readFieldId(), null, this);
+		ensureNoMissingReqFields(object, projection);
+	}
 
-		ensureNoMissingReqFields(object);
+	/**
+	 * Internal method for reading fields with the generated binary codec of
+	 * an object (see MGenBase._readBinary(..)). With compact field headers,
+	 * readFieldHeader() maps them to field ids through the fields of the
+	 * object, so the same codec reads both kinds of field headers.
+	 * 
+	 * @param object
+	 *            The object to read fields to
+	 * 
+	 * @param nFields
+	 *            The number of fields to read
+	 * 
+	 * @param compactFields
+	 *            If the fields were written with compact field headers
+	 * 
+	 * @return False if the object has no generated binary codec, in which
+	 *         case nothing has been read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private boolean readBinary(
+			final MGenBase object,
+			final int nFields,
+			final boolean compactFields) throws IOException {
+		final Field[] prevFields = m_codecFields;
+		final int prevOrdinal = m_codecOrdinal;
+		m_codecFields = compactFields ? object._fields() : null;
+		m_codecOrdinal = -1;
+		try {
+			return object._readBinary(this, nFields);
+		} finally {
+			m_codecFields = prevFields;
+			m_codecOrdinal = prevOrdinal;
+		}
 	}
 
 	/**
@@ -515,12 +1495,18 @@ public class BinaryReader extends BuiltInReader {
 	 * @param nFields
 	 *            The number of fields to skip
 	 * 
+	 * @param compactFields
+	 *            If the fields were written with compact field headers
+	 * 
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private void skipFields(final int nFields) throws IOException {
+	void skipFields(final int nFields, final boolean compactFields) throws IOException {
 		for (int i = 0; i < nFields; i++) {
-			readFieldId();
+			if (compactFields)
+				readCompactFieldHeader(-1);
+			else
+				readFieldId();
 			skip(readTypeTag());
 		}
 	}
@@ -547,16 +1533,24 @@ public class BinaryReader extends BuiltInReader {
 		if (readTypeTag)
 			ensureTypeTag(null, TAG_CLASS, readTypeTag());
 
-		final int nIdsOrFields = readSize();
+		final int headerOrFrame = readSize();
 
-		if (nIdsOrFields == 0)
+		if (headerOrFrame == 0)
 			return null;
 
+		final boolean framed = isFrameHeader(headerOrFrame);
+		final int headerOrDelta = framed ? readSize() : headerOrFrame;
+		final int deltaHeaderSize = headerOrDelta == BinaryWriter.DELTA_HEADER ? skipDeltaHeader()
+				: 0;
+		final int headerOrMarker = deltaHeaderSize > 0 ? readSize() : headerOrDelta;
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? readSize() : headerOrMarker;
+
 		final short[] ids;
 		final int nFields;
 
-		if ((nIdsOrFields & 0x01) != 0) {
-			ids = readTypeIds(nIdsOrFields >> 2);
+		if (hasTypeIds(nIdsOrFields)) {
+			ids = readHeaderTypeIds(nIdsOrFields);
 			nFields = readSize();
 		} else { // type ids omitted
 			ids = null;
@@ -566,14 +1560,174 @@ public class BinaryReader extends BuiltInReader {
 		final MGenBase object = instantiate(ids, constraint);
 
 		if (object != null) {
-			readFields(object, nFields);
-			ensureNoMissingReqFields(object);
+			readFields(object, nFields, compactFields);
 			return object;
+		} else if (framed) {
+			skipFrameRemainder(
+					headerOrFrame,
+					deltaHeaderSize,
+					compactFields,
+					nIdsOrFields,
+					ids,
+					nFields);
+			return null;
 		} else {
-			skipFields(nFields);
+			skipFields(nFields, compactFields);
+			return null;
+		}
+
+	}
+
+	/**
+	 * Internal method for reading a delta of an MGen object, applying it to
+	 * an existing object if the delta is of the same class. Objects written
+	 * in full, without a delta header, are read as new objects.
+	 * 
+	 * @param existing
+	 *            The object to apply the delta to, or null
+	 * 
+	 * @param constraint
+	 *            An optional type constraint, as for readMGenObject(..)
+	 * 
+	 * @param resetExisting
+	 *            If an object written in full should be read into the
+	 *            existing object, after resetting it, instead of into a new
+	 *            object
+	 * 
+	 * @return The object the delta was applied to, or null if the delta was
+	 *         of a null object or of unknown type
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private MGenBase readPatchObject(
+			final MGenBase existing,
+			final RuntimeClassType constraint,
+			final boolean resetExisting) throws IOException {
+
+		final int headerOrFrame = readSize();
+
+		if (headerOrFrame == 0)
 			return null;
+
+		final int headerOrDelta = isFrameHeader(headerOrFrame) ? readSize()
+				: headerOrFrame;
+		final boolean delta = headerOrDelta == BinaryWriter.DELTA_HEADER;
+		final short[] unsetFieldIds = delta ? readFieldIds(readSize()) : null;
+		final int headerOrMarker = delta ? readSize() : headerOrDelta;
+		final boolean compactFields = headerOrMarker == BinaryWriter.COMPACT_FIELDS_HEADER;
+		final int nIdsOrFields = compactFields ? readSize() : headerOrMarker;
+
+		final short[] ids;
+		final int nFields;
+
+		if (hasTypeIds(nIdsOrFields)) {
+			ids = readHeaderTypeIds(nIdsOrFields);
+			nFields = readSize();
+		} else { // type ids omitted
+			ids = null;
+			nFields = nIdsOrFields >> 2;
+		}
+
+		final boolean sameClass = existing != null
+				&& existing._typeId() == typeIdOf(ids, constraint);
+
+		final MGenBase object;
+		if (sameClass && delta)
+			object = existing;
+		else if (sameClass && resetExisting)
+			object = existing._reset();
+		else
+			object = instantiate(ids, constraint);
+
+		if (object != null && compactFields) {
+			final Field[] fields = object._fields();
+			int ordinal = -1;
+			for (int i = 0; i < nFields; i++) {
+				ordinal = readCompactFieldHeader(ordinal);
+				if (ordinal < fields.length)
+					object._readPatchField(fields[ordinal].id(), this);
+				else
+					skip(readTypeTag());
+			}
+		} else if (object != null) {
+			for (int i = 0; i < nFields; i++)
+				object._readPatchField(readFieldId(), this);
+		} else {
+			skipFields(nFields, compactFields);
+		}
+
+		if (object != null && delta) {
+			for (final short id : unsetFieldIds)
+				object._unsetPatchField(id);
 		}
 
+		return object;
+	}
+
+	/**
+	 * Internal method for finding the type id of an object read, from its
+	 * 16 bit type ids or from its type constraint if type ids were omitted.
+	 * 
+	 * @param ids
+	 *            The type ids read, or null
+	 * 
+	 * @param constraint
+	 *            The type constraint, or null
+	 * 
+	 * @return The type id, or 0 if unknown
+	 */
+	private long typeIdOf(final short[] ids, final RuntimeClassType constraint) {
+		if (ids == null)
+			return constraint != null ? constraint.typeId() : 0;
+		final ClassRegistryEntry entry = resolveTypeIds16Bit(ids);
+		return entry != null ? entry.typeId() : 0;
+	}
+
+	/**
+	 * Internal method for skipping the rest of a framed MGen object, after its
+	 * header has been read. Objects are skipped field by field when the type
+	 * dictionary is enabled, since they may hold type dictionary entry
+	 * definitions.
+	 * 
+	 * @param frameHeader
+	 *            The frame header read
+	 * 
+	 * @param deltaHeaderSize
+	 *            The size in bytes of the delta header read, or 0
+	 * 
+	 * @param compactFields
+	 *            If the object was written with compact field headers
+	 * 
+	 * @param nIdsOrFields
+	 *            The object header read after the frame header
+	 * 
+	 * @param ids
+	 *            The type ids read, or null if type ids were omitted
+	 * 
+	 * @param nFields
+	 *            The number of fields read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private void skipFrameRemainder(
+			final int frameHeader,
+			final int deltaHeaderSize,
+			final boolean compactFields,
+			final int nIdsOrFields,
+			final short[] ids,
+			final int nFields) throws IOException {
+		if (m_typeDictionary != null) {
+			skipFields(nFields, compactFields);
+			return;
+		}
+		int nHeaderBytes = deltaHeaderSize + Varint.sizeOfUnsignedVarInt(nIdsOrFields);
+		if (compactFields)
+			nHeaderBytes += Varint.sizeOfUnsignedVarInt(BinaryWriter.COMPACT_FIELDS_HEADER);
+		if (ids != null)
+			nHeaderBytes += ids.length * 2 + Varint.sizeOfUnsignedVarInt(nFields);
+		skipRawBytes((frameHeader >>> 2) - nHeaderBytes);
 	}
 
 	/**
@@ -588,7 +1742,7 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private short[] readTypeIds(final int nTypeIds) throws IOException {
+	short[] readTypeIds(final int nTypeIds) throws IOException {
 		if (nTypeIds > 0) {
 			final short[] typeIds = new short[nTypeIds];
 			for (int i = 0; i < typeIds.length; i++)
@@ -601,15 +1755,21 @@ public class BinaryReader extends BuiltInReader {
 	}
 
 	/**
-	 * Internal method for reading a binary type tag
+	 * Internal method for reading a binary type tag. The binary type tag of a
+	 * field with a compact field header is read together with the header, and
+	 * returned here.
 	 * 
 	 * @return The binary type tag read
 	 * 
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private byte readTypeTag() throws IOException {
-		return (byte) m_stream.read();
+	byte readTypeTag() throws IOException {
+		if (m_fieldTag < 0)
+			return readRawByte();
+		final byte tag = (byte) m_fieldTag;
+		m_fieldTag = -1;
+		return tag;
 	}
 
 	/**
@@ -626,7 +1786,7 @@ public class BinaryReader extends BuiltInReader {
 	private boolean readBoolean(final boolean readTag) throws IOException {
 		if (readTag)
 			ensureTypeTag(null, TAG_BOOL, readTypeTag());
-		return m_stream.read() != 0;
+		return readRawByte() != 0;
 	}
 
 	/**
@@ -643,7 +1803,7 @@ public class BinaryReader extends BuiltInReader {
 	private byte readInt8(final boolean readTag) throws IOException {
 		if (readTag)
 			ensureTypeTag(null, TAG_INT8, readTypeTag());
-		return (byte) m_stream.read();
+		return readRawByte();
 	}
 
 	/**
@@ -660,11 +1820,7 @@ public class BinaryReader extends BuiltInReader {
 	private short readInt16(final boolean readTag) throws IOException {
 		if (readTag)
 			ensureTypeTag(null, TAG_INT16, readTypeTag());
-		int ch1 = m_stream.read();
-		int ch2 = m_stream.read();
-		if ((ch1 | ch2) < 0)
-			throw new EOFException();
-		return (short) ((ch1 << 8) + (ch2 << 0));
+		return readRawInt16();
 	}
 
 	/**
@@ -681,7 +1837,7 @@ public class BinaryReader extends BuiltInReader {
 	private int readInt32(final boolean readTag) throws IOException {
 		if (readTag)
 			ensureTypeTag(null, TAG_INT32, readTypeTag());
-		return Varint.readSignedVarInt(m_stream);
+		return readSignedVarint32();
 	}
 
 	/**
@@ -698,7 +1854,7 @@ public class BinaryReader extends BuiltInReader {
 	private long readInt64(final boolean readTag) throws IOException {
 		if (readTag)
 			ensureTypeTag(null, TAG_INT64, readTypeTag());
-		return Varint.readSignedVarLong(m_stream);
+		return readSignedVarint64();
 	}
 
 	/**
@@ -716,25 +1872,7 @@ public class BinaryReader extends BuiltInReader {
 		if (readTag)
 			ensureTypeTag(null, TAG_FLOAT32, readTypeTag());
 
-		return Float.intBitsToFloat(read32());
-	}
-
-	/**
-	 * Internal method for reading a fixed size big-endian 32 bit integer.
-	 * 
-	 * @return The value read
-	 * 
-	 * @throws IOException
-	 *             If the underlying data input source throws an IOException
-	 */
-	private int read32() throws IOException {
-		int ch1 = m_stream.read();
-		int ch2 = m_stream.read();
-		int ch3 = m_stream.read();
-		int ch4 = m_stream.read();
-		if ((ch1 | ch2 | ch3 | ch4) < 0)
-			throw new EOFException();
-		return ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
+		return Float.intBitsToFloat(readRawInt32());
 	}
 
 	/**
@@ -751,26 +1889,7 @@ public class BinaryReader extends BuiltInReader {
 	private double readFloat64(final boolean readTag) throws IOException {
 		if (readTag)
 			ensureTypeTag(null, TAG_FLOAT64, readTypeTag());
-		return Double.longBitsToDouble(read64());
-	}
-
-	/**
-	 * Internal method for reading a fixed size big-endian 64 bit integer.
-	 * 
-	 * @return The value read
-	 * 
-	 * @throws IOException
-	 *             If the underlying data input source throws an IOException
-	 */
-	private long read64() throws IOException {
-		StreamUtil.readFully(m_stream, 8, m_readBuffer64);
-		return (((long) m_readBuffer64[0] << 56)
-				+ ((long) (m_readBuffer64[1] & 255) << 48)
-				+ ((long) (m_readBuffer64[2] & 255) << 40)
-				+ ((long) (m_readBuffer64[3] & 255) << 32)
-				+ ((long) (m_readBuffer64[4] & 255) << 24)
-				+ ((m_readBuffer64[5] & 255) << 16)
-				+ ((m_readBuffer64[6] & 255) << 8) + ((m_readBuffer64[7] & 255) << 0));
+		return Double.longBitsToDouble(readRawInt64());
 	}
 
 	/**
@@ -781,8 +1900,8 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private int readSize() throws IOException {
-		final int out = Varint.readUnsignedVarInt(m_stream);
+	int readSize() throws IOException {
+		final int out = readUnsignedVarint32();
 		if (out < 0)
 			throw new StreamCorruptedException("readSize() < 0");
 		return out;
@@ -808,10 +1927,48 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private short readFieldId() throws IOException {
+	short readFieldId() throws IOException {
 		return readInt16(false);
 	}
 
+	/**
+	 * Internal method for reading the field ids of a delta header.
+	 * 
+	 * @param n
+	 *            The number of ids to read
+	 * 
+	 * @return The ids read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private short[] readFieldIds(final int n) throws IOException {
+		final short[] ids = new short[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = readFieldId();
+		return ids;
+	}
+
+	/**
+	 * Internal method for reading a compact field header (see
+	 * BinaryWriter.setCompactFieldHeaders(boolean)). The binary type tag of
+	 * the field is returned by the next call to readTypeTag().
+	 * 
+	 * @param prevOrdinal
+	 *            The ordinal of the previous field read of the same object,
+	 *            or -1 for the first field
+	 * 
+	 * @return The ordinal of the field, i.e. its index in MGenBase._fields()
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	int readCompactFieldHeader(final int prevOrdinal) throws IOException {
+		final int header = readSize();
+		m_fieldTag = header & 0x0F;
+		return prevOrdinal + (header >>> 4) + 1;
+	}
+
 	/**
 	 * Internal convenience method for verifying an expected binary type tag
 	 * versus an actual read one.
@@ -834,6 +1991,28 @@ public class BinaryReader extends BuiltInReader {
 		}
 	}
 
+	/**
+	 * Internal convenience method for verifying that a read binary type tag
+	 * is valid for an expected type. Enums may be written either as strings
+	 * (TAG_STRING) or by their integer values (TAG_ENUM).
+	 * 
+	 * @param field
+	 *            The field the comparison is made for, or null
+	 * 
+	 * @param expType
+	 *            The expected type
+	 * 
+	 * @param readTag
+	 *            The actual read binary type tag
+	 */
+	void ensureTypeTag(
+			final Field field,
+			final Type expType,
+			final byte readTag) {
+		if (readTag != TAG_ENUM || expType.typeEnum() != TypeEnum.ENUM)
+			ensureTypeTag(field, expType.typeTag(), readTag);
+	}
+
 	/**
 	 * Helper method for reading an array
 	 * 
@@ -874,10 +2053,12 @@ public class BinaryReader extends BuiltInReader {
 		case TAG_STRING:
 			if (constraint != null
 					&& constraint.elementType().typeEnum() == TypeEnum.ENUM) {
-				return readEnumArray(n, constraint, false);
+				return readEnumArray(n, elemTypeTag, constraint);
 			} else {
 				return readStringArray(n, false);
 			}
+		case TAG_ENUM:
+			return readEnumArray(n, elemTypeTag, constraint);
 		case TAG_LIST:
 		case TAG_MAP:
 		case TAG_CLASS:
@@ -927,7 +2108,7 @@ public class BinaryReader extends BuiltInReader {
 	private Object readInt8Array(final int n, final boolean b)
 			throws IOException {
 		final byte[] array = new byte[n];
-		StreamUtil.readFully(m_stream, n, array);
+		readRawBytes(array, n);
 		return array;
 	}
 
@@ -1047,8 +2228,11 @@ public class BinaryReader extends BuiltInReader {
 	 * @param n
 	 *            The number of array elements to read
 	 * 
-	 * @param b
-	 *            ignored
+	 * @param elemTypeTag
+	 *            The binary type tag the enums were written with
+	 * 
+	 * @param constraint
+	 *            The type metadata describing the array type
 	 * 
 	 * @return The array read
 	 * 
@@ -1057,13 +2241,13 @@ public class BinaryReader extends BuiltInReader {
 	 */
 	private Object readEnumArray(
 			final int n,
-			final ArrayType constraint,
-			final boolean b) throws IOException {
+			final byte elemTypeTag,
+			final ArrayType constraint) throws IOException {
 		final Enum<?>[] array = constraint != null ? (Enum<?>[]) constraint
 				.newInstance(n) : new Enum<?>[n];
 		for (int i = 0; i < array.length; i++)
 			array[i] = readEnum(
-					false,
+					elemTypeTag,
 					constraint != null ? (RuntimeEnumType) constraint
 							.elementType() : null);
 		return array;
@@ -1158,10 +2342,12 @@ public class BinaryReader extends BuiltInReader {
 			return readFloat64(false);
 		case TAG_STRING:
 			if (constraint != null && constraint.typeEnum() == TypeEnum.ENUM) {
-				return readEnum(false, (RuntimeEnumType) constraint);
+				return readEnum(typeTag, (RuntimeEnumType) constraint);
 			} else {
 				return readString(false);
 			}
+		case TAG_ENUM:
+			return readEnum(typeTag, (RuntimeEnumType) constraint);
 		case TAG_LIST: // array and list have the same write tag
 			if (constraint != null && constraint.typeEnum() == TypeEnum.ARRAY)
 				return readArray(false, (ArrayType) constraint);
@@ -1203,8 +2389,7 @@ public class BinaryReader extends BuiltInReader {
 
 			final byte rcvdTag = readTypeTag();
 			if (constraint != null) {
-				final byte expTag = constraint.elementType().typeTag();
-				ensureTypeTag(null, expTag, rcvdTag);
+				ensureTypeTag(null, constraint.elementType(), rcvdTag);
 			}
 			return readArray2(nElements, rcvdTag, constraint);
 
@@ -1230,13 +2415,16 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private ArrayList<Object> readList(
+	private List<?> readList(
 			final boolean doReadTag,
 			final ListOrArrayType constraint) throws IOException {
 
 		if (doReadTag)
 			ensureTypeTag(null, TAG_LIST, readTypeTag());
 
+		if (constraint instanceof PrimitiveListType)
+			return readPrimitiveElements(constraint.elementType());
+
 		return readElements(
 				false,
 				constraint != null ? constraint.elementType() : null);
@@ -1259,16 +2447,18 @@ public class BinaryReader extends BuiltInReader {
 	 * @throws IOException
 	 *             If the underlying data input source throws an IOException
 	 */
-	private HashMap<Object, Object> readMap(
+	private Map<?, ?> readMap(
 			final boolean doReadTag,
 			final MapType constraint) throws IOException {
 
 		if (doReadTag)
 			ensureTypeTag(null, TAG_MAP, readTypeTag());
 
+		if (constraint instanceof PrimitiveMapType)
+			return readPrimitiveKeyMap(constraint);
+
 		final int nElements = readSize();
-		final HashMap<Object, Object> out = new HashMap<Object, Object>(
-				nElements);
+		final HashMap<Object, Object> out = newHashMap(nElements);
 
 		if (nElements > 0) {
 
@@ -1281,8 +2471,8 @@ public class BinaryReader extends BuiltInReader {
 					: null;
 
 			if (constraint != null) {
-				ensureTypeTag(null, keyType.typeTag(), keyTag);
-				ensureTypeTag(null, valueType.typeTag(), valueTag);
+				ensureTypeTag(null, keyType, keyTag);
+				ensureTypeTag(null, valueType, valueTag);
 			}
 
 			for (int i = 0; i < nElements; i++) {
@@ -1296,6 +2486,110 @@ public class BinaryReader extends BuiltInReader {
 		return out;
 	}
 
+	/**
+	 * Internal method for reading a map with int32 or int64 keys into an
+	 * IntObjMap or LongObjMap, without boxing the keys.
+	 * 
+	 * @param constraint
+	 *            Type meta data information about the map to read
+	 * 
+	 * @return The read map
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<?, ?> readPrimitiveKeyMap(final MapType constraint)
+			throws IOException {
+
+		final int nElements = readSize();
+		final Type keyType = constraint.keyType();
+		final Type valueType = constraint.valueType();
+
+		byte valueTag = 0;
+		if (nElements > 0) {
+			ensureTypeTag(null, keyType, readTypeTag());
+			valueTag = readTypeTag();
+			ensureTypeTag(null, valueType, valueTag);
+		}
+
+		if (keyType.typeEnum() == TypeEnum.INT32) {
+			IntObjMap<Object> out = reuseCollection(IntObjMap.class);
+			if (out == null)
+				out = new IntObjMap<Object>(nElements);
+			for (int i = 0; i < nElements; i++) {
+				final int key = readInt32(false);
+				out.put(key, readObject(valueTag, valueType));
+			}
+			return out;
+		} else {
+			LongObjMap<Object> out = reuseCollection(LongObjMap.class);
+			if (out == null)
+				out = new LongObjMap<Object>(nElements);
+			for (int i = 0; i < nElements; i++) {
+				final long key = readInt64(false);
+				out.put(key, readObject(valueTag, valueType));
+			}
+			return out;
+		}
+
+	}
+
+	/**
+	 * Internal method for reading list elements into an IntList, LongList or
+	 * DoubleList, without boxing them.
+	 * 
+	 * @param elementType
+	 *            The element type of the list, int32, int64 or float64
+	 * 
+	 * @return The list read
+	 * 
+	 * @throws IOException
+	 *             If the underlying data input source throws an IOException
+	 */
+	private List<?> readPrimitiveElements(final Type elementType)
+			throws IOException {
+
+		final int nElements = readSize();
+
+		if (nElements > 0)
+			ensureTypeTag(null, elementType, readTypeTag());
+
+		switch (elementType.typeEnum()) {
+		case INT32: {
+			IntList out = reuseCollection(IntList.class);
+			if (out == null)
+				out = new IntList(nElements);
+			else
+				out.ensureCapacity(nElements);
+			for (int i = 0; i < nElements; i++)
+				out.addInt(readInt32(false));
+			return out;
+		}
+		case INT64: {
+			LongList out = reuseCollection(LongList.class);
+			if (out == null)
+				out = new LongList(nElements);
+			else
+				out.ensureCapacity(nElements);
+			for (int i = 0; i < nElements; i++)
+				out.addLong(readInt64(false));
+			return out;
+		}
+		default: {
+			DoubleList out = reuseCollection(DoubleList.class);
+			if (out == null)
+				out = new DoubleList(nElements);
+			else
+				out.ensureCapacity(nElements);
+			for (int i = 0; i < nElements; i++)
+				out.addDouble(readFloat64(false));
+			return out;
+		}
+		}
+
+	}
+
 	/**
 	 * Internal helper method for reading list elements, used exclusively by
 	 * readList
@@ -1322,14 +2616,14 @@ public class BinaryReader extends BuiltInReader {
 
 		final int nElements = readSize();
 
-		final ArrayList<Object> out = new ArrayList<Object>(nElements);
+		final ArrayList<Object> out = newArrayList(nElements);
 
 		if (nElements > 0) {
 
 			final byte readElemTag = readTypeTag();
 
-			if (constraint != null && constraint.typeTag() != readElemTag)
-				throwUnexpectTag("", constraint.typeTag(), readElemTag);
+			if (constraint != null)
+				ensureTypeTag(null, constraint, readElemTag);
 
 			switch (readElemTag) {
 			case TAG_BOOL:
@@ -1365,12 +2659,18 @@ public class BinaryReader extends BuiltInReader {
 						&& constraint.typeEnum() == TypeEnum.ENUM) {
 					final RuntimeEnumType t = (RuntimeEnumType) constraint;
 					for (int i = 0; i < nElements; i++)
-						out.add(readEnum(false, t));
+						out.add(readEnum(readElemTag, t));
 				} else {
 					for (int i = 0; i < nElements; i++)
 						out.add(readString(false));
 				}
 				break;
+			case TAG_ENUM: {
+				final RuntimeEnumType t = (RuntimeEnumType) constraint;
+				for (int i = 0; i < nElements; i++)
+					out.add(readEnum(readElemTag, t));
+				break;
+			}
 			default:
 				for (int i = 0; i < nElements; i++)
 					out.add(readObject(readElemTag, constraint));
@@ -1403,8 +2703,8 @@ public class BinaryReader extends BuiltInReader {
 		if (ids == null && constraint == null)
 			return null;
 
-		final ClassRegistryEntry entry = ids != null ? m_clsReg
-				.getByTypeIds16Bit(ids) : m_clsReg.getById(constraint.typeId());
+		final ClassRegistryEntry entry = ids != null ? resolveTypeIds16Bit(ids)
+				: m_clsReg.getById(constraint.typeId());
 
 		if (constraint != null) {
 			if (entry == null) {
@@ -1416,21 +2716,23 @@ public class BinaryReader extends BuiltInReader {
 			}
 		}
 
-		return entry != null ? entry.construct() : null;
+		return entry != null ? instantiate(entry) : null;
 
 	}
 
 	/**
 	 * Internal helper method for reading an enum
 	 * 
-	 * @param readTag
-	 *            If we should start by verifying the written binary type tag
+	 * @param typeTag
+	 *            The binary type tag the enum was written with. Enums are
+	 *            written on the wire either as strings (TAG_STRING) or by
+	 *            their integer values (TAG_ENUM).
 	 * 
 	 * @param constraint
 	 *            An required type constraint. In order to read the enum value,
-	 *            an enum type (the constraint) must be specified. Enums are
-	 *            written on the wire as strings, so the constraint parameter is
-	 *            what matches these strings against an actual local enum value.
+	 *            an enum type (the constraint) must be specified. The
+	 *            constraint is what matches the written names or integer
+	 *            values against an actual local enum value.
 	 * 
 	 * @return The enum read
 	 * 
@@ -1438,10 +2740,15 @@ public class BinaryReader extends BuiltInReader {
 	 *             If the underlying data input source throws an IOException
 	 */
 	private Enum<?> readEnum(
-			final boolean readTag,
+			final byte typeTag,
 			final RuntimeEnumType constraint) throws IOException {
-		final String writtenName = readString(readTag);
-		return constraint != null ? constraint.get(writtenName) : null;
+		if (typeTag == TAG_ENUM) {
+			final int writtenValue = readSignedVarint32();
+			return constraint != null ? constraint.get(writtenValue) : null;
+		} else {
+			final String writtenName = readString(false);
+			return constraint != null ? constraint.get(writtenName) : null;
+		}
 	}
 
 }
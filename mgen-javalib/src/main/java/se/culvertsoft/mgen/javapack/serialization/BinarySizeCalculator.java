@@ -0,0 +1,537 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+
+import se.culvertsoft.mgen.api.model.ArrayType;
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.api.model.ListType;
+import se.culvertsoft.mgen.api.model.MapType;
+import se.culvertsoft.mgen.api.model.RuntimeClassType;
+import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.classes.MGenEnum;
+import se.culvertsoft.mgen.javapack.exceptions.SerializationException;
+import se.culvertsoft.mgen.javapack.metadata.FieldVisitSelection;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongList;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
+import se.culvertsoft.mgen.javapack.util.Utf8;
+import se.culvertsoft.mgen.javapack.util.Varint;
+
+/**
+ * Calculates the exact number of bytes a BinaryWriter would write for an MGen
+ * object, without writing it. Useful for sizing network frames or reserving
+ * space in a buffer before writing.
+ *
+ * The calculator visits the same fields as the BinaryWriter
+ * (FieldVisitSelection.ALL_SET_NONTRANSIENT) and must be configured with the
+ * same settings as the writer (compact mode, object framing, enum encoding,
+ * leaf type ids and compact field headers). See also
+ * BinaryWriter.binarySize(MGenBase), which does this automatically. Apart
+ * from iterators over maps, which the JIT normally eliminates, calculating
+ * sizes does not allocate any memory.
+ *
+ * Like the writers, a BinarySizeCalculator is not thread safe.
+ */
+public class BinarySizeCalculator implements FieldVisitor {
+
+	private final boolean m_compact;
+	private boolean m_frameObjects;
+	private boolean m_writeEnumsAsInts;
+	private boolean m_leafTypeIds;
+	private boolean m_compactFieldHeaders;
+	private Field[] m_fields;
+	private int m_fieldOrdinal;
+	private long m_expectType;
+	private long m_size;
+
+	/**
+	 * Creates a new size calculator.
+	 *
+	 * @param compact
+	 *            If sizes should be calculated for objects written in compact
+	 *            mode. See BinaryWriter.
+	 */
+	public BinarySizeCalculator(final boolean compact) {
+		m_compact = compact;
+		m_frameObjects = BinaryWriter.DEFAULT_FRAME_OBJECTS;
+		m_writeEnumsAsInts = BinaryWriter.DEFAULT_WRITE_ENUMS_AS_INTS;
+		m_leafTypeIds = BinaryWriter.DEFAULT_LEAF_TYPE_IDS;
+		m_compactFieldHeaders = BinaryWriter.DEFAULT_COMPACT_FIELD_HEADERS;
+		m_expectType = -1;
+		m_size = 0;
+	}
+
+	/**
+	 * Creates a new size calculator for objects written in standard (non
+	 * compact) mode.
+	 */
+	public BinarySizeCalculator() {
+		this(BinaryWriter.DEFAULT_COMPACT);
+	}
+
+	/**
+	 * Configures whether sizes should be calculated for length prefixed
+	 * (framed) objects. See BinaryWriter.setFrameObjects(boolean).
+	 *
+	 * @param frameObjects
+	 *            If objects are written length prefixed
+	 *
+	 * @return This calculator
+	 */
+	public BinarySizeCalculator setFrameObjects(final boolean frameObjects) {
+		m_frameObjects = frameObjects;
+		return this;
+	}
+
+	/**
+	 * Configures whether sizes should be calculated for enums written as
+	 * integers. See BinaryWriter.setWriteEnumsAsInts(boolean).
+	 *
+	 * @param writeEnumsAsInts
+	 *            If enums are written as integers
+	 *
+	 * @return This calculator
+	 */
+	public BinarySizeCalculator setWriteEnumsAsInts(final boolean writeEnumsAsInts) {
+		m_writeEnumsAsInts = writeEnumsAsInts;
+		return this;
+	}
+
+	/**
+	 * Configures whether sizes should be calculated for objects identified by
+	 * their leaf type ids only. See BinaryWriter.setLeafTypeIds(boolean).
+	 *
+	 * @param leafTypeIds
+	 *            If objects are written with leaf type ids only
+	 *
+	 * @return This calculator
+	 */
+	public BinarySizeCalculator setLeafTypeIds(final boolean leafTypeIds) {
+		m_leafTypeIds = leafTypeIds;
+		return this;
+	}
+
+	/**
+	 * Configures whether sizes should be calculated for objects written with
+	 * compact field headers. See BinaryWriter.setCompactFieldHeaders(boolean).
+	 *
+	 * @param compactFieldHeaders
+	 *            If objects are written with compact field headers
+	 *
+	 * @return This calculator
+	 */
+	public BinarySizeCalculator setCompactFieldHeaders(final boolean compactFieldHeaders) {
+		m_compactFieldHeaders = compactFieldHeaders;
+		return this;
+	}
+
+	/**
+	 * Calculates the number of bytes BinaryWriter.writeObject(object) would
+	 * write for an object.
+	 *
+	 * @param object
+	 *            The object to calculate the size of
+	 *
+	 * @return The number of bytes
+	 */
+	public long calcSize(final MGenBase object) {
+		m_size = 1; // type tag
+		m_expectType = -1;
+		try {
+			addObject(object, null);
+		} catch (final IOException e) {
+			// FieldVisitor methods are declared as throwing, but ours never do
+			throw new SerializationException(e);
+		}
+		return m_size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void beginVisit(final MGenBase object, final int nFields) {
+		if (m_compactFieldHeaders) {
+			m_size += 1; // BinaryWriter.COMPACT_FIELDS_HEADER
+			m_fields = object._fields();
+			m_fieldOrdinal = -1;
+		}
+		if (m_compact && object._typeId() == m_expectType) {
+			m_size += Varint.sizeOfUnsignedVarInt((nFields << 2) | 0x02);
+		} else {
+			final int nIds = m_leafTypeIds ? 1 : object._typeIds16Bit().length;
+			m_size += Varint.sizeOfUnsignedVarInt((nIds << 2) | 0x01);
+			m_size += nIds * 2;
+			m_size += Varint.sizeOfUnsignedVarInt(nFields);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final boolean b, final Field field) {
+		m_size += fieldHeaderSize(field) + 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final byte b, final Field field) {
+		m_size += fieldHeaderSize(field) + 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final short s, final Field field) {
+		m_size += fieldHeaderSize(field) + 2;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final int i, final Field field) {
+		m_size += fieldHeaderSize(field) + Varint.sizeOfSignedVarInt(i);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final long l, final Field field) {
+		m_size += fieldHeaderSize(field) + Varint.sizeOfSignedVarLong(l);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final float f, final Field field) {
+		m_size += fieldHeaderSize(field) + 4;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final double d, final Field field) {
+		m_size += fieldHeaderSize(field) + 8;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final String s, final Field field) {
+		m_size += fieldHeaderSize(field);
+		addString(s);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final Enum<?> e, final Field field) {
+		m_size += fieldHeaderSize(field);
+		addEnum(e);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final Object o, final Field field) throws IOException {
+		m_size += fieldHeaderSize(field);
+		addValue(o, field.typ());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void endVisit() {
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 ******************************************************************/
+
+	/**
+	 * The size of a field header: a 16 bit field id and a binary type tag.
+	 */
+	private static final int FIELD_HEADER_SIZE = 3;
+
+	/**
+	 * Internal method for calculating the size of a field header.
+	 *
+	 * @param field
+	 *            The field
+	 *
+	 * @return The size of the field header
+	 */
+	private int fieldHeaderSize(final Field field) {
+		if (!m_compactFieldHeaders)
+			return FIELD_HEADER_SIZE;
+		final int ordinal = BinaryWriter.fieldOrdinal(m_fields, m_fieldOrdinal, field.id());
+		final int delta = ordinal - m_fieldOrdinal - 1;
+		m_fieldOrdinal = ordinal;
+		return Varint.sizeOfUnsignedVarInt(delta << 4);
+	}
+
+	/**
+	 * Internal method for adding the size of an MGen object (without type
+	 * tag).
+	 *
+	 * @param o
+	 *            The object, or null
+	 *
+	 * @param typ
+	 *            The declared type of the object, or null for top level
+	 *            objects
+	 *
+	 * @throws IOException
+	 *             Never, but declared by MGenBase._accept(..)
+	 */
+	private void addObject(final MGenBase o, final RuntimeClassType typ)
+			throws IOException {
+		if (o != null) {
+			final Field[] fields = m_fields;
+			final int ordinal = m_fieldOrdinal;
+			m_expectType = typ != null ? typ.typeId() : 0;
+			if (m_frameObjects)
+				m_size += BinaryWriter.FRAME_HEADER_SIZE;
+			o._accept(this, FieldVisitSelection.ALL_SET_NONTRANSIENT);
+			m_fields = fields;
+			m_fieldOrdinal = ordinal;
+		} else {
+			m_size += 1;
+		}
+	}
+
+	/**
+	 * Internal method for adding the size of a string (without type tag).
+	 *
+	 * @param s
+	 *            The string, or null
+	 */
+	private void addString(final String s) {
+		final int nBytes = s != null ? Utf8.encodedLength(s) : 0;
+		m_size += Varint.sizeOfUnsignedVarInt(nBytes) + nBytes;
+	}
+
+	/**
+	 * Internal method for adding the size of an enum (without type tag).
+	 *
+	 * @param e
+	 *            The enum value, or null
+	 */
+	private void addEnum(final Enum<?> e) {
+		if (m_writeEnumsAsInts) {
+			m_size += Varint.sizeOfSignedVarInt(e != null ? ((MGenEnum) e)
+					.getIntValue() : BinaryWriter.NULL_ENUM_INT_VALUE);
+		} else {
+			addString(String.valueOf(e));
+		}
+	}
+
+	/**
+	 * Internal method for adding the size of a value of any type (without
+	 * type tag).
+	 *
+	 * @param o
+	 *            The value, or null
+	 *
+	 * @param typ
+	 *            The type of the value
+	 *
+	 * @throws IOException
+	 *             Never, but declared by MGenBase._accept(..)
+	 */
+	@SuppressWarnings("unchecked")
+	private void addValue(final Object o, final Type typ) throws IOException {
+		switch (typ.typeEnum()) {
+		case ENUM:
+			addEnum((Enum<?>) o);
+			break;
+		case BOOL:
+		case INT8:
+			m_size += 1;
+			break;
+		case INT16:
+			m_size += 2;
+			break;
+		case INT32:
+			m_size += Varint.sizeOfSignedVarInt(o != null ? (Integer) o : 0);
+			break;
+		case INT64:
+			m_size += Varint.sizeOfSignedVarLong(o != null ? (Long) o : 0L);
+			break;
+		case FLOAT32:
+			m_size += 4;
+			break;
+		case FLOAT64:
+			m_size += 8;
+			break;
+		case STRING:
+			addString((String) o);
+			break;
+		case ARRAY:
+			addArray(o, (ArrayType) typ);
+			break;
+		case LIST:
+			addList((List<Object>) o, (ListType) typ);
+			break;
+		case MAP:
+			addMap((Map<Object, Object>) o, (MapType) typ);
+			break;
+		case CLASS:
+			addObject((MGenBase) o, (RuntimeClassType) typ);
+			break;
+		default:
+			throw new SerializationException("Unknown type tag for addValue");
+		}
+	}
+
+	/**
+	 * Internal method for adding the size of a list (without type tag).
+	 *
+	 * @param list
+	 *            The list, or null
+	 *
+	 * @param typ
+	 *            The type of the list
+	 *
+	 * @throws IOException
+	 *             Never, but declared by MGenBase._accept(..)
+	 */
+	private void addList(final List<?> list, final ListType typ)
+			throws IOException {
+		final int n = list != null ? list.size() : 0;
+		m_size += Varint.sizeOfUnsignedVarInt(n);
+		if (n > 0) {
+			m_size += 1; // element type tag
+			if (list instanceof IntList) {
+				final IntList l = (IntList) list;
+				for (int i = 0; i < n; i++)
+					m_size += Varint.sizeOfSignedVarInt(l.getInt(i));
+			} else if (list instanceof LongList) {
+				final LongList l = (LongList) list;
+				for (int i = 0; i < n; i++)
+					m_size += Varint.sizeOfSignedVarLong(l.getLong(i));
+			} else if (list instanceof DoubleList) {
+				m_size += n * 8L;
+			} else {
+				final Type elementType = typ.elementType();
+				for (int i = 0; i < n; i++)
+					addValue(list.get(i), elementType);
+			}
+		}
+	}
+
+	/**
+	 * Internal method for adding the size of a map (without type tag).
+	 *
+	 * @param map
+	 *            The map, or null
+	 *
+	 * @param typ
+	 *            The type of the map
+	 *
+	 * @throws IOException
+	 *             Never, but declared by MGenBase._accept(..)
+	 */
+	private void addMap(final Map<?, ?> map, final MapType typ)
+			throws IOException {
+		final int n = map != null ? map.size() : 0;
+		m_size += Varint.sizeOfUnsignedVarInt(n);
+		if (n > 0) {
+			m_size += 2; // key and value type tags
+			final Type keyType = typ.keyType();
+			final Type valueType = typ.valueType();
+			if (map instanceof IntObjMap) {
+				final IntObjMap<?> m = (IntObjMap<?>) map;
+				for (int i = m.firstSlot(); i >= 0; i = m.nextSlot(i)) {
+					m_size += Varint.sizeOfSignedVarInt(m.keyAt(i));
+					addValue(m.valueAt(i), valueType);
+				}
+			} else if (map instanceof LongObjMap) {
+				final LongObjMap<?> m = (LongObjMap<?>) map;
+				for (int i = m.firstSlot(); i >= 0; i = m.nextSlot(i)) {
+					m_size += Varint.sizeOfSignedVarLong(m.keyAt(i));
+					addValue(m.valueAt(i), valueType);
+				}
+			} else {
+				for (final Map.Entry<?, ?> entry : map.entrySet()) {
+					addValue(entry.getKey(), keyType);
+					addValue(entry.getValue(), valueType);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Internal method for adding the size of an array (without type tag).
+	 *
+	 * @param array
+	 *            The array, or null
+	 *
+	 * @param typ
+	 *            The type of the array
+	 *
+	 * @throws IOException
+	 *             Never, but declared by MGenBase._accept(..)
+	 */
+	private void addArray(final Object array, final ArrayType typ)
+			throws IOException {
+
+		final int n = array != null ? Array.getLength(array) : 0;
+		m_size += Varint.sizeOfUnsignedVarInt(n);
+		if (n == 0)
+			return;
+
+		m_size += 1; // element type tag
+
+		switch (typ.elementType().typeEnum()) {
+		case BOOL:
+		case INT8:
+			m_size += n;
+			break;
+		case INT16:
+			m_size += n * 2L;
+			break;
+		case INT32:
+			for (final int i : (int[]) array)
+				m_size += Varint.sizeOfSignedVarInt(i);
+			break;
+		case INT64:
+			for (final long l : (long[]) array)
+				m_size += Varint.sizeOfSignedVarLong(l);
+			break;
+		case FLOAT32:
+			m_size += n * 4L;
+			break;
+		case FLOAT64:
+			m_size += n * 8L;
+			break;
+		default:
+			final Type elementType = typ.elementType();
+			for (final Object o : (Object[]) array)
+				addValue(o, elementType);
+			break;
+		}
+	}
+
+}
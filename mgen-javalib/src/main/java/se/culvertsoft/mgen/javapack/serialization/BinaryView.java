@@ -0,0 +1,480 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.exceptions.SerializationException;
+
+/**
+ * Base class of generated binary views (see the generate_binary_views
+ * generator setting). A binary view is a flyweight over an MGen object
+ * encoded in the MGen binary wire format. Fields are not decoded until they
+ * are requested, and only the fields requested are decoded.
+ *
+ * On first access, a view indexes the object by walking its field headers
+ * (16 bit field id + binary type tag, or compact field headers), skipping
+ * over the field values. Getters then jump straight to the field and decode
+ * only its value. Fields holding MGen objects are returned as views of their
+ * own, so deeply nested values can be read without decoding anything around
+ * them. Call materialize() to decode the full object.
+ *
+ * Views never modify the buffer they wrap, but the buffer must not be
+ * modified while views of it are in use. Nested views share their parent's
+ * reader, and are only valid until the parent is re-wrapped. Views are not
+ * thread safe.
+ */
+public abstract class BinaryView {
+
+	private static final int NOT_INDEXED = -2;
+	private static final int NULL_OBJECT = -1;
+
+	private BinaryBufferReader m_reader;
+	private ClassRegistryBase m_classRegistry;
+	private boolean m_ownsReader;
+	private Field m_field;
+	private int m_start;
+	private int m_startTag = -1;
+	private int m_end;
+	private int m_nFields = NOT_INDEXED;
+	private int[] m_ids = new int[0];
+	private int[] m_tags = new int[0];
+	private int[] m_positions = new int[0];
+
+	/**
+	 * Creates a new binary view of the MGen object starting at the current
+	 * position of a ByteBuffer.
+	 *
+	 * @param buffer
+	 *            The buffer holding the encoded object
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for materializing objects
+	 */
+	protected BinaryView(
+			final ByteBuffer buffer,
+			final ClassRegistryBase classRegistry) {
+		wrap(buffer, classRegistry);
+	}
+
+	/**
+	 * Creates a new binary view without wrapping any data. Call wrap(..)
+	 * before using it, or pass it to a parent view's nested view getter.
+	 */
+	protected BinaryView() {
+	}
+
+	/**
+	 * Points this view at the MGen object starting at the current position of
+	 * a ByteBuffer. Wrapping the same view over and over avoids allocating
+	 * new views when reading many objects.
+	 *
+	 * @param buffer
+	 *            The buffer holding the encoded object
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for materializing objects
+	 *
+	 * @return This view
+	 */
+	public BinaryView wrap(
+			final ByteBuffer buffer,
+			final ClassRegistryBase classRegistry) {
+		if (m_ownsReader && m_classRegistry == classRegistry) {
+			m_reader.setInput(buffer);
+		} else {
+			m_reader = new BinaryBufferReader(buffer, classRegistry);
+			m_classRegistry = classRegistry;
+			m_ownsReader = true;
+		}
+		m_field = null;
+		m_start = buffer.position();
+		m_startTag = -1;
+		m_nFields = NOT_INDEXED;
+		return this;
+	}
+
+	/**
+	 * Decodes the full object viewed.
+	 *
+	 * @return The object decoded, or null if the object is null or of
+	 *         unknown type
+	 *
+	 * @throws SerializationException
+	 *             If the encoded object is corrupt
+	 */
+	public MGenBase materialize() {
+		checkWrapped();
+		try {
+			m_reader.position(m_start);
+			m_reader.setFieldTag(m_startTag);
+			if (m_field != null)
+				return m_reader.readMgenObjectField(m_field, null);
+			else
+				return m_reader.readObject();
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Checks if the object viewed is null, i.e. if it was written as a null
+	 * object.
+	 *
+	 * @return If the object viewed is null
+	 */
+	public boolean isNull() {
+		return index() == NULL_OBJECT;
+	}
+
+	/**
+	 * Gets the number of fields written for the object viewed.
+	 *
+	 * @return The number of fields written, or 0 if the object is null
+	 */
+	public int nFields() {
+		return Math.max(0, index());
+	}
+
+	/**
+	 * Gets the buffer position of the first byte after the object viewed.
+	 * Useful for wrapping the next object in a buffer of consecutive objects.
+	 *
+	 * @return The end position of the object viewed
+	 */
+	public int endPosition() {
+		index();
+		return m_end;
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - GENERATED VIEW SUPPORT
+	 *
+	 * The methods below are called from generated view getters. They are
+	 * not intended to be called directly.
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Checks if a field was written for the object viewed.
+	 *
+	 * @param field
+	 *            The field to check
+	 *
+	 * @return If the field was written
+	 */
+	protected final boolean _has(final Field field) {
+		return find(field.id()) >= 0;
+	}
+
+	/**
+	 * Reads a boolean field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or false if the field was not written
+	 */
+	protected final boolean _readBoolean(final Field field) {
+		try {
+			return seek(field) && m_reader.readBooleanField(field, null);
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads an int8 field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or 0 if the field was not written
+	 */
+	protected final byte _readInt8(final Field field) {
+		try {
+			return seek(field) ? m_reader.readInt8Field(field, null) : 0;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads an int16 field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or 0 if the field was not written
+	 */
+	protected final short _readInt16(final Field field) {
+		try {
+			return seek(field) ? m_reader.readInt16Field(field, null) : 0;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads an int32 field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or 0 if the field was not written
+	 */
+	protected final int _readInt32(final Field field) {
+		try {
+			return seek(field) ? m_reader.readInt32Field(field, null) : 0;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads an int64 field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or 0 if the field was not written
+	 */
+	protected final long _readInt64(final Field field) {
+		try {
+			return seek(field) ? m_reader.readInt64Field(field, null) : 0L;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads a float32 field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or 0 if the field was not written
+	 */
+	protected final float _readFloat32(final Field field) {
+		try {
+			return seek(field) ? m_reader.readFloat32Field(field, null) : 0.0f;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads a float64 field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or 0 if the field was not written
+	 */
+	protected final double _readFloat64(final Field field) {
+		try {
+			return seek(field) ? m_reader.readFloat64Field(field, null) : 0.0;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads a string field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or null if the field was not written
+	 */
+	protected final String _readString(final Field field) {
+		try {
+			return seek(field) ? m_reader.readStringField(field, null) : null;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads an enum field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or null if the field was not written
+	 */
+	protected final Enum<?> _readEnum(final Field field) {
+		try {
+			return seek(field) ? m_reader.readEnumField(field, null) : null;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads an array field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or null if the field was not written
+	 */
+	protected final Object _readArray(final Field field) {
+		try {
+			return seek(field) ? m_reader.readArrayField(field, null) : null;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads a list field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or null if the field was not written
+	 */
+	protected final List<?> _readList(final Field field) {
+		try {
+			return seek(field) ? m_reader.readPrimitiveListField(field, null) : null;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Reads a map field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to read
+	 *
+	 * @return The value read, or null if the field was not written
+	 */
+	protected final Map<?, ?> _readMap(final Field field) {
+		try {
+			return seek(field) ? m_reader.readPrimitiveMapField(field, null) : null;
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	/**
+	 * Points a nested view at an MGen object field of the object viewed.
+	 *
+	 * @param field
+	 *            The field to view
+	 *
+	 * @param view
+	 *            The view to point at the field
+	 *
+	 * @return The view passed, or null if the field was not written or holds
+	 *         a null object
+	 */
+	protected final <V extends BinaryView> V _readView(
+			final Field field,
+			final V view) {
+		final int i = find(field.id());
+		if (i < 0)
+			return null;
+		final BinaryView nested = view;
+		nested.m_reader = m_reader;
+		nested.m_classRegistry = m_classRegistry;
+		nested.m_ownsReader = false;
+		nested.m_field = field;
+		nested.m_start = m_positions[i];
+		nested.m_startTag = m_tags[i];
+		nested.m_nFields = NOT_INDEXED;
+		return nested.isNull() ? null : view;
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 ******************************************************************/
+
+	/**
+	 * Internal method for moving the reader to the binary type tag of a field.
+	 *
+	 * @return If the field was written
+	 */
+	private boolean seek(final Field field) {
+		final int i = find(field.id());
+		if (i < 0)
+			return false;
+		m_reader.position(m_positions[i]);
+		m_reader.setFieldTag(m_tags[i]);
+		return true;
+	}
+
+	/**
+	 * Internal method for finding the index entry of a field.
+	 *
+	 * @return The index entry, or -1 if the field was not written
+	 */
+	private int find(final short fieldId) {
+		final int n = index();
+		final int[] ids = m_ids;
+		for (int i = 0; i < n; i++) {
+			if (ids[i] == fieldId)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Internal method for indexing the field headers of the object viewed, if
+	 * not already done.
+	 *
+	 * @return The number of fields written, or NULL_OBJECT
+	 */
+	private int index() {
+
+		if (m_nFields != NOT_INDEXED)
+			return m_nFields;
+
+		checkWrapped();
+
+		try {
+
+			m_reader.position(m_start);
+			m_reader.setFieldTag(m_startTag);
+			final int nFields = m_reader.readViewHeader(m_field);
+
+			if (nFields > m_ids.length) {
+				m_ids = new int[nFields];
+				m_tags = new int[nFields];
+				m_positions = new int[nFields];
+			}
+
+			for (int i = 0; i < nFields; i++) {
+				m_ids[i] = m_reader.readViewFieldId();
+				m_tags[i] = m_reader.fieldTag();
+				m_positions[i] = m_reader.position();
+				m_reader.skipViewValue();
+			}
+
+			m_end = m_reader.position();
+			m_nFields = nFields < 0 ? NULL_OBJECT : nFields;
+			return m_nFields;
+
+		} catch (final IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	private void checkWrapped() {
+		if (m_reader == null)
+			throw new IllegalStateException(getClass().getSimpleName()
+					+ " is not wrapping any data");
+	}
+
+}
@@ -2,6 +2,7 @@ package se.culvertsoft.mgen.javapack.serialization;
 
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_BOOL;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_CLASS;
+import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_ENUM;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_FLOAT32;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_FLOAT64;
 import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_INT16;
@@ -15,6 +16,7 @@ import static se.culvertsoft.mgen.api.model.BinaryTypeTag.TAG_STRING;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -26,11 +28,19 @@ import se.culvertsoft.mgen.api.model.ListType;
 import se.culvertsoft.mgen.api.model.MapType;
 import se.culvertsoft.mgen.api.model.RuntimeClassType;
 import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.api.model.TypeEnum;
 import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.MGenEnum;
 import se.culvertsoft.mgen.javapack.classes.MGenBase;
 import se.culvertsoft.mgen.javapack.exceptions.SerializationException;
 import se.culvertsoft.mgen.javapack.metadata.FieldVisitSelection;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
 import se.culvertsoft.mgen.javapack.util.FastByteBuffer;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongList;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
+import se.culvertsoft.mgen.javapack.util.Utf8;
 import se.culvertsoft.mgen.javapack.util.Varint;
 
 /**
@@ -56,10 +66,78 @@ public class BinaryWriter extends BuiltInWriter {
 	 */
 	public static final int FLUSH_SIZE = 256;
 
+	/**
+	 * By default, MGen objects are not length prefixed (framed) on the wire.
+	 * See setFrameObjects(boolean).
+	 */
+	public static final boolean DEFAULT_FRAME_OBJECTS = false;
+
+	/**
+	 * The number of bytes used for the length prefix of framed MGen objects.
+	 * The length is written as a fixed size (padded) varint, so that it can be
+	 * filled in after the object has been written.
+	 */
+	public static final int FRAME_HEADER_SIZE = 5;
+
+	/**
+	 * By default, enums are written by their string names. See
+	 * setWriteEnumsAsInts(boolean).
+	 */
+	public static final boolean DEFAULT_WRITE_ENUMS_AS_INTS = false;
+
+	/**
+	 * The integer value written for null enum values when writing enums as
+	 * integers. Readers map it to the UNKNOWN enum entry.
+	 */
+	public static final int NULL_ENUM_INT_VALUE = Integer.MIN_VALUE;
+
+	/**
+	 * By default, every object written with type ids carries its full chain
+	 * of 16 bit type ids. See setTypeDictionary(boolean).
+	 */
+	public static final boolean DEFAULT_TYPE_DICTIONARY = false;
+
+	/**
+	 * By default, objects are identified by the full chain of 16 bit type ids
+	 * of their class hierarchy. See setLeafTypeIds(boolean).
+	 */
+	public static final boolean DEFAULT_LEAF_TYPE_IDS = false;
+
+	/**
+	 * By default, fields are written with 16 bit field ids. See
+	 * setCompactFieldHeaders(boolean).
+	 */
+	public static final boolean DEFAULT_COMPACT_FIELD_HEADERS = false;
+
+	/**
+	 * The header written before the regular header of objects with compact
+	 * field headers. It reads as a header with zero type ids, which is never
+	 * written otherwise.
+	 */
+	static final int COMPACT_FIELDS_HEADER = 0x01;
+
+	/**
+	 * The header written before the regular header of objects written as
+	 * deltas by a DeltaWriter, followed by the number of fields that were
+	 * unset and their 16 bit field ids. It reads as a type dictionary entry
+	 * definition with zero type ids, which is never written otherwise.
+	 */
+	static final int DELTA_HEADER = 0x04;
+
 	private final FastByteBuffer m_buffer;
 	private OutputStream m_streamOut;
 	private final boolean m_compact;
 	private long m_expectType;
+	private boolean m_frameObjects;
+	private boolean m_writeEnumsAsInts;
+	private int m_openFrames;
+	private BinarySizeCalculator m_sizeCalculator;
+	private int[] m_typeDictionary;
+	private int m_typeDictionarySize;
+	private boolean m_leafTypeIds;
+	private boolean m_compactFieldHeaders;
+	private Field[] m_fields;
+	private int m_fieldOrdinal;
 
 	/**
 	 * Creates a new binary writer.
@@ -83,6 +161,11 @@ public class BinaryWriter extends BuiltInWriter {
 		m_streamOut = stream;
 		m_compact = compact;
 		m_expectType = -1;
+		m_frameObjects = DEFAULT_FRAME_OBJECTS;
+		m_writeEnumsAsInts = DEFAULT_WRITE_ENUMS_AS_INTS;
+		m_leafTypeIds = DEFAULT_LEAF_TYPE_IDS;
+		m_compactFieldHeaders = DEFAULT_COMPACT_FIELD_HEADERS;
+		m_openFrames = 0;
 	}
 
 	/**
@@ -111,12 +194,219 @@ public class BinaryWriter extends BuiltInWriter {
 		return this;
 	}
 
+	/**
+	 * Configures whether this writer should prefix MGen objects (top level
+	 * objects as well as objects nested in fields, lists, maps and arrays)
+	 * with their encoded length in bytes. Readers can then skip objects of
+	 * unknown types with a single bulk skip, instead of decoding every nested
+	 * value. Framed objects are flagged in the object header, so streams can
+	 * mix framed and unframed objects, but only readers with framing support
+	 * can read framed objects. The default setting is false.
+	 * 
+	 * @param frameObjects
+	 *            If the writer should write length prefixed objects
+	 * 
+	 * @return This writer
+	 */
+	public BinaryWriter setFrameObjects(final boolean frameObjects) {
+		m_frameObjects = frameObjects;
+		return this;
+	}
+
+	/**
+	 * Checks if this writer writes length prefixed objects. See
+	 * setFrameObjects(boolean).
+	 * 
+	 * @return If this writer writes length prefixed objects
+	 */
+	public boolean frameObjects() {
+		return m_frameObjects;
+	}
+
+	/**
+	 * Configures whether this writer should write enums by their integer
+	 * values (as zig-zag varints under TAG_ENUM) instead of by their string
+	 * names (under TAG_STRING). This reduces both the size of the data and
+	 * the time spent decoding it, but the written data is only readable by
+	 * readers that support TAG_ENUM, and enum values are only matched by their
+	 * integer values - so both sides must agree on them. The default setting
+	 * is false.
+	 * 
+	 * @param writeEnumsAsInts
+	 *            If the writer should write enums as integers
+	 * 
+	 * @return This writer
+	 */
+	public BinaryWriter setWriteEnumsAsInts(final boolean writeEnumsAsInts) {
+		m_writeEnumsAsInts = writeEnumsAsInts;
+		return this;
+	}
+
+	/**
+	 * Checks if this writer writes enums as integers. See
+	 * setWriteEnumsAsInts(boolean).
+	 * 
+	 * @return If this writer writes enums as integers
+	 */
+	public boolean writeEnumsAsInts() {
+		return m_writeEnumsAsInts;
+	}
+
+	/**
+	 * Configures whether this writer should identify objects by the 16 bit
+	 * type id of their own class only (their leaf type id), instead of by the
+	 * full chain of 16 bit type ids of their class hierarchy. This keeps type
+	 * ids small for deep class hierarchies, and lets readers resolve them with
+	 * a single lookup (see ClassRegistryBase.resolveTypeIds16Bit(..)). It
+	 * requires 16 bit type ids to be unique across the whole project, which
+	 * the MGen compiler checks when run with leaf_type_ids=true. Leaf type ids
+	 * are not marked on the wire, so the data must be read by readers
+	 * configured with BuiltInReader.setLeafTypeIds(true). The default setting
+	 * is false.
+	 * 
+	 * @param leafTypeIds
+	 *            If the writer should write leaf type ids only
+	 * 
+	 * @return This writer
+	 * 
+	 * @throws IllegalStateException
+	 *             If 16 bit type ids are not unique in the class registry of
+	 *             this writer
+	 */
+	public BinaryWriter setLeafTypeIds(final boolean leafTypeIds) {
+		if (leafTypeIds && !m_classRegistry.hasUniqueTypeIds16Bit())
+			throw new IllegalStateException(
+					"Leaf type ids require 16 bit type ids to be unique in the class registry");
+		m_leafTypeIds = leafTypeIds;
+		return this;
+	}
+
+	/**
+	 * Checks if this writer identifies objects by their leaf type ids only.
+	 * See setLeafTypeIds(boolean).
+	 * 
+	 * @return If this writer writes leaf type ids only
+	 */
+	public boolean leafTypeIds() {
+		return m_leafTypeIds;
+	}
+
+	/**
+	 * Configures whether this writer should write compact field headers.
+	 * Instead of a 16 bit field id followed by a binary type tag, each field
+	 * header is then a single varint: ((delta - 1) &lt;&lt; 4) | tag, where
+	 * delta is the distance between the ordinal (the index in
+	 * MGenBase._fields()) of the field and that of the previous field written
+	 * for the same object. Fields are written in ordinal order, so the header
+	 * of a field is a single byte unless more than seven fields were skipped
+	 * before it. Objects with compact field headers are flagged in their
+	 * object header, so streams can mix both kinds of objects, but only
+	 * readers with compact field header support can read them.
+	 * 
+	 * Unlike field ids, field ordinals change when fields are added to or
+	 * removed from a class (or its super classes). Readers map ordinals back
+	 * to fields through their own version of the class, so writers and
+	 * readers must share the same field definitions. The default setting is
+	 * false.
+	 * 
+	 * @param compactFieldHeaders
+	 *            If the writer should write compact field headers
+	 * 
+	 * @return This writer
+	 */
+	public BinaryWriter setCompactFieldHeaders(final boolean compactFieldHeaders) {
+		m_compactFieldHeaders = compactFieldHeaders;
+		return this;
+	}
+
+	/**
+	 * Checks if this writer writes compact field headers. See
+	 * setCompactFieldHeaders(boolean).
+	 * 
+	 * @return If this writer writes compact field headers
+	 */
+	public boolean compactFieldHeaders() {
+		return m_compactFieldHeaders;
+	}
+
+	/**
+	 * Configures whether this writer should write type ids through a type
+	 * dictionary shared with the reader for the whole session (stream). The
+	 * first time a class is written, its chain of 16 bit type ids is written
+	 * together with a dictionary entry definition. After that, objects of the
+	 * class only carry the number of the dictionary entry, usually a single
+	 * byte. This keeps polymorphic collections and fields small, also in
+	 * compact mode where type ids of polymorphic values cannot be omitted.
+	 * 
+	 * Type dictionary streams are stateful, and must be read from start to
+	 * end by a single BinaryReader with the type dictionary enabled. Call
+	 * clearTypeDictionary() on both sides when starting a new session. The
+	 * default setting is false. Note that binarySize(..) does not account for
+	 * the type dictionary.
+	 * 
+	 * @param typeDictionary
+	 *            If the writer should write type ids through a type dictionary
+	 * 
+	 * @return This writer
+	 */
+	public BinaryWriter setTypeDictionary(final boolean typeDictionary) {
+		m_typeDictionary = typeDictionary ? new int[m_classRegistry.nEntries()]
+				: null;
+		m_typeDictionarySize = 0;
+		return this;
+	}
+
+	/**
+	 * Checks if this writer writes type ids through a type dictionary. See
+	 * setTypeDictionary(boolean).
+	 * 
+	 * @return If this writer writes type ids through a type dictionary
+	 */
+	public boolean typeDictionary() {
+		return m_typeDictionary != null;
+	}
+
+	/**
+	 * Starts a new type dictionary session, forgetting all dictionary entries
+	 * written so far. See setTypeDictionary(boolean).
+	 * 
+	 * @return This writer
+	 */
+	public BinaryWriter clearTypeDictionary() {
+		if (m_typeDictionary != null)
+			Arrays.fill(m_typeDictionary, 0);
+		m_typeDictionarySize = 0;
+		return this;
+	}
+
+	/**
+	 * Calculates the exact number of bytes writeObject(object) would write
+	 * with the current settings of this writer, without writing anything. See
+	 * BinarySizeCalculator.
+	 * 
+	 * @param object
+	 *            The object to calculate the size of
+	 * 
+	 * @return The number of bytes
+	 */
+	public long binarySize(final MGenBase object) {
+		if (m_sizeCalculator == null)
+			m_sizeCalculator = new BinarySizeCalculator(m_compact);
+		return m_sizeCalculator
+				.setFrameObjects(m_frameObjects)
+				.setWriteEnumsAsInts(m_writeEnumsAsInts)
+				.setLeafTypeIds(m_leafTypeIds)
+				.setCompactFieldHeaders(m_compactFieldHeaders)
+				.calcSize(object);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void writeObject(final MGenBase o) throws IOException {
 		m_expectType = -1;
+		m_openFrames = 0;
 		m_buffer.clear();
 		writeMGenObject(o, true, null);
 		flush();
@@ -128,8 +418,21 @@ public class BinaryWriter extends BuiltInWriter {
 	@Override
 	public void beginWrite(final MGenBase object, final int nFields) throws IOException {
 
+		if (m_compactFieldHeaders) {
+			writeSize(COMPACT_FIELDS_HEADER);
+			m_fields = object._fields();
+			m_fieldOrdinal = -1;
+		}
+
 		if (shouldOmitIds(object)) {
 			writeSize((nFields << 2) | 0x02);
+		} else if (m_typeDictionary != null) {
+			writeDictionaryTypeIds(object);
+			writeSize(nFields);
+		} else if (m_leafTypeIds) {
+			writeSize((1 << 2) | 0x01);
+			writeInt16(object._typeId16Bit(), false);
+			writeSize(nFields);
 		} else {
 			final short[] ids = object._typeIds16Bit();
 			writeSize((ids.length << 2) | 0x01);
@@ -235,6 +538,27 @@ public class BinaryWriter extends BuiltInWriter {
 		writeMap(map, (MapType) field.typ(), false);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void writePrimitiveListField(final List<?> list, final Field field)
+			throws IOException {
+		writeFieldStart(field.id(), TAG_LIST);
+		writeList((List<Object>) list, (ListType) field.typ(), false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writePrimitiveMapField(final Map<?, ?> map, final Field field)
+			throws IOException {
+		writeFieldStart(field.id(), TAG_MAP);
+		writeMap(map, (MapType) field.typ(), false);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -249,7 +573,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 */
 	@Override
 	public void writeEnumField(final Enum<?> e, final Field field) throws IOException {
-		writeFieldStart(field.id(), TAG_STRING);
+		writeFieldStart(field.id(), enumTag());
 		writeEnum(e, false);
 	}
 
@@ -262,6 +586,150 @@ public class BinaryWriter extends BuiltInWriter {
 		writeMGenObject(o, false, (RuntimeClassType) field.typ());
 	}
 
+	/*******************************************************************
+	 * 
+	 * 
+	 * - - - - - - - - - - GENERATED BINARY CODEC SUPPORT
+	 * 
+	 * The methods below are called from binary codecs generated with the
+	 * generate_binary_codecs setting (see MGenBase._writeBinary(..)).
+	 * They are not intended to be called directly.
+	 * 
+	 ******************************************************************/
+
+	/**
+	 * Writes a precomputed field header: the 16 bit field id followed by the
+	 * binary type tag of the field, packed as (id &lt;&lt; 8) | tag. Written as
+	 * a compact field header if this writer writes compact field headers.
+	 * 
+	 * @param fieldHeader
+	 *            The field header to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeFieldHeader(final int fieldHeader) throws IOException {
+		if (m_compactFieldHeaders) {
+			writeCompactFieldHeader((short) (fieldHeader >>> 8), (byte) fieldHeader);
+		} else {
+			writeRawInt16((short) (fieldHeader >>> 8));
+			writeByte(fieldHeader);
+		}
+	}
+
+	/**
+	 * Writes a boolean field value, without field header.
+	 * 
+	 * @param b
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeBooleanValue(final boolean b) throws IOException {
+		writeBoolean(b, false);
+	}
+
+	/**
+	 * Writes an int8 field value, without field header.
+	 * 
+	 * @param b
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeInt8Value(final byte b) throws IOException {
+		writeInt8(b, false);
+	}
+
+	/**
+	 * Writes an int16 field value, without field header.
+	 * 
+	 * @param s
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeInt16Value(final short s) throws IOException {
+		writeInt16(s, false);
+	}
+
+	/**
+	 * Writes an int32 field value, without field header.
+	 * 
+	 * @param i
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeInt32Value(final int i) throws IOException {
+		writeInt32(i, false);
+	}
+
+	/**
+	 * Writes an int64 field value, without field header.
+	 * 
+	 * @param l
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeInt64Value(final long l) throws IOException {
+		writeInt64(l, false);
+	}
+
+	/**
+	 * Writes a float32 field value, without field header.
+	 * 
+	 * @param f
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeFloat32Value(final float f) throws IOException {
+		writeFloat32(f, false);
+	}
+
+	/**
+	 * Writes a float64 field value, without field header.
+	 * 
+	 * @param d
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeFloat64Value(final double d) throws IOException {
+		writeFloat64(d, false);
+	}
+
+	/**
+	 * Writes a string field value, without field header.
+	 * 
+	 * @param s
+	 *            The value to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeStringValue(final String s) throws IOException {
+		writeString(s, false);
+	}
+
 	/*******************************************************************
 	 * 
 	 * 
@@ -292,8 +760,18 @@ public class BinaryWriter extends BuiltInWriter {
 			writeTypeTag(TAG_CLASS);
 
 		if (o != null) {
+			final Field[] fields = m_fields;
+			final int ordinal = m_fieldOrdinal;
 			m_expectType = typ != null ? typ.typeId() : 0;
-			o._accept(this, FieldVisitSelection.ALL_SET_NONTRANSIENT);
+			if (m_frameObjects) {
+				final int frame = beginFrame();
+				writeFields(o);
+				endFrame(frame);
+			} else {
+				writeFields(o);
+			}
+			m_fields = fields;
+			m_fieldOrdinal = ordinal;
 		} else {
 			writeByte(0);
 		}
@@ -315,8 +793,136 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             output stream
 	 */
 	private void writeFieldStart(final short id, final byte tag) throws IOException {
-		writeInt16(id, false);
-		writeTypeTag(tag);
+		if (m_compactFieldHeaders) {
+			writeCompactFieldHeader(id, tag);
+		} else {
+			writeInt16(id, false);
+			writeTypeTag(tag);
+		}
+	}
+
+	/**
+	 * Internal method for writing a compact field header. See
+	 * setCompactFieldHeaders(boolean).
+	 * 
+	 * @param id
+	 *            The field id
+	 * 
+	 * @param tag
+	 *            The binary type tag
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	private void writeCompactFieldHeader(final short id, final byte tag) throws IOException {
+		final int ordinal = fieldOrdinal(m_fields, m_fieldOrdinal, id);
+		writeSize(((ordinal - m_fieldOrdinal - 1) << 4) | tag);
+		m_fieldOrdinal = ordinal;
+	}
+
+	/**
+	 * Internal method for finding the ordinal of a field written with a
+	 * compact field header. Fields are written in ordinal order, so the field
+	 * is searched for after the previous field written.
+	 * 
+	 * @param fields
+	 *            The fields of the object being written
+	 * 
+	 * @param prevOrdinal
+	 *            The ordinal of the previous field written, or -1
+	 * 
+	 * @param id
+	 *            The id of the field
+	 * 
+	 * @return The ordinal of the field
+	 * 
+	 * @throws SerializationException
+	 *             If the field was not found after the previous field
+	 */
+	static int fieldOrdinal(final Field[] fields, final int prevOrdinal, final short id) {
+		for (int i = prevOrdinal + 1; i < fields.length; i++) {
+			if (fields[i].id() == id)
+				return i;
+		}
+		throw new SerializationException("Field with id " + id
+				+ " not found after field ordinal " + prevOrdinal
+				+ ". Compact field headers require fields to be written in ordinal order");
+	}
+
+	/**
+	 * Internal method for writing the fields of an MGen object, through its
+	 * generated binary codec if it has one. Overridden by DeltaWriter to
+	 * write only dirty fields.
+	 * 
+	 * @param o
+	 *            The object to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected void writeFields(final MGenBase o) throws IOException {
+		if (!o._writeBinary(this))
+			o._accept(this, FieldVisitSelection.ALL_SET_NONTRANSIENT);
+	}
+
+	/**
+	 * Internal method for writing the delta header of an MGen object written
+	 * as a delta by a DeltaWriter. See DELTA_HEADER.
+	 * 
+	 * @param unsetFieldIds
+	 *            The ids of the fields that were unset
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected void writeDeltaHeader(final short[] unsetFieldIds) throws IOException {
+		writeSize(DELTA_HEADER);
+		writeSize(unsetFieldIds.length);
+		for (final short id : unsetFieldIds)
+			writeInt16(id, false);
+	}
+
+	/**
+	 * Internal method for writing the type ids of an MGen object through the
+	 * type dictionary. Dictionary references are written as (entry &lt;&lt; 3),
+	 * where entries are numbered from 1. Dictionary entry definitions are
+	 * written as (nTypeIds &lt;&lt; 3) | 0x04, followed by the 16 bit type ids,
+	 * and define the next entry. Both have the two lowest bits cleared, which
+	 * never happens for other non-null object headers.
+	 * 
+	 * @param o
+	 *            The object to write the type ids of
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	private void writeDictionaryTypeIds(final MGenBase o) throws IOException {
+
+		final int ordinal = o._typeOrdinal();
+		final boolean known = ordinal >= 0 && ordinal < m_typeDictionary.length;
+
+		if (known && m_typeDictionary[ordinal] != 0) {
+			writeSize(m_typeDictionary[ordinal] << 3);
+		} else if (m_leafTypeIds) {
+			writeSize((1 << 3) | 0x04);
+			writeInt16(o._typeId16Bit(), false);
+			m_typeDictionarySize++;
+			if (known)
+				m_typeDictionary[ordinal] = m_typeDictionarySize;
+		} else {
+			final short[] ids = o._typeIds16Bit();
+			writeSize((ids.length << 3) | 0x04);
+			for (final short id : ids)
+				writeInt16(id, false);
+			m_typeDictionarySize++;
+			if (known)
+				m_typeDictionary[ordinal] = m_typeDictionarySize;
+		}
+
 	}
 
 	/**
@@ -334,8 +940,11 @@ public class BinaryWriter extends BuiltInWriter {
 	 */
 	private void writeEnum(final Enum<?> e, final boolean tag) throws IOException {
 		if (tag)
-			writeTypeTag(TAG_STRING);
-		writeString(String.valueOf(e), tag);
+			writeTypeTag(enumTag());
+		if (m_writeEnumsAsInts)
+			writeSignedVarint32(e != null ? ((MGenEnum) e).getIntValue() : NULL_ENUM_INT_VALUE);
+		else
+			writeString(String.valueOf(e), false);
 	}
 
 	/**
@@ -488,9 +1097,9 @@ public class BinaryWriter extends BuiltInWriter {
 		if (tag)
 			writeTypeTag(TAG_STRING);
 		if (s != null && !s.isEmpty()) {
-			m_stringEncoder.encode(s);
-			writeSize(m_stringEncoder.size());
-			writeBytes(m_stringEncoder.data(), m_stringEncoder.size());
+			final int nBytes = Utf8.encodedLength(s);
+			writeSize(nBytes);
+			writeUtf8(s, nBytes);
 		} else {
 			writeSize(0);
 		}
@@ -541,7 +1150,7 @@ public class BinaryWriter extends BuiltInWriter {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private void writeElements(
 			final boolean doWriteListTag,
-			final Collection<Object> list,
+			final Collection<?> list,
 			final Type elementType) throws IOException {
 
 		if (doWriteListTag)
@@ -551,7 +1160,7 @@ public class BinaryWriter extends BuiltInWriter {
 
 			writeSize(list.size());
 
-			writeTypeTag(elementType.typeTag());
+			writeTypeTag(typeTagOf(elementType));
 
 			switch (elementType.typeEnum()) {
 			case ENUM: {
@@ -579,12 +1188,24 @@ public class BinaryWriter extends BuiltInWriter {
 				break;
 			}
 			case INT32: {
+				if (list instanceof IntList) {
+					final IntList l = (IntList) list;
+					for (int i = 0; i < l.size(); i++)
+						writeInt32(l.getInt(i), false);
+					break;
+				}
 				final Collection<Integer> l = (Collection) list;
 				for (final Integer e : l)
 					writeInt32(e != null ? e : 0, false);
 				break;
 			}
 			case INT64: {
+				if (list instanceof LongList) {
+					final LongList l = (LongList) list;
+					for (int i = 0; i < l.size(); i++)
+						writeInt64(l.getLong(i), false);
+					break;
+				}
 				final Collection<Long> l = (Collection) list;
 				for (final Long e : l)
 					writeInt64(e != null ? e : 0, false);
@@ -597,6 +1218,12 @@ public class BinaryWriter extends BuiltInWriter {
 				break;
 			}
 			case FLOAT64: {
+				if (list instanceof DoubleList) {
+					final DoubleList l = (DoubleList) list;
+					for (int i = 0; i < l.size(); i++)
+						writeFloat64(l.getDouble(i), false);
+					break;
+				}
 				final Collection<Double> l = (Collection) list;
 				for (final Double e : l)
 					writeFloat64(e != null ? e : 0.0, false);
@@ -636,7 +1263,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeMap(final HashMap<Object, Object> map, final MapType typ, final boolean tag)
+	private void writeMap(final Map<?, ?> map, final MapType typ, final boolean tag)
 			throws IOException {
 
 		if (tag)
@@ -649,12 +1276,26 @@ public class BinaryWriter extends BuiltInWriter {
 			final Type keyType = typ.keyType();
 			final Type valueType = typ.valueType();
 
-			writeTypeTag(keyType.typeTag());
-			writeTypeTag(valueType.typeTag());
-
-			for (Map.Entry<Object, Object> entry : map.entrySet()) {
-				writeObject(entry.getKey(), keyType, false);
-				writeObject(entry.getValue(), valueType, false);
+			writeTypeTag(typeTagOf(keyType));
+			writeTypeTag(typeTagOf(valueType));
+
+			if (map instanceof IntObjMap) {
+				final IntObjMap<?> m = (IntObjMap<?>) map;
+				for (int i = m.firstSlot(); i >= 0; i = m.nextSlot(i)) {
+					writeInt32(m.keyAt(i), false);
+					writeObject(m.valueAt(i), valueType, false);
+				}
+			} else if (map instanceof LongObjMap) {
+				final LongObjMap<?> m = (LongObjMap<?>) map;
+				for (int i = m.firstSlot(); i >= 0; i = m.nextSlot(i)) {
+					writeInt64(m.keyAt(i), false);
+					writeObject(m.valueAt(i), valueType, false);
+				}
+			} else {
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					writeObject(entry.getKey(), keyType, false);
+					writeObject(entry.getValue(), valueType, false);
+				}
 			}
 
 		} else {
@@ -750,7 +1391,7 @@ public class BinaryWriter extends BuiltInWriter {
 
 			writeSize(array.length);
 
-			writeTypeTag(TAG_STRING);
+			writeTypeTag(enumTag());
 
 			for (final Enum<?> e : array)
 				writeEnum(e, false);
@@ -1045,7 +1686,7 @@ public class BinaryWriter extends BuiltInWriter {
 
 			writeSize(array.length);
 
-			writeTypeTag(elementType.typeTag());
+			writeTypeTag(typeTagOf(elementType));
 
 			for (final Object o : array)
 				writeObject(o, elementType, false);
@@ -1057,13 +1698,16 @@ public class BinaryWriter extends BuiltInWriter {
 
 	/**
 	 * Internal methods for flushing the internal buffer and write its data to
-	 * the underlying data output stream
+	 * the underlying data output stream. All bytes written by this writer pass
+	 * through this method and the raw write methods below. Subclasses writing
+	 * to other targets than an OutputStream (see BinaryBufferWriter) override
+	 * these.
 	 * 
 	 * @throws IOException
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void flush() throws IOException {
+	protected void flush() throws IOException {
 		if (m_buffer.nonEmpty()) {
 			m_streamOut.write(m_buffer.data(), 0, m_buffer.size());
 			m_buffer.clear();
@@ -1080,10 +1724,78 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             output stream
 	 */
 	private void checkFlush() throws IOException {
-		if (m_buffer.size() >= FLUSH_SIZE)
+		if (m_buffer.size() >= FLUSH_SIZE && m_openFrames == 0)
 			flush();
 	}
 
+	/**
+	 * Internal method for starting a length prefixed (framed) MGen object.
+	 * Reserves FRAME_HEADER_SIZE bytes for the frame header, which are filled
+	 * in by endFrame(int) once the length of the object is known. The
+	 * internal buffer is not flushed while frames are open.
+	 * 
+	 * @return A handle to pass to endFrame(int)
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected int beginFrame() throws IOException {
+		final int frame = m_buffer.size();
+		for (int i = 0; i < FRAME_HEADER_SIZE; i++)
+			m_buffer.write(0);
+		m_openFrames++;
+		return frame;
+	}
+
+	/**
+	 * Internal method for finishing a length prefixed (framed) MGen object,
+	 * filling in the frame header reserved by beginFrame().
+	 * 
+	 * @param frame
+	 *            The handle returned from beginFrame()
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected void endFrame(final int frame) throws IOException {
+		final int length = m_buffer.size() - frame - FRAME_HEADER_SIZE;
+		writeFrameHeader(length, m_buffer.data(), frame);
+		m_openFrames--;
+		checkFlush();
+	}
+
+	/**
+	 * Internal method for encoding a frame header: A fixed size
+	 * FRAME_HEADER_SIZE bytes varint of the object's length shifted left 2
+	 * bits, with the two lowest bits set. Readers decode it as a non-negative
+	 * int, which limits frames to 2^29-1 bytes.
+	 * 
+	 * @param length
+	 *            The number of bytes of the object following the frame header
+	 * 
+	 * @param out
+	 *            The array to write the frame header to
+	 * 
+	 * @param offset
+	 *            Where in the array to write the frame header
+	 */
+	protected static void writeFrameHeader(
+			final int length,
+			final byte[] out,
+			final int offset) {
+		if (length >= (1 << 29))
+			throw new SerializationException("Cannot frame MGen object of "
+					+ length + " bytes (max 2^29-1)");
+		final int v = (length << 2) | 0x03;
+		out[offset + 0] = (byte) ((v & 0x7F) | 0x80);
+		out[offset + 1] = (byte) (((v >>> 7) & 0x7F) | 0x80);
+		out[offset + 2] = (byte) (((v >>> 14) & 0x7F) | 0x80);
+		out[offset + 3] = (byte) (((v >>> 21) & 0x7F) | 0x80);
+		out[offset + 4] = (byte) ((v >>> 28) & 0x7F);
+	}
+
 	/**
 	 * Internal method for writing a byte
 	 * 
@@ -1094,7 +1806,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeByte(int b) throws IOException {
+	protected void writeByte(int b) throws IOException {
 		m_buffer.write(b);
 		checkFlush();
 	}
@@ -1115,8 +1827,8 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeBytes(final byte[] data, final int offset, final int sz) throws IOException {
-		if (sz >= FLUSH_SIZE) {
+	protected void writeBytes(final byte[] data, final int offset, final int sz) throws IOException {
+		if (sz >= FLUSH_SIZE && m_openFrames == 0) {
 			flush();
 			m_streamOut.write(data, offset, sz);
 		} else {
@@ -1156,6 +1868,25 @@ public class BinaryWriter extends BuiltInWriter {
 		writeBytes(data, 0, data.length);
 	}
 
+	/**
+	 * Internal method for writing the UTF-8 encoded bytes of a string. The
+	 * string is encoded directly into the internal buffer.
+	 * 
+	 * @param s
+	 *            The string to write
+	 * 
+	 * @param nBytes
+	 *            The UTF-8 encoded length of the string
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected void writeUtf8(final String s, final int nBytes) throws IOException {
+		m_buffer.writeUtf8(s, nBytes);
+		checkFlush();
+	}
+
 	/**
 	 * Internal method for writing a fixed size big-endian 16 bit integer
 	 * 
@@ -1166,7 +1897,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeRawInt16(short s) throws IOException {
+	protected void writeRawInt16(short s) throws IOException {
 		writeByte(s >>> 8);
 		writeByte(s >>> 0);
 	}
@@ -1181,7 +1912,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeRawInt32(int v) throws IOException {
+	protected void writeRawInt32(int v) throws IOException {
 		writeByte(v >>> 24);
 		writeByte(v >>> 16);
 		writeByte(v >>> 8);
@@ -1198,7 +1929,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeRawInt64(long v) throws IOException {
+	protected void writeRawInt64(long v) throws IOException {
 		writeByte((int) (v >>> 56));
 		writeByte((int) (v >>> 48));
 		writeByte((int) (v >>> 40));
@@ -1219,7 +1950,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeSignedVarint32(final int i) throws IOException {
+	protected void writeSignedVarint32(final int i) throws IOException {
 		Varint.writeSignedVarInt(i, m_buffer);
 		checkFlush();
 	}
@@ -1234,7 +1965,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeSignedVarint64(final long l) throws IOException {
+	protected void writeSignedVarint64(final long l) throws IOException {
 		Varint.writeSignedVarLong(l, m_buffer);
 		checkFlush();
 	}
@@ -1249,7 +1980,7 @@ public class BinaryWriter extends BuiltInWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeUnsignedVarint32(final int i) throws IOException {
+	protected void writeUnsignedVarint32(final int i) throws IOException {
 		Varint.writeUnsignedVarInt(i, m_buffer);
 		checkFlush();
 	}
@@ -1322,7 +2053,7 @@ public class BinaryWriter extends BuiltInWriter {
 			writeList((List<Object>) o, (ListType) typ, tag);
 			break;
 		case MAP:
-			writeMap((HashMap<Object, Object>) o, (MapType) typ, tag);
+			writeMap((Map<Object, Object>) o, (MapType) typ, tag);
 			break;
 		case CLASS:
 			writeMGenObject((MGenBase) o, tag, (RuntimeClassType) typ);
@@ -1333,6 +2064,30 @@ public class BinaryWriter extends BuiltInWriter {
 
 	}
 
+	/**
+	 * Internal method for getting the binary type tag to write for enums. See
+	 * setWriteEnumsAsInts(boolean).
+	 * 
+	 * @return The binary type tag to write for enums
+	 */
+	private byte enumTag() {
+		return m_writeEnumsAsInts ? TAG_ENUM : TAG_STRING;
+	}
+
+	/**
+	 * Internal method for getting the binary type tag to write for values of
+	 * a given type. Differs from Type.typeTag() only for enums, which may be
+	 * written as integers. See setWriteEnumsAsInts(boolean).
+	 * 
+	 * @param typ
+	 *            The type of the values to write
+	 * 
+	 * @return The binary type tag to write
+	 */
+	private byte typeTagOf(final Type typ) {
+		return typ.typeEnum() == TypeEnum.ENUM ? enumTag() : typ.typeTag();
+	}
+
 	/**
 	 * Internal method for writing a binary type tag
 	 * 
@@ -1,9 +1,18 @@
 package se.culvertsoft.mgen.javapack.serialization;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import se.culvertsoft.mgen.api.model.Field;
 import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.exceptions.UnexpectedTypeException;
 import se.culvertsoft.mgen.javapack.util.StringDecoder;
 
 /**
@@ -25,4 +34,252 @@ abstract public class BuiltInReader implements Reader {
 		m_stringDecoder = new StringDecoder(STRING_DECODE_BUFFER_SIZE, CHARSET_UTF8);
 	}
 
+	/**
+	 * Read API for users. Reads an MGen object of the type of the provided
+	 * object (or a subtype), reusing the provided object and the objects and
+	 * collections reachable from its fields instead of allocating new ones,
+	 * wherever the types match. If the object read is of the same class as
+	 * the provided object, the provided object is reset (see
+	 * MGenBase._reset()) and populated with the read fields. The previous
+	 * contents of the provided object must not be used after this call.
+	 * 
+	 * @param <T>
+	 *            The type of class to read
+	 * 
+	 * @param reuse
+	 *            The object to reuse
+	 * 
+	 * @return The object read - normally the provided object - or null if the
+	 *         type of the object on the stream was unknown
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 * 
+	 * @throws UnexpectedTypeException
+	 *             if the object read from the stream is not of type T
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends MGenBase> T readObject(final T reuse) throws IOException {
+		if (m_reusePool == null)
+			m_reusePool = new ReusePool();
+		m_reusePool.collect(reuse);
+		m_reusing = true;
+		try {
+			return readObject((Class<T>) reuse.getClass());
+		} finally {
+			m_reusing = false;
+			m_reusePool.clear();
+		}
+	}
+
+	/**
+	 * Method called to read a list field from a stream, where the field may be
+	 * represented by a primitive-backed list (see PrimitiveListType). These
+	 * are not ArrayLists, so they cannot be returned from readListField(..).
+	 * Generated classes call this method instead for such fields, which
+	 * requires them to be read by a built-in reader.
+	 * 
+	 * @param field
+	 *            The field to read
+	 * 
+	 * @param context
+	 *            An optional parameter that may be passed to the Reader
+	 * 
+	 * @return The list read
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream
+	 */
+	public abstract List<?> readPrimitiveListField(final Field field, final Object context)
+			throws IOException;
+
+	/**
+	 * Method called to read a map field from a stream, where the field may be
+	 * represented by a primitive-backed map (see PrimitiveMapType). These are
+	 * not HashMaps, so they cannot be returned from readMapField(..).
+	 * Generated classes call this method instead for such fields, which
+	 * requires them to be read by a built-in reader.
+	 * 
+	 * @param field
+	 *            The field to read
+	 * 
+	 * @param context
+	 *            An optional parameter that may be passed to the Reader
+	 * 
+	 * @return The map read
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream
+	 */
+	public abstract Map<?, ?> readPrimitiveMapField(final Field field, final Object context)
+			throws IOException;
+
+	/**
+	 * Sets the fields to read of the root objects read after this call. Other
+	 * fields are skipped without being decoded, and left unset. See
+	 * Projection.
+	 * 
+	 * @param projection
+	 *            The fields to read, or null to read all fields (the default)
+	 * 
+	 * @return This reader
+	 */
+	public BuiltInReader setProjection(final Projection projection) {
+		m_projection = projection;
+		return this;
+	}
+
+	/**
+	 * Gets the fields read of root objects, as set by setProjection(..).
+	 * 
+	 * @return The fields read, or null if all fields are read
+	 */
+	public Projection projection() {
+		return m_projection;
+	}
+
+	/**
+	 * Configures whether this reader should read objects identified by a
+	 * single 16 bit type id as identified by their leaf type id (see
+	 * BinaryWriter.setLeafTypeIds(boolean) and
+	 * JsonWriter.setLeafTypeIds(boolean)). Full chains of type ids are still
+	 * read, but a single type id is then never taken to be the type id of a
+	 * root class with that id. The default setting is false.
+	 * 
+	 * @param leafTypeIds
+	 *            If the reader should read leaf type ids
+	 * 
+	 * @return This reader
+	 * 
+	 * @throws IllegalStateException
+	 *             If 16 bit type ids are not unique in the class registry of
+	 *             this reader
+	 */
+	public BuiltInReader setLeafTypeIds(final boolean leafTypeIds) {
+		if (leafTypeIds && !m_clsReg.hasUniqueTypeIds16Bit())
+			throw new IllegalStateException(
+					"Leaf type ids require 16 bit type ids to be unique in the class registry");
+		m_leafTypeIds = leafTypeIds;
+		return this;
+	}
+
+	/**
+	 * Checks if this reader reads leaf type ids. See setLeafTypeIds(boolean).
+	 * 
+	 * @return If this reader reads leaf type ids
+	 */
+	public boolean leafTypeIds() {
+		return m_leafTypeIds;
+	}
+
+	/**
+	 * Internal method for resolving 16 bit type ids read, according to the
+	 * leaf type id setting of this reader.
+	 * 
+	 * @param ids
+	 *            The 16 bit type ids read
+	 * 
+	 * @return The class registry entry, or null if the type is unknown
+	 */
+	protected ClassRegistryEntry resolveTypeIds16Bit(final short[] ids) {
+		return m_clsReg.resolveTypeIds16Bit(ids, m_leafTypeIds);
+	}
+
+	/**
+	 * Internal method for resolving 16 bit type ids in base 64 format read,
+	 * according to the leaf type id setting of this reader.
+	 * 
+	 * @param ids
+	 *            The 16 bit type ids in base 64 format read
+	 * 
+	 * @return The class registry entry, or null if the type is unknown
+	 */
+	protected ClassRegistryEntry resolveTypeIds16BitBase64(final String[] ids) {
+		return m_clsReg.resolveTypeIds16BitBase64(ids, m_leafTypeIds);
+	}
+
+	/**
+	 * Internal method for instantiating an object when reading. Takes a
+	 * matching object from the object graph being reused, if reading with
+	 * readObject(T reuse), or else acquires one from the class registry.
+	 * 
+	 * @param entry
+	 *            The class registry entry of the object to instantiate
+	 * 
+	 * @return The object, in its default constructed state
+	 */
+	protected MGenBase instantiate(final ClassRegistryEntry entry) {
+		if (m_reusing) {
+			final MGenBase out = m_reusePool.takeObject(entry);
+			if (out != null)
+				return out;
+		}
+		return entry.acquire();
+	}
+
+	/**
+	 * Internal method for creating an empty list when reading. Reuses a list
+	 * from the object graph being reused, if reading with readObject(T reuse).
+	 * 
+	 * @param capacity
+	 *            The initial capacity of a new list
+	 * 
+	 * @return The empty list
+	 */
+	@SuppressWarnings("unchecked")
+	protected <E> ArrayList<E> newArrayList(final int capacity) {
+		if (m_reusing) {
+			final ArrayList<E> out = m_reusePool.takeCollection(ArrayList.class);
+			if (out != null) {
+				out.ensureCapacity(capacity);
+				return out;
+			}
+		}
+		return new ArrayList<E>(capacity);
+	}
+
+	/**
+	 * Internal method for creating an empty map when reading. Reuses a map
+	 * from the object graph being reused, if reading with readObject(T reuse).
+	 * 
+	 * @param capacity
+	 *            The initial capacity of a new map
+	 * 
+	 * @return The empty map
+	 */
+	@SuppressWarnings("unchecked")
+	protected <K, V> HashMap<K, V> newHashMap(final int capacity) {
+		if (m_reusing) {
+			final HashMap<K, V> out = m_reusePool.takeCollection(HashMap.class);
+			if (out != null)
+				return out;
+		}
+		return new HashMap<K, V>(capacity);
+	}
+
+	/**
+	 * Internal method for reusing an empty collection of a specific class when
+	 * reading with readObject(T reuse).
+	 * 
+	 * @param cls
+	 *            The class of the collection
+	 * 
+	 * @return The empty collection, or null if there was none to reuse
+	 */
+	protected <T> T reuseCollection(final Class<T> cls) {
+		return m_reusing ? m_reusePool.takeCollection(cls) : null;
+	}
+
+	/**
+	 * The fields to read of the object currently being read, or null if all
+	 * fields are read. Readers replace this with the projection of a field
+	 * while reading the field, and restore it afterwards.
+	 */
+	protected Projection m_projection;
+
+	private ReusePool m_reusePool;
+	private boolean m_reusing;
+	private boolean m_leafTypeIds;
+
 }
@@ -7,6 +7,8 @@ import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import se.culvertsoft.mgen.api.model.Field;
 import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
@@ -248,6 +250,46 @@ public abstract class BuiltInWriter implements FieldVisitor {
 	public abstract void writeMapField(final HashMap<Object, Object> map, final Field field)
 			throws IOException;
 
+	/**
+	 * Method for writing a list field represented by a primitive-backed list
+	 * (see PrimitiveListType), which is not an ArrayList. The default
+	 * implementation copies the list and writes it with writeListField(..).
+	 * 
+	 * @param list
+	 *            The list to write
+	 * 
+	 * @param field
+	 *            The field to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writePrimitiveListField(final List<?> list, final Field field)
+			throws IOException {
+		writeListField(new ArrayList<Object>(list), field);
+	}
+
+	/**
+	 * Method for writing a map field represented by a primitive-backed map
+	 * (see PrimitiveMapType), which is not a HashMap. The default
+	 * implementation copies the map and writes it with writeMapField(..).
+	 * 
+	 * @param map
+	 *            The map to write
+	 * 
+	 * @param field
+	 *            The field to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writePrimitiveMapField(final Map<?, ?> map, final Field field)
+			throws IOException {
+		writeMapField(new HashMap<Object, Object>(map), field);
+	}
+
 	/**
 	 * Method for writing an array field
 	 * 
@@ -362,10 +404,16 @@ public abstract class BuiltInWriter implements FieldVisitor {
 			writeArrayField(o, field);
 			break;
 		case LIST:
-			writeListField((ArrayList<Object>) o, field);
+			if (o instanceof ArrayList)
+				writeListField((ArrayList<Object>) o, field);
+			else
+				writePrimitiveListField((List<?>) o, field);
 			break;
 		case MAP:
-			writeMapField((HashMap<Object, Object>) o, field);
+			if (o instanceof HashMap)
+				writeMapField((HashMap<Object, Object>) o, field);
+			else
+				writePrimitiveMapField((Map<?, ?>) o, field);
 			break;
 		case CLASS:
 			writeMGenObjectField((MGenBase) o, field);
@@ -0,0 +1,146 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth;
+import se.culvertsoft.mgen.javapack.metadata.FieldVisitSelection;
+
+/**
+ * A BinaryWriter that writes deltas: only the fields of objects that have
+ * changed since they were last written, as tracked by classes generated with
+ * the generate_dirty_tracking generator setting (see
+ * MGenBase._isFieldDirty(..)). Deltas are applied to existing objects with
+ * BinaryReader.readPatch(..).
+ *
+ * Fields holding MGen objects that were changed in place are written as
+ * deltas of their own. Fields that were set to new MGen objects are written
+ * in full, and replace the objects held when the delta is applied. Fields
+ * that were unset (see MGenBase._wasFieldUnset(..)) are listed in the delta,
+ * and are unset when it is applied. The writer does not clear dirty state -
+ * call _clearDirty() on the object once the delta has been written.
+ *
+ * A delta is written in the regular binary wire format, as an object with
+ * only some of its fields set, preceded by a delta header (see
+ * BinaryWriter.DELTA_HEADER) listing the fields that were unset.
+ * BinaryReader.readObject(..) skips delta headers, and reads deltas as
+ * partial objects. Required fields are not checked when applying a delta,
+ * but the object written must itself be valid if the writer validates
+ * objects.
+ */
+public class DeltaWriter extends BinaryWriter {
+
+	private boolean m_delta;
+	private MGenBase m_object;
+	private int m_fullDepth;
+
+	/**
+	 * Creates a new delta writer.
+	 *
+	 * @param stream
+	 *            The data output stream to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 *
+	 * @param compact
+	 *            If objects should be written in compact or standard mode. See
+	 *            DEFAULT_COMPACT.
+	 */
+	public DeltaWriter(
+			final OutputStream stream,
+			final ClassRegistryBase classRegistry,
+			final boolean compact) {
+		super(stream, classRegistry, compact);
+	}
+
+	/**
+	 * Creates a new delta writer.
+	 *
+	 * @param stream
+	 *            The data output stream to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 */
+	public DeltaWriter(final OutputStream stream, final ClassRegistryBase classRegistry) {
+		this(stream, classRegistry, DEFAULT_COMPACT);
+	}
+
+	/**
+	 * Writes a delta of an object: only its dirty fields.
+	 *
+	 * @param o
+	 *            The object to write a delta of
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	@Override
+	public void writeObject(final MGenBase o) throws IOException {
+		m_delta = true;
+		m_object = null;
+		m_fullDepth = 0;
+		super.writeObject(o);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeMGenObjectField(final MGenBase o, final Field field) throws IOException {
+		m_delta = m_fullDepth == 0 && !m_object._isFieldDirty(field, FieldSetDepth.SHALLOW);
+		super.writeMGenObjectField(o, field);
+		m_delta = false;
+	}
+
+	/**
+	 * Writes the delta header and the dirty fields of an object if writing a
+	 * delta of it, or else all its set fields.
+	 */
+	@Override
+	protected void writeFields(final MGenBase o) throws IOException {
+		if (m_delta) {
+			final MGenBase parent = m_object;
+			m_delta = false;
+			m_object = o;
+			try {
+				writeDeltaHeader(unsetFieldIds(o));
+				o._accept(this, FieldVisitSelection.DIRTY);
+			} finally {
+				m_object = parent;
+			}
+		} else {
+			m_fullDepth++;
+			try {
+				super.writeFields(o);
+			} finally {
+				m_fullDepth--;
+			}
+		}
+	}
+
+	/**
+	 * Gets the ids of the non-transient fields of an object that were unset.
+	 */
+	private static short[] unsetFieldIds(final MGenBase o) {
+		final Field[] fields = o._fields();
+		int n = 0;
+		for (final Field field : fields) {
+			if (!field.isTransient() && o._wasFieldUnset(field))
+				n++;
+		}
+		final short[] out = new short[n];
+		n = 0;
+		for (final Field field : fields) {
+			if (!field.isTransient() && o._wasFieldUnset(field))
+				out[n++] = field.id();
+		}
+		return out;
+	}
+
+}
@@ -0,0 +1,562 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.util.Decimal;
+import se.culvertsoft.mgen.javapack.util.Utf8;
+
+/**
+ * A JsonWriter that encodes JSON directly as UTF-8 bytes into a reusable byte
+ * buffer, instead of building strings in a StringBuilder and re-encoding
+ * them. Numbers and booleans are written as bytes without being converted to
+ * strings, strings that need no escaping are copied with a single pass, and
+ * the quoted and escaped names of fields and the type ids of classes are
+ * encoded once and then cached by the writer.
+ *
+ * Buffered bytes are written to the underlying OutputStream or
+ * WritableByteChannel when an object has been completely written, or when
+ * DEFAULT_BUFFER_SIZE bytes have been buffered.
+ *
+ * The output is identical to that written by JsonWriter.
+ */
+public class JsonBufferWriter extends JsonWriter {
+
+	/**
+	 * The initial size of the internal byte buffer. The buffer grows when
+	 * objects are written directly to strings, or when a single value does
+	 * not fit.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A',
+			'B', 'C', 'D', 'E', 'F' };
+
+	private final IdentityHashMap<Field, byte[]> m_names = new IdentityHashMap<Field, byte[]>();
+	private final IdentityHashMap<Class<?>, byte[]> m_typeIds = new IdentityHashMap<Class<?>, byte[]>();
+	private byte[] m_buffer = new byte[DEFAULT_BUFFER_SIZE];
+	private int m_size;
+	private OutputStream m_stream;
+	private WritableByteChannel m_channel;
+	private boolean m_writeToStream = true;
+	private boolean m_encodingCached = false;
+
+	/**
+	 * Creates a new JsonBufferWriter
+	 *
+	 * @param outputStream
+	 *            The data output stream to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 *
+	 * @param compact
+	 *            If to use standard or compact mode. The default is standard
+	 *            mode.
+	 *
+	 * @param maxDepth
+	 *            The maximum recursion depth allowed for writing objects. While
+	 *            writing the contents of arrays, maps, objects, lists etc the
+	 *            current recursion depth is increased by one. The default value
+	 *            is DEFAULT_MAX_DEPTH.
+	 *
+	 * @param includeTransientFields
+	 *            If fields flagged as transient should also be written. The
+	 *            default is not to write transient fields.
+	 */
+	public JsonBufferWriter(
+			final OutputStream outputStream,
+			final ClassRegistryBase classRegistry,
+			final boolean compact,
+			final int maxDepth,
+			final boolean includeTransientFields) {
+		super(outputStream, classRegistry, compact, maxDepth, includeTransientFields);
+		m_stream = outputStream;
+	}
+
+	/**
+	 * Creates a new JsonBufferWriter
+	 *
+	 * @param outputStream
+	 *            The data output stream to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 *
+	 * @param compact
+	 *            If to use standard or compact mode. The default is standard
+	 *            mode.
+	 */
+	public JsonBufferWriter(
+			final OutputStream outputStream,
+			final ClassRegistryBase classRegistry,
+			final boolean compact) {
+		this(outputStream, classRegistry, compact, DEFAULT_MAX_DEPTH, false);
+	}
+
+	/**
+	 * Creates a new JsonBufferWriter
+	 *
+	 * @param outputStream
+	 *            The data output stream to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 */
+	public JsonBufferWriter(final OutputStream outputStream, final ClassRegistryBase classRegistry) {
+		this(outputStream, classRegistry, DEFAULT_COMPACT);
+	}
+
+	/**
+	 * Creates a new JsonBufferWriter, writing to a WritableByteChannel
+	 *
+	 * @param channel
+	 *            The channel to write to
+	 *
+	 * @param classRegistry
+	 *            The class registry to use
+	 *
+	 * @param compact
+	 *            If to use standard or compact mode. The default is standard
+	 *            mode.
+	 */
+	public JsonBufferWriter(
+			final WritableByteChannel channel,
+			final ClassRegistryBase classRegistry,
+			final boolean compact) {
+		this((OutputStream) null, classRegistry, compact);
+		setOutput(channel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonBufferWriter setOutput(final OutputStream stream) {
+		super.setOutput(stream);
+		m_writeToStream = true;
+		m_stream = stream;
+		m_channel = null;
+		return this;
+	}
+
+	/**
+	 * Replaces the output with a WritableByteChannel. Configures this
+	 * JsonBufferWriter to write to the channel, and not directly to a string.
+	 *
+	 * @param channel
+	 *            The new channel to write to
+	 *
+	 * @return This JsonBufferWriter
+	 */
+	public JsonBufferWriter setOutput(final WritableByteChannel channel) {
+		m_writeToStream = true;
+		m_stream = null;
+		m_channel = channel;
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonBufferWriter setLeafTypeIds(final boolean leafTypeIds) {
+		super.setLeafTypeIds(leafTypeIds);
+		m_typeIds.clear();
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected TextFormatWriter setWriteToStream(final boolean writeToStream) {
+		m_writeToStream = writeToStream;
+		return this;
+	}
+
+	/*******************************************************************
+	 *
+	 *
+	 * - - - - - - - - - - INTERNAL METHODS
+	 *
+	 *
+	 ******************************************************************/
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void writeTypeIds(final MGenBase o) throws IOException {
+		byte[] pair = m_typeIds.get(o.getClass());
+		if (pair == null) {
+			final int start = m_size;
+			m_encodingCached = true;
+			writeName("__t");
+			writeQuoteEscaped(m_leafTypeIds ? o._typeId16BitBase64() : o
+					._typeIds16BitBase64String());
+			m_encodingCached = false;
+			pair = Arrays.copyOfRange(m_buffer, start, m_size);
+			m_typeIds.put(o.getClass(), pair);
+			m_size = start;
+		}
+		newEntry();
+		writeBytes(pair);
+	}
+
+	/**
+	 * Internal method for writing the quoted and escaped name of a field,
+	 * followed by a colon, from the writer's cache of encoded names.
+	 *
+	 * @param field
+	 *            The field whose name to write
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	@Override
+	protected void writeName(final Field field) throws IOException {
+		final byte[] name = m_names.get(field);
+		if (name != null) {
+			writeBytes(name);
+		} else {
+			final int start = m_size;
+			m_encodingCached = true;
+			writeName(field.name());
+			m_encodingCached = false;
+			m_names.put(field, Arrays.copyOfRange(m_buffer, start, m_size));
+			checkFlush();
+		}
+	}
+
+	/**
+	 * Internal method for writing an escaped string, following the same JSON
+	 * string escape rules as JsonWriter. Strings, or leading parts of
+	 * strings, of printable ASCII characters that need no escaping are copied
+	 * straight into the buffer.
+	 *
+	 * @param s
+	 *            The string to write escaped
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	@Override
+	protected void writeQuoteEscaped(final String s) throws IOException {
+
+		if (s == null) {
+			write("null");
+			return;
+		}
+
+		final int n = s.length();
+		ensure(n * 6 + 2);
+
+		final byte[] buf = m_buffer;
+		int pos = m_size;
+		buf[pos++] = '"';
+
+		int i = 0;
+		for (; i < n; i++) {
+			final char c = s.charAt(i);
+			if (c < 0x20 || c >= 0x7F || c == '"' || c == '\\' || c == '/')
+				break;
+			buf[pos++] = (byte) c;
+		}
+
+		for (; i < n; i++) {
+			final char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				buf[pos++] = '\\';
+				buf[pos++] = '"';
+				break;
+			case '\\':
+				buf[pos++] = '\\';
+				buf[pos++] = '\\';
+				break;
+			case '\b':
+				buf[pos++] = '\\';
+				buf[pos++] = 'b';
+				break;
+			case '\f':
+				buf[pos++] = '\\';
+				buf[pos++] = 'f';
+				break;
+			case '\n':
+				buf[pos++] = '\\';
+				buf[pos++] = 'n';
+				break;
+			case '\r':
+				buf[pos++] = '\\';
+				buf[pos++] = 'r';
+				break;
+			case '\t':
+				buf[pos++] = '\\';
+				buf[pos++] = 't';
+				break;
+			case '/':
+				buf[pos++] = '\\';
+				buf[pos++] = '/';
+				break;
+			default:
+				if (c < 0x20 || (c >= 0x7F && c <= 0x9F) || (c >= 0x2000 && c <= 0x20FF)) {
+					buf[pos++] = '\\';
+					buf[pos++] = 'u';
+					buf[pos++] = HEX[c >> 12];
+					buf[pos++] = HEX[(c >> 8) & 0xF];
+					buf[pos++] = HEX[(c >> 4) & 0xF];
+					buf[pos++] = HEX[c & 0xF];
+				} else if (c < 0x80) {
+					buf[pos++] = (byte) c;
+				} else if (c < 0x800) {
+					buf[pos++] = (byte) (0xC0 | (c >> 6));
+					buf[pos++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < n
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					final int cp = Character.toCodePoint(c, s.charAt(++i));
+					buf[pos++] = (byte) (0xF0 | (cp >> 18));
+					buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					buf[pos++] = '?';
+				} else {
+					buf[pos++] = (byte) (0xE0 | (c >> 12));
+					buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buf[pos++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+
+		buf[pos++] = '"';
+		m_size = pos;
+		checkFlush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final boolean b) throws IOException {
+		writeBytes(b ? TRUE : FALSE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final byte b) throws IOException {
+		write((long) b);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final char c) throws IOException {
+		if (c < 0x80) {
+			ensure(1);
+			m_buffer[m_size++] = (byte) c;
+		} else {
+			write(String.valueOf(c));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final short s) throws IOException {
+		write((long) s);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final int i) throws IOException {
+		write((long) i);
+	}
+
+	/**
+	 * Internal method for writing an int64 as decimal digits, directly into
+	 * the byte buffer.
+	 *
+	 * @param l
+	 *            The value to write
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	@Override
+	protected void write(final long l) throws IOException {
+
+		ensure(20);
+
+		if (l == Long.MIN_VALUE) {
+			write("-9223372036854775808");
+			return;
+		}
+
+		final byte[] buf = m_buffer;
+		long v = l;
+		if (v < 0) {
+			buf[m_size++] = '-';
+			v = -v;
+		}
+
+		int nDigits = 1;
+		for (long p = 10; nDigits < 19 && v >= p; p *= 10)
+			nDigits++;
+
+		int pos = m_size + nDigits;
+		m_size = pos;
+		do {
+			buf[--pos] = (byte) ('0' + (v % 10));
+			v /= 10;
+		} while (v != 0);
+
+		checkFlush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final float f) throws IOException {
+		ensure(Decimal.MAX_FORMATTED_LENGTH);
+		m_size = Decimal.format(f, m_buffer, m_size);
+		checkFlush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final double d) throws IOException {
+		ensure(Decimal.MAX_FORMATTED_LENGTH);
+		m_size = Decimal.format(d, m_buffer, m_size);
+		checkFlush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(final String s) throws IOException {
+		final int nBytes = Utf8.encodedLength(s);
+		ensure(nBytes);
+		m_size = Utf8.encode(s, m_buffer, m_size);
+		checkFlush();
+	}
+
+	/**
+	 * Writes the buffered bytes to the underlying output stream or channel,
+	 * unless configured to write directly to a string.
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream or channel
+	 */
+	@Override
+	protected void flush() throws IOException {
+		if (!m_writeToStream || m_size == 0)
+			return;
+		if (m_channel != null) {
+			final ByteBuffer bb = ByteBuffer.wrap(m_buffer, 0, m_size);
+			while (bb.hasRemaining())
+				m_channel.write(bb);
+		} else {
+			m_stream.write(m_buffer, 0, m_size);
+		}
+		m_size = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected String finish() {
+		final String out = new String(m_buffer, 0, m_size, CHARSET);
+		m_size = 0;
+		return out;
+	}
+
+	/**
+	 * Internal method for writing a string known to be ASCII.
+	 *
+	 * @param s
+	 *            The string to write
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	private void writeAscii(final String s) throws IOException {
+		final int n = s.length();
+		ensure(n);
+		final byte[] buf = m_buffer;
+		int pos = m_size;
+		for (int i = 0; i < n; i++)
+			buf[pos++] = (byte) s.charAt(i);
+		m_size = pos;
+		checkFlush();
+	}
+
+	/**
+	 * Internal method for copying pre-encoded bytes into the byte buffer.
+	 *
+	 * @param bytes
+	 *            The bytes to write
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	private void writeBytes(final byte[] bytes) throws IOException {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, m_buffer, m_size, bytes.length);
+		m_size += bytes.length;
+		checkFlush();
+	}
+
+	/**
+	 * Internal method for making room for at least n more bytes in the byte
+	 * buffer, growing it if necessary.
+	 *
+	 * @param n
+	 *            The number of bytes to make room for
+	 */
+	private void ensure(final int n) {
+		if (m_size + n > m_buffer.length)
+			m_buffer = Arrays.copyOf(m_buffer, Math.max(m_buffer.length * 2, m_size + n));
+	}
+
+	/**
+	 * Internal method for writing the buffered bytes to the underlying output
+	 * stream or channel once DEFAULT_BUFFER_SIZE bytes have been buffered.
+	 * Nothing is written while encoding a name or type ids to cache.
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	private void checkFlush() throws IOException {
+		if (m_size >= DEFAULT_BUFFER_SIZE && !m_encodingCached)
+			flush();
+	}
+
+}
@@ -10,6 +10,8 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -22,6 +24,7 @@ import se.culvertsoft.mgen.api.model.MapType;
 import se.culvertsoft.mgen.api.model.RuntimeClassType;
 import se.culvertsoft.mgen.api.model.RuntimeEnumType;
 import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.api.model.TypeEnum;
 import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
 import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
 import se.culvertsoft.mgen.javapack.classes.MGenBase;
@@ -29,7 +32,14 @@ import se.culvertsoft.mgen.javapack.exceptions.MissingRequiredFieldsException;
 import se.culvertsoft.mgen.javapack.exceptions.StreamCorruptedException;
 import se.culvertsoft.mgen.javapack.exceptions.UnexpectedTypeException;
 import se.culvertsoft.mgen.javapack.exceptions.UnknownTypeException;
+import se.culvertsoft.mgen.javapack.metadata.PrimitiveListType;
+import se.culvertsoft.mgen.javapack.metadata.PrimitiveMapType;
 import se.culvertsoft.mgen.javapack.serialization.mgen2jsonsimple.MGenJSONParser;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongList;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
 
 /**
  * A class for reading data streams written in JSON format. JsonReader objects
@@ -248,7 +258,7 @@ public class JsonReader extends BuiltInReader {
 	 */
 	@Override
 	public ArrayList<?> readListField(final Field field, final Object context) throws IOException {
-		return readList((ListType) field.typ(), getJsonArr(field, context));
+		return (ArrayList<?>) readPrimitiveListField(field, context);
 	}
 
 	/**
@@ -256,6 +266,24 @@ public class JsonReader extends BuiltInReader {
 	 */
 	@Override
 	public HashMap<?, ?> readMapField(final Field field, final Object context) throws IOException {
+		return (HashMap<?, ?>) readPrimitiveMapField(field, context);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<?> readPrimitiveListField(final Field field, final Object context)
+			throws IOException {
+		return readList((ListType) field.typ(), getJsonArr(field, context));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<?, ?> readPrimitiveMapField(final Field field, final Object context)
+			throws IOException {
 		return readMap((MapType) field.typ(), getJsonObj(field, context));
 	}
 
@@ -344,7 +372,7 @@ public class JsonReader extends BuiltInReader {
 
 		if (object != null) {
 			readObjectFields(object, node);
-			ensureNoMissingReqFields(object);
+			ensureNoMissingReqFields(object, m_projection);
 			return object;
 		} else {
 			return null;
@@ -434,14 +462,21 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private void readObjectFields(final MGenBase object, final JSONObject node) throws IOException {
-		for (final Object keyO : node.keySet()) {
-			final String name = (String) keyO;
-			final Field field = object._fieldByName(name);
-			if (field != null) {
-				object._readField(field.id(), node, this);
+		final Projection projection = m_projection;
+		try {
+			for (final Object keyO : node.keySet()) {
+				final String name = (String) keyO;
+				final Field field = object._fieldByName(name);
+				if (field != null && (projection == null || projection.includes(field))) {
+					if (projection != null)
+						m_projection = projection.get(field);
+					object._readField(field.id(), node, this);
+					m_projection = projection;
+				}
 			}
+		} finally {
+			m_projection = projection;
 		}
-
 	}
 
 	/**
@@ -459,12 +494,15 @@ public class JsonReader extends BuiltInReader {
 	 *             If an IOException occurs on the underlying data input stream,
 	 *             such as reaching EOF before expected.
 	 */
-	private HashMap<?, ?> readMap(MapType typ, JSONObject node) throws IOException {
+	private Map<?, ?> readMap(MapType typ, JSONObject node) throws IOException {
 
 		if (node == null)
 			return null;
 
-		final HashMap<Object, Object> out = new HashMap<Object, Object>(node.size());
+		if (typ instanceof PrimitiveMapType)
+			return readPrimitiveKeyMap(typ, node);
+
+		final HashMap<Object, Object> out = newHashMap(node.size());
 
 		for (final Object keyNode : node.keySet()) {
 			final Object key = cvtMapKeyType((String) keyNode, typ.keyType());
@@ -475,6 +513,54 @@ public class JsonReader extends BuiltInReader {
 		return out;
 	}
 
+	/**
+	 * Internal method for reading a map with int32 or int64 keys into an
+	 * IntObjMap or LongObjMap
+	 * 
+	 * @param typ
+	 *            Type meta data information about the map to read
+	 * 
+	 * @param node
+	 *            The current JSON node
+	 * 
+	 * @return The map read
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private Map<?, ?> readPrimitiveKeyMap(MapType typ, JSONObject node) throws IOException {
+		final Map<Object, Object> out = newPrimitiveKeyMap(typ, node.size());
+		for (final Object keyNode : node.keySet()) {
+			final Object key = cvtMapKeyType((String) keyNode, typ.keyType());
+			final Object value = readObject(node.get(keyNode), typ.valueType());
+			out.put(key, value);
+		}
+		return out;
+	}
+
+	/**
+	 * Internal helper method for instantiating an IntObjMap or LongObjMap.
+	 * 
+	 * @param typ
+	 *            Type meta data information about the map
+	 * 
+	 * @param n
+	 *            The expected number of entries
+	 * 
+	 * @return The new map
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Map<Object, Object> newPrimitiveKeyMap(MapType typ, int n) {
+		if (typ.keyType().typeEnum() == TypeEnum.INT32) {
+			final IntObjMap reused = reuseCollection(IntObjMap.class);
+			return reused != null ? reused : (Map) new IntObjMap<Object>(n);
+		} else {
+			final LongObjMap reused = reuseCollection(LongObjMap.class);
+			return reused != null ? reused : (Map) new LongObjMap<Object>(n);
+		}
+	}
+
 	/**
 	 * Internal helper method for converting JSON object/map key types. This is
 	 * necessary since JSON maps only supports strings as keys, while MGen
@@ -582,12 +668,15 @@ public class JsonReader extends BuiltInReader {
 	 *             If an IOException occurs on the underlying data input stream,
 	 *             such as reaching EOF before expected.
 	 */
-	private ArrayList<?> readList(final ListType constraint, final JSONArray node)
+	private List<?> readList(final ListType constraint, final JSONArray node)
 			throws IOException {
 
 		if (node == null)
 			return null;
 
+		if (constraint instanceof PrimitiveListType)
+			return readPrimitiveList(node, constraint.elementType());
+
 		switch (constraint.elementType().typeEnum()) {
 		case ENUM:
 			return readEnumList(node, constraint);
@@ -618,6 +707,76 @@ public class JsonReader extends BuiltInReader {
 		}
 	}
 
+	/**
+	 * Internal method for reading an IntList, LongList or DoubleList
+	 * 
+	 * @param node
+	 *            The current JSON node
+	 * 
+	 * @param elementType
+	 *            The element type of the list, int32, int64 or float64
+	 * 
+	 * @return The read list
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private List<?> readPrimitiveList(JSONArray node, Type elementType) throws IOException {
+		switch (elementType.typeEnum()) {
+		case INT32: {
+			IntList out = reuseCollection(IntList.class);
+			if (out == null)
+				out = new IntList(node.size());
+			else
+				out.ensureCapacity(node.size());
+			for (int i = 0; i < node.size(); i++)
+				out.addInt(getPrimitiveElement(node, i).intValue());
+			return out;
+		}
+		case INT64: {
+			LongList out = reuseCollection(LongList.class);
+			if (out == null)
+				out = new LongList(node.size());
+			else
+				out.ensureCapacity(node.size());
+			for (int i = 0; i < node.size(); i++)
+				out.addLong(getPrimitiveElement(node, i).longValue());
+			return out;
+		}
+		default: {
+			DoubleList out = reuseCollection(DoubleList.class);
+			if (out == null)
+				out = new DoubleList(node.size());
+			else
+				out.ensureCapacity(node.size());
+			for (int i = 0; i < node.size(); i++)
+				out.addDouble(getPrimitiveElement(node, i).doubleValue());
+			return out;
+		}
+		}
+	}
+
+	/**
+	 * Internal helper method for getting a numeric element of a JSON array
+	 * read into a primitive-backed list, which cannot hold nulls.
+	 * 
+	 * @param node
+	 *            The current JSON node
+	 * 
+	 * @param i
+	 *            The index of the element
+	 * 
+	 * @return The element
+	 */
+	private Number getPrimitiveElement(JSONArray node, int i) {
+		final Object o = node.get(i);
+		if (o == null)
+			throw new StreamCorruptedException("Null element at index " + i
+					+ " of a primitive list");
+		return (Number) o;
+	}
+
 	/**
 	 * Internal method for reading an enum array
 	 * 
@@ -856,7 +1015,7 @@ public class JsonReader extends BuiltInReader {
 	 */
 	private ArrayList<Enum<?>> readEnumList(JSONArray node, ListType typ) {
 		final RuntimeEnumType elementType = (RuntimeEnumType) typ.elementType();
-		final ArrayList<Enum<?>> out = new ArrayList<Enum<?>>(node.size());
+		final ArrayList<Enum<?>> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++)
 			out.add(cvtString2Enum(elementType, (String) node.get(i)));
 		return out;
@@ -878,7 +1037,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readBoolList(JSONArray node) throws IOException {
-		final ArrayList<Boolean> out = new ArrayList<Boolean>(node.size());
+		final ArrayList<Boolean> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			out.add((Boolean) node.get(i));
 		}
@@ -901,7 +1060,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readInt8List(JSONArray node) throws IOException {
-		final ArrayList<Byte> out = new ArrayList<Byte>(node.size());
+		final ArrayList<Byte> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : ((Number) o).byteValue());
@@ -925,7 +1084,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readInt16List(JSONArray node) throws IOException {
-		final ArrayList<Short> out = new ArrayList<Short>(node.size());
+		final ArrayList<Short> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : ((Number) o).shortValue());
@@ -949,7 +1108,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readInt32List(JSONArray node) throws IOException {
-		final ArrayList<Integer> out = new ArrayList<Integer>(node.size());
+		final ArrayList<Integer> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : ((Number) o).intValue());
@@ -973,7 +1132,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readInt64List(JSONArray node) throws IOException {
-		final ArrayList<Long> out = new ArrayList<Long>(node.size());
+		final ArrayList<Long> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : ((Number) o).longValue());
@@ -997,7 +1156,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readFloat32List(JSONArray node) throws IOException {
-		final ArrayList<Float> out = new ArrayList<Float>(node.size());
+		final ArrayList<Float> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : ((Number) o).floatValue());
@@ -1021,7 +1180,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readFloat64List(JSONArray node) throws IOException {
-		final ArrayList<Double> out = new ArrayList<Double>(node.size());
+		final ArrayList<Double> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : ((Number) o).doubleValue());
@@ -1045,7 +1204,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readStringList(JSONArray node) throws IOException {
-		final ArrayList<String> out = new ArrayList<String>(node.size());
+		final ArrayList<String> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : (String) o);
@@ -1069,7 +1228,7 @@ public class JsonReader extends BuiltInReader {
 	 *             such as reaching EOF before expected.
 	 */
 	private ArrayList<?> readObjectList(JSONArray node, ListType typ) throws IOException {
-		final ArrayList<Object> out = new ArrayList<Object>(node.size());
+		final ArrayList<Object> out = newArrayList(node.size());
 		for (int i = 0; i < node.size(); i++) {
 			final Object o = node.get(i);
 			out.add(o == null ? null : readObject(o, typ.elementType()));
@@ -1162,7 +1321,7 @@ public class JsonReader extends BuiltInReader {
 	 */
 	private MGenBase instantiate(final String[] ids, final RuntimeClassType constraint) {
 
-		final ClassRegistryEntry entry = ids != null ? m_clsReg.getByTypeIds16BitBase64(ids)
+		final ClassRegistryEntry entry = ids != null ? resolveTypeIds16BitBase64(ids)
 				: m_clsReg.getById(constraint.typeId());
 
 		if (constraint != null) {
@@ -1174,7 +1333,7 @@ public class JsonReader extends BuiltInReader {
 			}
 		}
 
-		return entry != null ? entry.construct() : null;
+		return entry != null ? instantiate(entry) : null;
 
 	}
 
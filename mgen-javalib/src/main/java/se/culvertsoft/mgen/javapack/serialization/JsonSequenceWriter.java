@@ -0,0 +1,176 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+
+/**
+ * A class for writing sequences of MGen objects in JSON format, either as
+ * newline delimited JSON (NDJSON, one object per line) or as a single top
+ * level JSON array. Both can be read back one object at a time with a
+ * JsonStreamReader.
+ * 
+ * Objects are written through a JsonWriter (or JsonBufferWriter), but are
+ * only flushed to the underlying output stream once every batchSize objects,
+ * instead of after every object. The JsonWriter still writes its internal
+ * buffer to the stream whenever it fills up, so memory use does not grow
+ * with the batch size.
+ * 
+ * A sequence is ended with finish(), which closes the array in ARRAY format
+ * and flushes all written objects. A new sequence may then be written.
+ */
+public class JsonSequenceWriter {
+
+	/**
+	 * The available sequence formats
+	 */
+	public enum Format {
+
+		/**
+		 * Newline delimited JSON: each object followed by a newline
+		 */
+		NDJSON,
+
+		/**
+		 * A top level JSON array with the objects as elements
+		 */
+		ARRAY
+	}
+
+	/**
+	 * The default number of objects written between flushes to the underlying
+	 * output stream.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private final JsonWriter m_writer;
+	private final Format m_format;
+	private final int m_batchSize;
+	private int m_nUnflushed;
+	private long m_nWritten;
+
+	/**
+	 * Creates a new JsonSequenceWriter
+	 * 
+	 * @param writer
+	 *            The JsonWriter to write objects with
+	 * 
+	 * @param format
+	 *            The sequence format to write
+	 * 
+	 * @param batchSize
+	 *            The number of objects to write between flushes to the
+	 *            underlying output stream
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the batch size is less than one, or if the writer is a
+	 *             JsonPrettyWriter and the format is NDJSON (which requires
+	 *             each object to be on a single line)
+	 */
+	public JsonSequenceWriter(
+			final JsonWriter writer,
+			final Format format,
+			final int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		if (format == Format.NDJSON && writer instanceof JsonPrettyWriter)
+			throw new IllegalArgumentException(
+					"NDJSON cannot be written with a JsonPrettyWriter");
+		m_writer = writer;
+		m_format = format;
+		m_batchSize = batchSize;
+	}
+
+	/**
+	 * Creates a new JsonSequenceWriter, flushing every DEFAULT_BATCH_SIZE
+	 * objects.
+	 * 
+	 * @param writer
+	 *            The JsonWriter to write objects with
+	 * 
+	 * @param format
+	 *            The sequence format to write
+	 */
+	public JsonSequenceWriter(final JsonWriter writer, final Format format) {
+		this(writer, format, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Writes an object as the next element of the sequence.
+	 * 
+	 * @param o
+	 *            The object to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeObject(final MGenBase o) throws IOException {
+
+		if (m_format == Format.ARRAY)
+			m_writer.write(m_nWritten == 0 ? '[' : ',');
+
+		m_writer.writeObjectUnflushed(o);
+
+		if (m_format == Format.NDJSON)
+			m_writer.write('\n');
+
+		m_nWritten++;
+		if (++m_nUnflushed >= m_batchSize)
+			flush();
+	}
+
+	/**
+	 * Writes a number of objects as the next elements of the sequence.
+	 * 
+	 * @param objects
+	 *            The objects to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void writeObjects(final Iterable<? extends MGenBase> objects) throws IOException {
+		for (final MGenBase o : objects)
+			writeObject(o);
+	}
+
+	/**
+	 * Flushes all objects written so far to the underlying output stream.
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void flush() throws IOException {
+		m_writer.flush();
+		m_nUnflushed = 0;
+	}
+
+	/**
+	 * Ends the current sequence and flushes it to the underlying output
+	 * stream. In ARRAY format, this writes the closing bracket (or an empty
+	 * array, if no objects were written). Objects written after this start a
+	 * new sequence.
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	public void finish() throws IOException {
+		if (m_format == Format.ARRAY)
+			m_writer.write(m_nWritten == 0 ? "[]" : "]");
+		flush();
+		m_nWritten = 0;
+	}
+
+	/**
+	 * Gets the number of objects written in the current sequence.
+	 * 
+	 * @return The number of objects written since the sequence was started
+	 */
+	public long nWritten() {
+		return m_nWritten;
+	}
+
+}
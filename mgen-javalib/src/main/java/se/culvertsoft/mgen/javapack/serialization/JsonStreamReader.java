@@ -0,0 +1,1824 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import static se.culvertsoft.mgen.javapack.util.BuiltInSerializerUtils.ensureNoMissingReqFields;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import se.culvertsoft.mgen.api.model.ArrayType;
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.api.model.ListType;
+import se.culvertsoft.mgen.api.model.MapType;
+import se.culvertsoft.mgen.api.model.RuntimeClassType;
+import se.culvertsoft.mgen.api.model.RuntimeEnumType;
+import se.culvertsoft.mgen.api.model.Type;
+import se.culvertsoft.mgen.api.model.TypeEnum;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.exceptions.MissingRequiredFieldsException;
+import se.culvertsoft.mgen.javapack.exceptions.SerializationException;
+import se.culvertsoft.mgen.javapack.exceptions.StreamCorruptedException;
+import se.culvertsoft.mgen.javapack.exceptions.UnexpectedTypeException;
+import se.culvertsoft.mgen.javapack.exceptions.UnknownTypeException;
+import se.culvertsoft.mgen.javapack.metadata.PrimitiveListType;
+import se.culvertsoft.mgen.javapack.metadata.PrimitiveMapType;
+import se.culvertsoft.mgen.javapack.util.Decimal;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongList;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
+import se.culvertsoft.mgen.javapack.util.Utf8;
+
+/**
+ * A streaming alternative to JsonReader. Where JsonReader first parses each
+ * root object into a JSON DOM and then walks it, JsonStreamReader tokenizes
+ * the UTF-8 bytes of the data input source directly, and reads each field
+ * into the object being read as soon as its key is met. Fields and values of
+ * unknown types are skipped without being materialized.
+ *
+ * The type ids of an object ("__t") are usually written as its first field,
+ * in which case the object is instantiated directly. If they appear later,
+ * JsonStreamReader scans ahead for them within the object, and then reads its
+ * fields from where it began.
+ *
+ * Root objects are read one at a time, so several concatenated (or
+ * whitespace separated) JSON objects can be read from the same data input
+ * source by calling readObject repeatedly. This includes newline delimited
+ * JSON (NDJSON). Top level JSON arrays of objects are read element by element
+ * in the same way, as if their elements were root objects. Use
+ * hasNextObject() to check for the end of the data input source, or objects()
+ * to iterate over all remaining objects. Either way, only one object at a
+ * time is held in memory.
+ */
+public class JsonStreamReader extends BuiltInReader {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final String TYPE_IDS_KEY = "__t";
+	private static final byte[] TYPE_IDS_KEY_BYTES = { '_', '_', 't' };
+
+	private InputStream m_stream;
+	private boolean m_streamEnded;
+	private byte[] m_ownBuffer;
+	private byte[] m_buffer;
+	private int m_pos;
+	private int m_end;
+	private long m_bufferOffset;
+	private long m_mark;
+	private boolean m_inArray;
+	private boolean m_atElement;
+	private long m_nElements;
+	private byte[] m_unescapeBuffer;
+	private final IdentityHashMap<Class<?>, FieldTable> m_fieldTables;
+
+	/**
+	 * Creates a new JsonStreamReader without specifying a data input source.
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 */
+	public JsonStreamReader(final ClassRegistryBase classRegistry) {
+		this(EMPTY_INPUT_STREAM, classRegistry);
+	}
+
+	/**
+	 * Creates a new JsonStreamReader, wrapping a data input source
+	 * (InputStream) and a ClassRegistry.
+	 *
+	 * @param stream
+	 *            The data input source.
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 */
+	public JsonStreamReader(final InputStream stream, final ClassRegistryBase classRegistry) {
+		super(classRegistry);
+		m_ownBuffer = new byte[DEFAULT_BUFFER_SIZE];
+		m_buffer = m_ownBuffer;
+		m_unescapeBuffer = new byte[STRING_DECODE_BUFFER_SIZE];
+		m_fieldTables = new IdentityHashMap<Class<?>, FieldTable>();
+		setInput(stream);
+	}
+
+	/**
+	 * Creates a new JsonStreamReader around a String as its data input source.
+	 *
+	 * @param json
+	 *            The JSON string to read from
+	 *
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 */
+	public JsonStreamReader(final String json, final ClassRegistryBase classRegistry) {
+		this(EMPTY_INPUT_STREAM, classRegistry);
+		setInput(json);
+	}
+
+	/**
+	 * Replaces the internal data input source with a new one. Any data
+	 * buffered from the previous data input source is discarded.
+	 *
+	 * @param stream
+	 *            The new data input source.
+	 *
+	 * @return This JsonStreamReader
+	 */
+	public JsonStreamReader setInput(final InputStream stream) {
+		m_stream = stream;
+		m_streamEnded = false;
+		m_buffer = m_ownBuffer;
+		m_pos = 0;
+		m_end = 0;
+		m_bufferOffset = 0;
+		m_mark = -1;
+		m_inArray = false;
+		m_atElement = false;
+		m_nElements = 0;
+		return this;
+	}
+
+	/**
+	 * Replaces the internal data input source with a new one. Any data
+	 * buffered from the previous data input source is discarded.
+	 *
+	 * @param json
+	 *            The new data input source.
+	 *
+	 * @return This JsonStreamReader
+	 */
+	public JsonStreamReader setInput(final String json) {
+		final byte[] bytes = new byte[Utf8.encodedLength(json)];
+		Utf8.encode(json, bytes, 0);
+		return setInput(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Replaces the internal data input source with a UTF-8 encoded byte
+	 * array, which is read in place without being copied. Any data buffered
+	 * from the previous data input source is discarded.
+	 *
+	 * @param json
+	 *            The UTF-8 encoded JSON data to read from
+	 *
+	 * @param offset
+	 *            The index of the first byte to read
+	 *
+	 * @param length
+	 *            The number of bytes to read
+	 *
+	 * @return This JsonStreamReader
+	 */
+	public JsonStreamReader setInput(final byte[] json, final int offset, final int length) {
+		setInput(EMPTY_INPUT_STREAM);
+		m_streamEnded = true;
+		m_buffer = json;
+		m_pos = offset;
+		m_end = offset + length;
+		m_bufferOffset = -offset;
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MGenBase readObject() throws IOException {
+		return readRootObject(null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T extends MGenBase> T readObject(final Class<T> typ) throws IOException {
+
+		final ClassRegistryEntry entry = m_clsReg.getByClass(typ);
+
+		if (entry == null)
+			throw new UnknownTypeException("Could not read object of type " + typ
+					+ ", since it is know known by the class registry");
+
+		return (T) readRootObject(entry.typ());
+	}
+
+	/**
+	 * Checks if there are more root objects to read from the data input
+	 * source, skipping past whitespace and the brackets and commas of top
+	 * level JSON arrays.
+	 *
+	 * @return If there is another root object (or null value) to read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             or if the data input source ends within a top level array.
+	 */
+	public boolean hasNextObject() throws IOException {
+		int b = skipWhitespace();
+		while (true) {
+			if (m_inArray) {
+				if (m_atElement)
+					return true;
+				if (b < 0)
+					throw new EOFException("JsonStreamReader: Unexpected end of data in array");
+				if (b == ']') {
+					m_pos++;
+					m_inArray = false;
+					b = skipWhitespace();
+					continue;
+				}
+				if (m_nElements > 0) {
+					if (b != ',')
+						throw unexpected(b, "',' or ']'");
+					m_pos++;
+					if (skipWhitespace() < 0)
+						throw new EOFException("JsonStreamReader: Unexpected end of data in array");
+				}
+				m_atElement = true;
+				return true;
+			} else if (b == '[') {
+				m_pos++;
+				m_inArray = true;
+				m_nElements = 0;
+				b = skipWhitespace();
+			} else {
+				return b >= 0;
+			}
+		}
+	}
+
+	/**
+	 * Creates an Iterable over the remaining root objects of the data input
+	 * source, which are read lazily, one at a time. Objects of unknown types
+	 * and null values are skipped. IOExceptions are rethrown as
+	 * SerializationExceptions.
+	 *
+	 * @return The remaining objects of the data input source
+	 */
+	public Iterable<MGenBase> objects() {
+		return objects(MGenBase.class);
+	}
+
+	/**
+	 * Creates an Iterable over the remaining root objects of the data input
+	 * source, which are read lazily, one at a time. Objects of unknown types
+	 * and null values are skipped. IOExceptions are rethrown as
+	 * SerializationExceptions.
+	 *
+	 * @param typ
+	 *            The type that all objects must be of. Objects of other types
+	 *            cause an UnexpectedTypeException to be thrown.
+	 *
+	 * @return The remaining objects of the data input source
+	 */
+	public <T extends MGenBase> Iterable<T> objects(final Class<T> typ) {
+		return new Iterable<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return new ObjectIterator<T>(typ);
+			}
+		};
+	}
+
+	/**
+	 * Read API for users. This method reads an MGen object from the provided
+	 * JSON string.
+	 *
+	 * @return The MGen object read from the string, or null if the type of the
+	 *         object on the stream was unknown (Readers then skip past the
+	 *         object).
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	public MGenBase readObject(final String object) throws IOException {
+		return setInput(object).readObject();
+	}
+
+	/**
+	 * Read API for users. This method reads an MGen object from the provided
+	 * JSON string.
+	 *
+	 * @return The MGen object read from the string, or null if the type of the
+	 *         object on the stream was unknown (Readers then skip past the
+	 *         object).
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	public <T extends MGenBase> T readObject(final String object, final Class<T> typ)
+			throws IOException {
+		return setInput(object).readObject(typ);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean readBooleanField(final Field field, final Object context) throws IOException {
+		return readBoolean(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte readInt8Field(final Field field, final Object context) throws IOException {
+		return (byte) readLong(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public short readInt16Field(final Field field, final Object context) throws IOException {
+		return (short) readLong(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int readInt32Field(final Field field, final Object context) throws IOException {
+		return (int) readLong(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long readInt64Field(final Field field, final Object context) throws IOException {
+		return readLong(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public float readFloat32Field(final Field field, final Object context) throws IOException {
+		return readFloat(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double readFloat64Field(final Field field, final Object context) throws IOException {
+		return readDouble(field);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String readStringField(final Field field, final Object context) throws IOException {
+		return readNull() ? null : readString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object readArrayField(final Field field, final Object context) throws IOException {
+		return readArray((ArrayType) field.typ());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<?> readListField(final Field field, final Object context) throws IOException {
+		return (ArrayList<?>) readPrimitiveListField(field, context);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HashMap<?, ?> readMapField(final Field field, final Object context) throws IOException {
+		return (HashMap<?, ?>) readPrimitiveMapField(field, context);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<?> readPrimitiveListField(final Field field, final Object context)
+			throws IOException {
+		return readList((ListType) field.typ());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<?, ?> readPrimitiveMapField(final Field field, final Object context)
+			throws IOException {
+		return readMap((MapType) field.typ());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final MGenBase readMgenObjectField(final Field field, final Object context)
+			throws IOException {
+		return readMGenObject((RuntimeClassType) field.typ());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Enum<?> readEnumField(final Field field, final Object context) throws IOException {
+		return readNull() ? null : ((RuntimeEnumType) field.typ()).get(readString());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void handleUnknownField(final Field field, final Object context) throws IOException {
+		skipValue();
+	}
+
+	/************************************************
+	 *
+	 *
+	 * PRIVATE METHODS
+	 *
+	 ***********************************************/
+
+	/**
+	 * Internal method for reading a root MGen object
+	 *
+	 * @param constraint
+	 *            An optional type constraint. If the constraint is not met, an
+	 *            UnexpectedTypeException is thrown.
+	 *
+	 * @return The object read, or null if it was of unknown type or null
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private MGenBase readRootObject(final RuntimeClassType constraint) throws IOException {
+		if (!hasNextObject())
+			throw new EOFException("JsonStreamReader: No more objects to read");
+		if (m_inArray) {
+			m_atElement = false;
+			m_nElements++;
+		}
+		return readMGenObject(constraint);
+	}
+
+	/**
+	 * Internal method for reading an MGen object
+	 *
+	 * @param constraint
+	 *            An optional type constraint. If the constraint is not met, an
+	 *            UnexpectedTypeException is thrown.
+	 *
+	 * @return The object read, or null if it was of unknown type or null
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private MGenBase readMGenObject(final RuntimeClassType constraint) throws IOException {
+
+		if (readNull())
+			return null;
+
+		expect('{');
+
+		final MGenBase object = instantiate(readIds(), constraint);
+
+		if (object != null) {
+			readObjectFields(object);
+			ensureNoMissingReqFields(object, m_projection);
+			return object;
+		} else {
+			skipMembers();
+			return null;
+		}
+
+	}
+
+	/**
+	 * Internal method for reading the type ids of an object, after its opening
+	 * brace. If the type ids are the first member of the object, they are
+	 * consumed together with the following comma. Otherwise the members of
+	 * the object are scanned for them, and the read position is then restored
+	 * to the first member.
+	 *
+	 * @return The 16bit MGen type ids in base64 form read, or null if the
+	 *         object has no type ids
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private String[] readIds() throws IOException {
+
+		if (skipWhitespace() != '"')
+			return null;
+
+		final long start = m_bufferOffset + m_pos;
+		if (isTypeIdsKey()) {
+			expectMemberValue();
+			final String[] ids = splitIds(readString());
+			if (!nextMember())
+				m_pos--; // Leave the closing brace for readObjectFields
+			return ids;
+		}
+
+		final long prevMark = m_mark;
+		if (prevMark < 0)
+			m_mark = start;
+		try {
+			expectMemberValue();
+			skipValue();
+			while (nextMember()) {
+				final boolean isIds = isTypeIdsKey();
+				expectMemberValue();
+				if (isIds)
+					return splitIds(readString());
+				skipValue();
+			}
+			return null;
+		} finally {
+			m_pos = (int) (start - m_bufferOffset);
+			m_mark = prevMark;
+		}
+	}
+
+	/**
+	 * Internal helper method for splitting the concatenated type ids of an
+	 * object into 16bit MGen type ids in base64 form.
+	 *
+	 * @param typeIdsString
+	 *            The concatenated type ids
+	 *
+	 * @return The 16bit MGen type ids in base64 form
+	 */
+	private String[] splitIds(final String typeIdsString) {
+		final String[] ids = new String[typeIdsString.length() / 3];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = typeIdsString.substring(i * 3, i * 3 + 3);
+		return ids;
+	}
+
+	/**
+	 * Internal helper method for instantiating MGen objects being read back.
+	 *
+	 * @param ids
+	 *            The type ids in 16 bit base64 form of the class of the object
+	 *            to be instantiated, or null if none were read
+	 *
+	 * @param constraint
+	 *            Optional type constraint for the type to be instantiated.
+	 *            Throws UnexpectedTypeException if the read back type doesn't
+	 *            match the constraint.
+	 *
+	 * @return The instantiated MGen object
+	 */
+	private MGenBase instantiate(final String[] ids, final RuntimeClassType constraint) {
+
+		if (ids == null && constraint == null)
+			throw new MissingRequiredFieldsException(
+					"JsonStreamReader.readMGenObject: Missing field '__t'");
+
+		final ClassRegistryEntry entry = ids != null ? resolveTypeIds16BitBase64(ids)
+				: m_clsReg.getById(constraint.typeId());
+
+		if (constraint != null) {
+			if (entry == null) {
+				throw new UnexpectedTypeException("Unknown type: " + Arrays.toString(ids));
+			} else if (!entry.isInstanceOfTypeId(constraint.typeId())) {
+				throw new UnexpectedTypeException("Unexpected type. Expected "
+						+ constraint.fullName() + " but got " + entry.clsName());
+			}
+		}
+
+		return entry != null ? instantiate(entry) : null;
+
+	}
+
+	/**
+	 * Internal helper method for reading the members of a JSON object into
+	 * the fields of an MGen object, up to and including the closing brace.
+	 * Type ids and members not matching any field are skipped.
+	 *
+	 * @param object
+	 *            The object to read the fields to
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private void readObjectFields(final MGenBase object) throws IOException {
+
+		if (skipWhitespace() == '}') {
+			m_pos++;
+			return;
+		}
+
+		final FieldTable table = fieldTable(object);
+		final Projection projection = m_projection;
+
+		if (projection == null) {
+			do {
+				final Field field = readKey(table);
+				expectMemberValue();
+				if (field != null)
+					object._readField(field.id(), null, this);
+				else
+					skipValue();
+			} while (nextMember());
+		} else {
+			try {
+				do {
+					final Field field = readKey(table);
+					expectMemberValue();
+					if (field != null && projection.includes(field)) {
+						m_projection = projection.get(field);
+						object._readField(field.id(), null, this);
+						m_projection = projection;
+					} else {
+						skipValue();
+					}
+				} while (nextMember());
+			} finally {
+				m_projection = projection;
+			}
+		}
+	}
+
+	/**
+	 * Internal helper method for skipping the remaining members of a JSON
+	 * object, up to and including the closing brace.
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private void skipMembers() throws IOException {
+		if (skipWhitespace() == '}') {
+			m_pos++;
+			return;
+		}
+		do {
+			skipString();
+			expectMemberValue();
+			skipValue();
+		} while (nextMember());
+	}
+
+	/**
+	 * Internal helper method for finding the field table of an object's
+	 * class, creating it on first use.
+	 *
+	 * @param object
+	 *            The object to get the field table for
+	 *
+	 * @return The field table
+	 */
+	private FieldTable fieldTable(final MGenBase object) {
+		FieldTable table = m_fieldTables.get(object.getClass());
+		if (table == null) {
+			table = new FieldTable(object._fields());
+			m_fieldTables.put(object.getClass(), table);
+		}
+		return table;
+	}
+
+	/**
+	 * Internal method for reading a member key and looking it up as a field.
+	 * Keys without escape sequences are compared as UTF-8 bytes directly in
+	 * the read buffer.
+	 *
+	 * @param table
+	 *            The field table to look the key up in
+	 *
+	 * @return The field, or null if the key was not the name of a field
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private Field readKey(final FieldTable table) throws IOException {
+		final int n = scanString();
+		if (n >= 0) {
+			final Field field = table.get(m_buffer, m_pos + 1, n);
+			m_pos += n + 2;
+			return field;
+		} else {
+			return table.get(readString());
+		}
+	}
+
+	/**
+	 * Internal method for checking if the member key at the read position is
+	 * "__t", consuming the key.
+	 *
+	 * @return If the key was "__t"
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private boolean isTypeIdsKey() throws IOException {
+		final int n = scanString();
+		if (n >= 0) {
+			final boolean out = equals(TYPE_IDS_KEY_BYTES, m_buffer, m_pos + 1, n);
+			m_pos += n + 2;
+			return out;
+		} else {
+			return TYPE_IDS_KEY.equals(readString());
+		}
+	}
+
+	/**
+	 * Internal method for reading a map
+	 *
+	 * @param typ
+	 *            Type meta data information about the map to read
+	 *
+	 * @return The map read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Map<?, ?> readMap(final MapType typ) throws IOException {
+
+		if (readNull())
+			return null;
+
+		expect('{');
+
+		final Type keyType = typ.keyType();
+		final Type valueType = typ.valueType();
+
+		if (typ instanceof PrimitiveMapType) {
+			if (keyType.typeEnum() == TypeEnum.INT32) {
+				IntObjMap<Object> out = reuseCollection(IntObjMap.class);
+				if (out == null)
+					out = new IntObjMap<Object>();
+				if (skipWhitespace() == '}') {
+					m_pos++;
+					return out;
+				}
+				do {
+					final int key = (int) readKeyLong();
+					expectMemberValue();
+					out.put(key, readValue(valueType));
+				} while (nextMember());
+				return out;
+			} else {
+				LongObjMap<Object> out = reuseCollection(LongObjMap.class);
+				if (out == null)
+					out = new LongObjMap<Object>();
+				if (skipWhitespace() == '}') {
+					m_pos++;
+					return out;
+				}
+				do {
+					final long key = readKeyLong();
+					expectMemberValue();
+					out.put(key, readValue(valueType));
+				} while (nextMember());
+				return out;
+			}
+		}
+
+		final HashMap<Object, Object> out = newHashMap(16);
+
+		if (skipWhitespace() == '}') {
+			m_pos++;
+			return (Map) out;
+		}
+
+		do {
+			final Object key = cvtMapKeyType(readString(), keyType);
+			expectMemberValue();
+			out.put(key, readValue(valueType));
+		} while (nextMember());
+
+		return (Map) out;
+	}
+
+	/**
+	 * Internal helper method for converting JSON object/map key types. This is
+	 * necessary since JSON maps only supports strings as keys, while MGen
+	 * supports both numeric values and strings.
+	 *
+	 * @param keyString
+	 *            The key string that was read from json
+	 *
+	 * @param constraint
+	 *            The type metadata describing what type to convert this string
+	 *            to
+	 *
+	 * @return The converted key
+	 */
+	private Object cvtMapKeyType(final String keyString, final Type constraint) {
+		switch (constraint.typeEnum()) {
+		case ENUM:
+			return ((RuntimeEnumType) constraint).get(keyString);
+		case BOOL:
+			return java.lang.Boolean.valueOf(keyString);
+		case INT8:
+			return java.lang.Byte.valueOf(keyString);
+		case INT16:
+			return java.lang.Short.valueOf(keyString);
+		case INT32:
+			return java.lang.Integer.valueOf(keyString);
+		case INT64:
+			return java.lang.Long.valueOf(keyString);
+		case FLOAT32:
+			return java.lang.Float.valueOf(keyString);
+		case FLOAT64:
+			return java.lang.Double.valueOf(keyString);
+		case STRING:
+			return keyString;
+		default:
+			throw new UnknownTypeException("Unknown map key type: " + constraint);
+		}
+	}
+
+	/**
+	 * Internal method for reading an array
+	 *
+	 * @param typ
+	 *            Type metadata describing the array
+	 *
+	 * @return The read array
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private Object readArray(final ArrayType typ) throws IOException {
+
+		if (readNull())
+			return null;
+
+		final Type elementType = typ.elementType();
+
+		switch (elementType.typeEnum()) {
+		case BOOL: {
+			boolean[] out = new boolean[8];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = readBoolean(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case INT8: {
+			byte[] out = new byte[16];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = (byte) readLong(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case INT16: {
+			short[] out = new short[8];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = (short) readLong(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case INT32: {
+			int[] out = new int[8];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = (int) readLong(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case INT64: {
+			long[] out = new long[8];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = readLong(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case FLOAT32: {
+			float[] out = new float[8];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = readFloat(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case FLOAT64: {
+			double[] out = new double[8];
+			int n = 0;
+			for (boolean more = beginArray(); more; more = nextElement()) {
+				if (n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				out[n++] = readDouble(null);
+			}
+			return n == out.length ? out : Arrays.copyOf(out, n);
+		}
+		case ENUM:
+		case STRING:
+		case ARRAY:
+		case LIST:
+		case MAP:
+		case CLASS: {
+			final ArrayList<Object> elements = new ArrayList<Object>();
+			for (boolean more = beginArray(); more; more = nextElement())
+				elements.add(readValue(elementType));
+			final Object out = typ.newInstance(elements.size());
+			for (int i = 0; i < elements.size(); i++)
+				Array.set(out, i, elements.get(i));
+			return out;
+		}
+		default:
+			throw new UnknownTypeException("Unknown array elementType: " + elementType);
+		}
+	}
+
+	/**
+	 * Internal method for reading a list
+	 *
+	 * @param typ
+	 *            Type meta data describing what to read
+	 *
+	 * @return The read list
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private List<?> readList(final ListType typ) throws IOException {
+
+		if (readNull())
+			return null;
+
+		final Type elementType = typ.elementType();
+
+		if (typ instanceof PrimitiveListType) {
+			switch (elementType.typeEnum()) {
+			case INT32: {
+				IntList out = reuseCollection(IntList.class);
+				if (out == null)
+					out = new IntList();
+				for (boolean more = beginArray(); more; more = nextElement())
+					out.addInt((int) readLong(null));
+				return out;
+			}
+			case INT64: {
+				LongList out = reuseCollection(LongList.class);
+				if (out == null)
+					out = new LongList();
+				for (boolean more = beginArray(); more; more = nextElement())
+					out.addLong(readLong(null));
+				return out;
+			}
+			default: {
+				DoubleList out = reuseCollection(DoubleList.class);
+				if (out == null)
+					out = new DoubleList();
+				for (boolean more = beginArray(); more; more = nextElement())
+					out.addDouble(readDouble(null));
+				return out;
+			}
+			}
+		}
+
+		final ArrayList<Object> out = newArrayList(8);
+		for (boolean more = beginArray(); more; more = nextElement())
+			out.add(readValue(elementType));
+		return out;
+	}
+
+	/**
+	 * Internal method for reading a generic value, boxing primitives
+	 *
+	 * @param typ
+	 *            Type meta data describing what to read
+	 *
+	 * @return The object/value read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private Object readValue(final Type typ) throws IOException {
+
+		switch (typ.typeEnum()) {
+		case ARRAY:
+			return readArray((ArrayType) typ);
+		case LIST:
+			return readList((ListType) typ);
+		case MAP:
+			return readMap((MapType) typ);
+		case CLASS:
+			return readMGenObject((RuntimeClassType) typ);
+		default:
+			break;
+		}
+
+		if (readNull())
+			return null;
+
+		switch (typ.typeEnum()) {
+		case ENUM:
+			return ((RuntimeEnumType) typ).get(readString());
+		case BOOL:
+			return readBoolean(null);
+		case INT8:
+			return (byte) readLong(null);
+		case INT16:
+			return (short) readLong(null);
+		case INT32:
+			return (int) readLong(null);
+		case INT64:
+			return readLong(null);
+		case FLOAT32:
+			return readFloat(null);
+		case FLOAT64:
+			return readDouble(null);
+		case STRING:
+			return readString();
+		default:
+			throw new UnknownTypeException("Unknown type: " + typ);
+		}
+	}
+
+	/************************************************
+	 *
+	 *
+	 * TOKENIZER
+	 *
+	 ***********************************************/
+
+	/**
+	 * Internal method for reading more bytes into the read buffer. Bytes from
+	 * the read position (or from the mark, if one is set) are kept, but may be
+	 * moved to the beginning of the buffer, so callers must not keep buffer
+	 * indices across calls, except relative to m_pos.
+	 *
+	 * @return If any more bytes could be read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream
+	 */
+	private boolean fill() throws IOException {
+
+		if (m_streamEnded)
+			return false;
+
+		final int keep = m_mark >= 0 ? (int) (m_mark - m_bufferOffset) : m_pos;
+
+		if (keep > 0) {
+			System.arraycopy(m_buffer, keep, m_buffer, 0, m_end - keep);
+			m_pos -= keep;
+			m_end -= keep;
+			m_bufferOffset += keep;
+		} else if (m_end == m_buffer.length) {
+			m_ownBuffer = Arrays.copyOf(m_buffer, m_buffer.length * 2);
+			m_buffer = m_ownBuffer;
+		}
+
+		final int n = m_stream.read(m_buffer, m_end, m_buffer.length - m_end);
+		if (n <= 0) {
+			m_streamEnded = true;
+			return false;
+		}
+		m_end += n;
+		return true;
+	}
+
+	/**
+	 * Internal method for skipping whitespace and peeking at the next byte,
+	 * without consuming it.
+	 *
+	 * @return The next byte, or -1 if the end of the data input source was
+	 *         reached
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream
+	 */
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			while (m_pos < m_end) {
+				final byte b = m_buffer[m_pos];
+				if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+					return b;
+				m_pos++;
+			}
+			if (!fill())
+				return -1;
+		}
+	}
+
+	/**
+	 * Internal method for skipping whitespace and consuming an expected byte.
+	 *
+	 * @param c
+	 *            The expected byte
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input
+	 *             stream, or if the expected byte was not found
+	 */
+	private void expect(final char c) throws IOException {
+		final int b = skipWhitespace();
+		if (b != c)
+			throw unexpected(b, "'" + c + "'");
+		m_pos++;
+	}
+
+	/**
+	 * Internal method for consuming the colon between a member key and its
+	 * value.
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private void expectMemberValue() throws IOException {
+		expect(':');
+	}
+
+	/**
+	 * Internal method for advancing past the separator after an object
+	 * member.
+	 *
+	 * @return True if another member follows, or false if the closing brace
+	 *         was consumed
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private boolean nextMember() throws IOException {
+		final int b = skipWhitespace();
+		m_pos++;
+		if (b == ',')
+			return true;
+		if (b == '}')
+			return false;
+		m_pos--;
+		throw unexpected(b, "',' or '}'");
+	}
+
+	/**
+	 * Internal method for consuming the opening bracket of a JSON array.
+	 *
+	 * @return True if the array has elements, or false if the closing bracket
+	 *         was consumed
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private boolean beginArray() throws IOException {
+		expect('[');
+		if (skipWhitespace() == ']') {
+			m_pos++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Internal method for advancing past the separator after an array
+	 * element.
+	 *
+	 * @return True if another element follows, or false if the closing
+	 *         bracket was consumed
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private boolean nextElement() throws IOException {
+		final int b = skipWhitespace();
+		m_pos++;
+		if (b == ',')
+			return true;
+		if (b == ']')
+			return false;
+		m_pos--;
+		throw unexpected(b, "',' or ']'");
+	}
+
+	/**
+	 * Internal method for consuming a JSON null, if one is next.
+	 *
+	 * @return If a null was consumed
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private boolean readNull() throws IOException {
+		if (skipWhitespace() != 'n')
+			return false;
+		expectLiteral("null");
+		return true;
+	}
+
+	/**
+	 * Internal method for reading a JSON boolean
+	 *
+	 * @param field
+	 *            The field being read, or null if reading a collection element
+	 *
+	 * @return The boolean read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private boolean readBoolean(final Field field) throws IOException {
+		final int b = skipWhitespace();
+		if (b == 't') {
+			expectLiteral("true");
+			return true;
+		} else if (b == 'f') {
+			expectLiteral("false");
+			return false;
+		} else {
+			throw unexpected(b, field != null ? "boolean for field " + field.name() : "boolean");
+		}
+	}
+
+	/**
+	 * Internal method for consuming a literal
+	 *
+	 * @param literal
+	 *            The literal to consume
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             or if the literal was not found
+	 */
+	private void expectLiteral(final String literal) throws IOException {
+		for (int i = 0; i < literal.length(); i++) {
+			if (m_pos == m_end && !fill())
+				throw new EOFException("JsonStreamReader: Unexpected end of data in '" + literal
+						+ "'");
+			if (m_buffer[m_pos] != literal.charAt(i))
+				throw unexpected(m_buffer[m_pos], "'" + literal + "'");
+			m_pos++;
+		}
+	}
+
+	/**
+	 * Internal method for scanning a number token without consuming it, so
+	 * that it is contiguous in the read buffer.
+	 *
+	 * @param field
+	 *            The field being read, or null if reading a collection element
+	 *
+	 * @return The length of the token in bytes
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             or if no number was found
+	 */
+	private int scanNumber(final Field field) throws IOException {
+		final int b = skipWhitespace();
+		if (b != '-' && (b < '0' || b > '9'))
+			throw unexpected(b, field != null ? "number for field " + field.name() : "number");
+		int n = 1;
+		while (true) {
+			if (m_pos + n == m_end && !fill())
+				return n;
+			final byte c = m_buffer[m_pos + n];
+			if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '-'
+					|| c == '+')
+				n++;
+			else
+				return n;
+		}
+	}
+
+	/**
+	 * Internal method for reading a JSON number as an integer. Numbers with
+	 * fractions or exponents are truncated. Integers out of range for an int64
+	 * are treated as corrupt data.
+	 *
+	 * @param field
+	 *            The field being read, or null if reading a collection element
+	 *
+	 * @return The number read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private long readLong(final Field field) throws IOException {
+		final int n = scanNumber(field);
+		final int start = m_pos;
+		m_pos += n;
+		try {
+			return Decimal.parseLong(m_buffer, start, n);
+		} catch (final NumberFormatException e) {
+			throw new StreamCorruptedException(e);
+		}
+	}
+
+	/**
+	 * Internal method for reading a JSON number as a floating point value
+	 *
+	 * @param field
+	 *            The field being read, or null if reading a collection element
+	 *
+	 * @return The number read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private double readDouble(final Field field) throws IOException {
+		final int n = scanNumber(field);
+		final int start = m_pos;
+		m_pos += n;
+		try {
+			return Decimal.parseDouble(m_buffer, start, n);
+		} catch (final NumberFormatException e) {
+			throw new StreamCorruptedException(e);
+		}
+	}
+
+	/**
+	 * Internal method for reading a JSON number as a float32. The number is
+	 * rounded directly to float32, and not through a float64.
+	 *
+	 * @param field
+	 *            The field being read, or null if reading a collection element
+	 *
+	 * @return The number read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private float readFloat(final Field field) throws IOException {
+		final int n = scanNumber(field);
+		final int start = m_pos;
+		m_pos += n;
+		try {
+			return Decimal.parseFloat(m_buffer, start, n);
+		} catch (final NumberFormatException e) {
+			throw new StreamCorruptedException(e);
+		}
+	}
+
+	/**
+	 * Internal method for reading a map key holding an integer
+	 *
+	 * @return The key read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private long readKeyLong() throws IOException {
+		final int b = skipWhitespace();
+		if (b != '"')
+			throw unexpected(b, "map key");
+		m_pos++;
+		final long out = readLong(null);
+		if (m_pos == m_end && !fill())
+			throw new EOFException("JsonStreamReader: Unexpected end of data in map key");
+		if (m_buffer[m_pos] != '"')
+			throw unexpected(m_buffer[m_pos], "'\"'");
+		m_pos++;
+		return out;
+	}
+
+	/**
+	 * Internal method for scanning a JSON string without consuming it, so
+	 * that it is contiguous in the read buffer.
+	 *
+	 * @return The length in bytes of the string contents, excluding the
+	 *         quotes, or -1 if it contains escape sequences
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             or if no string was found
+	 */
+	private int scanString() throws IOException {
+		final int b = skipWhitespace();
+		if (b != '"')
+			throw unexpected(b, "string");
+		boolean escaped = false;
+		int i = m_pos + 1;
+		while (true) {
+			if (i == m_end) {
+				final int rel = i - m_pos;
+				if (!fill())
+					throw new EOFException("JsonStreamReader: Unexpected end of data in string");
+				i = m_pos + rel;
+			}
+			final byte c = m_buffer[i];
+			if (c == '"')
+				return escaped ? -1 : i - m_pos - 1;
+			if (c == '\\') {
+				escaped = true;
+				i++;
+				if (i == m_end) {
+					final int rel = i - m_pos;
+					if (!fill())
+						throw new EOFException(
+								"JsonStreamReader: Unexpected end of data in string");
+					i = m_pos + rel;
+				}
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Internal method for reading a JSON string
+	 *
+	 * @return The string read
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private String readString() throws IOException {
+		final int n = scanString();
+		if (n >= 0) {
+			final String out = m_stringDecoder.decode(m_buffer, m_pos + 1, n);
+			m_pos += n + 2;
+			return out;
+		}
+		return readEscapedString();
+	}
+
+	/**
+	 * Internal method for reading a JSON string containing escape sequences,
+	 * after it has been scanned. Escape sequences are unescaped into UTF-8
+	 * bytes, which are then decoded.
+	 *
+	 * @return The string read
+	 *
+	 * @throws IOException
+	 *             If the string contains invalid escape sequences
+	 */
+	private String readEscapedString() throws IOException {
+
+		final byte[] buf = m_buffer;
+		int i = m_pos + 1;
+		int n = 0;
+
+		while (buf[i] != '"') {
+			if (n + 4 > m_unescapeBuffer.length)
+				m_unescapeBuffer = Arrays.copyOf(m_unescapeBuffer, m_unescapeBuffer.length * 2);
+			final byte c = buf[i++];
+			if (c != '\\') {
+				m_unescapeBuffer[n++] = c;
+				continue;
+			}
+			final byte e = buf[i++];
+			switch (e) {
+			case '"':
+			case '\\':
+			case '/':
+				m_unescapeBuffer[n++] = e;
+				break;
+			case 'b':
+				m_unescapeBuffer[n++] = '\b';
+				break;
+			case 'f':
+				m_unescapeBuffer[n++] = '\f';
+				break;
+			case 'n':
+				m_unescapeBuffer[n++] = '\n';
+				break;
+			case 'r':
+				m_unescapeBuffer[n++] = '\r';
+				break;
+			case 't':
+				m_unescapeBuffer[n++] = '\t';
+				break;
+			case 'u': {
+				int cp = parseHex4(buf, i);
+				i += 4;
+				if (Character.isHighSurrogate((char) cp) && buf[i] == '\\' && buf[i + 1] == 'u') {
+					final int low = parseHex4(buf, i + 2);
+					if (Character.isLowSurrogate((char) low)) {
+						cp = Character.toCodePoint((char) cp, (char) low);
+						i += 6;
+					}
+				}
+				n = encodeCodePoint(cp, n);
+				break;
+			}
+			default:
+				throw new StreamCorruptedException("JsonStreamReader: Invalid escape sequence '\\"
+						+ (char) e + "'");
+			}
+		}
+
+		m_pos = i + 1;
+		return m_stringDecoder.decode(m_unescapeBuffer, 0, n);
+	}
+
+	/**
+	 * Internal helper method for parsing the four hex digits of a unicode
+	 * escape sequence.
+	 *
+	 * @param buf
+	 *            The buffer to parse from
+	 *
+	 * @param offset
+	 *            The index of the first hex digit
+	 *
+	 * @return The parsed char value
+	 */
+	private int parseHex4(final byte[] buf, final int offset) {
+		int out = 0;
+		for (int i = offset; i < offset + 4; i++) {
+			final int d = Character.digit(buf[i], 16);
+			if (d < 0)
+				throw new StreamCorruptedException(
+						"JsonStreamReader: Invalid unicode escape sequence");
+			out = (out << 4) | d;
+		}
+		return out;
+	}
+
+	/**
+	 * Internal helper method for UTF-8 encoding an unescaped code point into
+	 * the unescape buffer.
+	 *
+	 * @param cp
+	 *            The code point
+	 *
+	 * @param n
+	 *            The current length of the unescape buffer contents
+	 *
+	 * @return The new length of the unescape buffer contents
+	 */
+	private int encodeCodePoint(final int cp, int n) {
+		final byte[] out = m_unescapeBuffer;
+		if (cp < 0x80) {
+			out[n++] = (byte) cp;
+		} else if (cp < 0x800) {
+			out[n++] = (byte) (0xC0 | (cp >> 6));
+			out[n++] = (byte) (0x80 | (cp & 0x3F));
+		} else if (cp < 0x10000) {
+			out[n++] = (byte) (0xE0 | (cp >> 12));
+			out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			out[n++] = (byte) (0x80 | (cp & 0x3F));
+		} else {
+			out[n++] = (byte) (0xF0 | (cp >> 18));
+			out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			out[n++] = (byte) (0x80 | (cp & 0x3F));
+		}
+		return n;
+	}
+
+	/**
+	 * Internal method for skipping a JSON string
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private void skipString() throws IOException {
+		final int b = skipWhitespace();
+		if (b != '"')
+			throw unexpected(b, "string");
+		m_pos++;
+		while (true) {
+			if (m_pos == m_end && !fill())
+				throw new EOFException("JsonStreamReader: Unexpected end of data in string");
+			final byte c = m_buffer[m_pos++];
+			if (c == '"')
+				return;
+			if (c == '\\') {
+				if (m_pos == m_end && !fill())
+					throw new EOFException("JsonStreamReader: Unexpected end of data in string");
+				m_pos++;
+			}
+		}
+	}
+
+	/**
+	 * Internal method for skipping any JSON value, without materializing it.
+	 * Objects and arrays are skipped by tracking their nesting depth.
+	 *
+	 * @throws IOException
+	 *             If an IOException occurs on the underlying data input stream,
+	 *             such as reaching EOF before expected.
+	 */
+	private void skipValue() throws IOException {
+
+		final int b = skipWhitespace();
+
+		if (b == '"') {
+			skipString();
+			return;
+		}
+
+		if (b == '{' || b == '[') {
+			int depth = 0;
+			while (true) {
+				final int c = skipWhitespace();
+				if (c < 0)
+					throw new EOFException("JsonStreamReader: Unexpected end of data");
+				if (c == '"') {
+					skipString();
+					continue;
+				}
+				m_pos++;
+				if (c == '{' || c == '[')
+					depth++;
+				else if ((c == '}' || c == ']') && --depth == 0)
+					return;
+			}
+		}
+
+		if (b < 0)
+			throw new EOFException("JsonStreamReader: Unexpected end of data");
+
+		while (true) {
+			if (m_pos == m_end && !fill())
+				return;
+			final byte c = m_buffer[m_pos];
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r'
+					|| c == '\t')
+				return;
+			m_pos++;
+		}
+	}
+
+	/**
+	 * Internal helper method for creating an exception describing unexpected
+	 * input.
+	 *
+	 * @param b
+	 *            The byte found, or -1 if the end of the data input source was
+	 *            reached
+	 *
+	 * @param expected
+	 *            A description of what was expected
+	 *
+	 * @return The exception to throw
+	 */
+	private StreamCorruptedException unexpected(final int b, final String expected) {
+		if (b < 0)
+			return new StreamCorruptedException("JsonStreamReader: Unexpected end of data, expected "
+					+ expected);
+		return new StreamCorruptedException("JsonStreamReader: Unexpected '" + (char) b
+				+ "' at offset " + (m_bufferOffset + m_pos) + ", expected " + expected);
+	}
+
+	/**
+	 * Internal helper method for comparing a UTF-8 encoded name to bytes in a
+	 * buffer.
+	 *
+	 * @param name
+	 *            The encoded name
+	 *
+	 * @param buf
+	 *            The buffer
+	 *
+	 * @param offset
+	 *            The index of the first byte to compare
+	 *
+	 * @param n
+	 *            The number of bytes to compare
+	 *
+	 * @return If the bytes are equal
+	 */
+	private static boolean equals(
+			final byte[] name,
+			final byte[] buf,
+			final int offset,
+			final int n) {
+		if (name.length != n)
+			return false;
+		for (int i = 0; i < n; i++) {
+			if (name[i] != buf[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Internal Iterator over the remaining root objects of the data input
+	 * source. Reads one object ahead, to skip objects of unknown types.
+	 */
+	private final class ObjectIterator<T extends MGenBase> implements Iterator<T> {
+
+		private final Class<T> m_typ;
+		private T m_next;
+
+		ObjectIterator(final Class<T> typ) {
+			m_typ = typ;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean hasNext() {
+			try {
+				while (m_next == null) {
+					if (!hasNextObject())
+						return false;
+					m_next = m_typ == MGenBase.class ? (T) readObject() : readObject(m_typ);
+				}
+				return true;
+			} catch (final IOException e) {
+				throw new SerializationException(e);
+			}
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			final T out = m_next;
+			m_next = null;
+			return out;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	/**
+	 * Internal lookup table from the UTF-8 encoded names of the fields of a
+	 * class to the fields.
+	 */
+	private static final class FieldTable {
+
+		private final Field[] m_fields;
+		private final byte[][] m_names;
+
+		FieldTable(final Field[] fields) {
+			m_fields = fields;
+			m_names = new byte[fields.length][];
+			for (int i = 0; i < fields.length; i++) {
+				final String name = fields[i].name();
+				m_names[i] = new byte[Utf8.encodedLength(name)];
+				Utf8.encode(name, m_names[i], 0);
+			}
+		}
+
+		Field get(final byte[] buf, final int offset, final int n) {
+			for (int i = 0; i < m_names.length; i++) {
+				if (JsonStreamReader.equals(m_names[i], buf, offset, n))
+					return m_fields[i];
+			}
+			return null;
+		}
+
+		Field get(final String name) {
+			for (final Field field : m_fields) {
+				if (field.name().equals(name))
+					return field;
+			}
+			return null;
+		}
+
+	}
+
+}
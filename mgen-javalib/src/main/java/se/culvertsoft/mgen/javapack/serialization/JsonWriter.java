@@ -42,6 +42,7 @@ public class JsonWriter extends TextFormatWriter {
 	protected final boolean m_compact;
 	protected final int[] m_iEntry;
 	protected int m_depth = 0;
+	protected boolean m_leafTypeIds = false;
 
 	/**
 	 * Creates a new JsonWriter
@@ -148,6 +149,40 @@ public class JsonWriter extends TextFormatWriter {
 		return this;
 	}
 
+	/**
+	 * Configures whether this writer should write the type ids ("__t") of
+	 * objects as the 16 bit type id of their own class only (their leaf type
+	 * id), instead of the full chain of 16 bit type ids of their class
+	 * hierarchy. The same requirements apply as for
+	 * BinaryWriter.setLeafTypeIds(boolean). The default setting is false.
+	 * 
+	 * @param leafTypeIds
+	 *            If the writer should write leaf type ids only
+	 * 
+	 * @return This writer
+	 * 
+	 * @throws IllegalStateException
+	 *             If 16 bit type ids are not unique in the class registry of
+	 *             this writer
+	 */
+	public JsonWriter setLeafTypeIds(final boolean leafTypeIds) {
+		if (leafTypeIds && !m_classRegistry.hasUniqueTypeIds16Bit())
+			throw new IllegalStateException(
+					"Leaf type ids require 16 bit type ids to be unique in the class registry");
+		m_leafTypeIds = leafTypeIds;
+		return this;
+	}
+
+	/**
+	 * Checks if this writer writes leaf type ids only. See
+	 * setLeafTypeIds(boolean).
+	 * 
+	 * @return If this writer writes leaf type ids only
+	 */
+	public boolean leafTypeIds() {
+		return m_leafTypeIds;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -159,7 +194,8 @@ public class JsonWriter extends TextFormatWriter {
 	}
 
 	/**
-	 * Convenience method for writing an object directly to a JSON string
+	 * Convenience method for writing an object directly to a JSON string. The
+	 * writer keeps writing later objects to its output stream.
 	 * 
 	 * @param o
 	 *            The object to write
@@ -173,8 +209,29 @@ public class JsonWriter extends TextFormatWriter {
 	public String writeObjectToString(final MGenBase o) throws IOException {
 		m_depth = 0;
 		setWriteToStream(false);
+		try {
+			writeMGenObject(o, null);
+			return finish();
+		} finally {
+			setWriteToStream(true);
+		}
+	}
+
+	/**
+	 * Internal method for writing an object without flushing it to the
+	 * underlying output stream, used by JsonSequenceWriter to write objects in
+	 * batches.
+	 * 
+	 * @param o
+	 *            The object to write
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	void writeObjectUnflushed(final MGenBase o) throws IOException {
+		m_depth = 0;
 		writeMGenObject(o, null);
-		return finish();
 	}
 
 	/**
@@ -182,7 +239,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeMGenObjectField(MGenBase o, Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		writeMGenObject(o, (RuntimeClassType) field.typ());
 	}
 
@@ -205,7 +262,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeBooleanField(final boolean b, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(b);
 	}
 
@@ -214,7 +271,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeInt8Field(final byte b, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(b);
 	}
 
@@ -223,7 +280,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeInt16Field(final short s, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(s);
 	}
 
@@ -232,7 +289,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeInt32Field(final int i, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(i);
 	}
 
@@ -241,7 +298,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeInt64Field(final long l, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(l);
 	}
 
@@ -250,7 +307,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeFloat32Field(final float f, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(f);
 	}
 
@@ -259,7 +316,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeFloat64Field(final double d, final Field field) throws IOException {
-		beginWritePair(field.name());
+		beginWritePair(field);
 		write(d);
 	}
 
@@ -268,7 +325,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeStringField(final String s, final Field f) throws IOException {
-		beginWritePair(f.name());
+		beginWritePair(f);
 		writeQuoteEscaped(s);
 	}
 
@@ -277,7 +334,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeListField(final ArrayList<Object> list, final Field f) throws IOException {
-		beginWritePair(f.name());
+		beginWritePair(f);
 		writeList(list, (ListType) f.typ());
 	}
 
@@ -286,16 +343,36 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeMapField(final HashMap<Object, Object> m, final Field f) throws IOException {
-		beginWritePair(f.name());
+		beginWritePair(f);
 		writeMap(m, (MapType) f.typ());
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void writePrimitiveListField(final List<?> list, final Field f) throws IOException {
+		beginWritePair(f);
+		writeList((List<Object>) list, (ListType) f.typ());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void writePrimitiveMapField(final Map<?, ?> m, final Field f) throws IOException {
+		beginWritePair(f);
+		writeMap((Map<Object, Object>) m, (MapType) f.typ());
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void writeEnumField(Enum<?> e, Field f) throws IOException {
-		beginWritePair(f.name());
+		beginWritePair(f);
 		writeQuoteEscaped(String.valueOf(e));
 	}
 
@@ -304,7 +381,7 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	@Override
 	public void writeArrayField(Object array, Field f) throws IOException {
-		beginWritePair(f.name());
+		beginWritePair(f);
 		writeArray(array, (ArrayType) f.typ());
 	}
 
@@ -328,7 +405,8 @@ public class JsonWriter extends TextFormatWriter {
 	 */
 	protected void writeTypeIds(final MGenBase o) throws IOException {
 		beginWritePair("__t");
-		writeQuoteEscaped(o._typeIds16BitBase64String());
+		writeQuoteEscaped(m_leafTypeIds ? o._typeId16BitBase64() : o
+				._typeIds16BitBase64String());
 	}
 
 	/**
@@ -346,6 +424,37 @@ public class JsonWriter extends TextFormatWriter {
 		writeName(name);
 	}
 
+	/**
+	 * Internal method for writing the beginning of a field's key-value entry
+	 * 
+	 * @param field
+	 *            The field whose name is the key of the key-value entry
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected final void beginWritePair(final Field field) throws IOException {
+		newEntry();
+		writeName(field);
+	}
+
+	/**
+	 * Internal method for writing the name of a field as the key of a
+	 * key-value entry. Writers may override this method to write names they
+	 * have already escaped and encoded.
+	 * 
+	 * @param field
+	 *            The field whose name is the key of the key-value entry
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs when writing to the the underlying
+	 *             output stream
+	 */
+	protected void writeName(final Field field) throws IOException {
+		writeName(field.name());
+	}
+
 	/**
 	 * Internal method for writing the key/name of a key-value entry
 	 * 
@@ -887,7 +996,7 @@ public class JsonWriter extends TextFormatWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void beginBlock(final String beginString) throws IOException {
+	protected final void beginBlock(final String beginString) throws IOException {
 		write(beginString);
 		m_depth++;
 		if (m_depth >= m_iEntry.length)
@@ -927,7 +1036,7 @@ public class JsonWriter extends TextFormatWriter {
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
-	private void writeQuoteEscaped(final String s) throws IOException {
+	protected void writeQuoteEscaped(final String s) throws IOException {
 
 		if (s == null) {
 			write("null");
@@ -0,0 +1,266 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.exceptions.SerializationException;
+
+/**
+ * A multi-threaded reader for newline delimited JSON (NDJSON), such as
+ * written by a JsonSequenceWriter in NDJSON format. The data is split into
+ * chunks at newlines, and the chunks are parsed in parallel by worker
+ * threads, each with its own JsonStreamReader. Objects are still delivered in
+ * the order they appear in the data.
+ * 
+ * Each object must be on a single line, so pretty printed JSON cannot be read
+ * this way. Objects of unknown types and null values are skipped.
+ * 
+ * When reading from an InputStream, only a bounded number of chunks are read
+ * ahead of the objects delivered, so memory use does not depend on the size
+ * of the data.
+ */
+public class ParallelNdjsonReader {
+
+	/**
+	 * The default size in bytes of the chunks parsed by each worker
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Receives the objects read from an InputStream, in order, on the thread
+	 * calling read(..).
+	 */
+	public interface Handler {
+		void handle(final MGenBase o);
+	}
+
+	private final ExecutorService m_executor;
+	private final int m_nThreads;
+	private final int m_chunkSize;
+	private final ThreadLocal<JsonStreamReader> m_readers;
+
+	/**
+	 * Creates a new ParallelNdjsonReader and starts its worker threads.
+	 * 
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 * 
+	 * @param nThreads
+	 *            The number of worker threads
+	 * 
+	 * @param chunkSize
+	 *            The approximate size in bytes of the chunks parsed by each
+	 *            worker. Chunks are extended to the next newline.
+	 * 
+	 * @param threadFactory
+	 *            Creates the worker threads
+	 */
+	public ParallelNdjsonReader(
+			final ClassRegistryBase classRegistry,
+			final int nThreads,
+			final int chunkSize,
+			final ThreadFactory threadFactory) {
+		if (nThreads < 1 || chunkSize < 1)
+			throw new IllegalArgumentException("nThreads and chunkSize must be at least 1");
+		m_executor = Executors.newFixedThreadPool(nThreads, threadFactory);
+		m_nThreads = nThreads;
+		m_chunkSize = chunkSize;
+		m_readers = new ThreadLocal<JsonStreamReader>() {
+			@Override
+			protected JsonStreamReader initialValue() {
+				return new JsonStreamReader(classRegistry);
+			}
+		};
+	}
+
+	/**
+	 * Creates a new ParallelNdjsonReader with chunks of DEFAULT_CHUNK_SIZE
+	 * bytes, and starts its worker threads.
+	 * 
+	 * @param classRegistry
+	 *            The class registry to use for marshaling objects
+	 * 
+	 * @param nThreads
+	 *            The number of worker threads
+	 */
+	public ParallelNdjsonReader(final ClassRegistryBase classRegistry, final int nThreads) {
+		this(classRegistry, nThreads, DEFAULT_CHUNK_SIZE, Executors.defaultThreadFactory());
+	}
+
+	/**
+	 * Reads all objects of a UTF-8 encoded NDJSON byte array.
+	 * 
+	 * @param data
+	 *            The NDJSON data to read
+	 * 
+	 * @param offset
+	 *            The index of the first byte to read
+	 * 
+	 * @param length
+	 *            The number of bytes to read
+	 * 
+	 * @return The objects read, in order
+	 * 
+	 * @throws IOException
+	 *             If the data is not valid NDJSON, or if interrupted while
+	 *             waiting for the workers
+	 */
+	public List<MGenBase> readAll(final byte[] data, final int offset, final int length)
+			throws IOException {
+
+		final int end = offset + length;
+		final int nChunks = Math.max(1, Math.min(m_nThreads * 4, length / m_chunkSize + 1));
+		final List<Future<List<MGenBase>>> chunks = new ArrayList<Future<List<MGenBase>>>(nChunks);
+
+		int start = offset;
+		for (int i = 1; i <= nChunks && start < end; i++) {
+			int split = i == nChunks ? end : offset + (int) ((long) length * i / nChunks);
+			split = Math.max(split, start);
+			while (split < end && data[split++] != '\n') {
+			}
+			chunks.add(submit(data, start, split));
+			start = split;
+		}
+
+		final ArrayList<MGenBase> out = new ArrayList<MGenBase>();
+		for (final Future<List<MGenBase>> chunk : chunks)
+			out.addAll(await(chunk));
+		return out;
+	}
+
+	/**
+	 * Reads all objects of a UTF-8 encoded NDJSON data input source, passing
+	 * them to a handler in order. At most two chunks per worker are read ahead
+	 * of the objects passed to the handler.
+	 * 
+	 * @param stream
+	 *            The NDJSON data input source to read
+	 * 
+	 * @param handler
+	 *            The handler to pass the objects to
+	 * 
+	 * @return The number of objects read
+	 * 
+	 * @throws IOException
+	 *             If an IOException occurs on the data input source, if the
+	 *             data is not valid NDJSON, or if interrupted while waiting for
+	 *             the workers
+	 */
+	public long read(final InputStream stream, final Handler handler) throws IOException {
+
+		final ArrayDeque<Future<List<MGenBase>>> pending = new ArrayDeque<Future<List<MGenBase>>>();
+		final int maxPending = m_nThreads * 2;
+		long nRead = 0;
+
+		byte[] chunk = new byte[m_chunkSize];
+		int size = 0;
+		boolean ended = false;
+
+		while (!ended) {
+
+			final int n = stream.read(chunk, size, chunk.length - size);
+			if (n < 0)
+				ended = true;
+			else
+				size += n;
+
+			if (!ended && size < chunk.length)
+				continue;
+
+			int split = size;
+			if (!ended) {
+				while (split > 0 && chunk[split - 1] != '\n')
+					split--;
+				if (split == 0) {
+					// A single line longer than the chunk
+					chunk = Arrays.copyOf(chunk, chunk.length * 2);
+					continue;
+				}
+			}
+
+			if (split > 0)
+				pending.add(submit(chunk, 0, split));
+
+			final byte[] next = new byte[Math.max(m_chunkSize, size - split)];
+			System.arraycopy(chunk, split, next, 0, size - split);
+			chunk = next;
+			size -= split;
+
+			while (pending.size() > (ended ? 0 : maxPending))
+				nRead += deliver(await(pending.poll()), handler);
+		}
+
+		return nRead;
+	}
+
+	/**
+	 * Stops the worker threads, after finishing any chunks being read.
+	 */
+	public void shutdown() {
+		m_executor.shutdown();
+	}
+
+	/**
+	 * Internal method for parsing a chunk of NDJSON on a worker thread. The
+	 * chunk must not be modified until parsed.
+	 */
+	private Future<List<MGenBase>> submit(final byte[] data, final int start, final int end) {
+		return m_executor.submit(new Callable<List<MGenBase>>() {
+			@Override
+			public List<MGenBase> call() throws IOException {
+				final JsonStreamReader reader = m_readers.get().setInput(data, start, end - start);
+				final ArrayList<MGenBase> out = new ArrayList<MGenBase>();
+				while (reader.hasNextObject()) {
+					final MGenBase o = reader.readObject();
+					if (o != null)
+						out.add(o);
+				}
+				reader.setInput(JsonStreamReader.EMPTY_INPUT_STREAM);
+				return out;
+			}
+		});
+	}
+
+	/**
+	 * Internal method for waiting for the objects parsed from a chunk, and
+	 * rethrowing exceptions thrown while parsing it.
+	 */
+	private List<MGenBase> await(final Future<List<MGenBase>> chunk) throws IOException {
+		try {
+			return chunk.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading NDJSON");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new SerializationException(cause);
+		}
+	}
+
+	/**
+	 * Internal method for passing the objects of a chunk to the handler.
+	 */
+	private static int deliver(final List<MGenBase> objects, final Handler handler) {
+		for (final MGenBase o : objects)
+			handler.handle(o);
+		return objects.size();
+	}
+
+}
@@ -0,0 +1,162 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import se.culvertsoft.mgen.api.model.Field;
+
+/**
+ * A selection of the fields to read, for reading only parts of objects. Set
+ * on a reader with setProjection(..). Fields that are not projected are
+ * skipped on the wire, without being decoded, and are left unset on the
+ * objects read. Required fields are only required if projected.
+ * 
+ * Fields are selected by paths of field names from the root object, such as
+ * "positioning.position.x". A path ending at a field selects everything
+ * below it, while the objects along a path only get the fields that continue
+ * the path. Paths pass through lists, arrays and maps to the objects they
+ * hold, and are matched by name, so they apply to sub classes of the
+ * declared field types as well.
+ * 
+ * Projection objects must not be modified while a reader is using them, but
+ * may be shared by any number of readers.
+ */
+public final class Projection {
+
+	private static final Projection ALL = new Projection();
+
+	private final HashMap<String, Projection> m_fields;
+
+	/**
+	 * Creates a new Projection without any fields selected.
+	 */
+	public Projection() {
+		m_fields = new HashMap<String, Projection>();
+	}
+
+	/**
+	 * Creates a new Projection from a number of field paths.
+	 * 
+	 * @param paths
+	 *            The field paths to select, with field names separated by '.'
+	 * 
+	 * @return The new Projection
+	 */
+	public static Projection of(final String... paths) {
+		final Projection out = new Projection();
+		for (final String path : paths)
+			out.add(path);
+		return out;
+	}
+
+	/**
+	 * Creates a new Projection selecting a number of fields of the root
+	 * object, and everything below them.
+	 * 
+	 * @param fields
+	 *            The fields to select
+	 * 
+	 * @return The new Projection
+	 */
+	public static Projection of(final Field... fields) {
+		final Projection out = new Projection();
+		for (final Field field : fields)
+			out.add(field);
+		return out;
+	}
+
+	/**
+	 * Selects a field path.
+	 * 
+	 * @param path
+	 *            The field path to select, with field names separated by '.'
+	 * 
+	 * @return This Projection
+	 */
+	public Projection add(final String path) {
+		return add(path.split("\\."));
+	}
+
+	/**
+	 * Selects a field path.
+	 * 
+	 * @param path
+	 *            The fields of the path, starting at a field of the root object
+	 * 
+	 * @return This Projection
+	 */
+	public Projection add(final Field... path) {
+		final String[] names = new String[path.length];
+		for (int i = 0; i < path.length; i++)
+			names[i] = path[i].name();
+		return add(names);
+	}
+
+	/**
+	 * Checks if a field is projected.
+	 * 
+	 * @param field
+	 *            The field to check
+	 * 
+	 * @return If the field is projected
+	 */
+	public boolean includes(final Field field) {
+		return m_fields.containsKey(field.name());
+	}
+
+	/**
+	 * Gets the projection of the object(s) held by a field.
+	 * 
+	 * @param field
+	 *            The field to get the projection of
+	 * 
+	 * @return The projection of the field, or null if all of it is projected
+	 *         or if it is not projected at all (see includes(field))
+	 */
+	public Projection get(final Field field) {
+		final Projection out = m_fields.get(field.name());
+		return out != ALL ? out : null;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		toString(sb, "");
+		return sb.length() > 0 ? sb.substring(1) : "";
+	}
+
+	/**
+	 * Internal method for selecting a field path.
+	 */
+	private Projection add(final String[] names) {
+		if (names.length == 0)
+			throw new IllegalArgumentException("Empty field path");
+		Projection node = this;
+		for (int i = 0; i < names.length && node != ALL; i++) {
+			final Projection child = node.m_fields.get(names[i]);
+			if (i == names.length - 1) {
+				node.m_fields.put(names[i], ALL);
+			} else if (child == null) {
+				final Projection next = new Projection();
+				node.m_fields.put(names[i], next);
+				node = next;
+			} else {
+				node = child;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Internal method for listing the selected paths, comma separated.
+	 */
+	private void toString(final StringBuilder sb, final String prefix) {
+		for (final Map.Entry<String, Projection> e : m_fields.entrySet()) {
+			if (e.getValue() == ALL)
+				sb.append(',').append(prefix).append(e.getKey());
+			else
+				e.getValue().toString(sb, prefix + e.getKey() + ".");
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+package se.culvertsoft.mgen.javapack.serialization;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import se.culvertsoft.mgen.api.model.Field;
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryEntry;
+import se.culvertsoft.mgen.javapack.classes.MGenBase;
+import se.culvertsoft.mgen.javapack.metadata.FieldVisitSelection;
+import se.culvertsoft.mgen.javapack.util.DoubleList;
+import se.culvertsoft.mgen.javapack.util.IntList;
+import se.culvertsoft.mgen.javapack.util.IntObjMap;
+import se.culvertsoft.mgen.javapack.util.LongList;
+import se.culvertsoft.mgen.javapack.util.LongObjMap;
+
+/**
+ * Internal helper class for readers reading into existing objects (see
+ * Reader.readObject(T reuse)). Before such a read, the object graph of the
+ * object to reuse is collected into per-class free lists. While reading,
+ * readers take objects and collections from the free lists instead of
+ * allocating new ones, whenever the classes match. Whatever is not taken is
+ * dropped when the read completes.
+ */
+final class ReusePool {
+
+	private final HashMap<Class<?>, ArrayList<Object>> m_free = new HashMap<Class<?>, ArrayList<Object>>();
+	private final IdentityHashMap<Object, Object> m_seen = new IdentityHashMap<Object, Object>();
+	private final Collector m_collector = new Collector();
+	private int m_nFree = 0;
+
+	/**
+	 * Collects an object, and all objects and collections reachable from its
+	 * fields, into the free lists. The root object is collected last, so that
+	 * it is the first one to be taken for its class.
+	 *
+	 * @param root
+	 *            The object to collect
+	 *
+	 * @throws IOException
+	 *             The FieldVisitor interface is specified as throwing
+	 *             IOExceptions, so this method must also be declared as
+	 *             throwing.
+	 */
+	void collect(final MGenBase root) throws IOException {
+		try {
+			collectValue(root);
+		} finally {
+			m_seen.clear();
+		}
+	}
+
+	/**
+	 * Takes an object of the class represented by a class registry entry from
+	 * the free lists, and resets it to its default constructed state.
+	 *
+	 * @param entry
+	 *            The class registry entry of the object to take
+	 *
+	 * @return The reset object, or null if there was none
+	 */
+	MGenBase takeObject(final ClassRegistryEntry entry) {
+		final Object o = take(entry.cls());
+		return o != null ? ((MGenBase) o)._reset() : null;
+	}
+
+	/**
+	 * Takes a collection of exactly the provided class from the free lists,
+	 * and clears it.
+	 *
+	 * @param cls
+	 *            The class of the collection
+	 *
+	 * @return The cleared collection, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T takeCollection(final Class<T> cls) {
+		final Object o = take(cls);
+		if (o instanceof Collection)
+			((Collection<?>) o).clear();
+		else if (o instanceof Map)
+			((Map<?, ?>) o).clear();
+		return (T) o;
+	}
+
+	/**
+	 * Drops everything left in the free lists.
+	 */
+	void clear() {
+		if (m_nFree > 0) {
+			for (final ArrayList<Object> free : m_free.values())
+				free.clear();
+			m_nFree = 0;
+		}
+	}
+
+	private Object take(final Class<?> cls) {
+		if (m_nFree == 0)
+			return null;
+		final ArrayList<Object> free = m_free.get(cls);
+		if (free == null || free.isEmpty())
+			return null;
+		m_nFree--;
+		return free.remove(free.size() - 1);
+	}
+
+	private void add(final Object o) {
+		ArrayList<Object> free = m_free.get(o.getClass());
+		if (free == null) {
+			free = new ArrayList<Object>();
+			m_free.put(o.getClass(), free);
+		}
+		free.add(o);
+		m_nFree++;
+	}
+
+	private void collectValue(final Object o) throws IOException {
+
+		if (o == null || m_seen.put(o, o) != null)
+			return;
+
+		if (o instanceof MGenBase) {
+			((MGenBase) o)._accept(m_collector, FieldVisitSelection.ALL_SET);
+			add(o);
+		} else if (o instanceof IntList || o instanceof LongList
+				|| o instanceof DoubleList) {
+			add(o);
+		} else if (o instanceof List) {
+			final List<?> list = (List<?>) o;
+			for (int i = 0; i < list.size(); i++)
+				collectValue(list.get(i));
+			add(o);
+		} else if (o instanceof IntObjMap) {
+			final IntObjMap<?> map = (IntObjMap<?>) o;
+			for (int i = map.firstSlot(); i >= 0; i = map.nextSlot(i))
+				collectValue(map.valueAt(i));
+			add(o);
+		} else if (o instanceof LongObjMap) {
+			final LongObjMap<?> map = (LongObjMap<?>) o;
+			for (int i = map.firstSlot(); i >= 0; i = map.nextSlot(i))
+				collectValue(map.valueAt(i));
+			add(o);
+		} else if (o instanceof Map) {
+			for (final Object v : ((Map<?, ?>) o).values())
+				collectValue(v);
+			add(o);
+		} else if (o instanceof Object[]) {
+			for (final Object v : (Object[]) o)
+				collectValue(v);
+		}
+
+	}
+
+	/**
+	 * Visits the fields of objects being collected, collecting the values of
+	 * the fields that may hold objects or collections.
+	 */
+	private final class Collector implements FieldVisitor {
+
+		@Override
+		public void beginVisit(final MGenBase object, final int nFields) {
+		}
+
+		@Override
+		public void visit(final boolean b, final Field field) {
+		}
+
+		@Override
+		public void visit(final byte b, final Field field) {
+		}
+
+		@Override
+		public void visit(final short s, final Field field) {
+		}
+
+		@Override
+		public void visit(final int i, final Field field) {
+		}
+
+		@Override
+		public void visit(final long l, final Field field) {
+		}
+
+		@Override
+		public void visit(final float f, final Field field) {
+		}
+
+		@Override
+		public void visit(final double d, final Field field) {
+		}
+
+		@Override
+		public void visit(final String s, final Field field) {
+		}
+
+		@Override
+		public void visit(final Enum<?> e, final Field field) {
+		}
+
+		@Override
+		public void visit(final Object o, final Field field) throws IOException {
+			collectValue(o);
+		}
+
+		@Override
+		public void endVisit() {
+		}
+
+	}
+
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase;
+import se.culvertsoft.mgen.javapack.util.Decimal;
 
 /**
  * Base class for all MGen wire format writers that use text formats, such as
@@ -24,6 +25,7 @@ public abstract class TextFormatWriter extends BuiltInWriter {
 	public static int FLUSH_SIZE = STRING_ENCODE_BUFFER_SIZE / 4;
 
 	private final StringBuilder m_textBuffer;
+	private final byte[] m_decimalBuffer = new byte[Decimal.MAX_FORMATTED_LENGTH];
 	private OutputStream m_stream;
 	private boolean m_writeToStream;
 
@@ -175,7 +177,7 @@ public abstract class TextFormatWriter extends BuiltInWriter {
 	 *             output stream
 	 */
 	protected void write(final float f) throws IOException {
-		m_textBuffer.append(f);
+		Decimal.append(f, m_textBuffer, m_decimalBuffer);
 		checkflush();
 	}
 
@@ -190,7 +192,7 @@ public abstract class TextFormatWriter extends BuiltInWriter {
 	 *             output stream
 	 */
 	protected void write(final double d) throws IOException {
-		m_textBuffer.append(d);
+		Decimal.append(d, m_textBuffer, m_decimalBuffer);
 		checkflush();
 	}
 
@@ -244,14 +246,17 @@ public abstract class TextFormatWriter extends BuiltInWriter {
 	 * reached the flush limit and needs to be flushed to the underlying data
 	 * output stream. Only does something if this TextFormatWriter is actually
 	 * configured to write to the underlying data output stream, and not
-	 * directly to a string.
+	 * directly to a string. Never flushes between the two halves of a
+	 * surrogate pair, which must be encoded together.
 	 * 
 	 * @throws IOException
 	 *             If an IOException occurs when writing to the the underlying
 	 *             output stream
 	 */
 	private void checkflush() throws IOException {
-		if (m_writeToStream && m_textBuffer.length() >= FLUSH_SIZE)
+		final int n = m_textBuffer.length();
+		if (m_writeToStream && n >= FLUSH_SIZE
+				&& !Character.isHighSurrogate(m_textBuffer.charAt(n - 1)))
 			flush();
 	}
 
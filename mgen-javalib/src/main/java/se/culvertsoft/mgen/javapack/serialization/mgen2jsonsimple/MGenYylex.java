@@ -5,6 +5,8 @@ package se.culvertsoft.mgen.javapack.serialization.mgen2jsonsimple;
 import org.json.simple.parser.ParseException;
 import org.json.simple.parser.Yytoken;
 
+import se.culvertsoft.mgen.javapack.util.Decimal;
+
 /**
  * Copied from JSON-simple, a custom variant of json lexer to support MGen's
  * ability to read/write consecutive JSON objects to the same stream.
@@ -189,6 +191,9 @@ class MGenYylex {
 	 */
 	private char zzBuffer[] = new char[ZZ_BUFFERSIZE];
 
+	/** ASCII copy of a matched number, for parsing */
+	private byte numberBuffer[] = new byte[32];
+
 	/** the textposition at the last accepting state */
 	private int zzMarkedPos;
 
@@ -407,6 +412,19 @@ class MGenYylex {
 		return zzMarkedPos - zzStartRead;
 	}
 
+	/**
+	 * Parses the matched text as a floating point number, without creating a
+	 * String of it.
+	 */
+	private double yydouble() {
+		final int n = yylength();
+		if (numberBuffer.length < n)
+			numberBuffer = new byte[n];
+		for (int i = 0; i < n; i++)
+			numberBuffer[i] = (byte) zzBuffer[zzStartRead + i];
+		return Decimal.parseDouble(numberBuffer, 0, n);
+	}
+
 	/**
 	 * Reports an error that occured while scanning.
 	 * 
@@ -572,7 +590,7 @@ class MGenYylex {
 			case 32:
 				break;
 			case 21: {
-				Double val = Double.valueOf(yytext());
+				Double val = Double.valueOf(yydouble());
 				return new Yytoken(Yytoken.TYPE_VALUE, val);
 			}
 			case 33:
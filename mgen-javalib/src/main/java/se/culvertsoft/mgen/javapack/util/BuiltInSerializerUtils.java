@@ -8,6 +8,7 @@ import se.culvertsoft.mgen.javapack.classes.MGenBase;
 import se.culvertsoft.mgen.javapack.exceptions.MissingRequiredFieldsException;
 import se.culvertsoft.mgen.javapack.exceptions.UnexpectedTypeException;
 import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth;
+import se.culvertsoft.mgen.javapack.serialization.Projection;
 
 /**
  * Class holding utility methods used by MGen's built in readers and writers.
@@ -112,4 +113,37 @@ public class BuiltInSerializerUtils {
 		ensureNoMissingReqFields(object, FieldSetDepth.SHALLOW);
 	}
 
+	/**
+	 * Checks that the MGen object provided has no missing required fields
+	 * among the fields of a Projection, and if it does, throws a
+	 * MissingRequiredFieldsException. The test is performed SHALLOW.
+	 * 
+	 * @param object
+	 *            The MGen object to test
+	 * 
+	 * @param projection
+	 *            The fields that were read, or null if all fields were read
+	 */
+	public static void ensureNoMissingReqFields(
+			final MGenBase object,
+			final Projection projection) {
+
+		if (projection == null) {
+			ensureNoMissingReqFields(object);
+		} else if (object != null && !object._validate(FieldSetDepth.SHALLOW)) {
+
+			final ArrayList<Field> missingReqFields = new ArrayList<Field>();
+
+			for (final Field f : object._fields()) {
+				if (f.isRequired() && projection.includes(f)
+						&& !object._isFieldSet(f, FieldSetDepth.SHALLOW)) {
+					missingReqFields.add(f);
+				}
+			}
+
+			if (!missingReqFields.isEmpty())
+				throwMissingReqFields(missingReqFields, object);
+		}
+	}
+
 }
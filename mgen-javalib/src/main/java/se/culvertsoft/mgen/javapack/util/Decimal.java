@@ -0,0 +1,813 @@
+package se.culvertsoft.mgen.javapack.util;
+
+import java.math.BigInteger;
+
+/**
+ * Utility class for converting float32 and float64 values to and from
+ * decimal text in the built-in MGen text formats. Not intended to be used
+ * except from MGen Readers and Writers.
+ *
+ * Formatting writes the shortest decimal that reads back as exactly the same
+ * value, choosing the one closest to the value if there are several (the
+ * Schubfach algorithm by Raffaello Giulietti). The layout follows
+ * Double.toString and Float.toString: plain notation with at least one
+ * fraction digit for magnitudes in [10^-3, 10^7), and otherwise computerized
+ * scientific notation such as 1.0E-5.
+ *
+ * Parsing is correctly rounded. Numbers with at most 19 significant digits
+ * are parsed without allocating (by exact arithmetic where possible, and
+ * otherwise with the Eisel-Lemire algorithm). The rare remaining cases fall
+ * back to Double.parseDouble and Float.parseFloat.
+ */
+public final class Decimal {
+
+	/**
+	 * The maximum number of bytes written when formatting a value.
+	 */
+	public static final int MAX_FORMATTED_LENGTH = 26;
+
+	private Decimal() {
+	}
+
+	/************************************************
+	 *
+	 *
+	 * FORMATTING
+	 *
+	 ***********************************************/
+
+	/**
+	 * Writes the shortest decimal representation of a float64 into a byte
+	 * array as ASCII. The array must have room for MAX_FORMATTED_LENGTH bytes
+	 * from the offset.
+	 *
+	 * @param v
+	 *            The value to format
+	 *
+	 * @param out
+	 *            The array to write to
+	 *
+	 * @param offset
+	 *            The position in the array to start writing at
+	 *
+	 * @return The position in the array after the last written byte
+	 */
+	public static int format(final double v, final byte[] out, int offset) {
+
+		final long bits = Double.doubleToRawLongBits(v);
+		final long t = bits & D_T_MASK;
+		final int bq = (int) (bits >>> (D_P - 1)) & 0x7FF;
+
+		if (bq == 0x7FF)
+			return writeAscii(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", out, offset);
+
+		if (bits < 0)
+			out[offset++] = '-';
+
+		if (bq != 0) {
+			final int mq = -D_Q_MIN + 1 - bq;
+			final long c = D_C_MIN | t;
+			if (0 < mq && mq < D_P) {
+				final long f = c >> mq;
+				if (f << mq == c)
+					return writeDecimal(f, 0, out, offset);
+			}
+			return formatDouble(-mq, c, 0, out, offset);
+		}
+
+		if (t != 0) {
+			return t < D_C_TINY ? formatDouble(D_Q_MIN, 10 * t, -1, out, offset) : formatDouble(
+					D_Q_MIN, t, 0, out, offset);
+		}
+
+		return writeDecimal(0, 0, out, offset);
+	}
+
+	/**
+	 * Writes the shortest decimal representation of a float32 into a byte
+	 * array as ASCII. The array must have room for MAX_FORMATTED_LENGTH bytes
+	 * from the offset.
+	 *
+	 * @param v
+	 *            The value to format
+	 *
+	 * @param out
+	 *            The array to write to
+	 *
+	 * @param offset
+	 *            The position in the array to start writing at
+	 *
+	 * @return The position in the array after the last written byte
+	 */
+	public static int format(final float v, final byte[] out, int offset) {
+
+		final int bits = Float.floatToRawIntBits(v);
+		final int t = bits & F_T_MASK;
+		final int bq = (bits >>> (F_P - 1)) & 0xFF;
+
+		if (bq == 0xFF)
+			return writeAscii(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", out, offset);
+
+		if (bits < 0)
+			out[offset++] = '-';
+
+		if (bq != 0) {
+			final int mq = -F_Q_MIN + 1 - bq;
+			final int c = F_C_MIN | t;
+			if (0 < mq && mq < F_P) {
+				final int f = c >> mq;
+				if (f << mq == c)
+					return writeDecimal(f, 0, out, offset);
+			}
+			return formatFloat(-mq, c, 0, out, offset);
+		}
+
+		if (t != 0) {
+			return t < F_C_TINY ? formatFloat(F_Q_MIN, 10 * t, -1, out, offset) : formatFloat(
+					F_Q_MIN, t, 0, out, offset);
+		}
+
+		return writeDecimal(0, 0, out, offset);
+	}
+
+	/**
+	 * Appends the shortest decimal representation of a float64 to a
+	 * StringBuilder.
+	 *
+	 * @param v
+	 *            The value to format
+	 *
+	 * @param sb
+	 *            The StringBuilder to append to
+	 *
+	 * @param scratch
+	 *            A scratch array of at least MAX_FORMATTED_LENGTH bytes
+	 *
+	 * @return The StringBuilder
+	 */
+	public static StringBuilder append(
+			final double v,
+			final StringBuilder sb,
+			final byte[] scratch) {
+		final int n = format(v, scratch, 0);
+		for (int i = 0; i < n; i++)
+			sb.append((char) scratch[i]);
+		return sb;
+	}
+
+	/**
+	 * Appends the shortest decimal representation of a float32 to a
+	 * StringBuilder.
+	 *
+	 * @param v
+	 *            The value to format
+	 *
+	 * @param sb
+	 *            The StringBuilder to append to
+	 *
+	 * @param scratch
+	 *            A scratch array of at least MAX_FORMATTED_LENGTH bytes
+	 *
+	 * @return The StringBuilder
+	 */
+	public static StringBuilder append(
+			final float v,
+			final StringBuilder sb,
+			final byte[] scratch) {
+		final int n = format(v, scratch, 0);
+		for (int i = 0; i < n; i++)
+			sb.append((char) scratch[i]);
+		return sb;
+	}
+
+	/**
+	 * Converts a float64 to its shortest decimal representation.
+	 *
+	 * @param v
+	 *            The value to format
+	 *
+	 * @return The formatted value
+	 */
+	public static String toString(final double v) {
+		final byte[] out = new byte[MAX_FORMATTED_LENGTH];
+		return new String(out, 0, format(v, out, 0), ASCII);
+	}
+
+	/**
+	 * Converts a float32 to its shortest decimal representation.
+	 *
+	 * @param v
+	 *            The value to format
+	 *
+	 * @return The formatted value
+	 */
+	public static String toString(final float v) {
+		final byte[] out = new byte[MAX_FORMATTED_LENGTH];
+		return new String(out, 0, format(v, out, 0), ASCII);
+	}
+
+	/************************************************
+	 *
+	 *
+	 * PARSING
+	 *
+	 ***********************************************/
+
+	/**
+	 * Parses a JSON number as a float64, with correct rounding.
+	 *
+	 * @param buf
+	 *            The array holding the number as ASCII
+	 *
+	 * @param offset
+	 *            The position of the first character of the number
+	 *
+	 * @param length
+	 *            The number of characters of the number
+	 *
+	 * @return The parsed value
+	 *
+	 * @throws NumberFormatException
+	 *             If the characters are not a valid number
+	 */
+	public static double parseDouble(final byte[] buf, final int offset, final int length) {
+		return Double.longBitsToDouble(parse(buf, offset, length, false));
+	}
+
+	/**
+	 * Parses a JSON number as a float32, with correct rounding (not by
+	 * rounding a parsed float64, which may round twice).
+	 *
+	 * @param buf
+	 *            The array holding the number as ASCII
+	 *
+	 * @param offset
+	 *            The position of the first character of the number
+	 *
+	 * @param length
+	 *            The number of characters of the number
+	 *
+	 * @return The parsed value
+	 *
+	 * @throws NumberFormatException
+	 *             If the characters are not a valid number
+	 */
+	public static float parseFloat(final byte[] buf, final int offset, final int length) {
+		return Float.intBitsToFloat((int) parse(buf, offset, length, true));
+	}
+
+	/**
+	 * Parses a JSON number as an int64. Numbers with fractions or exponents
+	 * are truncated towards zero.
+	 *
+	 * @param buf
+	 *            The array holding the number as ASCII
+	 *
+	 * @param offset
+	 *            The position of the first character of the number
+	 *
+	 * @param length
+	 *            The number of characters of the number
+	 *
+	 * @return The parsed value
+	 *
+	 * @throws NumberFormatException
+	 *             If the characters are not a valid number, or if an integer
+	 *             number is out of range for an int64
+	 */
+	public static long parseLong(final byte[] buf, final int offset, final int length) {
+		final int end = offset + length;
+		final boolean negative = length > 0 && buf[offset] == '-';
+		int i = negative ? offset + 1 : offset;
+		if (i == end)
+			throw numberFormatException(buf, offset, length);
+		// Accumulated negatively, as the range of negative longs is larger
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long out = 0;
+		for (; i < end; i++) {
+			final int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9)
+				return (long) parseDouble(buf, offset, length);
+			if (out < limit / 10 || out * 10 < limit + digit)
+				throw numberFormatException(buf, offset, length);
+			out = out * 10 - digit;
+		}
+		return negative ? out : -out;
+	}
+
+	/************************************************
+	 *
+	 *
+	 * PRIVATE METHODS
+	 *
+	 ***********************************************/
+
+	private static final java.nio.charset.Charset ASCII = java.nio.charset.Charset
+			.forName("US-ASCII");
+
+	private static final int D_P = 53;
+	private static final int D_Q_MIN = -1074;
+	private static final long D_C_MIN = 1L << (D_P - 1);
+	private static final long D_T_MASK = D_C_MIN - 1;
+	private static final long D_C_TINY = 3;
+
+	private static final int F_P = 24;
+	private static final int F_Q_MIN = -149;
+	private static final int F_C_MIN = 1 << (F_P - 1);
+	private static final int F_T_MASK = F_C_MIN - 1;
+	private static final int F_C_TINY = 8;
+
+	private static final int K_MIN = -324;
+	private static final int K_MAX = 292;
+
+	private static final long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+	private static final long MASK_32 = 0xFFFFFFFFL;
+
+	private static final int POW5_MIN_EXP10 = -342;
+	private static final int POW5_MAX_EXP10 = 308;
+
+	private static final long FAILED = -1L;
+
+	/**
+	 * The 126-bit approximations g of 10^-k used by the Schubfach algorithm,
+	 * g = floor(10^-k * 2^-r) + 1 with r = floor(-k * log2(10)) - 125, for k
+	 * in [K_MIN, K_MAX]. Stored as pairs of the upper and lower 63 bits.
+	 */
+	private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+	/**
+	 * The 128-bit truncated mantissas of 10^q used by the Eisel-Lemire
+	 * algorithm, for q in [POW5_MIN_EXP10, POW5_MAX_EXP10]. Stored as pairs of
+	 * the upper and lower 64 bits.
+	 */
+	private static final long[] POW5 = new long[(POW5_MAX_EXP10 - POW5_MIN_EXP10 + 1) * 2];
+
+	private static final double[] DOUBLE_POW10 = new double[23];
+	private static final float[] FLOAT_POW10 = new float[11];
+	private static final long[] LONG_POW10 = new long[19];
+
+	static {
+
+		final BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			final int e = -k;
+			final int r = flog2pow10(e) - 125;
+			final BigInteger g;
+			if (e >= 0) {
+				final BigInteger pow = BigInteger.TEN.pow(e);
+				g = (r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r)).add(BigInteger.ONE);
+			} else {
+				g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(-e)).add(BigInteger.ONE);
+			}
+			G[(k - K_MIN) * 2] = g.shiftRight(63).longValue();
+			G[(k - K_MIN) * 2 + 1] = g.and(mask63).longValue();
+		}
+
+		for (int q = POW5_MIN_EXP10; q <= POW5_MAX_EXP10; q++) {
+			BigInteger c;
+			if (q >= 0) {
+				c = BigInteger.valueOf(5).pow(q);
+				final int shift = c.bitLength() - 128;
+				c = shift > 0 ? c.shiftRight(shift) : c.shiftLeft(-shift);
+			} else {
+				final BigInteger pow5 = BigInteger.valueOf(5).pow(-q);
+				final int z = pow5.bitLength();
+				final int b = q >= -27 ? z + 127 : 2 * z + 128;
+				c = BigInteger.ONE.shiftLeft(b).divide(pow5).add(BigInteger.ONE);
+				if (c.bitLength() > 128)
+					c = c.shiftRight(c.bitLength() - 128);
+			}
+			POW5[(q - POW5_MIN_EXP10) * 2] = c.shiftRight(64).longValue();
+			POW5[(q - POW5_MIN_EXP10) * 2 + 1] = c.longValue();
+		}
+
+		double d = 1.0;
+		for (int i = 0; i < DOUBLE_POW10.length; i++, d *= 10)
+			DOUBLE_POW10[i] = d;
+		float f = 1.0f;
+		for (int i = 0; i < FLOAT_POW10.length; i++, f *= 10)
+			FLOAT_POW10[i] = f;
+		long l = 1;
+		for (int i = 0; i < LONG_POW10.length; i++, l *= 10)
+			LONG_POW10[i] = l;
+
+	}
+
+	/**
+	 * Internal method implementing the Schubfach algorithm for float64
+	 * values, computing the decimal to write for the value c * 2^q.
+	 */
+	private static int formatDouble(
+			final int q,
+			final long c,
+			final int dk,
+			final byte[] out,
+			final int offset) {
+
+		final int parity = (int) c & 1;
+		final long cb = c << 2;
+		final long cbr = cb + 2;
+		final long cbl;
+		final int k;
+		if (c != D_C_MIN || q == D_Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		final int h = q + flog2pow10(-k) + 2;
+
+		final long g1 = G[(k - K_MIN) * 2];
+		final long g0 = G[(k - K_MIN) * 2 + 1];
+
+		final long vb = rop(g1, g0, cb << h);
+		final long vbl = rop(g1, g0, cbl << h);
+		final long vbr = rop(g1, g0, cbr << h);
+
+		final long s = vb >> 2;
+		if (s >= 100) {
+			final long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+			final long tp10 = sp10 + 10;
+			final boolean upin = vbl + parity <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + parity <= vbr;
+			if (upin != wpin)
+				return writeDecimal(upin ? sp10 : tp10, k, out, offset);
+		}
+
+		final long t = s + 1;
+		final boolean uin = vbl + parity <= s << 2;
+		final boolean win = (t << 2) + parity <= vbr;
+		if (uin != win)
+			return writeDecimal(uin ? s : t, k + dk, out, offset);
+
+		final long cmp = vb - ((s + t) << 1);
+		return writeDecimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, out, offset);
+	}
+
+	/**
+	 * Internal method implementing the Schubfach algorithm for float32
+	 * values, computing the decimal to write for the value c * 2^q.
+	 */
+	private static int formatFloat(
+			final int q,
+			final int c,
+			final int dk,
+			final byte[] out,
+			final int offset) {
+
+		final int parity = c & 1;
+		final long cb = ((long) c) << 2;
+		final long cbr = cb + 2;
+		final long cbl;
+		final int k;
+		if (c != F_C_MIN || q == F_Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		final int h = q + flog2pow10(-k) + 33;
+
+		final long g = G[(k - K_MIN) * 2] + 1;
+
+		final int vb = rop(g, cb << h);
+		final int vbl = rop(g, cbl << h);
+		final int vbr = rop(g, cbr << h);
+
+		final int s = vb >> 2;
+		if (s >= 100) {
+			final int sp10 = 10 * (int) (s * 1717986919L >>> 34);
+			final int tp10 = sp10 + 10;
+			final boolean upin = vbl + parity <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + parity <= vbr;
+			if (upin != wpin)
+				return writeDecimal(upin ? sp10 : tp10, k, out, offset);
+		}
+
+		final int t = s + 1;
+		final boolean uin = vbl + parity <= s << 2;
+		final boolean win = (t << 2) + parity <= vbr;
+		if (uin != win)
+			return writeDecimal(uin ? s : t, k + dk, out, offset);
+
+		final int cmp = vb - ((s + t) << 1);
+		return writeDecimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, out, offset);
+	}
+
+	private static long rop(final long g1, final long g0, final long cp) {
+		final long x1 = multiplyHigh(g0, cp);
+		final long y0 = g1 * cp;
+		final long y1 = multiplyHigh(g1, cp);
+		final long z = (y0 >>> 1) + x1;
+		final long vbp = y1 + (z >>> 63);
+		return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+	}
+
+	private static int rop(final long g, final long cp) {
+		final long x1 = multiplyHigh(g, cp);
+		final long vbp = x1 >>> 31;
+		return (int) (vbp | ((x1 & MASK_32) + MASK_32) >>> 32);
+	}
+
+	/**
+	 * Internal method for writing the decimal f * 10^e in the layout of
+	 * Double.toString.
+	 */
+	private static int writeDecimal(long f, int e, final byte[] out, int offset) {
+
+		if (f == 0) {
+			out[offset++] = '0';
+			out[offset++] = '.';
+			out[offset++] = '0';
+			return offset;
+		}
+
+		while (f % 10 == 0) {
+			f /= 10;
+			e++;
+		}
+
+		int n = 1;
+		while (n < 19 && f >= LONG_POW10[n])
+			n++;
+
+		// Write the digits at the end of the longest possible output, and then
+		// move them into place
+		final int digits = offset + MAX_FORMATTED_LENGTH - n - 1;
+		for (int i = digits + n - 1; i >= digits; i--) {
+			out[i] = (byte) ('0' + f % 10);
+			f /= 10;
+		}
+
+		final int dexp = e + n - 1;
+
+		if (dexp >= 0 && dexp < 7) {
+			final int nInt = dexp + 1;
+			for (int i = 0; i < nInt; i++)
+				out[offset++] = i < n ? out[digits + i] : (byte) '0';
+			out[offset++] = '.';
+			if (n > nInt) {
+				for (int i = nInt; i < n; i++)
+					out[offset++] = out[digits + i];
+			} else {
+				out[offset++] = '0';
+			}
+		} else if (dexp < 0 && dexp >= -3) {
+			out[offset++] = '0';
+			out[offset++] = '.';
+			for (int i = -1; i > dexp; i--)
+				out[offset++] = '0';
+			for (int i = 0; i < n; i++)
+				out[offset++] = out[digits + i];
+		} else {
+			out[offset++] = out[digits];
+			out[offset++] = '.';
+			if (n > 1) {
+				for (int i = 1; i < n; i++)
+					out[offset++] = out[digits + i];
+			} else {
+				out[offset++] = '0';
+			}
+			out[offset++] = 'E';
+			int x = dexp;
+			if (x < 0) {
+				out[offset++] = '-';
+				x = -x;
+			}
+			if (x >= 100)
+				out[offset++] = (byte) ('0' + x / 100);
+			if (x >= 10)
+				out[offset++] = (byte) ('0' + x / 10 % 10);
+			out[offset++] = (byte) ('0' + x % 10);
+		}
+
+		return offset;
+	}
+
+	private static int writeAscii(final String s, final byte[] out, int offset) {
+		for (int i = 0; i < s.length(); i++)
+			out[offset++] = (byte) s.charAt(i);
+		return offset;
+	}
+
+	/**
+	 * Internal method for parsing a JSON number as a float32 or float64.
+	 *
+	 * @return The bits of the parsed value, as of Double.doubleToLongBits or
+	 *         Float.floatToIntBits
+	 */
+	private static long parse(
+			final byte[] buf,
+			final int offset,
+			final int length,
+			final boolean float32) {
+
+		final int end = offset + length;
+		int i = offset;
+
+		final boolean negative = i < end && buf[i] == '-';
+		if (negative)
+			i++;
+
+		long man = 0;
+		int nDigits = 0;
+		int exp10 = 0;
+		boolean anyDigits = false;
+
+		for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++) {
+			anyDigits = true;
+			if (man == 0 && buf[i] == '0')
+				continue;
+			if (nDigits++ == 19)
+				return parseFallback(buf, offset, length, float32);
+			man = man * 10 + (buf[i] - '0');
+		}
+
+		if (i < end && buf[i] == '.') {
+			i++;
+			for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++) {
+				anyDigits = true;
+				exp10--;
+				if (man == 0 && buf[i] == '0')
+					continue;
+				if (nDigits++ == 19)
+					return parseFallback(buf, offset, length, float32);
+				man = man * 10 + (buf[i] - '0');
+			}
+		}
+
+		if (!anyDigits)
+			throw numberFormatException(buf, offset, length);
+
+		if (i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+			i++;
+			boolean negExp = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+'))
+				negExp = buf[i++] == '-';
+			if (i == end)
+				throw numberFormatException(buf, offset, length);
+			int exp = 0;
+			for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++) {
+				if (exp < 100000)
+					exp = exp * 10 + (buf[i] - '0');
+			}
+			exp10 += negExp ? -exp : exp;
+		}
+
+		if (i != end)
+			throw numberFormatException(buf, offset, length);
+
+		// From here on man is unsigned: 19 digits may not fit in a signed long
+
+		if (float32) {
+
+			final float f;
+			if (man == 0) {
+				f = 0.0f;
+			} else if (man > 0 && man < (1L << 24) && exp10 >= -10 && exp10 <= 10) {
+				f = exp10 < 0 ? man / FLOAT_POW10[-exp10] : man * FLOAT_POW10[exp10];
+			} else {
+				// Rounding to float64 first only goes wrong if it lands
+				// exactly halfway between two float32 values, or in the
+				// float32 subnormal range, where more bits are dropped.
+				final long bits = eiselLemire(man, exp10);
+				if (bits == FAILED)
+					return parseFallback(buf, offset, length, float32);
+				f = (float) Double.longBitsToDouble(bits);
+				if ((bits & 0x1FFFFFFFL) == 0x10000000L || f < Float.MIN_NORMAL
+						|| Float.isInfinite(f))
+					return parseFallback(buf, offset, length, float32);
+			}
+			return Float.floatToRawIntBits(negative ? -f : f) & MASK_32;
+
+		} else {
+
+			final double d;
+			if (man == 0) {
+				d = 0.0;
+			} else if (man > 0 && man < (1L << 53) && exp10 >= -22 && exp10 <= 22) {
+				d = exp10 < 0 ? man / DOUBLE_POW10[-exp10] : man * DOUBLE_POW10[exp10];
+			} else {
+				final long bits = eiselLemire(man, exp10);
+				if (bits == FAILED)
+					return parseFallback(buf, offset, length, float32);
+				d = Double.longBitsToDouble(bits);
+			}
+			return Double.doubleToRawLongBits(negative ? -d : d);
+
+		}
+	}
+
+	/**
+	 * Internal method for parsing the numbers that parse() cannot parse
+	 * without allocating, through the Java standard library.
+	 */
+	private static long parseFallback(
+			final byte[] buf,
+			final int offset,
+			final int length,
+			final boolean float32) {
+		final String s = new String(buf, offset, length, ASCII);
+		return float32 ? Float.floatToRawIntBits(Float.parseFloat(s)) & MASK_32 : Double
+				.doubleToRawLongBits(Double.parseDouble(s));
+	}
+
+	/**
+	 * Internal method implementing the Eisel-Lemire algorithm, computing the
+	 * correctly rounded float64 closest to man * 10^exp10.
+	 *
+	 * @return The bits of the (positive) float64, or FAILED if the algorithm
+	 *         cannot decide the rounding or the result is not a normal float64
+	 */
+	private static long eiselLemire(long man, final int exp10) {
+
+		if (exp10 < POW5_MIN_EXP10 || exp10 > POW5_MAX_EXP10)
+			return FAILED;
+
+		final int clz = Long.numberOfLeadingZeros(man);
+		man <<= clz;
+		long retExp2 = ((217706L * exp10) >> 16) + 64 + 1023 - clz;
+
+		final long powHi = POW5[(exp10 - POW5_MIN_EXP10) * 2];
+		final long powLo = POW5[(exp10 - POW5_MIN_EXP10) * 2 + 1];
+
+		long xHi = unsignedMultiplyHigh(man, powHi);
+		long xLo = man * powHi;
+
+		if ((xHi & 0x1FF) == 0x1FF && unsignedLess(xLo + man, man)) {
+			final long yHi = unsignedMultiplyHigh(man, powLo);
+			final long yLo = man * powLo;
+			long mergedHi = xHi;
+			final long mergedLo = xLo + yHi;
+			if (unsignedLess(mergedLo, xLo))
+				mergedHi++;
+			if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && unsignedLess(yLo + man, man))
+				return FAILED;
+			xHi = mergedHi;
+			xLo = mergedLo;
+		}
+
+		final long msb = xHi >>> 63;
+		long retMantissa = xHi >>> (msb + 9);
+		retExp2 -= 1 ^ msb;
+
+		if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1)
+			return FAILED;
+
+		retMantissa += retMantissa & 1;
+		retMantissa >>>= 1;
+		if ((retMantissa >>> 53) > 0) {
+			retMantissa >>>= 1;
+			retExp2 += 1;
+		}
+
+		if (retExp2 - 1 < 0 || retExp2 - 1 >= 0x7FF - 1)
+			return FAILED;
+
+		return (retExp2 << 52) | (retMantissa & D_T_MASK);
+	}
+
+	private static int flog10pow2(final int e) {
+		return (int) ((e * 661971961083L) >> 41);
+	}
+
+	private static int flog10threeQuartersPow2(final int e) {
+		return (int) ((e * 661971961083L - 274743187321L) >> 41);
+	}
+
+	private static int flog2pow10(final int e) {
+		return (int) ((e * 913124641741L) >> 38);
+	}
+
+	private static long multiplyHigh(final long x, final long y) {
+		final long x1 = x >> 32;
+		final long x2 = x & MASK_32;
+		final long y1 = y >> 32;
+		final long y2 = y & MASK_32;
+		final long z2 = x2 * y2;
+		final long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & MASK_32;
+		final long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+	private static long unsignedMultiplyHigh(final long x, final long y) {
+		return multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+	}
+
+	private static boolean unsignedLess(final long a, final long b) {
+		return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+	}
+
+	private static NumberFormatException numberFormatException(
+			final byte[] buf,
+			final int offset,
+			final int length) {
+		return new NumberFormatException("Invalid number: "
+				+ new String(buf, offset, length, ASCII));
+	}
+
+}
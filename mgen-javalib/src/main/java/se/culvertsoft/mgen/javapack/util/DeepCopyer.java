@@ -4,6 +4,7 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import se.culvertsoft.mgen.api.model.ArrayType;
@@ -65,6 +66,28 @@ public class DeepCopyer {
 		return (HashMap<K, V>) deepCopyMap(a, (MapType) type);
 	}
 
+	public static IntList deepCopy(final IntList a, final Type type) {
+		return a != null ? new IntList(a) : null;
+	}
+
+	public static LongList deepCopy(final LongList a, final Type type) {
+		return a != null ? new LongList(a) : null;
+	}
+
+	public static DoubleList deepCopy(final DoubleList a, final Type type) {
+		return a != null ? new DoubleList(a) : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <V> IntObjMap<V> deepCopy(final IntObjMap<V> a, final Type type) {
+		return (IntObjMap<V>) deepCopyMap(a, (MapType) type);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <V> LongObjMap<V> deepCopy(final LongObjMap<V> a, final Type type) {
+		return (LongObjMap<V>) deepCopyMap(a, (MapType) type);
+	}
+
 	@SuppressWarnings("unchecked")
 	public static <T extends MGenBase> T deepCopy(final T a, final Type type) {
 		return (T) deepCopyMGenObject(a);
@@ -107,7 +130,6 @@ public class DeepCopyer {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	private static Object deepCopyObject(final Object o, final Type type) {
 		if (o == null)
 			return null;
@@ -125,9 +147,9 @@ public class DeepCopyer {
 		case ARRAY:
 			return deepCopyArray(o, (ArrayType) type);
 		case LIST:
-			return deepCopyList((ArrayList<Object>) o, (ListType) type);
+			return deepCopyList((List<?>) o, (ListType) type);
 		case MAP:
-			return deepCopyMap((HashMap<Object, Object>) o, (MapType) type);
+			return deepCopyMap((Map<?, ?>) o, (MapType) type);
 		case CLASS:
 			return deepCopyMGenObject((MGenBase) o);
 		default:
@@ -136,10 +158,22 @@ public class DeepCopyer {
 		}
 	}
 
-	private static Map<Object, Object> deepCopyMap(final HashMap<?, ?> src,
+	private static Map<?, ?> deepCopyMap(final Map<?, ?> src,
 			final MapType type) {
 		if (src == null)
 			return null;
+		if (src instanceof IntObjMap) {
+			final IntObjMap<Object> out = new IntObjMap<Object>((IntObjMap<?>) src);
+			for (int i = out.firstSlot(); i >= 0; i = out.nextSlot(i))
+				out.setValueAt(i, deepCopyObject(out.valueAt(i), type.valueType()));
+			return out;
+		}
+		if (src instanceof LongObjMap) {
+			final LongObjMap<Object> out = new LongObjMap<Object>((LongObjMap<?>) src);
+			for (int i = out.firstSlot(); i >= 0; i = out.nextSlot(i))
+				out.setValueAt(i, deepCopyObject(out.valueAt(i), type.valueType()));
+			return out;
+		}
 		final HashMap<Object, Object> out = new HashMap<Object, Object>(
 				src.size());
 		for (final Object key : src.keySet()) {
@@ -150,10 +184,16 @@ public class DeepCopyer {
 		return out;
 	}
 
-	private static ArrayList<Object> deepCopyList(final ArrayList<?> list,
+	private static List<?> deepCopyList(final List<?> list,
 			final ListType type) {
 		if (list == null)
 			return null;
+		if (list instanceof IntList)
+			return new IntList((IntList) list);
+		if (list instanceof LongList)
+			return new LongList((LongList) list);
+		if (list instanceof DoubleList)
+			return new DoubleList((DoubleList) list);
 		final ArrayList<Object> out = new ArrayList<Object>(list.size());
 		for (final Object src : list)
 			out.add(deepCopyObject(src, type.elementType()));
@@ -0,0 +1,181 @@
+package se.culvertsoft.mgen.javapack.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A growable list of doubles backed by a primitive double array. Used by
+ * generated code for list[float64] fields when the generator setting
+ * primitive_collections is enabled.
+ *
+ * DoubleList is a regular java.util.List&lt;Double&gt; (equals/hashCode follow
+ * the List contract), but elements are stored unboxed. Use the
+ * getDouble/setDouble/addDouble methods to avoid boxing. Null elements are not
+ * supported. Like List&lt;Double&gt;, elements are compared by their bit
+ * patterns (so NaN equals NaN).
+ */
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+	private static final double[] EMPTY = new double[0];
+
+	private double[] m_data;
+	private int m_size;
+
+	public DoubleList(final int initialCapacity) {
+		m_data = initialCapacity > 0 ? new double[initialCapacity] : EMPTY;
+		m_size = 0;
+	}
+
+	public DoubleList() {
+		this(0);
+	}
+
+	public DoubleList(final DoubleList other) {
+		m_data = other.m_size > 0 ? Arrays.copyOf(other.m_data, other.m_size) : EMPTY;
+		m_size = other.m_size;
+	}
+
+	public DoubleList(final Collection<? extends Number> values) {
+		this(values.size());
+		for (final Number v : values)
+			addDouble(v.doubleValue());
+	}
+
+	public static DoubleList of(final double... values) {
+		final DoubleList out = new DoubleList(values.length);
+		System.arraycopy(values, 0, out.m_data, 0, values.length);
+		out.m_size = values.length;
+		return out;
+	}
+
+	public double getDouble(final int index) {
+		checkIndex(index);
+		return m_data[index];
+	}
+
+	public double setDouble(final int index, final double value) {
+		checkIndex(index);
+		final double prev = m_data[index];
+		m_data[index] = value;
+		return prev;
+	}
+
+	public void addDouble(final double value) {
+		if (m_size == m_data.length)
+			grow(m_size + 1);
+		m_data[m_size++] = value;
+		modCount++;
+	}
+
+	public void addDouble(final int index, final double value) {
+		if (index < 0 || index > m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+		if (m_size == m_data.length)
+			grow(m_size + 1);
+		System.arraycopy(m_data, index, m_data, index + 1, m_size - index);
+		m_data[index] = value;
+		m_size++;
+		modCount++;
+	}
+
+	public double removeDoubleAt(final int index) {
+		checkIndex(index);
+		final double prev = m_data[index];
+		System.arraycopy(m_data, index + 1, m_data, index, m_size - index - 1);
+		m_size--;
+		modCount++;
+		return prev;
+	}
+
+	public void ensureCapacity(final int capacity) {
+		if (capacity > m_data.length)
+			grow(capacity);
+	}
+
+	/**
+	 * Returns the backing array. Only the first size() elements are valid,
+	 * and the array is replaced when the list grows.
+	 */
+	public double[] data() {
+		return m_data;
+	}
+
+	public double[] toDoubleArray() {
+		return Arrays.copyOf(m_data, m_size);
+	}
+
+	@Override
+	public Double get(final int index) {
+		return getDouble(index);
+	}
+
+	@Override
+	public Double set(final int index, final Double value) {
+		return setDouble(index, value);
+	}
+
+	@Override
+	public boolean add(final Double value) {
+		addDouble(value);
+		return true;
+	}
+
+	@Override
+	public void add(final int index, final Double value) {
+		addDouble(index, value);
+	}
+
+	@Override
+	public Double remove(final int index) {
+		return removeDoubleAt(index);
+	}
+
+	@Override
+	public int size() {
+		return m_size;
+	}
+
+	@Override
+	public void clear() {
+		m_size = 0;
+		modCount++;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (other instanceof DoubleList) {
+			final DoubleList o = (DoubleList) other;
+			if (o.m_size != m_size)
+				return false;
+			for (int i = 0; i < m_size; i++) {
+				if (Double.doubleToLongBits(m_data[i]) != Double.doubleToLongBits(o.m_data[i]))
+					return false;
+			}
+			return true;
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 1;
+		for (int i = 0; i < m_size; i++) {
+			final long v = Double.doubleToLongBits(m_data[i]);
+			out = 31 * out + (int) (v ^ (v >>> 32));
+		}
+		return out;
+	}
+
+	private void grow(final int minCapacity) {
+		final int newCapacity = Math.max(Math.max(minCapacity, 2 * m_data.length), 8);
+		m_data = Arrays.copyOf(m_data, newCapacity);
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+	}
+
+}
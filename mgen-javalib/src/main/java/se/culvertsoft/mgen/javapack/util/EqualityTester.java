@@ -175,6 +175,10 @@ public class EqualityTester {
 			return a == b;
 		if (a.size() != b.size())
 			return false;
+		if (a instanceof IntObjMap && b instanceof IntObjMap)
+			return areIntObjMapsEqual((IntObjMap<?>) a, (IntObjMap<?>) b, type);
+		if (a instanceof LongObjMap && b instanceof LongObjMap)
+			return areLongObjMapsEqual((LongObjMap<?>) a, (LongObjMap<?>) b, type);
 		for (final Object key : a.keySet()) {
 			final Object aValue = a.get(key);
 			final Object bValue = b.get(key);
@@ -185,6 +189,24 @@ public class EqualityTester {
 		return true;
 	}
 
+	private static boolean areIntObjMapsEqual(final IntObjMap<?> a, final IntObjMap<?> b, final MapType type) {
+		for (int i = a.firstSlot(); i >= 0; i = a.nextSlot(i)) {
+			if (!areObjectsEqual(a.valueAt(i), b.get(a.keyAt(i)), type.valueType())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean areLongObjMapsEqual(final LongObjMap<?> a, final LongObjMap<?> b, final MapType type) {
+		for (int i = a.firstSlot(); i >= 0; i = a.nextSlot(i)) {
+			if (!areObjectsEqual(a.valueAt(i), b.get(a.keyAt(i)), type.valueType())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@SuppressWarnings("unchecked")
 	private static boolean areListsEqual(final List<?> a, final List<?> b, final ListType type) {
 		if (a == null || b == null || a == b)
@@ -72,6 +72,12 @@ public final class FastByteBuffer extends OutputStream {
 		}
 	}
 
+	public final void writeUtf8(final CharSequence s, final int nBytes) {
+		if (freeSpace() < nBytes)
+			incCapTo(m_offset + nBytes);
+		m_offset = Utf8.encode(s, m_data, m_offset);
+	}
+
 	public final byte[] data() {
 		return m_data;
 	}
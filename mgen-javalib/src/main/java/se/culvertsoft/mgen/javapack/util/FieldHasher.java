@@ -202,6 +202,26 @@ public class FieldHasher {
 		final Type keyType = type.keyType();
 		final Type valueType = type.valueType();
 
+		if (a instanceof IntObjMap) {
+			final IntObjMap<?> m = (IntObjMap<?>) a;
+			for (int i = m.firstSlot(); i >= 0; i = m.nextSlot(i)) {
+				final Object value = m.valueAt(i);
+				h += calc(m.keyAt(i), keyType)
+						^ (value == null ? 0 : calcObject(value, valueType));
+			}
+			return h;
+		}
+
+		if (a instanceof LongObjMap) {
+			final LongObjMap<?> m = (LongObjMap<?>) a;
+			for (int i = m.firstSlot(); i >= 0; i = m.nextSlot(i)) {
+				final Object value = m.valueAt(i);
+				h += calc(m.keyAt(i), keyType)
+						^ (value == null ? 0 : calcObject(value, valueType));
+			}
+			return h;
+		}
+
 		for (final Map.Entry<?, ?> e : a.entrySet()) {
 			h += (e.getKey() == null ? 0 : calcObject(e.getKey(), keyType))
 					^ (e.getValue() == null ? 0 : calcObject(
@@ -222,6 +242,27 @@ public class FieldHasher {
 
 		final Type elemType = listType.elementType();
 
+		if (a instanceof IntList) {
+			final IntList l = (IntList) a;
+			for (int i = 0; i < l.size(); i++)
+				result = 31 * result + calc(l.getInt(i), elemType);
+			return result;
+		}
+
+		if (a instanceof LongList) {
+			final LongList l = (LongList) a;
+			for (int i = 0; i < l.size(); i++)
+				result = 31 * result + calc(l.getLong(i), elemType);
+			return result;
+		}
+
+		if (a instanceof DoubleList) {
+			final DoubleList l = (DoubleList) a;
+			for (int i = 0; i < l.size(); i++)
+				result = 31 * result + calc(l.getDouble(i), elemType);
+			return result;
+		}
+
 		for (final Object element : a)
 			result = 31 * result
 					+ (element == null ? 0 : calcObject(element, elemType));
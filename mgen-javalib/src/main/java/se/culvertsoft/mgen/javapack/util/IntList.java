@@ -0,0 +1,178 @@
+package se.culvertsoft.mgen.javapack.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A growable list of ints backed by a primitive int array. Used by generated
+ * code for list[int32] fields when the generator setting
+ * primitive_collections is enabled.
+ *
+ * IntList is a regular java.util.List&lt;Integer&gt; (equals/hashCode follow
+ * the List contract), but elements are stored unboxed. Use the
+ * getInt/setInt/addInt methods to avoid boxing. Null elements are not
+ * supported.
+ */
+public final class IntList extends AbstractList<Integer> implements RandomAccess {
+
+	private static final int[] EMPTY = new int[0];
+
+	private int[] m_data;
+	private int m_size;
+
+	public IntList(final int initialCapacity) {
+		m_data = initialCapacity > 0 ? new int[initialCapacity] : EMPTY;
+		m_size = 0;
+	}
+
+	public IntList() {
+		this(0);
+	}
+
+	public IntList(final IntList other) {
+		m_data = other.m_size > 0 ? Arrays.copyOf(other.m_data, other.m_size) : EMPTY;
+		m_size = other.m_size;
+	}
+
+	public IntList(final Collection<? extends Number> values) {
+		this(values.size());
+		for (final Number v : values)
+			addInt(v.intValue());
+	}
+
+	public static IntList of(final int... values) {
+		final IntList out = new IntList(values.length);
+		System.arraycopy(values, 0, out.m_data, 0, values.length);
+		out.m_size = values.length;
+		return out;
+	}
+
+	public int getInt(final int index) {
+		checkIndex(index);
+		return m_data[index];
+	}
+
+	public int setInt(final int index, final int value) {
+		checkIndex(index);
+		final int prev = m_data[index];
+		m_data[index] = value;
+		return prev;
+	}
+
+	public void addInt(final int value) {
+		if (m_size == m_data.length)
+			grow(m_size + 1);
+		m_data[m_size++] = value;
+		modCount++;
+	}
+
+	public void addInt(final int index, final int value) {
+		if (index < 0 || index > m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+		if (m_size == m_data.length)
+			grow(m_size + 1);
+		System.arraycopy(m_data, index, m_data, index + 1, m_size - index);
+		m_data[index] = value;
+		m_size++;
+		modCount++;
+	}
+
+	public int removeIntAt(final int index) {
+		checkIndex(index);
+		final int prev = m_data[index];
+		System.arraycopy(m_data, index + 1, m_data, index, m_size - index - 1);
+		m_size--;
+		modCount++;
+		return prev;
+	}
+
+	public void ensureCapacity(final int capacity) {
+		if (capacity > m_data.length)
+			grow(capacity);
+	}
+
+	/**
+	 * Returns the backing array. Only the first size() elements are valid,
+	 * and the array is replaced when the list grows.
+	 */
+	public int[] data() {
+		return m_data;
+	}
+
+	public int[] toIntArray() {
+		return Arrays.copyOf(m_data, m_size);
+	}
+
+	@Override
+	public Integer get(final int index) {
+		return getInt(index);
+	}
+
+	@Override
+	public Integer set(final int index, final Integer value) {
+		return setInt(index, value);
+	}
+
+	@Override
+	public boolean add(final Integer value) {
+		addInt(value);
+		return true;
+	}
+
+	@Override
+	public void add(final int index, final Integer value) {
+		addInt(index, value);
+	}
+
+	@Override
+	public Integer remove(final int index) {
+		return removeIntAt(index);
+	}
+
+	@Override
+	public int size() {
+		return m_size;
+	}
+
+	@Override
+	public void clear() {
+		m_size = 0;
+		modCount++;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (other instanceof IntList) {
+			final IntList o = (IntList) other;
+			if (o.m_size != m_size)
+				return false;
+			for (int i = 0; i < m_size; i++) {
+				if (m_data[i] != o.m_data[i])
+					return false;
+			}
+			return true;
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 1;
+		for (int i = 0; i < m_size; i++)
+			out = 31 * out + m_data[i];
+		return out;
+	}
+
+	private void grow(final int minCapacity) {
+		final int newCapacity = Math.max(Math.max(minCapacity, 2 * m_data.length), 8);
+		m_data = Arrays.copyOf(m_data, newCapacity);
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+	}
+
+}
@@ -0,0 +1,180 @@
+package se.culvertsoft.mgen.javapack.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A growable list of longs backed by a primitive long array. Used by generated
+ * code for list[int64] fields when the generator setting
+ * primitive_collections is enabled.
+ *
+ * LongList is a regular java.util.List&lt;Long&gt; (equals/hashCode follow
+ * the List contract), but elements are stored unboxed. Use the
+ * getLong/setLong/addLong methods to avoid boxing. Null elements are not
+ * supported.
+ */
+public final class LongList extends AbstractList<Long> implements RandomAccess {
+
+	private static final long[] EMPTY = new long[0];
+
+	private long[] m_data;
+	private int m_size;
+
+	public LongList(final int initialCapacity) {
+		m_data = initialCapacity > 0 ? new long[initialCapacity] : EMPTY;
+		m_size = 0;
+	}
+
+	public LongList() {
+		this(0);
+	}
+
+	public LongList(final LongList other) {
+		m_data = other.m_size > 0 ? Arrays.copyOf(other.m_data, other.m_size) : EMPTY;
+		m_size = other.m_size;
+	}
+
+	public LongList(final Collection<? extends Number> values) {
+		this(values.size());
+		for (final Number v : values)
+			addLong(v.longValue());
+	}
+
+	public static LongList of(final long... values) {
+		final LongList out = new LongList(values.length);
+		System.arraycopy(values, 0, out.m_data, 0, values.length);
+		out.m_size = values.length;
+		return out;
+	}
+
+	public long getLong(final int index) {
+		checkIndex(index);
+		return m_data[index];
+	}
+
+	public long setLong(final int index, final long value) {
+		checkIndex(index);
+		final long prev = m_data[index];
+		m_data[index] = value;
+		return prev;
+	}
+
+	public void addLong(final long value) {
+		if (m_size == m_data.length)
+			grow(m_size + 1);
+		m_data[m_size++] = value;
+		modCount++;
+	}
+
+	public void addLong(final int index, final long value) {
+		if (index < 0 || index > m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+		if (m_size == m_data.length)
+			grow(m_size + 1);
+		System.arraycopy(m_data, index, m_data, index + 1, m_size - index);
+		m_data[index] = value;
+		m_size++;
+		modCount++;
+	}
+
+	public long removeLongAt(final int index) {
+		checkIndex(index);
+		final long prev = m_data[index];
+		System.arraycopy(m_data, index + 1, m_data, index, m_size - index - 1);
+		m_size--;
+		modCount++;
+		return prev;
+	}
+
+	public void ensureCapacity(final int capacity) {
+		if (capacity > m_data.length)
+			grow(capacity);
+	}
+
+	/**
+	 * Returns the backing array. Only the first size() elements are valid,
+	 * and the array is replaced when the list grows.
+	 */
+	public long[] data() {
+		return m_data;
+	}
+
+	public long[] toLongArray() {
+		return Arrays.copyOf(m_data, m_size);
+	}
+
+	@Override
+	public Long get(final int index) {
+		return getLong(index);
+	}
+
+	@Override
+	public Long set(final int index, final Long value) {
+		return setLong(index, value);
+	}
+
+	@Override
+	public boolean add(final Long value) {
+		addLong(value);
+		return true;
+	}
+
+	@Override
+	public void add(final int index, final Long value) {
+		addLong(index, value);
+	}
+
+	@Override
+	public Long remove(final int index) {
+		return removeLongAt(index);
+	}
+
+	@Override
+	public int size() {
+		return m_size;
+	}
+
+	@Override
+	public void clear() {
+		m_size = 0;
+		modCount++;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (other instanceof LongList) {
+			final LongList o = (LongList) other;
+			if (o.m_size != m_size)
+				return false;
+			for (int i = 0; i < m_size; i++) {
+				if (m_data[i] != o.m_data[i])
+					return false;
+			}
+			return true;
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 1;
+		for (int i = 0; i < m_size; i++) {
+			final long v = m_data[i];
+			out = 31 * out + (int) (v ^ (v >>> 32));
+		}
+		return out;
+	}
+
+	private void grow(final int minCapacity) {
+		final int newCapacity = Math.max(Math.max(minCapacity, 2 * m_data.length), 8);
+		m_data = Arrays.copyOf(m_data, newCapacity);
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+	}
+
+}
@@ -0,0 +1,355 @@
+package se.culvertsoft.mgen.javapack.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open addressing (linear probing) hash map with primitive long keys. Used
+ * by generated code for map[int64, X] fields when the generator setting
+ * primitive_collections is enabled.
+ *
+ * LongObjMap is a regular java.util.Map&lt;Long, V&gt; (equals/hashCode
+ * follow the Map contract), but keys are stored unboxed. Use the get/put/
+ * remove/containsKey overloads taking a long, and iterate with
+ * firstSlot/nextSlot/keyAt/valueAt, to avoid boxing and allocating entries.
+ * Null keys are not supported. The iterators of the collection views do not
+ * support removal.
+ *
+ * @param <V>
+ *            The value type of the map
+ */
+public final class LongObjMap<V> extends AbstractMap<Long, V> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	private long[] m_keys;
+	private Object[] m_values;
+	private boolean[] m_used;
+	private int m_size;
+	private int m_mask;
+	private int m_maxFill;
+
+	public LongObjMap(final int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	public LongObjMap() {
+		this(0);
+	}
+
+	public LongObjMap(final LongObjMap<? extends V> other) {
+		m_keys = other.m_keys.clone();
+		m_values = other.m_values.clone();
+		m_used = other.m_used.clone();
+		m_size = other.m_size;
+		m_mask = other.m_mask;
+		m_maxFill = other.m_maxFill;
+	}
+
+	public LongObjMap(final Map<? extends Number, ? extends V> values) {
+		this(values.size());
+		for (final Map.Entry<? extends Number, ? extends V> e : values.entrySet())
+			put(e.getKey().longValue(), e.getValue());
+	}
+
+	public V get(final long key) {
+		final int slot = find(key);
+		return slot >= 0 ? valueAt(slot) : null;
+	}
+
+	public boolean containsKey(final long key) {
+		return find(key) >= 0;
+	}
+
+	public V put(final long key, final V value) {
+		int slot = hash(key) & m_mask;
+		while (m_used[slot]) {
+			if (m_keys[slot] == key) {
+				final V prev = valueAt(slot);
+				m_values[slot] = value;
+				return prev;
+			}
+			slot = (slot + 1) & m_mask;
+		}
+		m_used[slot] = true;
+		m_keys[slot] = key;
+		m_values[slot] = value;
+		if (++m_size > m_maxFill)
+			rehash(m_keys.length * 2);
+		return null;
+	}
+
+	public V remove(final long key) {
+		final int slot = find(key);
+		if (slot < 0)
+			return null;
+		final V prev = valueAt(slot);
+		removeSlot(slot);
+		return prev;
+	}
+
+	/**
+	 * Returns the first occupied slot, or -1 if the map is empty. Slots are
+	 * invalidated by put and remove.
+	 */
+	public int firstSlot() {
+		return nextSlot(-1);
+	}
+
+	/**
+	 * Returns the next occupied slot after the given one, or -1 if there are
+	 * no more.
+	 */
+	public int nextSlot(final int slot) {
+		for (int i = slot + 1; i < m_used.length; i++) {
+			if (m_used[i])
+				return i;
+		}
+		return -1;
+	}
+
+	public long keyAt(final int slot) {
+		return m_keys[slot];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(final int slot) {
+		return (V) m_values[slot];
+	}
+
+	public V setValueAt(final int slot, final V value) {
+		final V prev = valueAt(slot);
+		m_values[slot] = value;
+		return prev;
+	}
+
+	@Override
+	public V get(final Object key) {
+		return key instanceof Long ? get(((Long) key).longValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof Long && containsKey(((Long) key).longValue());
+	}
+
+	@Override
+	public V put(final Long key, final V value) {
+		return put(key.longValue(), value);
+	}
+
+	@Override
+	public V remove(final Object key) {
+		return key instanceof Long ? remove(((Long) key).longValue()) : null;
+	}
+
+	@Override
+	public int size() {
+		return m_size;
+	}
+
+	@Override
+	public void clear() {
+		if (m_size > 0) {
+			Arrays.fill(m_used, false);
+			Arrays.fill(m_values, null);
+			m_size = 0;
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<Long, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (other == this)
+			return true;
+		if (other instanceof LongObjMap) {
+			final LongObjMap<?> o = (LongObjMap<?>) other;
+			if (o.m_size != m_size)
+				return false;
+			for (int i = firstSlot(); i >= 0; i = nextSlot(i)) {
+				final int j = o.find(m_keys[i]);
+				if (j < 0)
+					return false;
+				final Object a = m_values[i];
+				final Object b = o.m_values[j];
+				if (a == null ? b != null : !a.equals(b))
+					return false;
+			}
+			return true;
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 0;
+		for (int i = firstSlot(); i >= 0; i = nextSlot(i)) {
+			final long k = m_keys[i];
+			final Object v = m_values[i];
+			out += (int) (k ^ (k >>> 32)) ^ (v != null ? v.hashCode() : 0);
+		}
+		return out;
+	}
+
+	private int find(final long key) {
+		int slot = hash(key) & m_mask;
+		while (m_used[slot]) {
+			if (m_keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & m_mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the entry at a slot, shifting back the following entries of the
+	 * probe sequence so that no tombstones are needed.
+	 */
+	private void removeSlot(final int slot) {
+		int hole = slot;
+		int i = (hole + 1) & m_mask;
+		while (m_used[i]) {
+			final int ideal = hash(m_keys[i]) & m_mask;
+			if (((i - ideal) & m_mask) >= ((i - hole) & m_mask)) {
+				m_keys[hole] = m_keys[i];
+				m_values[hole] = m_values[i];
+				hole = i;
+			}
+			i = (i + 1) & m_mask;
+		}
+		m_used[hole] = false;
+		m_values[hole] = null;
+		m_size--;
+	}
+
+	private void rehash(final int newCapacity) {
+		final long[] oldKeys = m_keys;
+		final Object[] oldValues = m_values;
+		final boolean[] oldUsed = m_used;
+		allocate(newCapacity);
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				int slot = hash(oldKeys[i]) & m_mask;
+				while (m_used[slot])
+					slot = (slot + 1) & m_mask;
+				m_used[slot] = true;
+				m_keys[slot] = oldKeys[i];
+				m_values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(final int capacity) {
+		m_keys = new long[capacity];
+		m_values = new Object[capacity];
+		m_used = new boolean[capacity];
+		m_mask = capacity - 1;
+		m_maxFill = (capacity * 3) / 4;
+	}
+
+	private static int capacityFor(final int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while ((capacity * 3) / 4 < expectedSize)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private static int hash(final long key) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<Long, V>> {
+
+		@Override
+		public Iterator<Map.Entry<Long, V>> iterator() {
+			return new Iterator<Map.Entry<Long, V>>() {
+
+				private int m_next = firstSlot();
+
+				@Override
+				public boolean hasNext() {
+					return m_next >= 0;
+				}
+
+				@Override
+				public Map.Entry<Long, V> next() {
+					if (m_next < 0)
+						throw new NoSuchElementException();
+					final Entry out = new Entry(m_next);
+					m_next = nextSlot(m_next);
+					return out;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			return m_size;
+		}
+
+	}
+
+	private final class Entry implements Map.Entry<Long, V> {
+
+		private final int m_slot;
+
+		Entry(final int slot) {
+			m_slot = slot;
+		}
+
+		@Override
+		public Long getKey() {
+			return keyAt(m_slot);
+		}
+
+		@Override
+		public V getValue() {
+			return valueAt(m_slot);
+		}
+
+		@Override
+		public V setValue(final V value) {
+			return setValueAt(m_slot, value);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof Map.Entry))
+				return false;
+			final Map.Entry<?, ?> e = (Map.Entry<?, ?>) other;
+			final Object v = getValue();
+			return getKey().equals(e.getKey())
+					&& (v == null ? e.getValue() == null : v.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			final long k = keyAt(m_slot);
+			final Object v = getValue();
+			return (int) (k ^ (k >>> 32)) ^ (v != null ? v.hashCode() : 0);
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+
+	}
+
+}
@@ -5,8 +5,9 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Utility class that implements a single function, readFully, which will read
- * and fill the bytes of an array, or throw an exception if it fails.
+ * Utility class that implements readFully, which will read and fill the bytes
+ * of an array, and skipFully, which will skip a number of bytes, or throw an
+ * exception if they fail.
  */
 public class StreamUtil {
 
@@ -37,4 +38,34 @@ public class StreamUtil {
 			n += count;
 		}
 	}
+
+	/**
+	 * Skips len bytes. If enough bytes cannot be skipped, an IOException is
+	 * thrown.
+	 * 
+	 * @param stream
+	 *            The data input stream to skip bytes of.
+	 * 
+	 * @param len
+	 *            The number of bytes to skip
+	 * 
+	 * @throws IOException
+	 *             If the underlying stream throws an IOException or EOF was
+	 *             reached.
+	 */
+	public static void skipFully(final InputStream stream, final long len)
+			throws IOException {
+		long n = 0;
+		while (n < len) {
+			final long count = stream.skip(len - n);
+			if (count > 0) {
+				n += count;
+			} else {
+				// skip(..) may return 0 before EOF, so read to find out
+				if (stream.read() < 0)
+					throw new EOFException();
+				n++;
+			}
+		}
+	}
 }
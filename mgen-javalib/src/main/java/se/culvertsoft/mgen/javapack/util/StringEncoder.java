@@ -1,12 +1,7 @@
 package se.culvertsoft.mgen.javapack.util;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CoderResult;
-import java.nio.charset.CodingErrorAction;
 
 /**
  * Utility class for encoding UTF8-streams in the built-in MGen writers. Not
@@ -14,53 +9,44 @@ import java.nio.charset.CodingErrorAction;
  */
 public class StringEncoder {
 
-	private ByteBuffer m_buffer;
+	private static final Charset UTF8 = Charset.forName("UTF8");
 
-	private final CharsetEncoder m_stringEncoder;
+	private byte[] m_buffer;
+	private int m_size;
+
+	public StringEncoder(final int bufferSize) {
+		m_buffer = new byte[bufferSize];
+		m_size = 0;
+	}
 
 	public StringEncoder(final int bufferSize, final Charset charset) {
-		m_buffer = ByteBuffer.allocate(bufferSize);
-		m_stringEncoder = charset
-				.newEncoder()
-				.onMalformedInput(CodingErrorAction.REPLACE)
-				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this(bufferSize);
+		if (!UTF8.equals(charset))
+			throw new IllegalArgumentException("StringEncoder only supports UTF-8, not " + charset);
 	}
 
 	public byte[] data() {
-		return m_buffer.array();
+		return m_buffer;
 	}
 
 	public int size() {
-		return m_buffer.remaining();
-	}
-
-	private void reset() {
-		m_buffer.rewind();
-		m_buffer.limit(m_buffer.capacity());
-		m_stringEncoder.reset();
+		return m_size;
 	}
 
 	public void encode(final CharSequence s) throws IOException {
 
+		m_size = 0;
+
 		if (s.length() <= 0)
 			return;
 
-		final CharBuffer in = CharBuffer.wrap(s);
-
-		if (s.length() * 4 > m_buffer.capacity())
-			m_buffer = ByteBuffer.allocate(s.length() * 4);
-
-		reset();
-
-		CoderResult cr = m_stringEncoder.encode(in, m_buffer, true);
-
-		if (cr.isUnderflow())
-			cr = m_stringEncoder.flush(m_buffer);
-
-		if (cr.isOverflow())
-			cr.throwException();
+		if (s.length() * 3 > m_buffer.length) {
+			final int nBytes = Utf8.encodedLength(s);
+			if (nBytes > m_buffer.length)
+				m_buffer = new byte[Math.max(nBytes, m_buffer.length * 2)];
+		}
 
-		m_buffer.flip();
+		m_size = Utf8.encode(s, m_buffer, 0);
 
 	}
 
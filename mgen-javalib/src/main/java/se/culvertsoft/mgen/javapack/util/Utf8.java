@@ -0,0 +1,200 @@
+package se.culvertsoft.mgen.javapack.util;
+
+/**
+ * Hand written UTF-8 codec used by the built-in MGen writers and readers.
+ * Encodes directly into caller supplied byte arrays and decodes in a single
+ * pass, without going through CharBuffers/ByteBuffers and CharsetEncoders/
+ * CharsetDecoders. Both directions start with a fast loop for pure ASCII
+ * data.
+ *
+ * Invalid input is replaced in the same way as the JDK's UTF-8 charset in
+ * REPLACE mode: unpaired surrogates are encoded as '?', and malformed byte
+ * sequences are decoded as U+FFFD.
+ *
+ * Not intended to be used except from MGen Readers and Writers.
+ */
+public final class Utf8 {
+
+	private Utf8() {
+	}
+
+	/**
+	 * Calculates the number of bytes required to encode a character sequence
+	 * as UTF-8.
+	 *
+	 * @param s
+	 *            The character sequence
+	 *
+	 * @return The number of bytes of the UTF-8 encoding
+	 */
+	public static int encodedLength(final CharSequence s) {
+		final int n = s.length();
+		int i = 0;
+
+		// ASCII fast loop
+		while (i < n && s.charAt(i) < 0x80)
+			i++;
+
+		int out = i;
+		for (; i < n; i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				out += 1;
+			} else if (c < 0x800) {
+				out += 2;
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < n
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					out += 4;
+					i++;
+				} else {
+					out += 1;
+				}
+			} else {
+				out += 3;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Encodes a character sequence as UTF-8 into a byte array. The array must
+	 * have room for at least encodedLength(s) bytes from the offset.
+	 *
+	 * @param s
+	 *            The character sequence to encode
+	 *
+	 * @param out
+	 *            The array to write the encoded bytes to
+	 *
+	 * @param offset
+	 *            The position in the array to start writing at
+	 *
+	 * @return The position in the array after the last written byte
+	 */
+	public static int encode(final CharSequence s, final byte[] out, int offset) {
+		final int n = s.length();
+		int i = 0;
+
+		// ASCII fast loop
+		for (char c; i < n && (c = s.charAt(i)) < 0x80; i++)
+			out[offset++] = (byte) c;
+
+		for (; i < n; i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				out[offset++] = (byte) c;
+			} else if (c < 0x800) {
+				out[offset++] = (byte) (0xC0 | (c >> 6));
+				out[offset++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < n
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					final int cp = Character.toCodePoint(c, s.charAt(++i));
+					out[offset++] = (byte) (0xF0 | (cp >> 18));
+					out[offset++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					out[offset++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					out[offset++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					out[offset++] = (byte) '?';
+				}
+			} else {
+				out[offset++] = (byte) (0xE0 | (c >> 12));
+				out[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				out[offset++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Decodes UTF-8 bytes into characters. The output array must have room
+	 * for at least nBytes characters.
+	 *
+	 * @param in
+	 *            The array holding the UTF-8 encoded bytes
+	 *
+	 * @param offset
+	 *            The position of the first byte to decode
+	 *
+	 * @param nBytes
+	 *            The number of bytes to decode
+	 *
+	 * @param out
+	 *            The array to write the decoded characters to
+	 *
+	 * @return The number of characters written
+	 */
+	public static int decode(
+			final byte[] in,
+			final int offset,
+			final int nBytes,
+			final char[] out) {
+
+		final int end = offset + nBytes;
+		int i = offset;
+		int n = 0;
+
+		// ASCII fast loop
+		for (byte b; i < end && (b = in[i]) >= 0; i++)
+			out[n++] = (char) b;
+
+		while (i < end) {
+			final int b1 = in[i++];
+			if (b1 >= 0) {
+				out[n++] = (char) b1;
+			} else if ((b1 & 0xE0) == 0xC0 && b1 >= (byte) 0xC2) {
+				if (i < end && isCont(in[i])) {
+					out[n++] = (char) (((b1 & 0x1F) << 6) | (in[i++] & 0x3F));
+				} else {
+					out[n++] = REPLACEMENT;
+				}
+			} else if ((b1 & 0xF0) == 0xE0) {
+				if (i < end && isCont(in[i])
+						&& (b1 != (byte) 0xE0 || (in[i] & 0xFF) >= 0xA0)) {
+					if (i + 1 < end && isCont(in[i + 1])) {
+						final char c = (char) (((b1 & 0x0F) << 12)
+								| ((in[i] & 0x3F) << 6) | (in[i + 1] & 0x3F));
+						out[n++] = Character.isSurrogate(c) ? REPLACEMENT : c;
+						i += 2;
+					} else {
+						out[n++] = REPLACEMENT;
+						i += 1;
+					}
+				} else {
+					out[n++] = REPLACEMENT;
+				}
+			} else if ((b1 & 0xF8) == 0xF0 && b1 <= (byte) 0xF4) {
+				if (i < end && isCont(in[i])
+						&& (b1 != (byte) 0xF0 || (in[i] & 0xFF) >= 0x90)
+						&& (b1 != (byte) 0xF4 || (in[i] & 0xFF) < 0x90)) {
+					if (i + 2 < end && isCont(in[i + 1]) && isCont(in[i + 2])) {
+						final int cp = ((b1 & 0x07) << 18)
+								| ((in[i] & 0x3F) << 12)
+								| ((in[i + 1] & 0x3F) << 6) | (in[i + 2] & 0x3F);
+						out[n++] = Character.highSurrogate(cp);
+						out[n++] = Character.lowSurrogate(cp);
+						i += 3;
+					} else {
+						// Replace the valid prefix of a broken sequence
+						out[n++] = REPLACEMENT;
+						i += (i + 1 < end && isCont(in[i + 1])) ? 2 : 1;
+					}
+				} else {
+					out[n++] = REPLACEMENT;
+				}
+			} else {
+				out[n++] = REPLACEMENT;
+			}
+		}
+
+		return n;
+	}
+
+	private static final char REPLACEMENT = '\uFFFD';
+
+	private static boolean isCont(final byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+}
@@ -111,10 +111,36 @@ public class Validator {
 	private static boolean validateMap(final Map<?, ?> a, final MapType type) {
 		if (a == null)
 			return true;
+		if (a instanceof IntObjMap)
+			return validateValues((IntObjMap<?>) a, type.valueType());
+		if (a instanceof LongObjMap)
+			return validateValues((LongObjMap<?>) a, type.valueType());
 		return validateEntries(a.keySet(), ((MapType) type).keyType())
 				&& validateEntries(a.values(), ((MapType) type).valueType());
 	}
 
+	private static boolean validateValues(
+			final IntObjMap<?> a,
+			final Type valueType) {
+		for (int i = a.firstSlot(); i >= 0; i = a.nextSlot(i)) {
+			if (!validateObjectDeep(a.valueAt(i), valueType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean validateValues(
+			final LongObjMap<?> a,
+			final Type valueType) {
+		for (int i = a.firstSlot(); i >= 0; i = a.nextSlot(i)) {
+			if (!validateObjectDeep(a.valueAt(i), valueType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private static boolean validateEntries(
 			final Collection<?> a,
 			final Type elemType) {
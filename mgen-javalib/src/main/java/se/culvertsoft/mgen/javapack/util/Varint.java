@@ -239,4 +239,67 @@ public final class Varint {
 		}
 		return value | (b << i);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Calculates the number of bytes of an unsigned 32 bit varint.
+	 * 
+	 * @param value
+	 *            The value to be written
+	 * 
+	 * @return The number of bytes
+	 */
+	public static int sizeOfUnsignedVarInt(final int value) {
+		if ((value & 0xFFFFFF80) == 0)
+			return 1;
+		if ((value & 0xFFFFC000) == 0)
+			return 2;
+		if ((value & 0xFFE00000) == 0)
+			return 3;
+		if ((value & 0xF0000000) == 0)
+			return 4;
+		return 5;
+	}
+
+	/**
+	 * Calculates the number of bytes of an unsigned 64 bit varint.
+	 * 
+	 * @param value
+	 *            The value to be written
+	 * 
+	 * @return The number of bytes
+	 */
+	public static int sizeOfUnsignedVarLong(long value) {
+		int n = 1;
+		while ((value & 0xFFFFFFFFFFFFFF80L) != 0L) {
+			value >>>= 7;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Calculates the number of bytes of a signed (zig-zag encoded) 32 bit
+	 * varint.
+	 * 
+	 * @param value
+	 *            The value to be written
+	 * 
+	 * @return The number of bytes
+	 */
+	public static int sizeOfSignedVarInt(final int value) {
+		return sizeOfUnsignedVarInt((value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * Calculates the number of bytes of a signed (zig-zag encoded) 64 bit
+	 * varint.
+	 * 
+	 * @param value
+	 *            The value to be written
+	 * 
+	 * @return The number of bytes
+	 */
+	public static int sizeOfSignedVarLong(final long value) {
+		return sizeOfUnsignedVarLong((value << 1) ^ (value >> 63));
+	}
+}
@@ -0,0 +1,248 @@
+package se.culvertsoft.mgen.javapack.test
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+
+import scala.collection.JavaConversions.collectionAsScalaIterable
+
+import org.junit.Test
+
+import features.testmodel.Car
+import features.testmodel.CarView
+import gameworld.types.ClassRegistry
+import se.culvertsoft.mgen.javapack.classes.ClassRegistryBase
+import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth
+import se.culvertsoft.mgen.javapack.serialization.BinaryBufferReader
+import se.culvertsoft.mgen.javapack.serialization.BinaryBufferWriter
+import se.culvertsoft.mgen.javapack.serialization.BinaryMappedFileReader
+import se.culvertsoft.mgen.javapack.serialization.BinaryReader
+import se.culvertsoft.mgen.javapack.serialization.BinaryWriter
+
+class BufferSerialization {
+
+  class TestState(val classRegistry: ClassRegistryBase = new ClassRegistry) {
+    val stream = new ByteArrayOutputStream
+    val binaryWriter = new BinaryWriter(stream, classRegistry)
+    val binaryWriterCompact = new BinaryWriter(stream, classRegistry, true)
+    val writers = Seq(binaryWriter, binaryWriterCompact)
+    val objects = classRegistry.entries().map(_.construct()).toSeq
+    objects foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+    def reset() { stream.reset() }
+  }
+
+  def direct(bytes: Array[Byte]): ByteBuffer = {
+    val out = ByteBuffer.allocateDirect(bytes.length)
+    out.put(bytes)
+    out.flip()
+    out
+  }
+
+  def offset(bytes: Array[Byte]): ByteBuffer = {
+    val padded = new Array[Byte](bytes.length + 6)
+    System.arraycopy(bytes, 0, padded, 3, bytes.length)
+    ByteBuffer.wrap(padded, 3, bytes.length).slice()
+  }
+
+  @Test
+  def testReadFromBuffers() {
+    val state = new TestState()
+
+    for (writer <- state.writers) {
+      state.objects foreach writer.writeObject
+      val bytes = state.stream.toByteArray()
+      for (buffer <- Seq(ByteBuffer.wrap(bytes), direct(bytes), offset(bytes))) {
+        val reader = new BinaryBufferReader(buffer, state.classRegistry)
+        for (written <- state.objects) {
+          assert(written == reader.readObject())
+        }
+        assert(reader.remaining() == 0)
+        assert(buffer.position() == 0)
+        AssertThrows(reader.readObject())
+      }
+      state.reset()
+    }
+  }
+
+  @Test
+  def testPosition() {
+    val state = new TestState()
+    val o = state.objects.head
+
+    state.binaryWriter.writeObject(o)
+    val first = state.stream.size()
+    state.binaryWriter.writeObject(o)
+
+    val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry)
+    assert(reader.readObject() == o)
+    assert(reader.position() == first)
+    assert(reader.readObject() == o)
+    assert(reader.remaining() == 0)
+  }
+
+  @Test
+  def testWriteToBuffers() {
+    val state = new TestState()
+
+    for (compact <- Seq(false, true)) {
+      val writer = if (compact) state.binaryWriterCompact else state.binaryWriter
+      state.objects foreach writer.writeObject
+      val expected = state.stream.toByteArray()
+      state.reset()
+
+      for (buffer <- Seq(ByteBuffer.allocate(expected.length), ByteBuffer.allocateDirect(expected.length))) {
+        val bufferWriter = new BinaryBufferWriter(buffer, state.classRegistry, compact)
+        state.objects foreach bufferWriter.writeObject
+        buffer.flip()
+        val written = new Array[Byte](buffer.remaining())
+        buffer.get(written)
+        assert(written.toSeq == expected.toSeq)
+      }
+
+      val channelWriter = new BinaryBufferWriter(Channels.newChannel(state.stream), state.classRegistry, compact)
+      state.objects foreach channelWriter.writeObject
+      assert(state.stream.toByteArray().toSeq == expected.toSeq)
+      state.reset()
+    }
+  }
+
+  @Test
+  def testReadFromStream() {
+    val state = new TestState()
+    state.objects foreach state.binaryWriter.writeObject
+
+    // Buffer readers can stand in for stream readers
+    val reader: BinaryReader = new BinaryBufferReader(state.classRegistry)
+    reader.setInput(new ByteArrayInputStream(state.stream.toByteArray()))
+    for (written <- state.objects)
+      assert(written == reader.readObject())
+    AssertThrows(reader.readObject())
+  }
+
+  @Test
+  def testWriteToStream() {
+    val state = new TestState()
+    state.objects foreach state.binaryWriter.writeObject
+    val expected = state.stream.toByteArray()
+    state.reset()
+
+    // Buffer writers can stand in for stream writers
+    val writer: BinaryWriter = new BinaryBufferWriter(ByteBuffer.allocate(0), state.classRegistry)
+    writer.setOutput(state.stream)
+    state.objects foreach writer.writeObject
+    assert(state.stream.toByteArray().toSeq == expected.toSeq)
+  }
+
+  @Test
+  def testWriteOverflow() {
+    val state = new TestState()
+    val buffer = ByteBuffer.allocate(4)
+    buffer.position(1)
+    val writer = new BinaryBufferWriter(buffer, state.classRegistry)
+    val o = state.objects.head
+    try {
+      writer.writeObject(o)
+      assert(false)
+    } catch {
+      case e: BufferOverflowException =>
+    }
+    assert(buffer.position() == 1)
+  }
+
+  @Test
+  def testMappedFile() {
+    val state = new TestState()
+    val file = File.createTempFile("mgen_mapped", ".bin")
+    file.deleteOnExit()
+
+    val stream = new FileOutputStream(file)
+    val writer = new BinaryWriter(stream, state.classRegistry)
+    for (i <- 0 until 10)
+      state.objects foreach writer.writeObject
+    stream.close()
+
+    // Small windows force objects to straddle window boundaries
+    for (windowSize <- Seq(file.length() / 7 + 1, BinaryMappedFileReader.DEFAULT_WINDOW_SIZE)) {
+      val reader = new BinaryMappedFileReader(file, state.classRegistry, windowSize)
+      val resumePos = reader.filePosition()
+      for (i <- 0 until 10; written <- state.objects)
+        assert(written == reader.readObject())
+      assert(!reader.hasRemaining())
+      reader.seek(resumePos)
+      assert(state.objects.head == reader.readObject())
+      reader.close()
+    }
+  }
+
+  @Test
+  def testMappedFileWindows() {
+    // The features test model is generated with binary views
+    val state = new TestState(new features.testmodel.ClassRegistry)
+    val file = File.createTempFile("mgen_mapped", ".bin")
+    file.deleteOnExit()
+
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+
+    val stream = new FileOutputStream(file)
+    val writer = new BinaryWriter(stream, state.classRegistry)
+    for (i <- 0 until 10) {
+      state.objects foreach writer.writeObject
+      writer.writeObject(car)
+    }
+    stream.close()
+
+    state.binaryWriter.writeObject(car)
+    val carBytes = state.stream.toByteArray()
+
+    // Every entry point must move the window when an object straddles it
+    val reader = new BinaryMappedFileReader(file, state.classRegistry, file.length() / 7 + 1)
+    for (i <- 0 until 10) {
+      for ((written, j) <- state.objects.zipWithIndex) {
+        assert(reader.peekType().typeId() == written._typeId())
+        if ((i + j) % 2 == 0)
+          assert(written == reader.readObject())
+        else
+          assert(reader.skipObject().typeId() == written._typeId())
+      }
+      val position = reader.filePosition()
+      assert(reader.readObject(carBytes) == car)
+      assert(reader.filePosition() == position)
+      assert(reader.readView(new CarView).materialize() == car)
+    }
+    assert(!reader.hasRemaining())
+    reader.close()
+  }
+
+  @Test
+  def testMappedFileTypeDictionary() {
+    val state = new TestState()
+    val file = File.createTempFile("mgen_mapped", ".bin")
+    file.deleteOnExit()
+
+    val stream = new FileOutputStream(file)
+    val writer = new BinaryWriter(stream, state.classRegistry).setTypeDictionary(true)
+    for (i <- 0 until 10)
+      state.objects foreach writer.writeObject
+    stream.close()
+
+    val maxSize = state.objects.map { o =>
+      state.reset()
+      state.binaryWriter.writeObject(o)
+      state.stream.size()
+    }.max
+
+    // Retried reads must not define type dictionary entries twice
+    val reader = new BinaryMappedFileReader(file, state.classRegistry, 2 * maxSize)
+    reader.setTypeDictionary(true)
+    for (i <- 0 until 10; written <- state.objects)
+      assert(written == reader.readObject())
+    assert(!reader.hasRemaining())
+    reader.close()
+  }
+
+}
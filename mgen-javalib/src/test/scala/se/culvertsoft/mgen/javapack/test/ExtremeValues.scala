@@ -10,6 +10,7 @@ import org.junit.Test
 
 import gameworld.types.ClassRegistry
 import gameworld.types.basemodule1.Car
+import se.culvertsoft.mgen.javapack.exceptions.StreamCorruptedException
 import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth
 import se.culvertsoft.mgen.javapack.serialization.BinaryReader
 import se.culvertsoft.mgen.javapack.serialization.BinaryWriter
@@ -17,7 +18,9 @@ import se.culvertsoft.mgen.javapack.serialization.BuiltInReader
 import se.culvertsoft.mgen.javapack.serialization.BuiltInWriter
 import se.culvertsoft.mgen.javapack.serialization.JsonPrettyWriter
 import se.culvertsoft.mgen.javapack.serialization.JsonReader
+import se.culvertsoft.mgen.javapack.serialization.JsonStreamReader
 import se.culvertsoft.mgen.javapack.serialization.JsonWriter
+import se.culvertsoft.mgen.javapack.util.Decimal
 
 case class Precision(val p: Double)
 
@@ -142,4 +145,111 @@ class ExtremeValues {
 
   }
 
-}
\ No newline at end of file
+  @Test
+  def testFloatingPointExact() {
+
+    implicit val state = new TestState
+
+    val floats = Seq(0.1f, -0.3f, 1.0f / 3.0f, 1e-3f, 1e7f, 16777217.0f,
+      java.lang.Float.MIN_VALUE, java.lang.Float.MIN_NORMAL, java.lang.Float.MAX_VALUE)
+    val doubles = Seq(0.1, 0.1 + 0.2, 1.0 / 3.0, 1e-3, 1e7, 1e23, 2.2250738585072011e-308,
+      java.lang.Double.MIN_VALUE, java.lang.Double.MIN_NORMAL, java.lang.Double.MAX_VALUE)
+
+    for (writer <- state.writers) {
+      val car = new Car
+      car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+
+      for (f <- floats)
+        writer.writeObject({ car.getPositioning().getPosition().setY(f); car })
+      for (d <- doubles)
+        writer.writeObject({ car.getPositioning().getPosition().setZ(d); car })
+
+      val readers = writer match {
+        case writer: JsonWriter => Seq(getReader(writer),
+          new JsonStreamReader(new ByteArrayInputStream(state.stream.toByteArray()), state.classRegistry))
+        case _ => Seq(getReader(writer))
+      }
+
+      for (reader <- readers) {
+        for (f <- floats)
+          assert(reader.readObject(classOf[Car]).getPositioning().getPosition().getY() == f)
+        for (d <- doubles)
+          assert(reader.readObject(classOf[Car]).getPositioning().getPosition().getZ() == d)
+      }
+
+      state.reset
+
+    }
+
+  }
+
+  @Test
+  def testDecimal() {
+    assert(Decimal.toString(0.1f) == "0.1")
+    assert(Decimal.toString(2.0e-3) == "0.002")
+    assert(Decimal.toString(1.0e-5) == "1.0E-5")
+    assert(Decimal.toString(1.0e23) == "1.0E23")
+    assert(Decimal.toString(2.0e23) == "2.0E23")
+    assert(Decimal.toString(-0.0) == "-0.0")
+    assert(Decimal.toString(java.lang.Double.MIN_VALUE) == "4.9E-324")
+
+    val random = new java.util.Random(0)
+    for (i <- 0 until 10000) {
+      val f = java.lang.Float.intBitsToFloat(random.nextInt())
+      val d = java.lang.Double.longBitsToDouble(random.nextLong())
+      if (!f.isNaN && !f.isInfinite) {
+        val s = Decimal.toString(f).getBytes
+        assert(Decimal.parseFloat(s, 0, s.length) == f)
+      }
+      if (!d.isNaN && !d.isInfinite) {
+        val s = Decimal.toString(d).getBytes
+        assert(Decimal.parseDouble(s, 0, s.length) == d)
+      }
+    }
+
+    val digits = "1.00000005960464477550".getBytes
+    assert(Decimal.parseFloat(digits, 0, digits.length) == java.lang.Float.parseFloat("1.00000005960464477550"))
+  }
+
+  @Test
+  def testDecimalLongs() {
+
+    def parseLong(s: String) = Decimal.parseLong(s.getBytes, 0, s.length)
+
+    assert(parseLong("0") == 0L)
+    assert(parseLong("-12") == -12L)
+    assert(parseLong("12.7") == 12L)
+    assert(parseLong("9223372036854775807") == Long.MaxValue)
+    assert(parseLong("-9223372036854775808") == Long.MinValue)
+
+    for (s <- Seq("9223372036854775808", "-9223372036854775809", "99999999999999999999", "-", "")) {
+      try {
+        parseLong(s)
+        assert(false, s)
+      } catch {
+        case e: NumberFormatException =>
+      }
+    }
+
+    val state = new TestState
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    car.setId(123456789L)
+    state.jsonWriter.writeObject(car)
+    val json = new String(state.stream.toByteArray(), "UTF-8")
+    assert(json.contains("123456789"))
+
+    for (s <- Seq("9223372036854775808", "-")) {
+      val reader = new JsonStreamReader(
+        new ByteArrayInputStream(json.replace("123456789", s).getBytes("UTF-8")),
+        state.classRegistry)
+      try {
+        reader.readObject(classOf[Car])
+        assert(false, s)
+      } catch {
+        case e: StreamCorruptedException =>
+      }
+    }
+  }
+
+}
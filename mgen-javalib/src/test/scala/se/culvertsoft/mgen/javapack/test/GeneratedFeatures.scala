@@ -0,0 +1,365 @@
+package se.culvertsoft.mgen.javapack.test
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+import java.nio.ByteBuffer
+
+import scala.collection.JavaConversions.collectionAsScalaIterable
+
+import org.junit.Test
+
+import features.testmodel.Car
+import features.testmodel.CarView
+import features.testmodel.ClassRegistry
+import features.testmodel.Entity
+import features.testmodel.Positioning
+import features.testmodel.Samples
+import features.testmodel.VectorR3
+import features.testmodel.World
+import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth
+import se.culvertsoft.mgen.javapack.serialization.BinaryBufferReader
+import se.culvertsoft.mgen.javapack.serialization.BinaryJsonTranscoder
+import se.culvertsoft.mgen.javapack.serialization.BinaryReader
+import se.culvertsoft.mgen.javapack.serialization.BinaryWriter
+import se.culvertsoft.mgen.javapack.serialization.BuiltInReader
+import se.culvertsoft.mgen.javapack.serialization.BuiltInWriter
+import se.culvertsoft.mgen.javapack.serialization.DeltaWriter
+import se.culvertsoft.mgen.javapack.serialization.JsonReader
+import se.culvertsoft.mgen.javapack.serialization.JsonWriter
+import se.culvertsoft.mgen.javapack.serialization.Reader
+import se.culvertsoft.mgen.javapack.util.DoubleList
+import se.culvertsoft.mgen.javapack.util.IntList
+import se.culvertsoft.mgen.javapack.util.IntObjMap
+import se.culvertsoft.mgen.javapack.util.LongObjMap
+
+class GeneratedFeatures {
+
+  class TestState() {
+    val classRegistry = new ClassRegistry
+    val classRegEntries = classRegistry.entries()
+    val stream = new ByteArrayOutputStream
+    val jsonWriter = new JsonWriter(stream, classRegistry)
+    val jsonWriterCompact = new JsonWriter(stream, classRegistry, true)
+    val binaryWriter = new BinaryWriter(stream, classRegistry)
+    val binaryWriterCompact = new BinaryWriter(stream, classRegistry, true)
+
+    val writers = Seq(
+      jsonWriter,
+      jsonWriterCompact,
+      binaryWriter,
+      binaryWriterCompact)
+
+    def reset() { stream.reset() }
+  }
+
+  def mkTestObjects()(implicit state: TestState) = {
+    val allObjects = state.classRegEntries.map(_.construct())
+    val validObjects = allObjects.filter(_._validate(FieldSetDepth.DEEP))
+    val invalidObjects = allObjects.filterNot(_._validate(FieldSetDepth.DEEP))
+    (allObjects, validObjects, invalidObjects)
+  }
+
+  def getReader(
+    writer: BuiltInWriter)(implicit state: TestState): BuiltInReader = {
+    writer match {
+      case writer: JsonWriter =>
+        new JsonReader(new ByteArrayInputStream(state.stream.toByteArray()), state.classRegistry)
+      case writer: BinaryWriter =>
+        new BinaryReader(new ByteArrayInputStream(state.stream.toByteArray()), state.classRegistry)
+    }
+  }
+
+  @Test
+  def testCanRead() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (writer <- state.writers) {
+      all foreach writer.writeObject
+      val reader = getReader(writer)
+      for (written <- all)
+        assert(written == reader.readObject())
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testGeneratedBinaryCodecs() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (o <- all) {
+      assert(o._writeBinary(state.binaryWriter))
+      state.reset()
+    }
+
+    // The default generator settings do not generate binary codecs
+    assert(!new gameworld.types.basemodule1.Car()._writeBinary(state.binaryWriter))
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+      all foreach writer.writeObject
+      val reader = getReader(writer)
+      for (written <- all) {
+        val readBack = reader.readObject()
+        assert(written == readBack)
+      }
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testPrimitiveCollections() {
+    implicit val state = new TestState()
+
+    // map[int64, Entity] becomes a LongObjMap
+    val world = new World
+    world._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    for (i <- 0 until 100) {
+      val car = new Car
+      car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+      world.getEntities().put(i * 7919, car)
+    }
+    world.getEntities().remove(7919 * 3)
+
+    assert(world.getEntities().isInstanceOf[LongObjMap[_]])
+    assert(world.getEntities().size() == 99)
+    assert(world.deepCopy() == world)
+    assert(world.deepCopy().hashCode() == world.hashCode())
+
+    for (writer <- state.writers) {
+      writer.writeObject(world)
+      val worldBack = getReader(writer).readObject().asInstanceOf[World]
+      assert(worldBack.getEntities().isInstanceOf[LongObjMap[_]])
+      assert(world == worldBack)
+      state.reset()
+    }
+
+    val samples = new Samples
+    samples._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    for (i <- 0 until 100) {
+      samples.getInts().addInt(i * 31)
+      samples.getDoubles().addDouble(i * 0.5)
+      samples.getNames().put(i * 7919, "name" + i)
+    }
+
+    for (writer <- state.writers) {
+      writer.writeObject(samples)
+      val samplesBack = getReader(writer).readObject().asInstanceOf[Samples]
+      assert(samplesBack.getInts().isInstanceOf[IntList])
+      assert(samplesBack.getDoubles().isInstanceOf[DoubleList])
+      assert(samplesBack.getNames().isInstanceOf[IntObjMap[_]])
+      assert(samples == samplesBack)
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testPrimitiveMapFromOtherReader() {
+
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    val entities = new java.util.HashMap[java.lang.Long, Entity]
+    entities.put(1L, car)
+
+    // Readers other than the built-in ones only return HashMaps
+    val reader = Proxy.newProxyInstance(
+      classOf[Reader].getClassLoader(),
+      Array[Class[_]](classOf[Reader]),
+      new InvocationHandler {
+        override def invoke(proxy: Object, method: Method, args: Array[Object]): Object = {
+          method.getName() match {
+            case "readMapField" => entities
+            case name => throw new UnsupportedOperationException(name)
+          }
+        }
+      }).asInstanceOf[Reader]
+
+    val world = new World
+    assert(world._readField(World._entities_METADATA.id(), null, reader))
+    assert(world.getEntities().isInstanceOf[LongObjMap[_]])
+    assert(world.getEntities() == entities)
+
+  }
+
+  @Test
+  def testBinaryViews() {
+    implicit val state = new TestState()
+
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    car.setTopSpeed(123).setBrand("Volvo").setNWheels(4)
+    car.getPositioning().getPosition().setY(1.5f)
+
+    val bare = new Car().setTopSpeed(5).setBrand("Saab")
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+
+      writer.writeObject(car)
+      writer.writeObject(bare)
+
+      val buffer = ByteBuffer.wrap(state.stream.toByteArray())
+      val view = new CarView(buffer, state.classRegistry)
+
+      assert(view.getTopSpeed() == 123 && view.getBrand() == "Volvo" && view.getNWheels() == 4)
+      assert(view.hasId() && view.getId() == car.getId())
+      assert(view.getPositioning().getPosition().getY() == 1.5f)
+      assert(view.getPositioning().getPosition().getKind() == car.getPositioning().getPosition().getKind())
+      assert(view.getPositioning().materialize() == car.getPositioning())
+      assert(view.materialize() == car)
+
+      buffer.position(view.endPosition())
+      view.wrap(buffer, state.classRegistry)
+
+      assert(view.getTopSpeed() == 5 && view.getBrand() == "Saab")
+      assert(!view.hasNWheels() && view.getNWheels() == 0)
+      assert(!view.hasPositioning() && view.getPositioning() == null)
+      assert(view.materialize() == bare)
+
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testCompactFieldHeaders() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    // Compact field headers are read by the generated binary codecs too
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+    state.binaryWriter.setCompactFieldHeaders(true)
+    for (o <- all)
+      state.binaryWriter.writeObject(o)
+
+    var nHeaders = 0
+    val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry) {
+      override def readFieldHeader(): Int = {
+        nHeaders += 1
+        super.readFieldHeader()
+      }
+    }
+    for (o <- all)
+      assert(reader.readObject() == o)
+    assert(reader.remaining() == 0)
+    assert(nHeaders > 0)
+
+  }
+
+  @Test
+  def testDeltaWriting() {
+    implicit val state = new TestState()
+
+    for (compact <- Seq(false, true)) {
+
+      val car = new Car
+      car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+      car.setTopSpeed(123).setBrand("Volvo")
+      state.binaryWriter.writeObject(car)
+      val copy = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry).readObject().asInstanceOf[Car]
+      val fullSize = state.stream.size()
+      state.reset()
+
+      car._clearDirty()
+      assert(!car._isDirty())
+
+      val position = copy.getPositioning().getPosition()
+      car.setBrand("Saab")
+      car.getPositioning().getPosition().setY(1.5f)
+      assert(car._nFieldsDirty() == 2)
+
+      val writer = new DeltaWriter(state.stream, state.classRegistry, compact)
+      writer.writeObject(car)
+      assert(state.stream.size() < fullSize)
+
+      val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry)
+      assert(reader.readPatch(copy) == copy)
+      assert(copy == car)
+      assert(copy.getPositioning().getPosition() eq position)
+
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testDeltaReplaceAndUnset() {
+    implicit val state = new TestState()
+
+    for (compact <- Seq(false, true)) {
+      for (frame <- Seq(false, true)) {
+
+        def mkCopy(car: Car): Car = {
+          state.binaryWriter.writeObject(car)
+          val copy = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry).readObject().asInstanceOf[Car]
+          state.reset()
+          copy
+        }
+
+        def patch(car: Car, copy: Car) {
+          val writer = new DeltaWriter(state.stream, state.classRegistry, compact)
+          writer.setFrameObjects(frame)
+          writer.writeObject(car)
+          writer.writeObject(car)
+          car._clearDirty()
+          val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry)
+          assert(reader.readPatch(copy) == copy)
+          assert(reader.skipObject().typeId() == Car._TYPE_ID)
+          state.reset()
+        }
+
+        val car = new Car
+        car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+        car._clearDirty()
+
+        // A replaced object does not keep the fields of the old one
+        val copy1 = mkCopy(car)
+        val oldPositioning = copy1.getPositioning()
+        car.setPositioning(new Positioning().setPosition(new VectorR3()._setAllFieldsSet(true, FieldSetDepth.DEEP).setY(2.5f)))
+        patch(car, copy1)
+        assert(copy1 == car)
+        assert(!copy1.getPositioning().hasVelocity())
+        assert(copy1.getPositioning() ne oldPositioning)
+
+        // Unset fields are unset, also in objects changed in place
+        car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+        car._clearDirty()
+        val copy2 = mkCopy(car)
+        val positioning = copy2.getPositioning()
+        car.getPositioning().unsetVelocity()
+        car.unsetNWheels()
+        assert(car._isDirty())
+        patch(car, copy2)
+        assert(copy2 == car)
+        assert(!copy2.getPositioning().hasVelocity())
+        assert(!copy2.hasNWheels())
+        assert(copy2.getPositioning() eq positioning)
+
+        // Deltas transcode as partial objects
+        car.setBrand("Saab")
+        new DeltaWriter(state.stream, state.classRegistry, compact).setFrameObjects(frame).writeObject(car)
+        val data = state.stream.toByteArray()
+        state.reset()
+        val jsonWriter = new JsonWriter(state.stream, state.classRegistry)
+        new BinaryJsonTranscoder(jsonWriter).transcode(new BinaryBufferReader(data, state.classRegistry))
+        val json = new String(state.stream.toByteArray(), "UTF-8")
+        assert(json.contains("Saab") && !json.contains("positioning"))
+        state.reset()
+      }
+    }
+
+  }
+
+}
@@ -1,19 +1,29 @@
 package se.culvertsoft.mgen.javapack.test
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
 import scala.collection.JavaConversions.collectionAsScalaIterable
+import scala.collection.JavaConversions.seqAsJavaList
 import scala.collection.mutable.ArrayBuffer
 
 import org.junit.Test
 
 import gameworld.dependency.depmodule1.DepCar
+import gameworld.dependency.depmodule1.DepPositioning
 import gameworld.types.ClassRegistry
+import gameworld.types.Dispatcher
 import gameworld.types.Dispatcher.dispatch
 import gameworld.types.Handler
 import gameworld.types.basemodule1.Car
 import gameworld.types.basemodule1.Entity
 import gameworld.types.basemodule1.GarageViewer
 import gameworld.types.basemodule1.Vehicle
+import se.culvertsoft.mgen.javapack.classes.DispatchTable
 import se.culvertsoft.mgen.javapack.classes.MGenBase
+import se.culvertsoft.mgen.javapack.classes.ParallelDispatcher
 
 class ClassIdentification {
 
@@ -103,4 +113,269 @@ class ClassIdentification {
 
   }
 
-}
\ No newline at end of file
+  @Test
+  def testDispatchOtherProject() {
+
+    // Type ordinals are only unique within a project
+    val other = new defaultval.model.SomeType
+    var unknownOk = false
+
+    val handler = new Handler() {
+      override def handleUnknown(o: MGenBase) {
+        unknownOk = o eq other
+      }
+    }
+
+    dispatch(other, handler)
+
+    assert(unknownOk)
+
+  }
+
+  @Test
+  def testTypeOrdinals() {
+    for (e <- classRegEntries) {
+      assert(e.construct()._typeOrdinal() == e.ordinal())
+      assert(classRegistry.getByOrdinal(e.ordinal()) eq e)
+    }
+  }
+
+  @Test
+  def testDispatchTable() {
+
+    val table = new DispatchTable[String](classRegistry).setDefault("default")
+
+    assert(table.get(new Car) == "default")
+    assert(table.get(null) == "default")
+
+    table.put(classOf[Vehicle], "vehicle")
+    assert(table.get(new Car) == "vehicle")
+    assert(table.get(new Vehicle) == "vehicle")
+    assert(table.get(new Entity) == "default")
+
+    table.put(classOf[Car], "car")
+    assert(table.get(new Car) == "car")
+    assert(table.get(new Vehicle) == "vehicle")
+
+    table.put(classOf[DepPositioning], "positioning")
+    assert(table.get(new DepPositioning) == "positioning")
+    assert(table.get(new defaultval.model.SomeType) == "default")
+
+  }
+
+  @Test
+  def testParallelDispatch() {
+
+    val handled = new AtomicInteger
+    val wrongType = new AtomicInteger
+
+    val handler = new Handler() {
+      override def handle(o: Car) { handled.incrementAndGet() }
+      override def handleDiscard(o: MGenBase) { wrongType.incrementAndGet() }
+    }
+
+    val dispatcher = new ParallelDispatcher(
+      Dispatcher.target(handler),
+      4,
+      16,
+      ParallelDispatcher.fieldKey("id"))
+
+    val cars = (0 until 1000).map(i => new Car().setId(i % 10))
+    cars.take(500).foreach(dispatcher.dispatch(_))
+    dispatcher.dispatchAll(cars.drop(500))
+
+    dispatcher.shutdown()
+    assert(dispatcher.awaitTermination(10, TimeUnit.SECONDS))
+    assert(dispatcher.nDispatched() == 1000)
+    assert(dispatcher.nFailed() == 0)
+    assert(handled.get() == 1000)
+    assert(wrongType.get() == 0)
+
+  }
+
+  @Test
+  def testParallelDispatchShutdownRace() {
+
+    val dispatcher = new ParallelDispatcher(
+      new ParallelDispatcher.Target() {
+        override def dispatch(o: MGenBase) {}
+      },
+      2,
+      4,
+      ParallelDispatcher.fieldKey("id"))
+
+    val producers = (0 until 4).map(i => new Thread() {
+      override def run() {
+        try {
+          var j = 0
+          while (true) {
+            dispatcher.dispatch(new Car().setId(j))
+            j += 1
+          }
+        } catch {
+          case e: IllegalStateException =>
+        }
+      }
+    })
+
+    producers.foreach(_.start())
+    Thread.sleep(50)
+    dispatcher.shutdown()
+    producers.foreach(_.join(10000))
+
+    assert(producers.forall(!_.isAlive))
+    assert(dispatcher.awaitTermination(10, TimeUnit.SECONDS))
+    assert(dispatcher.nSubmitted() > 0)
+    assert(dispatcher.nDispatched() == dispatcher.nSubmitted())
+
+    try {
+      dispatcher.dispatch(new Car)
+      assert(false)
+    } catch {
+      case e: IllegalStateException =>
+    }
+
+  }
+
+  @Test
+  def testParallelDispatchQueueCountsObjects() {
+
+    val latch = new CountDownLatch(1)
+    val dispatcher = new ParallelDispatcher(
+      new ParallelDispatcher.Target() {
+        override def dispatch(o: MGenBase) { latch.await() }
+      },
+      1,
+      4,
+      ParallelDispatcher.fieldKey("id"))
+
+    // A batch larger than the queue is accepted when the queue is empty
+    dispatcher.dispatchAll((0 until 10).map(i => new Car().setId(i)))
+    assert(dispatcher.queueSize(0) == 10)
+    assert(!dispatcher.tryDispatch(new Car))
+
+    latch.countDown()
+    dispatcher.shutdown()
+    assert(dispatcher.awaitTermination(10, TimeUnit.SECONDS))
+    assert(dispatcher.nDispatched() == 10)
+    assert(dispatcher.queueSize(0) == 0)
+
+  }
+
+  @Test
+  def testParallelDispatchAllInterrupted() {
+
+    val latch = new CountDownLatch(1)
+    val dispatcher = new ParallelDispatcher(
+      new ParallelDispatcher.Target() {
+        override def dispatch(o: MGenBase) { latch.await() }
+      },
+      2,
+      1,
+      new ParallelDispatcher.KeyExtractor() {
+        override def key(o: MGenBase) = o.asInstanceOf[Car].getId
+      })
+
+    // Fill the queue of worker 1, leaving worker 0 with space
+    val k0 = (0 until 100).find(workerOf(_, 2) == 0).get
+    val k1 = (0 until 100).find(workerOf(_, 2) == 1).get
+    dispatcher.dispatch(new Car().setId(k1))
+
+    var interrupted = false
+    val producer = new Thread() {
+      override def run() {
+        try {
+          dispatcher.dispatchAll(List(new Car().setId(k0), new Car().setId(k1)))
+        } catch {
+          case e: InterruptedException => interrupted = true
+        }
+      }
+    }
+    producer.start()
+    Thread.sleep(50)
+    producer.interrupt()
+    producer.join(10000)
+
+    assert(interrupted)
+    assert(dispatcher.nSubmitted() == 1)
+    assert(dispatcher.queueSize(0) == 0)
+
+    // The space reserved on worker 0 was returned
+    assert(dispatcher.tryDispatch(new Car().setId(k0)))
+
+    latch.countDown()
+    dispatcher.shutdown()
+    assert(dispatcher.awaitTermination(10, TimeUnit.SECONDS))
+    assert(dispatcher.nDispatched() == 2)
+
+  }
+
+  @Test
+  def testParallelDispatchWorkerDeath() {
+
+    val threads = new ArrayBuffer[Thread]
+    val started = new CountDownLatch(1)
+    val dispatcher = new ParallelDispatcher(
+      new ParallelDispatcher.TargetFactory() {
+        override def create(worker: Int) = new ParallelDispatcher.Target() {
+          override def dispatch(o: MGenBase) {
+            started.countDown()
+            try {
+              Thread.sleep(10000)
+            } catch {
+              case e: InterruptedException => Thread.currentThread().interrupt()
+            }
+          }
+        }
+      },
+      1,
+      1,
+      ParallelDispatcher.fieldKey("id"),
+      new ThreadFactory() {
+        override def newThread(r: Runnable) = {
+          val t = new Thread(r)
+          threads.synchronized { threads += t }
+          t
+        }
+      })
+
+    dispatcher.dispatch(new Car)
+    started.await()
+
+    // Blocks on the full queue until the worker dies
+    var failed = false
+    val producer = new Thread() {
+      override def run() {
+        try {
+          while (true)
+            dispatcher.dispatch(new Car)
+        } catch {
+          case e: IllegalStateException => failed = true
+        }
+      }
+    }
+    producer.start()
+    Thread.sleep(50)
+
+    threads.synchronized { threads.foreach(_.interrupt()) }
+    producer.join(10000)
+
+    assert(failed)
+    assert(dispatcher.awaitTermination(10, TimeUnit.SECONDS))
+    try {
+      dispatcher.tryDispatch(new Car)
+      assert(false)
+    } catch {
+      case e: IllegalStateException =>
+    }
+    dispatcher.shutdown()
+
+  }
+
+  private def workerOf(key: Long, nWorkers: Int): Int = {
+    var h = key * 0x9E3779B97F4A7C15L
+    h ^= h >>> 32
+    ((h & 0x7FFFFFFFL) % nWorkers).toInt
+  }
+
+}
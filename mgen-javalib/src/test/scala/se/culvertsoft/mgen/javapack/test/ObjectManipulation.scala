@@ -137,4 +137,26 @@ class ObjectManipulation {
 
   }
 
-}
\ No newline at end of file
+  @Test
+  def testRegistryLookups() {
+
+    assert(classRegistry.nEntries() == classRegEntries.size)
+
+    for (e <- classRegEntries) {
+      assert(classRegistry.getByOrdinal(e.ordinal()) eq e)
+      assert(classRegistry.getById(e.typeId()) eq e)
+      assert(classRegistry.getByClass(e.cls()) eq e)
+      assert(classRegistry.getByName(e.clsName()) eq e)
+      for (base <- classRegEntries) {
+        val expected = base.cls().isAssignableFrom(e.cls())
+        assert(e.isSubTypeOf(base) == expected)
+        assert(e.isInstanceOfTypeId(base.typeId()) == expected)
+      }
+    }
+
+    assert(classRegistry.getByOrdinal(classRegistry.nEntries()) == null)
+    assert(classRegistry.getByClass(classOf[String]) == null)
+
+  }
+
+}
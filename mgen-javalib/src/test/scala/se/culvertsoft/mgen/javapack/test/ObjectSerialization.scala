@@ -2,8 +2,10 @@ package se.culvertsoft.mgen.javapack.test
 
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
+import java.io.EOFException
 
 import scala.collection.JavaConversions.collectionAsScalaIterable
+import scala.collection.JavaConversions.iterableAsScalaIterable
 
 import org.junit.Test
 
@@ -15,13 +17,20 @@ import gameworld.types.basemodule1.Vehicle
 import gameworld.types.basemodule1.World
 import gameworld.types.basemodule1.kind
 import se.culvertsoft.mgen.javapack.metadata.FieldSetDepth
+import se.culvertsoft.mgen.javapack.serialization.BinaryBufferReader
+import se.culvertsoft.mgen.javapack.serialization.BinaryJsonTranscoder
 import se.culvertsoft.mgen.javapack.serialization.BinaryReader
 import se.culvertsoft.mgen.javapack.serialization.BinaryWriter
 import se.culvertsoft.mgen.javapack.serialization.BuiltInReader
 import se.culvertsoft.mgen.javapack.serialization.BuiltInWriter
+import se.culvertsoft.mgen.javapack.serialization.JsonBufferWriter
 import se.culvertsoft.mgen.javapack.serialization.JsonPrettyWriter
 import se.culvertsoft.mgen.javapack.serialization.JsonReader
+import se.culvertsoft.mgen.javapack.serialization.JsonSequenceWriter
+import se.culvertsoft.mgen.javapack.serialization.JsonStreamReader
 import se.culvertsoft.mgen.javapack.serialization.JsonWriter
+import se.culvertsoft.mgen.javapack.serialization.ParallelNdjsonReader
+import se.culvertsoft.mgen.javapack.serialization.Projection
 
 class ObjectSerialization {
 
@@ -33,6 +42,7 @@ class ObjectSerialization {
     val jsonWriterCompact = new JsonWriter(stream, classRegistry, true)
     val jsonPrettyWriter = new JsonPrettyWriter(stream, classRegistry)
     val jsonPrettyWriterCompact = new JsonPrettyWriter(stream, classRegistry, true)
+    val jsonBufferWriter = new JsonBufferWriter(stream, classRegistry)
     val binaryWriter = new BinaryWriter(stream, classRegistry)
     val binaryWriterCompact = new BinaryWriter(stream, classRegistry, true)
 
@@ -41,6 +51,7 @@ class ObjectSerialization {
       jsonWriterCompact,
       jsonPrettyWriter,
       jsonPrettyWriterCompact,
+      jsonBufferWriter,
       binaryWriter,
       binaryWriterCompact)
 
@@ -205,4 +216,490 @@ class ObjectSerialization {
 
   }
 
+  @Test
+  def testFramedObjects() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+
+      // Mixed stream of framed and unframed objects
+      writer.setFrameObjects(true)
+      all foreach writer.writeObject
+      writer.setFrameObjects(false)
+      all foreach writer.writeObject
+
+      val reader = getReader(writer)
+      for (i <- 0 until 2; written <- all) {
+        val readBack = reader.readObject()
+        assert(written == readBack)
+      }
+
+      state.reset()
+    }
+
+    // Framed objects are skipped in bulk, and truncated ones detected
+    state.binaryWriter.setFrameObjects(true)
+    all foreach state.binaryWriter.writeObject
+    val bytes = state.stream.toByteArray()
+
+    val skipper = new BinaryReader(new ByteArrayInputStream(bytes), state.classRegistry)
+    for (written <- all.dropRight(1))
+      assert(skipper.skipObject().typeId() == written._typeId())
+    assert(skipper.readObject() == all.last)
+
+    val truncated = new BinaryReader(new ByteArrayInputStream(bytes, 0, bytes.length - 1), state.classRegistry)
+    try {
+      for (written <- all)
+        truncated.skipObject()
+      assert(false)
+    } catch {
+      case e: EOFException =>
+    }
+
+  }
+
+  @Test
+  def testEnumsAsInts() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+
+      // Mixed stream of enums written as strings and as ints
+      writer.setWriteEnumsAsInts(true)
+      all foreach writer.writeObject
+      writer.setWriteEnumsAsInts(false)
+      all foreach writer.writeObject
+
+      val reader = getReader(writer)
+      for (i <- 0 until 2; written <- all) {
+        val readBack = reader.readObject()
+        assert(written == readBack)
+      }
+
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testBinarySize() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (
+      writer <- Seq(state.binaryWriter, state.binaryWriterCompact);
+      frameObjects <- Seq(false, true);
+      enumsAsInts <- Seq(false, true)
+    ) {
+      writer.setFrameObjects(frameObjects).setWriteEnumsAsInts(enumsAsInts)
+      for (o <- all) {
+        writer.writeObject(o)
+        assert(writer.binarySize(o) == state.stream.size())
+        state.reset()
+      }
+    }
+
+  }
+
+  @Test
+  def testReadIntoReusedObject() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (writer <- state.writers) {
+
+      for (o <- all)
+        writer.writeObject(o)
+
+      val reader = getReader(writer)
+
+      for (written <- all) {
+        val reuse = written.deepCopy()
+        val readBack = reader.readObject(reuse)
+        assert(readBack eq reuse)
+        assert(written == readBack)
+      }
+
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testObjectPool() {
+    implicit val state = new TestState()
+
+    val entry = state.classRegistry.getByClass(classOf[Car])
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+
+    assert(!state.classRegistry.release(car))
+
+    state.classRegistry.setPoolCapacity(2)
+    assert(state.classRegistry.release(car))
+    assert(entry.nPooled() == 1)
+    assert(car == new Car)
+
+    val written = new Car
+    written._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    state.binaryWriter.writeObject(written)
+    val readBack = getReader(state.binaryWriter).readObject()
+    assert(readBack eq car)
+    assert(readBack == written)
+    assert(entry.nPooled() == 0)
+
+    state.classRegistry.setPoolCapacity(0)
+
+  }
+
+  @Test
+  def testJsonStreamReader() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (writer <- state.writers if writer.isInstanceOf[JsonWriter]) {
+
+      for (o <- all)
+        writer.writeObject(o)
+
+      val reader = new JsonStreamReader(new ByteArrayInputStream(state.stream.toByteArray()), state.classRegistry)
+
+      for (written <- all) {
+        val readBack = reader.readObject()
+        assert(written == readBack)
+      }
+
+      state.reset()
+    }
+
+    // Type ids after the other fields, and an unknown field to skip
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    state.jsonWriter.writeObject(car)
+    val json = new String(state.stream.toByteArray(), "UTF-8")
+    val typeIds = json.substring(json.indexOf("\"__t\""), json.indexOf(','))
+    val moved = "{" + json.substring(json.indexOf(',') + 1, json.length() - 1) +
+      ",\"unknown\":{\"a\":[1,\"]}\",null]}," + typeIds + "}"
+    assert(car == new JsonStreamReader(state.classRegistry).readObject(moved))
+
+  }
+
+  @Test
+  def testJsonBufferWriter() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    for (o <- all) {
+      state.jsonWriter.writeObject(o)
+      val expected = state.stream.toByteArray()
+      state.reset()
+      state.jsonBufferWriter.writeObject(o)
+      assert(java.util.Arrays.equals(expected, state.stream.toByteArray()))
+      assert(state.jsonWriter.writeObjectToString(o) == state.jsonBufferWriter.writeObjectToString(o))
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testJsonSequences() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    val parallelReader = new ParallelNdjsonReader(state.classRegistry, 2, 64, java.util.concurrent.Executors.defaultThreadFactory())
+
+    for (
+      writer <- state.writers if writer.isInstanceOf[JsonWriter];
+      format <- JsonSequenceWriter.Format.values() if !(writer.isInstanceOf[JsonPrettyWriter] && format == JsonSequenceWriter.Format.NDJSON)
+    ) {
+
+      val sequenceWriter = new JsonSequenceWriter(writer.asInstanceOf[JsonWriter], format, 3)
+      for (o <- all)
+        sequenceWriter.writeObject(o)
+      sequenceWriter.finish()
+
+      val data = state.stream.toByteArray()
+      val reader = new JsonStreamReader(new ByteArrayInputStream(data), state.classRegistry)
+      assert(reader.objects().toSeq == all.toSeq)
+      assert(!reader.hasNextObject())
+
+      if (format == JsonSequenceWriter.Format.NDJSON) {
+        assert(parallelReader.readAll(data, 0, data.length).toSeq == all.toSeq)
+        val handled = new java.util.ArrayList[se.culvertsoft.mgen.javapack.classes.MGenBase]
+        parallelReader.read(new ByteArrayInputStream(data), new ParallelNdjsonReader.Handler {
+          override def handle(o: se.culvertsoft.mgen.javapack.classes.MGenBase) { handled.add(o) }
+        })
+        assert(handled.toSeq == all.toSeq)
+      }
+
+      state.reset()
+    }
+
+    parallelReader.shutdown()
+
+    val emptyArrayWriter = new JsonSequenceWriter(state.jsonWriter, JsonSequenceWriter.Format.ARRAY)
+    emptyArrayWriter.finish()
+    assert(new String(state.stream.toByteArray(), "UTF-8") == "[]")
+    assert(!new JsonStreamReader(" [ ]\n", state.classRegistry).hasNextObject())
+
+  }
+
+  @Test
+  def testProjection() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    all foreach (_._setAllFieldsSet(true, FieldSetDepth.DEEP))
+
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+
+    for (writer <- state.writers) {
+
+      for (o <- all)
+        writer.writeObject(o)
+      writer.writeObject(car)
+
+      // Nothing projected: required fields are not required
+      val reader = getReader(writer).setProjection(new Projection)
+      for (o <- all)
+        assert(reader.readObject() == state.classRegistry.getByClass(o.getClass()).construct())
+
+      reader.setProjection(Projection.of("positioning.position.y", "topSpeed"))
+      val read = reader.readObject(classOf[Car])
+      assert(read.hasTopSpeed() && read.getTopSpeed() == car.getTopSpeed())
+      assert(!read.hasBrand() && !read.hasId() && !read.hasNWheels())
+      assert(read.hasPositioning() && !read.getPositioning().hasVelocity())
+      assert(read.getPositioning().getPosition().hasY() && !read.getPositioning().getPosition().hasX())
+      assert(read.getPositioning().getPosition().getY() == car.getPositioning().getPosition().getY())
+
+      state.reset()
+    }
+
+  }
+
+  @Test
+  def testSkipObjects() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+      for (frame <- Seq(false, true)) {
+
+        writer.setFrameObjects(frame)
+        for (o <- valid)
+          writer.writeObject(o)
+
+        val data = state.stream.toByteArray()
+        val reader = new BinaryBufferReader(data, state.classRegistry)
+
+        for (o <- valid) {
+          val start = reader.position()
+          val entry = state.classRegistry.getByClass(o.getClass())
+          assert(reader.peekType() == entry && reader.position() == start)
+          assert(reader.skipObject() == entry)
+          val copy = java.util.Arrays.copyOfRange(data, start, reader.position())
+          assert(new BinaryBufferReader(copy, state.classRegistry).readObject() == o)
+        }
+        assert(reader.remaining() == 0)
+
+        state.reset()
+      }
+      writer.setFrameObjects(false)
+    }
+
+  }
+
+  @Test
+  def testBinaryJsonTranscoding() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    val car = new Car
+    car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+    val objects = valid.toSeq :+ car
+
+    for (binaryWriter <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+
+      for (o <- objects)
+        binaryWriter.writeObject(o)
+      val data = state.stream.toByteArray()
+      state.reset()
+
+      for (jsonWriter <- state.writers.collect { case w: JsonWriter => w }) {
+
+        for (o <- objects)
+          jsonWriter.writeObject(o)
+        val expect = state.stream.toByteArray()
+        state.reset()
+
+        val reader = new BinaryBufferReader(data, state.classRegistry)
+        val transcoder = new BinaryJsonTranscoder(jsonWriter)
+        for (o <- objects)
+          transcoder.transcode(reader)
+        assert(java.util.Arrays.equals(state.stream.toByteArray(), expect))
+        state.reset()
+      }
+    }
+
+  }
+
+  @Test
+  def testTypeDictionary() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+      for (frame <- Seq(false, true)) {
+
+        writer.setFrameObjects(frame)
+        for (o <- valid ++ valid)
+          writer.writeObject(o)
+        val fullSize = state.stream.size()
+        state.reset()
+
+        writer.setTypeDictionary(true)
+        for (o <- valid ++ valid)
+          writer.writeObject(o)
+        assert(state.stream.size() < fullSize)
+
+        val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry)
+        reader.setTypeDictionary(true)
+        for (o <- valid ++ valid) {
+          assert(reader.peekType() == state.classRegistry.getByClass(o.getClass()))
+          assert(reader.readObject() == o)
+        }
+        assert(reader.remaining() == 0)
+
+        writer.setTypeDictionary(false)
+        state.reset()
+      }
+      writer.setFrameObjects(false)
+    }
+
+  }
+
+  @Test
+  def testLeafTypeIds() {
+    implicit val state = new TestState()
+
+    // Leaf type ids can only be written for models without 16 bit type id collisions
+    if (state.classRegistry.hasUniqueTypeIds16Bit()) {
+
+      val (all, valid, invalid) = mkTestObjects()
+
+      for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+
+        for (o <- valid)
+          writer.writeObject(o)
+        val fullSize = state.stream.size()
+        state.reset()
+
+        writer.setLeafTypeIds(true)
+        for (o <- valid)
+          writer.writeObject(o)
+        assert(state.stream.size() <= fullSize)
+
+        val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry)
+        reader.setLeafTypeIds(true)
+        for (o <- valid)
+          assert(reader.readObject() == o)
+        assert(reader.remaining() == 0)
+
+        // Full chains of type ids are still read in leaf type id mode
+        writer.setLeafTypeIds(false)
+        state.reset()
+        for (o <- valid)
+          writer.writeObject(o)
+        reader.setInput(state.stream.toByteArray())
+        for (o <- valid)
+          assert(reader.readObject() == o)
+
+        // Without leaf type id mode, a single type id is a root class id
+        state.reset()
+        val car = new Car
+        car._setAllFieldsSet(true, FieldSetDepth.DEEP)
+        writer.setLeafTypeIds(true)
+        writer.writeObject(car)
+        reader.setInput(state.stream.toByteArray())
+        reader.setLeafTypeIds(false)
+        assert(reader.readObject() == null)
+
+        writer.setLeafTypeIds(false)
+        state.reset()
+      }
+
+      for (writer <- Seq(state.jsonWriter, state.jsonWriterCompact)) {
+
+        writer.setLeafTypeIds(true)
+        for (o <- valid)
+          writer.writeObject(o)
+
+        val reader = new JsonReader(new ByteArrayInputStream(state.stream.toByteArray()), state.classRegistry)
+        reader.setLeafTypeIds(true)
+        for (o <- valid)
+          assert(reader.readObject() == o)
+
+        writer.setLeafTypeIds(false)
+        state.reset()
+      }
+
+    }
+
+  }
+
+  @Test
+  def testCompactFieldHeaders() {
+    implicit val state = new TestState()
+
+    val (all, valid, invalid) = mkTestObjects()
+
+    for (writer <- Seq(state.binaryWriter, state.binaryWriterCompact)) {
+
+      writer.setCompactFieldHeaders(true)
+      for (o <- valid)
+        writer.writeObject(o)
+
+      // Objects with compact and regular field headers can be mixed
+      writer.setCompactFieldHeaders(false)
+      for (o <- valid)
+        writer.writeObject(o)
+
+      val reader = new BinaryBufferReader(state.stream.toByteArray(), state.classRegistry)
+      for (o <- valid ++ valid)
+        assert(reader.readObject() == o)
+      assert(reader.remaining() == 0)
+
+      state.reset()
+    }
+
+  }
+
 }
@@ -15,7 +15,11 @@ import se.culvertsoft.mgen.javapack.serialization.JsonPrettyWriter
 import se.culvertsoft.mgen.javapack.serialization.JsonReader
 import se.culvertsoft.mgen.javapack.serialization.JsonWriter
 import java.io.InputStream
+import java.nio.charset.Charset
 import gameworld.types.ClassRegistry
+import se.culvertsoft.mgen.javapack.util.StringDecoder
+import se.culvertsoft.mgen.javapack.util.StringEncoder
+import se.culvertsoft.mgen.javapack.util.Utf8
 
 class Strings {
 
@@ -69,4 +73,32 @@ class Strings {
 
   }
 
+  @Test
+  def testUtf8Codec() {
+    val utf8 = Charset.forName("UTF8")
+    val encoder = new StringEncoder(4)
+    val decoder = new StringDecoder(4)
+    val strings = Seq(
+      "",
+      "plain ascii",
+      "\u00e5\u00e4\u00f6 \u20ac \u65e5\u672c\u8a9e",
+      "emoji \ud83d\ude00 pair",
+      "x" * 1000 + "\u00e5" * 1000)
+
+    for (s <- strings) {
+      val expected = s.getBytes(utf8)
+      assert(Utf8.encodedLength(s) == expected.length)
+      encoder.encode(s)
+      assert(encoder.data().take(encoder.size()).toSeq == expected.toSeq)
+      assert(decoder.decode(expected, 0, expected.length) == s)
+      assert(decoder.decode(new ByteArrayInputStream(expected), expected.length) == s)
+    }
+
+    // Invalid data is replaced the same way as by the JDK
+    val lone = "a\ud800b"
+    assert(Utf8.encodedLength(lone) == lone.getBytes(utf8).length)
+    val malformed = Array[Byte](0x61, 0xed.toByte, 0xa2.toByte, 0x41, 0xf0.toByte, 0x9f.toByte)
+    assert(decoder.decode(malformed, 0, malformed.length) == new String(malformed, utf8))
+  }
+
 }